@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.event.publisher;
+
+import static org.commonjava.indy.core.conf.IndyEventHandlerConfig.OVERFLOW_BLOCK;
+import static org.commonjava.indy.core.conf.IndyEventHandlerConfig.OVERFLOW_DROP_ACCESS_FIRST;
+import static org.commonjava.indy.core.conf.IndyEventHandlerConfig.OVERFLOW_SPILL;
+
+/**
+ * What {@link FileEventQueue} does with a new file event when it is full.
+ */
+public enum FileEventOverflowPolicy
+{
+    /**
+     * Drop the new event if it is an access event. Otherwise make room by dropping the oldest queued access event, or
+     * if there are none, wait for room like {@link #BLOCK}.
+     */
+    DROP_ACCESS_FIRST( OVERFLOW_DROP_ACCESS_FIRST ),
+
+    /**
+     * Wait for room, for up to the configured timeout, then drop the event.
+     */
+    BLOCK( OVERFLOW_BLOCK ),
+
+    /**
+     * Append the event to a spill file on disk; it is queued again once the queue has drained.
+     */
+    SPILL( OVERFLOW_SPILL );
+
+    private final String configValue;
+
+    FileEventOverflowPolicy( final String configValue )
+    {
+        this.configValue = configValue;
+    }
+
+    public static FileEventOverflowPolicy fromConfig( final String value )
+    {
+        for ( FileEventOverflowPolicy policy : values() )
+        {
+            if ( policy.configValue.equalsIgnoreCase( value ) || policy.name().equalsIgnoreCase( value ) )
+            {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException( "Unknown file event overflow policy: " + value );
+    }
+}
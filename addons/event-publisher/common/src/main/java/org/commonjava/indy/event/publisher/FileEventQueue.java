@@ -0,0 +1,230 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.event.publisher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue of file events between the threads firing galley events and the Kafka publisher threads. When it is
+ * full, new events are handled according to the {@link FileEventOverflowPolicy}.
+ */
+public class FileEventQueue
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final BlockingDeque<QueuedFileEvent> queue;
+
+    private final FileEventOverflowPolicy policy;
+
+    private final long blockTimeoutMillis;
+
+    private final FileEventSpool spool;
+
+    private final AtomicLong droppedAccess = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param spool where events go when the queue is full and the policy is {@link FileEventOverflowPolicy#SPILL};
+     * may be null for other policies
+     */
+    public FileEventQueue( final int capacity, final FileEventOverflowPolicy policy, final long blockTimeoutMillis,
+                           final FileEventSpool spool )
+    {
+        if ( policy == FileEventOverflowPolicy.SPILL && spool == null )
+        {
+            throw new IllegalArgumentException( "Spill overflow policy needs a spool" );
+        }
+        this.queue = new LinkedBlockingDeque<>( capacity );
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.spool = spool;
+    }
+
+    /**
+     * Queue the event, applying the overflow policy if the queue is full.
+     *
+     * @return false if the event was dropped
+     */
+    public boolean offer( final QueuedFileEvent event )
+    {
+        if ( queue.offerLast( event ) )
+        {
+            return true;
+        }
+
+        switch ( policy )
+        {
+            case DROP_ACCESS_FIRST:
+            {
+                if ( event.isAccess() )
+                {
+                    return drop( event );
+                }
+                if ( evictOldestAccess() && queue.offerLast( event ) )
+                {
+                    return true;
+                }
+                return offerBlocking( event );
+            }
+            case SPILL:
+            {
+                return spool.write( event ) || drop( event );
+            }
+            case BLOCK:
+            default:
+            {
+                return offerBlocking( event );
+            }
+        }
+    }
+
+    /**
+     * Re-queue a spilled event without applying the overflow policy.
+     *
+     * @return false if there was no room for it
+     */
+    public boolean requeue( final QueuedFileEvent event )
+    {
+        return queue.offerLast( event );
+    }
+
+    /**
+     * Wait up to lingerMillis for an event, then move it and whatever else is already queued (up to max events) into
+     * the batch.
+     *
+     * @return number of events added to the batch
+     */
+    public int take( final List<QueuedFileEvent> batch, final int max, final long lingerMillis )
+            throws InterruptedException
+    {
+        final QueuedFileEvent first = queue.pollFirst( lingerMillis, TimeUnit.MILLISECONDS );
+        if ( first == null )
+        {
+            return 0;
+        }
+
+        batch.add( first );
+        return 1 + queue.drainTo( batch, max - 1 );
+    }
+
+    /**
+     * Remove everything left in the queue, e.g. on shutdown.
+     */
+    public int drainTo( final List<QueuedFileEvent> batch )
+    {
+        return queue.drainTo( batch );
+    }
+
+    public boolean isEmpty()
+    {
+        return queue.isEmpty();
+    }
+
+    public int getDepth()
+    {
+        return queue.size();
+    }
+
+    public int getRemainingCapacity()
+    {
+        return queue.remainingCapacity();
+    }
+
+    /**
+     * @return number of access events dropped to keep the queue bounded
+     */
+    public long getDroppedAccessCount()
+    {
+        return droppedAccess.get();
+    }
+
+    /**
+     * @return number of events of any type dropped to keep the queue bounded, including access events
+     */
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+    public long getSpilledCount()
+    {
+        return spool == null ? 0 : spool.getSpilledCount();
+    }
+
+    public FileEventSpool getSpool()
+    {
+        return spool;
+    }
+
+    private boolean evictOldestAccess()
+    {
+        final Iterator<QueuedFileEvent> it = queue.iterator();
+        while ( it.hasNext() )
+        {
+            final QueuedFileEvent queued = it.next();
+            if ( queued.isAccess() && queue.removeFirstOccurrence( queued ) )
+            {
+                countDrop( queued );
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean offerBlocking( final QueuedFileEvent event )
+    {
+        try
+        {
+            if ( queue.offerLast( event, blockTimeoutMillis, TimeUnit.MILLISECONDS ) )
+            {
+                return true;
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        return drop( event );
+    }
+
+    private boolean drop( final QueuedFileEvent event )
+    {
+        final long count = countDrop( event );
+        if ( count == 1 || count % 1000 == 0 )
+        {
+            logger.warn( "File event queue is full; {} events dropped so far, latest: {}", count, event );
+        }
+        return false;
+    }
+
+    private long countDrop( final QueuedFileEvent event )
+    {
+        if ( event.isAccess() )
+        {
+            droppedAccess.incrementAndGet();
+        }
+        return dropped.incrementAndGet();
+    }
+}
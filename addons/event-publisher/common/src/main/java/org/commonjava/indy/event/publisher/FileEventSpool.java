@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.event.publisher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Disk overflow for {@link FileEventQueue}: file events are appended as JSON lines to the current spill file. When the
+ * publisher threads catch up, the spill files are replayed oldest first and deleted.
+ * <p>
+ * The spill directory is only listed when the spool is created and when a file is taken for replay; the number of
+ * spill files waiting is counted in between.
+ */
+public class FileEventSpool
+{
+    private static final String SPILL_FILE_PREFIX = "file-events-";
+
+    private static final String SPILL_FILE_SUFFIX = ".jsonl";
+
+    private static final String REPLAY_SUFFIX = ".replay";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final File dir;
+
+    private final ObjectMapper mapper;
+
+    private final ObjectWriter lineWriter;
+
+    private final AtomicLong spilled = new AtomicLong();
+
+    private final AtomicInteger pendingFiles = new AtomicInteger();
+
+    private BufferedWriter writer;
+
+    private File current;
+
+    private long sequence;
+
+    public FileEventSpool( final File dir, final ObjectMapper mapper )
+    {
+        this.dir = dir;
+        this.mapper = mapper;
+        // one event per line, even if the mapper is configured to indent
+        this.lineWriter = mapper.writer().without( SerializationFeature.INDENT_OUTPUT );
+
+        // spill files left by a previous run
+        final File[] files = listSpillFiles();
+        pendingFiles.set( files == null ? 0 : files.length );
+    }
+
+    public synchronized boolean write( final QueuedFileEvent event )
+    {
+        try
+        {
+            if ( writer == null )
+            {
+                Files.createDirectories( dir.toPath() );
+                current = new File( dir, SPILL_FILE_PREFIX + System.currentTimeMillis() + "-" + ( sequence++ )
+                        + SPILL_FILE_SUFFIX );
+                writer = Files.newBufferedWriter( current.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                                                  StandardOpenOption.APPEND );
+                pendingFiles.incrementAndGet();
+            }
+
+            writer.write( lineWriter.writeValueAsString( event ) );
+            writer.newLine();
+            writer.flush();
+            spilled.incrementAndGet();
+            return true;
+        }
+        catch ( IOException e )
+        {
+            logger.error( "Cannot spill file event: {} to: {}. Reason: {}", event, dir, e.getMessage() );
+            return false;
+        }
+    }
+
+    /**
+     * @return true if there are spilled events waiting to be replayed
+     */
+    public boolean hasSpilled()
+    {
+        return pendingFiles.get() > 0;
+    }
+
+    /**
+     * Hand the events of the oldest spill file to the given consumer, then delete the file.
+     *
+     * @return number of events replayed
+     */
+    public int replayOldest( final Consumer<QueuedFileEvent> consumer )
+    {
+        final File file = takeOldest();
+        if ( file == null )
+        {
+            return 0;
+        }
+
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 ))
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                if ( line.trim().isEmpty() )
+                {
+                    continue;
+                }
+                try
+                {
+                    consumer.accept( mapper.readValue( line, QueuedFileEvent.class ) );
+                    count++;
+                }
+                catch ( IOException e )
+                {
+                    logger.warn( "Skipping unreadable spilled file event in: {}. Reason: {}", file, e.getMessage() );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.error( "Cannot replay spilled file events from: {}. Reason: {}", file, e.getMessage() );
+            return count;
+        }
+
+        logger.info( "Replayed {} spilled file events from: {}", count, file );
+        if ( !file.delete() )
+        {
+            logger.warn( "Cannot delete replayed spill file: {}", file );
+        }
+        return count;
+    }
+
+    public long getSpilledCount()
+    {
+        return spilled.get();
+    }
+
+    public synchronized void close()
+    {
+        closeWriter();
+    }
+
+    private synchronized File takeOldest()
+    {
+        final File[] files = listSpillFiles();
+        if ( files == null || files.length == 0 )
+        {
+            pendingFiles.set( 0 );
+            return null;
+        }
+
+        Arrays.sort( files );
+        final File oldest = files[0];
+        if ( oldest.equals( current ) )
+        {
+            // start a new spill file for events spilled while this one is replayed
+            closeWriter();
+        }
+
+        // move it out of the way, so no other publisher thread replays it too
+        final File replaying = new File( dir, oldest.getName() + REPLAY_SUFFIX );
+        if ( !oldest.renameTo( replaying ) )
+        {
+            logger.warn( "Cannot move spill file: {} for replay", oldest );
+            return null;
+        }
+
+        pendingFiles.set( files.length - 1 );
+        return replaying;
+    }
+
+    private File[] listSpillFiles()
+    {
+        return dir.listFiles( ( d, name ) -> name.startsWith( SPILL_FILE_PREFIX ) && name.endsWith( SPILL_FILE_SUFFIX ) );
+    }
+
+    private void closeWriter()
+    {
+        if ( writer != null )
+        {
+            try
+            {
+                writer.close();
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Cannot close spill file: {}. Reason: {}", current, e.getMessage() );
+            }
+            writer = null;
+            current = null;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package org.commonjava.indy.event.publisher;
 
 import org.apache.commons.codec.binary.Base64;
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
 import org.commonjava.event.common.EventMetadata;
 import org.commonjava.event.file.FileEvent;
 import org.commonjava.event.file.FileEventType;
@@ -31,6 +32,7 @@ import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.subsys.datafile.DataFileManager;
 import org.commonjava.indy.subsys.kafka.IndyKafkaProducer;
 import org.commonjava.indy.subsys.kafka.conf.KafkaConfig;
 import org.commonjava.maven.galley.event.FileAccessEvent;
@@ -44,20 +46,38 @@ import org.commonjava.maven.galley.model.TransferOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.commonjava.indy.core.content.ContentMetadataGenerator.FORCE_CHECKSUM_AND_WRITE;
 import static org.commonjava.maven.galley.util.LocationUtils.ATTR_PATH_ENCODE;
 import static org.commonjava.maven.galley.util.LocationUtils.PATH_ENCODE_BASE64;
 
+/**
+ * Publishes galley file events to Kafka. The thread firing the galley event only copies what it cheaply can into a
+ * {@link FileEvent} and queues it; publisher threads fill in the digests and source location, and send the events in
+ * batches, flushing the producer once per batch.
+ */
 @ApplicationScoped
 public class KafkaEventPublisher
         implements FileEventPublisher
 {
+    private static final String PUBLISHER_THREAD_NAME = "file-event-publisher";
+
+    private static final String SPILL_SUBDIR = "file-event-spill";
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
@@ -82,110 +102,261 @@ public class KafkaEventPublisher
     @Inject
     IndyObjectMapper objectMapper;
 
+    @Inject
+    DataFileManager dataFileManager;
+
+    private FileEventQueue queue;
+
+    private ExecutorService publisherExecutor;
+
+    private volatile boolean running;
+
+    protected KafkaEventPublisher()
+    {
+    }
+
+    public KafkaEventPublisher( final IndyEventHandlerConfig handlerConfig, final IndyConfiguration indyConfig,
+                                final StoreDataManager storeManager, final ContentDigester contentDigester,
+                                final IndyKafkaProducer kafkaProducer, final KafkaConfig kafkaConfig,
+                                final IndyObjectMapper objectMapper, final DataFileManager dataFileManager )
+    {
+        this.handlerConfig = handlerConfig;
+        this.indyConfig = indyConfig;
+        this.storeManager = storeManager;
+        this.contentDigester = contentDigester;
+        this.kafkaProducer = kafkaProducer;
+        this.kafkaConfig = kafkaConfig;
+        this.objectMapper = objectMapper;
+        this.dataFileManager = dataFileManager;
+    }
+
+    @PostConstruct
+    public void start()
+    {
+        if ( !isEnabled() )
+        {
+            return;
+        }
+
+        final FileEventOverflowPolicy policy =
+                FileEventOverflowPolicy.fromConfig( handlerConfig.getFileEventOverflowPolicy() );
+
+        FileEventSpool spool = null;
+        if ( policy == FileEventOverflowPolicy.SPILL )
+        {
+            final String spillDir = handlerConfig.getFileEventSpillDir();
+            spool = new FileEventSpool( spillDir == null ?
+                                                new File( dataFileManager.getDetachedWorkBasedir(), SPILL_SUBDIR ) :
+                                                new File( spillDir ), objectMapper );
+        }
+
+        queue = new FileEventQueue( handlerConfig.getFileEventQueueSize(), policy,
+                                    handlerConfig.getFileEventBlockTimeoutMillis(), spool );
+
+        final int threads = Math.max( 1, handlerConfig.getFileEventPublisherThreads() );
+        publisherExecutor = Executors.newFixedThreadPool( threads, new NamedThreadFactory( PUBLISHER_THREAD_NAME,
+                                                                                           new ThreadGroup(
+                                                                                                   PUBLISHER_THREAD_NAME ),
+                                                                                           true, 3 ) );
+        running = true;
+        for ( int i = 0; i < threads; i++ )
+        {
+            publisherExecutor.execute( this::publishLoop );
+        }
+
+        logger.info( "Started {} file event publisher threads, queue size: {}, overflow policy: {}", threads,
+                     handlerConfig.getFileEventQueueSize(), policy );
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( publisherExecutor == null )
+        {
+            return;
+        }
+
+        running = false;
+        publisherExecutor.shutdown();
+        try
+        {
+            if ( !publisherExecutor.awaitTermination( SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS ) )
+            {
+                logger.warn( "File event publisher threads did not stop in {}s", SHUTDOWN_TIMEOUT_SECONDS );
+                publisherExecutor.shutdownNow();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        final List<QueuedFileEvent> remaining = new ArrayList<>();
+        queue.drainTo( remaining );
+        if ( !remaining.isEmpty() )
+        {
+            logger.info( "Publishing {} queued file events before shutdown", remaining.size() );
+            publishBatch( remaining );
+        }
+
+        if ( queue.getSpool() != null )
+        {
+            queue.getSpool().close();
+        }
+    }
+
     @SuppressWarnings( "unused" )
     public void onFileDelete( @Observes final FileDeletionEvent event )
     {
-        handleEvent( event, new FileEvent( FileEventType.DELETE ) );
+        handleEvent( event, FileEventType.DELETE );
     }
 
     @SuppressWarnings( "unused" )
     public void onFileUpload( @Observes final FileStorageEvent event )
     {
-        handleEvent( event, new FileEvent( FileEventType.STORAGE ) );
+        handleEvent( event, FileEventType.STORAGE );
     }
 
-    private void handleEvent( final org.commonjava.maven.galley.event.FileEvent galleyFileEvent, final FileEvent fileEvent )
+    private void handleEvent( final org.commonjava.maven.galley.event.FileEvent galleyFileEvent,
+                              final FileEventType type )
     {
-        if ( !IndyEventHandlerConfig.HANDLER_KAFKA.equals( handlerConfig.getFileEventHandler() ) )
+        if ( !isEnabled() )
         {
             return;
         }
-        transformFileEvent( galleyFileEvent, fileEvent );
-        publishFileEvent( fileEvent );
+
+        final QueuedFileEvent queued = snapshot( galleyFileEvent, type );
+        if ( queue == null )
+        {
+            complete( queued );
+            publishFileEvent( queued.getEvent() );
+        }
+        else
+        {
+            queue.offer( queued );
+        }
     }
 
     public void onFileAccess( @Observes final FileAccessEvent event )
     {
-        handleEvent( event, new FileEvent( FileEventType.ACCESS ) );
+        handleEvent( event, FileEventType.ACCESS );
     }
 
-    private void transformFileEvent( org.commonjava.maven.galley.event.FileEvent galleyEvent, FileEvent fileEvent )
+    /**
+     * Copy what the galley event carries into the file event, on the thread that fired it. Anything that needs I/O is
+     * left to {@link #complete(QueuedFileEvent)}.
+     */
+    private QueuedFileEvent snapshot( org.commonjava.maven.galley.event.FileEvent galleyEvent, FileEventType type )
     {
+        final FileEvent fileEvent = new FileEvent( type );
         Transfer transfer = galleyEvent.getTransfer();
         if ( transfer == null )
         {
             logger.trace( "No transfer." );
-            return;
+            return new QueuedFileEvent( null, null, type, fileEvent, null, null );
         }
 
         final Location location = transfer.getLocation();
         if ( !( location instanceof KeyedLocation ) )
         {
             logger.trace( "Not in a keyed location: {}", transfer );
-            return;
+            return new QueuedFileEvent( null, null, type, fileEvent, null, null );
         }
 
-        try
-        {
-            final KeyedLocation keyedLocation = (KeyedLocation) location;
-            final StoreKey affectedStore = keyedLocation.getKey();
+        final KeyedLocation keyedLocation = (KeyedLocation) location;
+        final StoreKey affectedStore = keyedLocation.getKey();
+
+        final String path = transfer.getPath();
 
-            final String path = transfer.getPath();
+        fileEvent.setTargetPath( path );
+        fileEvent.setNodeId( indyConfig.getNodeId() );
+
+        org.commonjava.maven.galley.event.EventMetadata galleyMetadata = galleyEvent.getEventMetadata();
+        if ( galleyMetadata != null )
+        {
+            EventMetadata fileMetadata = fileEvent.getEventMetadata();
+            if ( fileMetadata == null )
+            {
+                fileMetadata = new EventMetadata();
+            }
+            for ( Map.Entry<Object, Object> galleyMetaItem : galleyMetadata )
+            {
+                fileMetadata.set( galleyMetaItem.getKey(), galleyMetaItem.getValue() );
+            }
+            fileEvent.setEventMetadata( fileMetadata );
+            final TrackingKey trackingKey = (TrackingKey) galleyMetadata.get( "tracking-id" );
+            if ( trackingKey != null )
+            {
+                fileEvent.setSessionId( trackingKey.getId() );
+            }
+        }
 
-            fileEvent.setTargetPath( path );
-            fileEvent.setNodeId( indyConfig.getNodeId() );
+        fileEvent.setTimestamp( new Date() );
+        fileEvent.setStoreKey( affectedStore.toString() );
 
-            org.commonjava.maven.galley.event.EventMetadata galleyMetadata = galleyEvent.getEventMetadata();
-            if ( galleyMetadata != null )
+        // the request thread keeps using its galley metadata, so the publisher threads get their own copy
+        final org.commonjava.maven.galley.event.EventMetadata queuedMetadata =
+                galleyMetadata == null ? null : new org.commonjava.maven.galley.event.EventMetadata( galleyMetadata );
+        final QueuedFileEvent queued =
+                new QueuedFileEvent( affectedStore.toString(), path, type, fileEvent, transfer, queuedMetadata );
+        if ( galleyEvent instanceof FileStorageEvent )
+        {
+            TransferOperation op = ( (FileStorageEvent) galleyEvent ).getType();
+            switch ( op )
             {
-                EventMetadata fileMetadata = fileEvent.getEventMetadata();
-                if ( fileMetadata == null )
+                case DOWNLOAD:
                 {
-                    fileMetadata = new EventMetadata();
+                    fileEvent.setOperation( org.commonjava.event.file.TransferOperation.DOWNLOAD );
+                    break;
                 }
-                for ( Map.Entry<Object, Object> galleyMetaItem : galleyMetadata )
+                case UPLOAD:
                 {
-                    fileMetadata.set( galleyMetaItem.getKey(), galleyMetaItem.getValue() );
+                    fileEvent.setOperation( org.commonjava.event.file.TransferOperation.UPLOAD );
+                    break;
                 }
-                fileEvent.setEventMetadata( fileMetadata );
-                final TrackingKey trackingKey = (TrackingKey) galleyMetadata.get( "tracking-id" );
-                if ( trackingKey != null )
+                default:
                 {
-                    fileEvent.setSessionId( trackingKey.getId() );
+                    logger.trace( "Ignoring transfer operation: {} for: {}", op, transfer );
+                    queued.setIgnoredOperation( true );
                 }
             }
+        }
+
+        return queued;
+    }
 
-            fileEvent.setTimestamp( new Date() );
+    /**
+     * Fill in the digests and source location of a queued event. Digests come from the metadata cached when the
+     * transfer was written if there is any, and are only calculated from the content otherwise.
+     */
+    private void complete( final QueuedFileEvent queued )
+    {
+        if ( queued.getStoreKey() == null )
+        {
+            return;
+        }
 
-            galleyMetadata.set( FORCE_CHECKSUM_AND_WRITE, Boolean.FALSE );
-            TransferMetadata artifactData = contentDigester.digest( affectedStore, path, galleyMetadata );
+        final FileEvent fileEvent = queued.getEvent();
+        final StoreKey affectedStore = StoreKey.fromString( queued.getStoreKey() );
+        final String path = queued.getPath();
+        try
+        {
+            TransferMetadata artifactData =
+                    queued.getTransfer() == null ? null : contentDigester.getContentMetadata( queued.getTransfer() );
+            if ( artifactData == null )
+            {
+                final org.commonjava.maven.galley.event.EventMetadata galleyMetadata = queued.getGalleyMetadata();
+                galleyMetadata.set( FORCE_CHECKSUM_AND_WRITE, Boolean.FALSE );
+                artifactData = contentDigester.digest( affectedStore, path, galleyMetadata );
+            }
             fileEvent.setMd5( artifactData.getDigests().get( ContentDigest.MD5 ) );
             fileEvent.setSha1( artifactData.getDigests().get( ContentDigest.SHA_1 ) );
             fileEvent.setChecksum( artifactData.getDigests().get( ContentDigest.SHA_256 ) );
             fileEvent.setSize( artifactData.getSize() );
-            fileEvent.setStoreKey( affectedStore.toString() );
-            
-            if ( galleyEvent instanceof FileStorageEvent )
+
+            if ( queued.isIgnoredOperation() )
             {
-                TransferOperation op = ((FileStorageEvent) galleyEvent).getType();
-                switch ( op )
-                {
-                    case DOWNLOAD:
-                    {
-                        fileEvent.setOperation( org.commonjava.event.file.TransferOperation.DOWNLOAD );
-                        break;
-                    }
-                    case UPLOAD:
-                    {
-                        fileEvent.setOperation( org.commonjava.event.file.TransferOperation.UPLOAD );
-                        break;
-                    }
-                    default:
-                    {
-                        logger.trace( "Ignoring transfer operation: {} for: {}", op, transfer );
-                        return;
-                    }
-                }
+                return;
             }
 
             if ( StoreType.remote == affectedStore.getType() )
@@ -194,12 +365,12 @@ public class KafkaEventPublisher
                 if ( repo != null )
                 {
                     fileEvent.setSourceLocation( repo.getUrl() );
-                    String sourcePath = transfer.getPath();
-                    if ( PATH_ENCODE_BASE64.equals(repo.getMetadata(ATTR_PATH_ENCODE)) )
+                    String sourcePath = path;
+                    if ( PATH_ENCODE_BASE64.equals( repo.getMetadata( ATTR_PATH_ENCODE ) ) )
                     {
-                        String p = sourcePath.replaceAll("^/*", ""); // remove leading slash if any
-                        sourcePath = new String(Base64.decodeBase64(p));
-                        logger.debug("Decode base64 path, path: {}, decoded: {}", p, sourcePath);
+                        String p = sourcePath.replaceAll( "^/*", "" ); // remove leading slash if any
+                        sourcePath = new String( Base64.decodeBase64( p ) );
+                        logger.debug( "Decode base64 path, path: {}, decoded: {}", p, sourcePath );
                     }
                     fileEvent.setSourcePath( sourcePath );
                 }
@@ -211,6 +382,92 @@ public class KafkaEventPublisher
         }
     }
 
+    private void publishLoop()
+    {
+        final List<QueuedFileEvent> batch = new ArrayList<>( handlerConfig.getFileEventBatchSize() );
+        while ( running )
+        {
+            try
+            {
+                batch.clear();
+                if ( queue.take( batch, handlerConfig.getFileEventBatchSize(),
+                                 handlerConfig.getFileEventLingerMillis() ) > 0 )
+                {
+                    publishBatch( batch );
+                }
+                else if ( queue.getSpool() != null && queue.getSpool().hasSpilled() )
+                {
+                    replaySpilled();
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "File event publisher error: " + e.getMessage(), e );
+            }
+        }
+    }
+
+    private void replaySpilled()
+    {
+        final List<QueuedFileEvent> overflow = new ArrayList<>();
+        queue.getSpool().replayOldest( event -> {
+            if ( !queue.requeue( event ) )
+            {
+                overflow.add( event );
+                if ( overflow.size() >= handlerConfig.getFileEventBatchSize() )
+                {
+                    publishBatch( overflow );
+                    overflow.clear();
+                }
+            }
+        } );
+
+        if ( !overflow.isEmpty() )
+        {
+            publishBatch( overflow );
+        }
+    }
+
+    /**
+     * Send the events without waiting on each of them, then flush the producer once for the whole batch.
+     */
+    private void publishBatch( final List<QueuedFileEvent> batch )
+    {
+        final String topic = kafkaConfig.getFileEventTopic();
+        for ( QueuedFileEvent queued : batch )
+        {
+            try
+            {
+                complete( queued );
+                kafkaProducer.send( topic, queued.getEvent() );
+            }
+            catch ( Throwable e )
+            {
+                logger.error( "Send file event to Kafka error, {}", e.getMessage(), e );
+            }
+        }
+
+        try
+        {
+            kafkaProducer.flush();
+        }
+        catch ( Throwable e )
+        {
+            logger.error( "Flush file events to Kafka error, {}", e.getMessage(), e );
+        }
+        logger.trace( "Published {} file events to {}", batch.size(), topic );
+    }
+
+    private boolean isEnabled()
+    {
+        return IndyEventHandlerConfig.HANDLER_KAFKA.equals( handlerConfig.getFileEventHandler() );
+    }
+
     @Override
     public void publishFileEvent( FileEvent fileEvent )
     {
@@ -223,4 +480,27 @@ public class KafkaEventPublisher
             logger.error( "Send file event to Kafka error, {}", e.getMessage(), e );
         }
     }
+
+    /**
+     * @return number of file events waiting to be published
+     */
+    public int getQueueDepth()
+    {
+        return queue == null ? 0 : queue.getDepth();
+    }
+
+    public long getDroppedCount()
+    {
+        return queue == null ? 0 : queue.getDroppedCount();
+    }
+
+    public long getDroppedAccessCount()
+    {
+        return queue == null ? 0 : queue.getDroppedAccessCount();
+    }
+
+    public long getSpilledCount()
+    {
+        return queue == null ? 0 : queue.getSpilledCount();
+    }
 }
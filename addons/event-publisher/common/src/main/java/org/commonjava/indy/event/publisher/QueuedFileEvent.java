@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.event.publisher;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.commonjava.event.file.FileEvent;
+import org.commonjava.event.file.FileEventType;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+
+/**
+ * A file event waiting to be published. It is built on the thread that fired the galley event, with everything that
+ * can be copied cheaply; the digests and source location are filled in later by the publisher threads.
+ * <p>
+ * The transfer and galley metadata are only kept in memory, and are lost when the event is spilled to disk.
+ */
+public class QueuedFileEvent
+{
+    private String storeKey;
+
+    private String path;
+
+    private FileEventType type;
+
+    private FileEvent event;
+
+    private boolean ignoredOperation;
+
+    @JsonIgnore
+    private transient Transfer transfer;
+
+    @JsonIgnore
+    private transient EventMetadata galleyMetadata;
+
+    public QueuedFileEvent()
+    {
+    }
+
+    public QueuedFileEvent( final String storeKey, final String path, final FileEventType type, final FileEvent event,
+                            final Transfer transfer, final EventMetadata galleyMetadata )
+    {
+        this.storeKey = storeKey;
+        this.path = path;
+        this.type = type;
+        this.event = event;
+        this.transfer = transfer;
+        this.galleyMetadata = galleyMetadata;
+    }
+
+    public String getStoreKey()
+    {
+        return storeKey;
+    }
+
+    public void setStoreKey( final String storeKey )
+    {
+        this.storeKey = storeKey;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    public void setPath( final String path )
+    {
+        this.path = path;
+    }
+
+    public FileEventType getType()
+    {
+        return type;
+    }
+
+    public void setType( final FileEventType type )
+    {
+        this.type = type;
+    }
+
+    public FileEvent getEvent()
+    {
+        return event;
+    }
+
+    public void setEvent( final FileEvent event )
+    {
+        this.event = event;
+    }
+
+    /**
+     * @return true for storage events whose transfer operation isn't published; these don't get a source location
+     */
+    public boolean isIgnoredOperation()
+    {
+        return ignoredOperation;
+    }
+
+    public void setIgnoredOperation( final boolean ignoredOperation )
+    {
+        this.ignoredOperation = ignoredOperation;
+    }
+
+    @JsonIgnore
+    public Transfer getTransfer()
+    {
+        return transfer;
+    }
+
+    @JsonIgnore
+    public EventMetadata getGalleyMetadata()
+    {
+        return galleyMetadata == null ? new EventMetadata() : galleyMetadata;
+    }
+
+    @JsonIgnore
+    public boolean isAccess()
+    {
+        return type == FileEventType.ACCESS;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "QueuedFileEvent{" + type + ", " + storeKey + ", " + path + '}';
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.event.publisher;
+
+import org.commonjava.event.file.FileEvent;
+import org.commonjava.event.file.FileEventType;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FileEventQueueTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void dropAccessFirstDropsNewAccessEvents()
+    {
+        final FileEventQueue queue = new FileEventQueue( 2, FileEventOverflowPolicy.DROP_ACCESS_FIRST, 10, null );
+        assertThat( queue.offer( event( FileEventType.ACCESS, "a1" ) ), equalTo( true ) );
+        assertThat( queue.offer( event( FileEventType.ACCESS, "a2" ) ), equalTo( true ) );
+
+        assertThat( queue.offer( event( FileEventType.ACCESS, "a3" ) ), equalTo( false ) );
+
+        assertThat( paths( queue ), equalTo( Arrays.asList( "a1", "a2" ) ) );
+        assertThat( queue.getDroppedAccessCount(), equalTo( 1L ) );
+        assertThat( queue.getDroppedCount(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void dropAccessFirstEvictsOldestAccessEventForStorageEvent()
+    {
+        final FileEventQueue queue = new FileEventQueue( 3, FileEventOverflowPolicy.DROP_ACCESS_FIRST, 10, null );
+        queue.offer( event( FileEventType.STORAGE, "s1" ) );
+        queue.offer( event( FileEventType.ACCESS, "a1" ) );
+        queue.offer( event( FileEventType.ACCESS, "a2" ) );
+
+        assertThat( queue.offer( event( FileEventType.STORAGE, "s2" ) ), equalTo( true ) );
+
+        assertThat( paths( queue ), equalTo( Arrays.asList( "s1", "a2", "s2" ) ) );
+        assertThat( queue.getDroppedAccessCount(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void dropAccessFirstDropsStorageEventAfterTimeoutWhenNoAccessEventQueued()
+    {
+        final FileEventQueue queue = new FileEventQueue( 1, FileEventOverflowPolicy.DROP_ACCESS_FIRST, 10, null );
+        queue.offer( event( FileEventType.STORAGE, "s1" ) );
+
+        assertThat( queue.offer( event( FileEventType.DELETE, "d1" ) ), equalTo( false ) );
+
+        assertThat( paths( queue ), equalTo( Arrays.asList( "s1" ) ) );
+        assertThat( queue.getDroppedCount(), equalTo( 1L ) );
+        assertThat( queue.getDroppedAccessCount(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void blockWaitsForRoom()
+            throws Exception
+    {
+        final FileEventQueue queue = new FileEventQueue( 1, FileEventOverflowPolicy.BLOCK, 10000, null );
+        queue.offer( event( FileEventType.ACCESS, "a1" ) );
+
+        final CountDownLatch offering = new CountDownLatch( 1 );
+        final List<QueuedFileEvent> taken = new ArrayList<>();
+        final Thread consumer = new Thread( () -> {
+            try
+            {
+                offering.await();
+                Thread.sleep( 100 );
+                queue.take( taken, 1, 1000 );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        } );
+        consumer.start();
+
+        offering.countDown();
+        assertThat( queue.offer( event( FileEventType.ACCESS, "a2" ) ), equalTo( true ) );
+        consumer.join( 10000 );
+
+        assertThat( taken.get( 0 ).getPath(), equalTo( "a1" ) );
+        assertThat( paths( queue ), equalTo( Arrays.asList( "a2" ) ) );
+        assertThat( queue.getDroppedCount(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void blockDropsAfterTimeout()
+    {
+        final FileEventQueue queue = new FileEventQueue( 1, FileEventOverflowPolicy.BLOCK, 10, null );
+        queue.offer( event( FileEventType.STORAGE, "s1" ) );
+
+        assertThat( queue.offer( event( FileEventType.STORAGE, "s2" ) ), equalTo( false ) );
+        assertThat( queue.getDroppedCount(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void spillWritesOverflowToSpool()
+            throws Exception
+    {
+        final FileEventSpool spool = new FileEventSpool( temp.newFolder( "spill" ), new IndyObjectMapper( true ) );
+        final FileEventQueue queue = new FileEventQueue( 1, FileEventOverflowPolicy.SPILL, 10, spool );
+        queue.offer( event( FileEventType.STORAGE, "s1" ) );
+
+        assertThat( queue.offer( event( FileEventType.STORAGE, "s2" ) ), equalTo( true ) );
+        assertThat( queue.offer( event( FileEventType.ACCESS, "a1" ) ), equalTo( true ) );
+
+        assertThat( queue.getDepth(), equalTo( 1 ) );
+        assertThat( queue.getSpilledCount(), equalTo( 2L ) );
+        assertThat( queue.getDroppedCount(), equalTo( 0L ) );
+        assertThat( spool.hasSpilled(), equalTo( true ) );
+
+        final List<QueuedFileEvent> replayed = new ArrayList<>();
+        spool.replayOldest( replayed::add );
+        assertThat( replayed.stream().map( QueuedFileEvent::getPath ).collect( Collectors.toList() ),
+                    equalTo( Arrays.asList( "s2", "a1" ) ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void spillNeedsSpool()
+    {
+        new FileEventQueue( 1, FileEventOverflowPolicy.SPILL, 10, null );
+    }
+
+    @Test
+    public void takeBatchesWhatIsQueuedUpToMax()
+            throws Exception
+    {
+        final FileEventQueue queue = new FileEventQueue( 100, FileEventOverflowPolicy.BLOCK, 10, null );
+        for ( int i = 0; i < 25; i++ )
+        {
+            queue.offer( event( FileEventType.STORAGE, "s" + i ) );
+        }
+
+        final List<QueuedFileEvent> batch = new ArrayList<>();
+        assertThat( queue.take( batch, 10, 10 ), equalTo( 10 ) );
+        assertThat( batch.get( 0 ).getPath(), equalTo( "s0" ) );
+        assertThat( batch.get( 9 ).getPath(), equalTo( "s9" ) );
+        assertThat( queue.getDepth(), equalTo( 15 ) );
+
+        batch.clear();
+        assertThat( queue.take( batch, 100, 10 ), equalTo( 15 ) );
+
+        batch.clear();
+        assertThat( queue.take( batch, 10, 10 ), equalTo( 0 ) );
+    }
+
+    static QueuedFileEvent event( final FileEventType type, final String path )
+    {
+        final FileEvent fileEvent = new FileEvent( type );
+        fileEvent.setTargetPath( path );
+        fileEvent.setStoreKey( "maven:hosted:test" );
+        return new QueuedFileEvent( "maven:hosted:test", path, type, fileEvent, null, null );
+    }
+
+    private static List<String> paths( final FileEventQueue queue )
+    {
+        final List<QueuedFileEvent> events = new ArrayList<>();
+        queue.drainTo( events );
+        return events.stream().map( QueuedFileEvent::getPath ).collect( Collectors.toList() );
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.event.publisher;
+
+import org.commonjava.event.file.FileEventType;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.event.publisher.FileEventQueueTest.event;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FileEventSpoolTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private IndyObjectMapper mapper;
+
+    private File dir;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        mapper = new IndyObjectMapper( true );
+        dir = temp.newFolder( "spill" );
+    }
+
+    @Test
+    public void spilledEventsAreReplayedInOrderAndDeleted()
+    {
+        final FileEventSpool spool = new FileEventSpool( dir, mapper );
+        assertThat( spool.hasSpilled(), equalTo( false ) );
+
+        spool.write( event( FileEventType.STORAGE, "s1" ) );
+        spool.write( event( FileEventType.ACCESS, "a1" ) );
+        spool.write( event( FileEventType.DELETE, "d1" ) );
+        assertThat( spool.hasSpilled(), equalTo( true ) );
+        assertThat( spool.getSpilledCount(), equalTo( 3L ) );
+
+        final List<QueuedFileEvent> replayed = new ArrayList<>();
+        assertThat( spool.replayOldest( replayed::add ), equalTo( 3 ) );
+
+        assertThat( replayed.stream().map( QueuedFileEvent::getPath ).collect( Collectors.toList() ),
+                    equalTo( Arrays.asList( "s1", "a1", "d1" ) ) );
+        assertThat( replayed.stream().map( QueuedFileEvent::getType ).collect( Collectors.toList() ),
+                    equalTo( Arrays.asList( FileEventType.STORAGE, FileEventType.ACCESS, FileEventType.DELETE ) ) );
+        assertThat( replayed.get( 0 ).getStoreKey(), equalTo( "maven:hosted:test" ) );
+        assertThat( replayed.get( 0 ).getEvent().getTargetPath(), equalTo( "s1" ) );
+
+        assertThat( spool.hasSpilled(), equalTo( false ) );
+        assertThat( dir.list().length, equalTo( 0 ) );
+        assertThat( spool.replayOldest( replayed::add ), equalTo( 0 ) );
+    }
+
+    @Test
+    public void eventsSpilledDuringReplayGoToNextFile()
+    {
+        final FileEventSpool spool = new FileEventSpool( dir, mapper );
+        spool.write( event( FileEventType.STORAGE, "s1" ) );
+
+        final List<QueuedFileEvent> replayed = new ArrayList<>();
+        spool.replayOldest( e -> {
+            replayed.add( e );
+            // the queue is still full while the replay runs
+            spool.write( event( FileEventType.STORAGE, "s2" ) );
+        } );
+
+        assertThat( spool.hasSpilled(), equalTo( true ) );
+        assertThat( spool.replayOldest( replayed::add ), equalTo( 1 ) );
+        assertThat( replayed.stream().map( QueuedFileEvent::getPath ).collect( Collectors.toList() ),
+                    equalTo( Arrays.asList( "s1", "s2" ) ) );
+        assertThat( spool.hasSpilled(), equalTo( false ) );
+    }
+
+    @Test
+    public void spillFilesFromPreviousRunAreReplayed()
+    {
+        final FileEventSpool previous = new FileEventSpool( dir, mapper );
+        previous.write( event( FileEventType.STORAGE, "s1" ) );
+        previous.close();
+
+        final FileEventSpool spool = new FileEventSpool( dir, mapper );
+        assertThat( spool.hasSpilled(), equalTo( true ) );
+
+        final List<QueuedFileEvent> replayed = new ArrayList<>();
+        assertThat( spool.replayOldest( replayed::add ), equalTo( 1 ) );
+        assertThat( replayed.get( 0 ).getPath(), equalTo( "s1" ) );
+        assertThat( spool.hasSpilled(), equalTo( false ) );
+    }
+}
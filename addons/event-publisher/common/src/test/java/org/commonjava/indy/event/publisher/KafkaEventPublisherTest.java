@@ -0,0 +1,315 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.event.publisher;
+
+import org.commonjava.event.file.FileEvent;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.content.ContentDigester;
+import org.commonjava.indy.content.IndyPathGenerator;
+import org.commonjava.indy.core.conf.IndyEventHandlerConfig;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.subsys.kafka.IndyKafkaProducer;
+import org.commonjava.indy.subsys.kafka.conf.KafkaConfig;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.core.content.ContentMetadataGenerator.FORCE_CHECKSUM_AND_WRITE;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KafkaEventPublisherTest
+{
+    private static final String TOPIC = "file-event";
+
+    private static final String PATH = "org/foo/bar/1.0/bar-1.0-%d.jar";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final RecordingProducer producer = new RecordingProducer();
+
+    private final RecordingDigester digester = new RecordingDigester();
+
+    private IndyEventHandlerConfig handlerConfig;
+
+    private FileCacheProvider cacheProvider;
+
+    private HostedRepository hosted;
+
+    private KafkaEventPublisher publisher;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        handlerConfig = new IndyEventHandlerConfig();
+        handlerConfig.setFileEventHandler( IndyEventHandlerConfig.HANDLER_KAFKA );
+        handlerConfig.setFileEventQueueSize( 100 );
+        handlerConfig.setFileEventBatchSize( 10 );
+        handlerConfig.setFileEventLingerMillis( 50 );
+        handlerConfig.setFileEventPublisherThreads( 1 );
+        handlerConfig.setFileEventOverflowPolicy( FileEventOverflowPolicy.BLOCK.name() );
+        handlerConfig.setFileEventBlockTimeoutMillis( 10000 );
+
+        final KafkaConfig kafkaConfig = new KafkaConfig();
+        kafkaConfig.setFileEventTopic( TOPIC );
+
+        cacheProvider = new FileCacheProvider( temp.newFolder( "cache" ), new IndyPathGenerator( Collections.emptySet() ),
+                                               new NoOpFileEventManager(),
+                                               new TransferDecoratorManager( new NoOpTransferDecorator() ), false );
+        hosted = new HostedRepository( MAVEN_PKG_KEY, "test" );
+
+        publisher = new KafkaEventPublisher( handlerConfig, new DefaultIndyConfiguration(),
+                                             new MemoryStoreDataManager( true ), digester, producer, kafkaConfig,
+                                             new IndyObjectMapper( true ), null );
+    }
+
+    @After
+    public void release()
+    {
+        producer.releaseFirstSend.countDown();
+        publisher.stop();
+    }
+
+    @Test
+    public void queuedEventsAreSentInBatchesWithOneFlushEach()
+            throws Exception
+    {
+        publisher.start();
+
+        // hold the publisher thread in its first send, so the next events pile up in the queue
+        publisher.onFileUpload( storageEvent( 0, new EventMetadata() ) );
+        assertThat( producer.firstSendStarted.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        for ( int i = 1; i <= 25; i++ )
+        {
+            publisher.onFileUpload( storageEvent( i, new EventMetadata() ) );
+        }
+        assertThat( publisher.getQueueDepth(), equalTo( 25 ) );
+
+        producer.releaseFirstSend.countDown();
+        await( () -> producer.sentCount() == 26 && producer.batchSizes().size() == 4 );
+
+        assertThat( producer.batchSizes(), equalTo( Arrays.asList( 1, 10, 10, 5 ) ) );
+        assertThat( producer.sentPaths(), equalTo( paths( 0, 25 ) ) );
+        assertThat( publisher.getQueueDepth(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void digestUsesCopyOfGalleyMetadata()
+            throws Exception
+    {
+        producer.releaseFirstSend.countDown();
+        publisher.start();
+
+        final EventMetadata requestMetadata = new EventMetadata().set( "request-attr", "value" );
+        publisher.onFileUpload( storageEvent( 0, requestMetadata ) );
+        await( () -> producer.batchSizes().size() == 1 );
+
+        final EventMetadata digestMetadata = digester.metadata.get( 0 );
+        assertThat( digestMetadata, not( sameInstance( requestMetadata ) ) );
+        assertThat( digestMetadata.get( FORCE_CHECKSUM_AND_WRITE ), equalTo( Boolean.FALSE ) );
+        assertThat( digestMetadata.get( "request-attr" ), equalTo( "value" ) );
+        assertThat( requestMetadata.get( FORCE_CHECKSUM_AND_WRITE ), nullValue() );
+
+        final FileEvent sent = (FileEvent) producer.sent.get( 0 );
+        assertThat( sent.getMd5(), equalTo( "md5-" + sent.getTargetPath() ) );
+        assertThat( sent.getStoreKey(), equalTo( hosted.getKey().toString() ) );
+    }
+
+    @Test
+    public void spilledEventsAreReplayedAndSent()
+            throws Exception
+    {
+        handlerConfig.setFileEventQueueSize( 2 );
+        handlerConfig.setFileEventOverflowPolicy( FileEventOverflowPolicy.SPILL.name() );
+        handlerConfig.setFileEventSpillDir( temp.newFolder( "spill" ).getAbsolutePath() );
+        publisher.start();
+
+        publisher.onFileUpload( storageEvent( 0, new EventMetadata() ) );
+        assertThat( producer.firstSendStarted.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        for ( int i = 1; i <= 10; i++ )
+        {
+            publisher.onFileUpload( storageEvent( i, new EventMetadata() ) );
+        }
+        assertThat( publisher.getQueueDepth(), equalTo( 2 ) );
+        assertThat( publisher.getSpilledCount(), equalTo( 8L ) );
+
+        producer.releaseFirstSend.countDown();
+        await( () -> producer.sentCount() == 11 );
+
+        assertThat( new HashSet<>( producer.sentPaths() ), equalTo( new HashSet<>( paths( 0, 10 ) ) ) );
+        assertThat( publisher.getDroppedCount(), equalTo( 0L ) );
+    }
+
+    private FileStorageEvent storageEvent( final int index, final EventMetadata eventMetadata )
+    {
+        final Transfer transfer = cacheProvider.getTransfer(
+                new ConcreteResource( LocationUtils.toLocation( hosted ), String.format( PATH, index ) ) );
+        return new FileStorageEvent( TransferOperation.UPLOAD, transfer, eventMetadata );
+    }
+
+    private static List<String> paths( final int from, final int to )
+    {
+        final List<String> paths = new ArrayList<>();
+        for ( int i = from; i <= to; i++ )
+        {
+            paths.add( String.format( PATH, i ) );
+        }
+        return paths;
+    }
+
+    private static void await( final BooleanSupplier condition )
+            throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while ( !condition.getAsBoolean() && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertThat( condition.getAsBoolean(), equalTo( true ) );
+    }
+
+    /**
+     * Records what is sent and flushed. The first send waits until the test releases it.
+     */
+    private static final class RecordingProducer
+            extends IndyKafkaProducer
+    {
+        private final CountDownLatch firstSendStarted = new CountDownLatch( 1 );
+
+        private final CountDownLatch releaseFirstSend = new CountDownLatch( 1 );
+
+        private final List<Object> sent = Collections.synchronizedList( new ArrayList<>() );
+
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        private int unflushed;
+
+        @Override
+        public void send( final String topic, final Object message )
+        {
+            assertThat( topic, equalTo( TOPIC ) );
+            synchronized ( this )
+            {
+                sent.add( message );
+                unflushed++;
+            }
+
+            if ( firstSendStarted.getCount() > 0 )
+            {
+                firstSendStarted.countDown();
+                try
+                {
+                    releaseFirstSend.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public synchronized void flush()
+        {
+            batchSizes.add( unflushed );
+            unflushed = 0;
+        }
+
+        private synchronized List<Integer> batchSizes()
+        {
+            return new ArrayList<>( batchSizes );
+        }
+
+        private synchronized int sentCount()
+        {
+            return sent.size();
+        }
+
+        private synchronized List<String> sentPaths()
+        {
+            return sent.stream().map( e -> ( (FileEvent) e ).getTargetPath() ).collect( Collectors.toList() );
+        }
+    }
+
+    private static final class RecordingDigester
+            implements ContentDigester
+    {
+        private final List<EventMetadata> metadata = Collections.synchronizedList( new ArrayList<>() );
+
+        @Override
+        public TransferMetadata getContentMetadata( final Transfer transfer )
+        {
+            return null;
+        }
+
+        @Override
+        public TransferMetadata digest( final StoreKey affectedStore, final String path,
+                                        final EventMetadata eventMetadata )
+        {
+            metadata.add( eventMetadata );
+            return new TransferMetadata( Collections.singletonMap( ContentDigest.MD5, "md5-" + path ), 13L );
+        }
+
+        @Override
+        public boolean needsMetadataFor( final Transfer transfer )
+        {
+            return false;
+        }
+
+        @Override
+        public void addMetadata( final Transfer transfer, final TransferMetadata transferMetadata )
+        {
+        }
+
+        @Override
+        public void removeMetadata( final Transfer transfer )
+        {
+        }
+    }
+}
@@ -83,6 +83,8 @@ public class IndyKojiConfig
 
     private static final Boolean DEFAULT_SERVER_PEM_ENABLED = true;
 
+    private static final int DEFAULT_MULTICALL_SIZE = 100;
+
     private Boolean enabled;
 
     private String url;
@@ -141,6 +143,8 @@ public class IndyKojiConfig
 
     private String versionFilter;
 
+    private Integer multiCallSize;
+
     private static final String KOJI_PULL = "koji-pull";
 
     @Override
@@ -486,6 +490,19 @@ public class IndyKojiConfig
         this.versionFilter = versionFilter;
     }
 
+    /**
+     * Max number of calls sent to the Koji hub in one multicall, when looking up builds and tags in batches.
+     */
+    public Integer getMultiCallSize()
+    {
+        return multiCallSize == null || multiCallSize < 1 ? DEFAULT_MULTICALL_SIZE : multiCallSize;
+    }
+
+    public void setMultiCallSize( Integer multiCallSize )
+    {
+        this.multiCallSize = multiCallSize;
+    }
+
     @Override
     public void parameter( final String name, final String value )
             throws ConfigurationException
@@ -629,6 +646,11 @@ public class IndyKojiConfig
                 this.versionFilter = value;
                 break;
             }
+            case "multicall.size":
+            {
+                this.multiCallSize = Integer.valueOf( value.trim() );
+                break;
+            }
             default:
             {
                 if ( name.startsWith( TARGET_KEY_PREFIX ) && name.length() > TARGET_KEY_PREFIX.length() )
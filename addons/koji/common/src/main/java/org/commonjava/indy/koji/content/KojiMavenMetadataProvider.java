@@ -17,20 +17,12 @@ package org.commonjava.indy.koji.content;
 
 import com.redhat.red.build.koji.KojiClient;
 import com.redhat.red.build.koji.KojiClientException;
-import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
-import com.redhat.red.build.koji.model.xmlrpc.KojiBuildArchiveCollection;
-import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
-import com.redhat.red.build.koji.model.xmlrpc.KojiBuildState;
-import com.redhat.red.build.koji.model.xmlrpc.KojiTagInfo;
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.artifact.repository.metadata.Versioning;
 import org.commonjava.atlas.maven.ident.ref.InvalidRefException;
 import org.commonjava.atlas.maven.ident.ref.ProjectRef;
 import org.commonjava.atlas.maven.ident.ref.SimpleProjectRef;
-import org.commonjava.atlas.maven.ident.util.VersionUtils;
-import org.commonjava.atlas.maven.ident.version.InvalidVersionSpecificationException;
 import org.commonjava.atlas.maven.ident.version.SingleVersion;
-import org.commonjava.cdi.util.weft.DrainingExecutorCompletionService;
 import org.commonjava.cdi.util.weft.ExecutorConfig;
 import org.commonjava.cdi.util.weft.Locker;
 import org.commonjava.cdi.util.weft.WeftExecutorService;
@@ -49,12 +41,12 @@ import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.pkg.PackageTypeConstants;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataProvider;
+import org.commonjava.indy.pkg.maven.content.group.VersionIndex;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.commonjava.indy.subsys.infinispan.CacheProducer;
 import org.commonjava.indy.util.LocationUtils;
 import org.commonjava.maven.galley.TransferException;
-import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.maven.util.ArtifactPathUtils;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Transfer;
@@ -64,7 +56,6 @@ import org.infinispan.client.hotrod.RemoteCache;
 import org.infinispan.client.hotrod.annotation.ClientCacheEntryExpired;
 import org.infinispan.client.hotrod.annotation.ClientListener;
 import org.infinispan.client.hotrod.event.ClientCacheEntryExpiredEvent;
-import org.infinispan.commons.util.concurrent.ConcurrentHashSet;
 import org.infinispan.manager.DefaultCacheManager;
 import org.infinispan.notifications.Listener;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
@@ -78,23 +69,15 @@ import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static org.commonjava.indy.core.ctl.PoolUtils.detectOverloadVoid;
 import static org.commonjava.indy.model.core.StoreType.group;
 import static org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger.METADATA_NAME;
 
@@ -381,35 +364,9 @@ public class KojiMavenMetadataProvider
     {
         Logger logger = LoggerFactory.getLogger( getClass() );
 
-        // short-term caches to help improve performance a bit by avoiding xml-rpc calls.
-        List<KojiArchiveInfo> archives = kojiContentProvider.listArchivesMatching( ga, null );
-
-        Map<Integer, KojiBuildArchiveCollection> seenBuildArchives = new ConcurrentHashMap<>();
-        Set<Integer> seenBuilds = new ConcurrentHashSet<>();
-
-        DrainingExecutorCompletionService<SingleVersion> svc = new DrainingExecutorCompletionService<>( kojiMDService );
-
-        detectOverloadVoid(()->{
-            for ( KojiArchiveInfo archive : archives )
-            {
-                svc.submit( archiveScanner( path, ga, archive, seenBuilds, seenBuildArchives) );
-            }
-        });
-
-        Set<SingleVersion> versions = new ConcurrentHashSet<>();
-        try
-        {
-            svc.drain( v -> {
-                if ( v != null )
-                {
-                    versions.add( v );
-                }
-            } );
-        }
-        catch ( InterruptedException | ExecutionException e )
-        {
-            logger.warn( "Failed to scan for Koji metadata related to: " + ga, e );
-        }
+        Set<SingleVersion> versions =
+                new KojiVersionMetadataScanner( kojiContentProvider, buildAuthority, kojiConfig, kojiMDService ).scan(
+                        ga, path );
 
         if ( versions.isEmpty() )
             {
@@ -417,19 +374,17 @@ public class KojiMavenMetadataProvider
                 return null;
             }
 
-            List<SingleVersion> sortedVersions = new ArrayList<>( versions );
-            Collections.sort( sortedVersions );
+            List<String> sortedVersions =
+                    new VersionIndex().add( VersionIndex.prepareParsed( versions ) ).sorted( null );
 
             Metadata md = new Metadata();
             md.setGroupId( ga.getGroupId() );
             md.setArtifactId( ga.getArtifactId() );
 
             Versioning versioning = new Versioning();
-            versioning.setRelease( sortedVersions.get( versions.size() - 1 ).renderStandard() );
-            versioning.setLatest( sortedVersions.get( versions.size() - 1 ).renderStandard() );
-            versioning.setVersions( sortedVersions.stream()
-                                                  .map( SingleVersion::renderStandard )
-                                                  .collect( Collectors.toList() ) );
+            versioning.setRelease( sortedVersions.get( sortedVersions.size() - 1 ) );
+            versioning.setLatest( sortedVersions.get( sortedVersions.size() - 1 ) );
+            versioning.setVersions( sortedVersions );
 
             Date lastUpdated = Calendar.getInstance( TimeZone.getTimeZone( "UTC" ) ).getTime();
             versioning.setLastUpdated( new SimpleDateFormat( LAST_UPDATED_FORMAT ).format( lastUpdated ) );
@@ -438,200 +393,4 @@ public class KojiMavenMetadataProvider
 
             return md;
     }
-
-    private Callable<SingleVersion> archiveScanner( final String path, final ProjectRef ga, final KojiArchiveInfo archive,
-                                                    final Set<Integer> seenBuilds,
-                                                    final Map<Integer, KojiBuildArchiveCollection> seenBuildArchives )
-    {
-        Logger logger = LoggerFactory.getLogger( getClass() );
-
-        return () -> {
-            try
-            {
-                ArchiveScan scan = scanArchive( archive, seenBuilds );
-                if ( scan.isDisqualified() )
-                {
-                    return null;
-                }
-
-                KojiBuildInfo build = scan.getBuild();
-                SingleVersion singleVersion = scan.getSingleVersion();
-
-                boolean buildAllowed = false;
-                if ( !kojiConfig.isTagPatternsEnabled() )
-                {
-                    buildAllowed = true;
-                }
-                else
-                {
-                    logger.trace( "Checking for builds/tags of: {}", archive );
-
-                    List<KojiTagInfo> tags = kojiContentProvider.listTags( build.getId(), null );
-                    for ( KojiTagInfo tag : tags )
-                    {
-                        if ( kojiConfig.isTagAllowed( tag.getName() ) )
-                        {
-                            logger.debug( "Koji tag: {} is allowed for proxying.", tag.getName() );
-                            buildAllowed = true;
-                            break;
-                        }
-                        else
-                        {
-                            logger.debug( "Koji tag: {} is not allowed for proxying.", tag.getName() );
-                        }
-                    }
-                }
-
-                logger.debug(
-                        "Checking if build passed tag whitelist check and doesn't collide with something in authority store (if configured)..." );
-
-                if ( buildAllowed && buildAuthority.isAuthorized( path, new EventMetadata(), ga, build, null,
-                                                                  seenBuildArchives ) )
-                {
-                    try
-                    {
-                        logger.debug( "Adding version: {} for: {}", archive.getVersion(), path );
-                        return singleVersion;
-                    }
-                    catch ( InvalidVersionSpecificationException e )
-                    {
-                        logger.warn( String.format( "Encountered invalid version: %s for archive: %s. Reason: %s",
-                                                    archive.getVersion(), archive.getArchiveId(), e.getMessage() ),
-                                     e );
-                    }
-                }
-            }
-            catch ( KojiClientException e )
-            {
-                logger.error(
-                        "Received Koji error while scanning archives during metadata-generation of: {}. Reason: {}",
-                        ga, e.getMessage() );
-            }
-
-            return null;
-        };
-    }
-
-    private ArchiveScan scanArchive( final KojiArchiveInfo archive, final Set<Integer> seenBuilds )
-            throws KojiClientException
-    {
-        Logger logger = LoggerFactory.getLogger( getClass() );
-        ArchiveScan scan = new ArchiveScan();
-
-        if ( !archive.getFilename().endsWith( ".pom" ) )
-        {
-            logger.debug( "Skipping non-POM: {}", archive.getFilename() );
-            scan.setDisqualified( true );
-            return scan;
-        }
-
-        if ( !isVerSignedAllowed( archive.getVersion() ) )
-        {
-            logger.debug( "version filter pattern not matched: {}", archive.getVersion() );
-            scan.setDisqualified( true );
-            return scan;
-        }
-
-        SingleVersion singleVersion;
-        try
-        {
-            singleVersion = VersionUtils.createSingleVersion( archive.getVersion() );
-            scan.setSingleVersion( singleVersion );
-        }
-        catch ( InvalidVersionSpecificationException ivse )
-        {
-            logger.warn( "Skipping mal-formatted version: {}, relPath: {}, buildId: {}", archive.getVersion(),
-                         archive.getRelPath(), archive.getBuildId() );
-            scan.setDisqualified( true );
-            return scan;
-        }
-
-        KojiBuildInfo build;
-        if ( seenBuilds.contains( archive.getBuildId() ) )
-        {
-            logger.debug( "Skipping already seen build: {}", archive.getBuildId() );
-            scan.setDisqualified( true );
-            return scan;
-        }
-        else
-        {
-            build = kojiContentProvider.getBuildInfo( archive.getBuildId(), null );
-            seenBuilds.add( archive.getBuildId() );
-            scan.setBuild( build );
-        }
-
-        if ( build == null )
-        {
-            logger.debug( "Cannot retrieve build info: {}. Skipping: {}", archive.getBuildId(), archive.getFilename() );
-            scan.setDisqualified( true );
-            return scan;
-        }
-
-        if ( build.getBuildState() != KojiBuildState.COMPLETE )
-        {
-            logger.debug( "Build: {} is not completed. The state is {}. Skipping.", build.getNvr(),
-                          build.getBuildState() );
-            scan.setDisqualified( true );
-            return scan;
-        }
-
-        if ( build.getTaskId() == null )
-        {
-            logger.debug( "Build: {} is not a real build. It looks like a binary import. Skipping.", build.getNvr() );
-            // This is not a real build, it's a binary import.
-            scan.setDisqualified( true );
-            return scan;
-        }
-
-        return scan;
-    }
-
-    private static final class ArchiveScan
-    {
-        private boolean disqualified = false;
-        private KojiBuildInfo build;
-        private SingleVersion singleVersion;
-
-        public boolean isDisqualified()
-        {
-            return disqualified;
-        }
-
-        public void setDisqualified( final boolean disqualified )
-        {
-            this.disqualified = disqualified;
-        }
-
-        public KojiBuildInfo getBuild()
-        {
-            return build;
-        }
-
-        public void setBuild( final KojiBuildInfo build )
-        {
-            this.build = build;
-        }
-
-        public SingleVersion getSingleVersion()
-        {
-            return singleVersion;
-        }
-
-        public void setSingleVersion( final SingleVersion singleVersion )
-        {
-            this.singleVersion = singleVersion;
-        }
-    }
-
-    private boolean isVerSignedAllowed ( String version )
-    {
-        final String versionFilter = kojiConfig.getVersionFilter();
-
-        if ( versionFilter == null )
-        {
-            return true;
-        }
-
-        return Pattern.compile( versionFilter ).matcher( version ).matches();
-    }
 }
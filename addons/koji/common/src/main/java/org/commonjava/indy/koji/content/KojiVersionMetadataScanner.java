@@ -0,0 +1,295 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.koji.content;
+
+import com.redhat.red.build.koji.KojiClientException;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildArchiveCollection;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildState;
+import com.redhat.red.build.koji.model.xmlrpc.KojiTagInfo;
+import org.commonjava.atlas.maven.ident.ref.ProjectRef;
+import org.commonjava.atlas.maven.ident.version.InvalidVersionSpecificationException;
+import org.commonjava.atlas.maven.ident.version.SingleVersion;
+import org.commonjava.cdi.util.weft.DrainingExecutorCompletionService;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.koji.conf.IndyKojiConfig;
+import org.commonjava.indy.pkg.maven.content.group.VersionIndex;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+import static org.commonjava.indy.core.ctl.PoolUtils.detectOverloadVoid;
+
+/**
+ * Finds the versions of a GA available from Koji builds, for {@link KojiMavenMetadataProvider}.
+ * <p>
+ * Instead of looking up the build and tags of each archive separately, the lookup is done in stages:
+ * <ol>
+ *     <li>the POM archives of the GA are filtered by version, keeping one per build</li>
+ *     <li>the distinct builds are retrieved with getBuild multicalls, and the ones not completed or imported are
+ *     dropped</li>
+ *     <li>if tag patterns are enabled, the tags of the remaining builds are retrieved with listTags multicalls, and
+ *     matched against the patterns</li>
+ *     <li>if an artifact authority store is configured, the builds left are checked against it</li>
+ * </ol>
+ * Multicalls hold at most {@link IndyKojiConfig#getMultiCallSize()} calls each.
+ */
+public class KojiVersionMetadataScanner
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final IndyKojiContentProvider kojiContentProvider;
+
+    private final KojiBuildAuthority buildAuthority;
+
+    private final IndyKojiConfig kojiConfig;
+
+    private final WeftExecutorService authorityService;
+
+    public KojiVersionMetadataScanner( final IndyKojiContentProvider kojiContentProvider,
+                                       final KojiBuildAuthority buildAuthority, final IndyKojiConfig kojiConfig,
+                                       final WeftExecutorService authorityService )
+    {
+        this.kojiContentProvider = kojiContentProvider;
+        this.buildAuthority = buildAuthority;
+        this.kojiConfig = kojiConfig;
+        this.authorityService = authorityService;
+    }
+
+    /**
+     * @return the versions of the GA from Koji builds that pass the build, tag and authority checks
+     * @throws KojiClientException if the archives, builds or tags could not be retrieved. A partial result is not
+     * returned, so it doesn't get cached.
+     */
+    public Set<SingleVersion> scan( final ProjectRef ga, final String path )
+            throws KojiClientException, IndyWorkflowException
+    {
+        List<KojiArchiveInfo> archives = kojiContentProvider.listArchivesMatching( ga, null );
+
+        Pattern versionFilter = kojiConfig.getVersionFilter() == null ?
+                null :
+                Pattern.compile( kojiConfig.getVersionFilter() );
+
+        Map<Integer, SingleVersion> buildVersions = new LinkedHashMap<>();
+        for ( KojiArchiveInfo archive : archives )
+        {
+            if ( !buildVersions.containsKey( archive.getBuildId() ) )
+            {
+                SingleVersion version = scanArchive( archive, versionFilter );
+                if ( version != null )
+                {
+                    buildVersions.put( archive.getBuildId(), version );
+                }
+            }
+        }
+
+        logger.debug( "Found {} candidate builds in {} archives of: {}", buildVersions.size(), archives.size(), ga );
+        if ( buildVersions.isEmpty() )
+        {
+            return Collections.emptySet();
+        }
+
+        List<KojiBuildInfo> builds = getCompletedBuilds( new ArrayList<>( buildVersions.keySet() ) );
+        if ( kojiConfig.isTagPatternsEnabled() )
+        {
+            builds = getTaggedBuilds( builds );
+        }
+
+        Set<SingleVersion> versions = new HashSet<>();
+        for ( KojiBuildInfo build : getAuthorizedBuilds( ga, path, builds ) )
+        {
+            logger.debug( "Adding version: {} for: {}", buildVersions.get( build.getId() ), path );
+            versions.add( buildVersions.get( build.getId() ) );
+        }
+
+        return versions;
+    }
+
+    private SingleVersion scanArchive( final KojiArchiveInfo archive, final Pattern versionFilter )
+    {
+        if ( !archive.getFilename().endsWith( ".pom" ) )
+        {
+            logger.trace( "Skipping non-POM: {}", archive.getFilename() );
+            return null;
+        }
+
+        if ( versionFilter != null && !versionFilter.matcher( archive.getVersion() ).matches() )
+        {
+            logger.debug( "version filter pattern not matched: {}", archive.getVersion() );
+            return null;
+        }
+
+        try
+        {
+            return VersionIndex.parse( archive.getVersion() );
+        }
+        catch ( InvalidVersionSpecificationException ivse )
+        {
+            logger.warn( "Skipping mal-formatted version: {}, relPath: {}, buildId: {}", archive.getVersion(),
+                         archive.getRelPath(), archive.getBuildId() );
+            return null;
+        }
+    }
+
+    private List<KojiBuildInfo> getCompletedBuilds( final List<Integer> buildIds )
+            throws KojiClientException
+    {
+        List<KojiBuildInfo> completed = new ArrayList<>( buildIds.size() );
+        for ( List<Integer> chunk : chunks( buildIds ) )
+        {
+            List<KojiBuildInfo> builds = kojiContentProvider.getBuildInfo( new ArrayList<>( chunk ), null );
+            for ( int i = 0; i < chunk.size(); i++ )
+            {
+                KojiBuildInfo build = i < builds.size() ? builds.get( i ) : null;
+                if ( build == null )
+                {
+                    logger.debug( "Cannot retrieve build info: {}. Skipping.", chunk.get( i ) );
+                }
+                else if ( build.getBuildState() != KojiBuildState.COMPLETE )
+                {
+                    logger.debug( "Build: {} is not completed. The state is {}. Skipping.", build.getNvr(),
+                                  build.getBuildState() );
+                }
+                else if ( build.getTaskId() == null )
+                {
+                    // This is not a real build, it's a binary import.
+                    logger.debug( "Build: {} is not a real build. It looks like a binary import. Skipping.",
+                                  build.getNvr() );
+                }
+                else
+                {
+                    completed.add( build );
+                }
+            }
+        }
+
+        return completed;
+    }
+
+    private List<KojiBuildInfo> getTaggedBuilds( final List<KojiBuildInfo> builds )
+            throws KojiClientException
+    {
+        List<KojiBuildInfo> tagged = new ArrayList<>( builds.size() );
+        for ( List<KojiBuildInfo> chunk : chunks( builds ) )
+        {
+            List<Integer> buildIds = new ArrayList<>( chunk.size() );
+            chunk.forEach( build -> buildIds.add( build.getId() ) );
+
+            Map<Integer, List<KojiTagInfo>> tags = kojiContentProvider.listTags( buildIds, null );
+            for ( KojiBuildInfo build : chunk )
+            {
+                if ( isTagAllowed( build, tags.get( build.getId() ) ) )
+                {
+                    tagged.add( build );
+                }
+            }
+        }
+
+        return tagged;
+    }
+
+    private boolean isTagAllowed( final KojiBuildInfo build, final List<KojiTagInfo> tags )
+    {
+        if ( tags != null )
+        {
+            for ( KojiTagInfo tag : tags )
+            {
+                if ( kojiConfig.isTagAllowed( tag.getName() ) )
+                {
+                    logger.debug( "Koji tag: {} of build: {} is allowed for proxying.", tag.getName(),
+                                  build.getNvr() );
+                    return true;
+                }
+            }
+        }
+
+        logger.debug( "No Koji tag of build: {} is allowed for proxying.", build.getNvr() );
+        return false;
+    }
+
+    private List<KojiBuildInfo> getAuthorizedBuilds( final ProjectRef ga, final String path,
+                                                     final List<KojiBuildInfo> builds )
+            throws IndyWorkflowException
+    {
+        if ( kojiConfig.getArtifactAuthorityStore() == null || builds.isEmpty() )
+        {
+            return builds;
+        }
+
+        logger.debug( "Checking {} builds of: {} against the authority store", builds.size(), ga );
+
+        Map<Integer, KojiBuildArchiveCollection> seenBuildArchives = new ConcurrentHashMap<>();
+        DrainingExecutorCompletionService<KojiBuildInfo> svc =
+                new DrainingExecutorCompletionService<>( authorityService );
+
+        detectOverloadVoid( () -> builds.forEach( build -> svc.submit( () -> {
+            try
+            {
+                if ( buildAuthority.isAuthorized( path, new EventMetadata(), ga, build, null, seenBuildArchives ) )
+                {
+                    return build;
+                }
+            }
+            catch ( KojiClientException e )
+            {
+                logger.error( "Received Koji error while checking build: {} during metadata-generation of: {}. "
+                                      + "Reason: {}", build.getNvr(), ga, e.getMessage() );
+            }
+            return null;
+        } ) ) );
+
+        List<KojiBuildInfo> authorized = new ArrayList<>( builds.size() );
+        try
+        {
+            svc.drain( build -> {
+                if ( build != null )
+                {
+                    authorized.add( build );
+                }
+            } );
+        }
+        catch ( InterruptedException | ExecutionException e )
+        {
+            logger.warn( "Failed to check Koji builds against the authority store for: " + ga, e );
+        }
+
+        return authorized;
+    }
+
+    private <T> List<List<T>> chunks( final List<T> list )
+    {
+        int size = kojiConfig.getMultiCallSize();
+        List<List<T>> chunks = new ArrayList<>( list.size() / size + 1 );
+        for ( int i = 0; i < list.size(); i += size )
+        {
+            chunks.add( list.subList( i, Math.min( list.size(), i + size ) ) );
+        }
+        return chunks;
+    }
+}
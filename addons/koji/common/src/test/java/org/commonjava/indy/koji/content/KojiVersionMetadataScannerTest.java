@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.koji.content;
+
+import com.redhat.red.build.koji.KojiClientException;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildArchiveCollection;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiSessionInfo;
+import org.commonjava.atlas.maven.ident.ref.ProjectRef;
+import org.commonjava.atlas.maven.ident.ref.SimpleProjectRef;
+import org.commonjava.atlas.maven.ident.version.SingleVersion;
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.indy.koji.conf.IndyKojiConfig;
+import org.commonjava.indy.koji.content.testutil.StandInKojiHub;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.redhat.red.build.koji.model.xmlrpc.KojiBuildState.BUILDING;
+import static com.redhat.red.build.koji.model.xmlrpc.KojiBuildState.COMPLETE;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KojiVersionMetadataScannerTest
+{
+    private static final ProjectRef GA = new SimpleProjectRef( "org.foo", "bar" );
+
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    private final StandInKojiHub hub = new StandInKojiHub();
+
+    private final IndyKojiConfig kojiConfig = new IndyKojiConfig();
+
+    private final Set<Integer> rejectedByAuthority = new HashSet<>();
+
+    private final AtomicInteger authorityChecks = new AtomicInteger();
+
+    private final KojiBuildAuthority buildAuthority = new KojiBuildAuthority()
+    {
+        @Override
+        public boolean isAuthorized( final String path, final EventMetadata eventMetadata, final ProjectRef ref,
+                                     final KojiBuildInfo build, final KojiSessionInfo session,
+                                     final Map<Integer, KojiBuildArchiveCollection> seenBuildArchives )
+        {
+            authorityChecks.incrementAndGet();
+            return !rejectedByAuthority.contains( build.getId() );
+        }
+    };
+
+    private WeftExecutorService authorityService;
+
+    private KojiVersionMetadataScanner scanner;
+
+    @Before
+    public void setup()
+    {
+        kojiConfig.setEnabled( true );
+        kojiConfig.setMultiCallSize( 100 );
+
+        authorityService = new PoolWeftExecutorService( "test-koji-metadata-executor",
+                                                        (ThreadPoolExecutor) Executors.newFixedThreadPool( 4 ), 4,
+                                                        10f, false );
+
+        scanner = new KojiVersionMetadataScanner( hub, buildAuthority, kojiConfig, authorityService );
+    }
+
+    @After
+    public void shutdown()
+    {
+        authorityService.shutdownNow();
+    }
+
+    @Test
+    public void buildsAndTagsAreRetrievedInMultiCalls()
+            throws Exception
+    {
+        kojiConfig.setTagPatternsEnabled( true );
+        kojiConfig.setTagPatterns( Collections.singletonList( "jb-.+" ) );
+
+        int builds = 1000;
+        for ( int i = 1; i <= builds; i++ )
+        {
+            hub.addBuild( i, "1." + i + ".redhat-1", COMPLETE, 10000 + i, "jb-candidate" );
+        }
+
+        Set<SingleVersion> versions = scanner.scan( GA, PATH );
+
+        assertThat( versions.size(), equalTo( builds ) );
+
+        // one archive listing, then ten getBuild and ten listTags multicalls
+        assertThat( hub.getRoundTrips(), equalTo( 21 ) );
+        assertThat( hub.getCalls( "multiCall:getBuild" ), equalTo( 10 ) );
+        assertThat( hub.getCalls( "multiCall:listTags" ), equalTo( 10 ) );
+        assertThat( hub.getCalls( "getBuild" ), equalTo( 0 ) );
+        assertThat( hub.getCalls( "listTags" ), equalTo( 0 ) );
+        assertThat( hub.getLargestMultiCall(), equalTo( 100 ) );
+        assertThat( authorityChecks.get(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void buildStatesAndTagsAreChecked()
+            throws Exception
+    {
+        kojiConfig.setTagPatternsEnabled( true );
+        kojiConfig.setTagPatterns( Collections.singletonList( "jb-.+" ) );
+
+        hub.addBuild( 1, "1.0.redhat-1", COMPLETE, 101, "other", "jb-candidate" );
+        hub.addBuild( 2, "1.1.redhat-1", BUILDING, 102, "jb-candidate" );
+        hub.addBuild( 3, "1.2.redhat-1", COMPLETE, null, "jb-candidate" );
+        hub.addBuild( 4, "1.3.redhat-1", COMPLETE, 104, "other" );
+        hub.addBuild( 5, "1.4.redhat-1", COMPLETE, 105 );
+
+        assertThat( versionsOf( scanner.scan( GA, PATH ) ), equalTo( Collections.singleton( "1.0.redhat-1" ) ) );
+        assertThat( hub.getRoundTrips(), equalTo( 3 ) );
+    }
+
+    @Test
+    public void tagsAreNotRetrievedWithoutTagPatterns()
+            throws Exception
+    {
+        kojiConfig.setVersionFilterer( ".+redhat.+" );
+
+        hub.addBuild( 1, "1.0.redhat-1", COMPLETE, 101 );
+        hub.addBuild( 2, "1.1", COMPLETE, 102 );
+
+        assertThat( versionsOf( scanner.scan( GA, PATH ) ), equalTo( Collections.singleton( "1.0.redhat-1" ) ) );
+        assertThat( hub.getRoundTrips(), equalTo( 2 ) );
+        assertThat( hub.getCalls( "multiCall:listTags" ), equalTo( 0 ) );
+    }
+
+    @Test
+    public void authorityIsCheckedForRemainingBuildsOnly()
+            throws Exception
+    {
+        kojiConfig.setArtifactAuthorityStore( "maven:remote:verify" );
+
+        hub.addBuild( 1, "1.0.redhat-1", COMPLETE, 101 );
+        hub.addBuild( 2, "1.1.redhat-1", COMPLETE, 102 );
+        hub.addBuild( 3, "1.2.redhat-1", BUILDING, 103 );
+        rejectedByAuthority.add( 2 );
+
+        assertThat( versionsOf( scanner.scan( GA, PATH ) ), equalTo( Collections.singleton( "1.0.redhat-1" ) ) );
+        assertThat( authorityChecks.get(), equalTo( 2 ) );
+    }
+
+    @Test( expected = KojiClientException.class )
+    public void hubErrorsAreNotHiddenInPartialResults()
+            throws Exception
+    {
+        hub.addBuild( 1, "1.0.redhat-1", COMPLETE, 101 );
+        hub.setFailing( "multiCall:getBuild" );
+
+        scanner.scan( GA, PATH );
+    }
+
+    private static Set<String> versionsOf( final Set<SingleVersion> versions )
+    {
+        return versions.stream().map( SingleVersion::renderStandard ).collect( Collectors.toSet() );
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.koji.content.testutil;
+
+import com.redhat.red.build.koji.KojiClientException;
+import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildState;
+import com.redhat.red.build.koji.model.xmlrpc.KojiSessionInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiTagInfo;
+import org.commonjava.atlas.maven.ident.ref.ProjectRef;
+import org.commonjava.indy.koji.content.IndyKojiContentProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory stand-in for the Koji hub behind {@link IndyKojiContentProvider}, counting the xml-rpc round-trips it
+ * would take. A multicall counts as one round-trip.
+ */
+public class StandInKojiHub
+        extends IndyKojiContentProvider
+{
+    private final List<KojiArchiveInfo> archives = new ArrayList<>();
+
+    private final Map<Integer, KojiBuildInfo> builds = new HashMap<>();
+
+    private final Map<Integer, List<KojiTagInfo>> tags = new HashMap<>();
+
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    private final AtomicInteger roundTrips = new AtomicInteger();
+
+    private final AtomicInteger largestMultiCall = new AtomicInteger();
+
+    private volatile String failingMethod;
+
+    /**
+     * Adds a build producing a POM and a jar of the given version, with the given tags.
+     */
+    public KojiBuildInfo addBuild( final int id, final String version, final KojiBuildState state, final Integer taskId,
+                                   final String... tagNames )
+    {
+        KojiBuildInfo build = new KojiBuildInfo();
+        build.setId( id );
+        build.setNvr( "org.foo-bar-" + version + "-1" );
+        build.setVersion( version );
+        build.setBuildState( state );
+        build.setTaskId( taskId );
+        builds.put( id, build );
+
+        List<KojiTagInfo> buildTags = new ArrayList<>();
+        for ( String tagName : tagNames )
+        {
+            KojiTagInfo tag = new KojiTagInfo();
+            tag.setName( tagName );
+            buildTags.add( tag );
+        }
+        tags.put( id, buildTags );
+
+        archives.add( archive( id, version, "pom" ) );
+        archives.add( archive( id, version, "jar" ) );
+        return build;
+    }
+
+    /**
+     * Makes calls of the given method, e.g. "multiCall:getBuild", fail.
+     */
+    public void setFailing( final String method )
+    {
+        this.failingMethod = method;
+    }
+
+    public int getRoundTrips()
+    {
+        return roundTrips.get();
+    }
+
+    public int getCalls( final String method )
+    {
+        AtomicInteger count = calls.get( method );
+        return count == null ? 0 : count.get();
+    }
+
+    public int getLargestMultiCall()
+    {
+        return largestMultiCall.get();
+    }
+
+    @Override
+    public List<KojiArchiveInfo> listArchivesMatching( final ProjectRef ga, final KojiSessionInfo session )
+            throws KojiClientException
+    {
+        call( "listArchives", 1 );
+        return new ArrayList<>( archives );
+    }
+
+    @Override
+    public List<KojiArchiveInfo> listArchivesForBuild( final Integer buildId, final KojiSessionInfo session )
+            throws KojiClientException
+    {
+        call( "listArchives", 1 );
+        List<KojiArchiveInfo> result = new ArrayList<>();
+        archives.stream().filter( a -> buildId.equals( a.getBuildId() ) ).forEach( result::add );
+        return result;
+    }
+
+    @Override
+    public KojiBuildInfo getBuildInfo( final Integer buildId, final KojiSessionInfo session )
+            throws KojiClientException
+    {
+        call( "getBuild", 1 );
+        return builds.get( buildId );
+    }
+
+    @Override
+    public List<KojiBuildInfo> getBuildInfo( final List<Object> args, final KojiSessionInfo session )
+            throws KojiClientException
+    {
+        call( "multiCall:getBuild", args.size() );
+        List<KojiBuildInfo> result = new ArrayList<>( args.size() );
+        args.forEach( id -> result.add( builds.get( id ) ) );
+        return result;
+    }
+
+    @Override
+    public List<KojiTagInfo> listTags( final Integer buildId, final KojiSessionInfo session )
+            throws KojiClientException
+    {
+        call( "listTags", 1 );
+        return tags.getOrDefault( buildId, Collections.emptyList() );
+    }
+
+    @Override
+    public Map<Integer, List<KojiTagInfo>> listTags( final List<Integer> buildIds, final KojiSessionInfo session )
+            throws KojiClientException
+    {
+        call( "multiCall:listTags", buildIds.size() );
+        Map<Integer, List<KojiTagInfo>> result = new HashMap<>();
+        buildIds.forEach( id -> result.put( id, tags.getOrDefault( id, Collections.emptyList() ) ) );
+        return result;
+    }
+
+    private void call( final String method, final int size )
+            throws KojiClientException
+    {
+        roundTrips.incrementAndGet();
+        calls.computeIfAbsent( method, m -> new AtomicInteger() ).incrementAndGet();
+        largestMultiCall.accumulateAndGet( size, Math::max );
+        if ( method.equals( failingMethod ) )
+        {
+            throw new KojiClientException( "Koji hub not available for: %s", method );
+        }
+    }
+
+    private static KojiArchiveInfo archive( final int buildId, final String version, final String extension )
+    {
+        KojiArchiveInfo archive = new KojiArchiveInfo();
+        archive.setBuildId( buildId );
+        archive.setGroupId( "org.foo" );
+        archive.setArtifactId( "bar" );
+        archive.setVersion( version );
+        archive.setExtension( extension );
+        archive.setFilename( "bar-" + version + "." + extension );
+        return archive;
+    }
+}
@@ -141,7 +141,7 @@ public class MetadataMergePomChangeListener
                     {
                         if ( doClear( group, clearPath ) )
                         {
-                            cacheManager.remove( group.getKey(), clearPath );
+                            cacheManager.removeMember( group.getKey(), clearPath, key );
                         }
                     }
                     logger.info( "Clearing metadata file {} for {} groups affected by {}, timeMillis: {}", clearPath,
@@ -45,6 +45,6 @@ public class MetadataStoreContentAction
     {
         logger.debug( "Clearing metadata cache, path: {}, store: {}, affected: {}", path, store.getKey(), affectedGroups );
         cacheManager.remove( store.getKey(), path );
-        affectedGroups.forEach( group -> cacheManager.remove( group.getKey(), path ) );
+        affectedGroups.forEach( group -> cacheManager.removeMember( group.getKey(), path, store.getKey() ) );
     }
 }
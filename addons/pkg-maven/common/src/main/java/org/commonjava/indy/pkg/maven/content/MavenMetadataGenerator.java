@@ -15,7 +15,6 @@
  */
 package org.commonjava.indy.pkg.maven.content;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.artifact.repository.metadata.Plugin;
@@ -48,6 +47,7 @@ import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataProvider;
+import org.commonjava.indy.pkg.maven.content.group.MetadataMergePart;
 import org.commonjava.indy.util.LocationUtils;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.maven.parse.GalleyMavenXMLException;
@@ -64,12 +64,10 @@ import org.w3c.dom.Element;
 import javax.annotation.PostConstruct;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.StringReader;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -413,7 +411,9 @@ public class MavenMetadataGenerator
             {
                 logger.debug( "Start metadata generation for metadata file {} in group {}", path, group );
                 List<StoreKey> contributing = new ArrayList<>();
-                final Metadata md = generateGroupMetadata( group, members, contributing, path );
+                Map<StoreKey, Metadata> contributions =
+                        cacheManager.isIncrementalMergeEnabled() ? new HashMap<>() : null;
+                final Metadata md = generateGroupMetadata( group, members, contributing, contributions, path );
                 if ( md != null )
                 {
                     final Versioning versioning = md.getVersioning();
@@ -421,35 +421,31 @@ public class MavenMetadataGenerator
                             "Regenerated Metadata for group {} of path {}: latest version: {}, versions: {}",
                             group.getKey(), mergePath, versioning != null ? versioning.getLatest() : null,
                             versioning != null ? versioning.getVersions() : null );
-                    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    try
+                    logger.trace( "Regenerate lost metadata, group: {}, path: {}", group.getKey(), path );
+                    try (final OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true,
+                                                                           eventMetadata ))
                     {
-                        logger.trace( "Regenerate lost metadata, group: {}, path: {}", group.getKey(), path );
-                        new MetadataXpp3Writer().write( baos, md );
-
-                        final byte[] merged = baos.toByteArray();
-                        try (final OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true,
-                                                                               eventMetadata ))
-                        {
-                            fos.write( merged );
-                        }
-                        catch ( final IOException e )
-                        {
-                            throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}", e,
-                                                             target, e.getMessage() );
-                        }
-
-                        String mergeInfo = writeGroupMergeInfo( md, group, contributing, mergePath );
-                        eventMetadata.set( GROUP_METADATA_GENERATED, true );
-                        MetadataInfo info = new MetadataInfo( md );
-                        info.setMetadataMergeInfo( mergeInfo );
-                        putToMetadataCache( group.getKey(), mergePath, info );
+                        new MetadataXpp3Writer().write( fos, md );
                     }
                     catch ( final IOException e )
                     {
-                        logger.error( String.format( "Cannot write consolidated metadata: %s to: %s. Reason: %s", path,
-                                                     group.getKey(), e.getMessage() ), e );
+                        throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}", e,
+                                                         target, e.getMessage() );
                     }
+
+                    String mergeInfo = writeGroupMergeInfo( md, group, contributing, mergePath );
+                    eventMetadata.set( GROUP_METADATA_GENERATED, true );
+                    MetadataInfo info = new MetadataInfo( md );
+                    info.setMetadataMergeInfo( mergeInfo );
+                    if ( contributions != null )
+                    {
+                        info.setMemberMetadata( members.stream()
+                                                       .filter( m -> contributions.containsKey( m.getKey() ) )
+                                                       .map( m -> new MemberMetadata( m.getKey(),
+                                                                                      contributions.get( m.getKey() ) ) )
+                                                       .collect( Collectors.toList() ) );
+                    }
+                    putToMetadataCache( group.getKey(), mergePath, info );
                 }
             }
             catch ( IndyWorkflowException e )
@@ -533,15 +529,23 @@ public class MavenMetadataGenerator
     /**
      * Generate group related files (e.g maven-metadata.xml) from three levels.
      * 1. cache, which means all the generation of the files will be cached. In terms of cache clearing, see #{@link MetadataMergeListener}
+     *    When the cached group metadata was invalidated but kept its member contributions (see
+     *    {@link MetadataCacheManager#removeMember(StoreKey, String, StoreKey)}), those contributions are merged as they
+     *    are, and only the members without one go through the following levels.
      * 2. read cached from member hosted repos and try to download from member remote repos
      * 3. generate by member hosted repos (list dir trying to find version directories)
      *
+     * Members are fetched in parallel, but their metadata is merged in group order (followed by the metadata of the
+     * non-store providers), so the result doesn't depend on which member answered first.
+     *
      * @param group
      * @param members concrete store in group
+     * @param contributions if not null, filled with a copy of the metadata each contributing member provided
      * @param path
      */
     private Metadata generateGroupMetadata( final Group group, final List<ArtifactStore> members,
-                                            final List<StoreKey> contributingMembers, final String path )
+                                            final List<StoreKey> contributingMembers,
+                                            final Map<StoreKey, Metadata> contributions, final String path )
             throws IndyWorkflowException
     {
 
@@ -557,40 +561,71 @@ public class MavenMetadataGenerator
             toMergePath = normalize( normalize( parentPath( toMergePath ) ), MavenMetadataMerger.METADATA_NAME );
         }
 
-        Metadata meta = getMetaFromCache( group.getKey(), toMergePath );
+        final MetadataInfo cached = getMetaInfoFromCache( group.getKey(), toMergePath );
 
-        if ( meta != null )
+        if ( cached != null && cached.getMetadata() != null )
         {
-            return meta;
+            logger.trace( "FOUND metadata: {} in group: {} with merge info:\n\n{}\n\n", toMergePath, group.getKey(),
+                          cached.getMetadataMergeInfo() );
+            return cached.getMetadata();
         }
 
-        Metadata master = new Metadata();
-        master.setVersioning( new Versioning() );
+        final Map<StoreKey, MetadataMergePart> parts = new HashMap<>();
+        final Set<ArtifactStore> missing = new HashSet<>( members );
+        final List<MemberMetadata> kept = contributions == null ?
+                null :
+                cacheManager.getMemberMetadata( new MetadataKey( group.getKey(), toMergePath ) );
+        if ( kept != null )
+        {
+            final Map<StoreKey, ArtifactStore> memberMap = new HashMap<>();
+            members.forEach( m -> memberMap.put( m.getKey(), m ) );
+
+            final Map<StoreKey, Metadata> reused = merger.reusableContributions( kept, memberMap.keySet() );
+            reused.forEach( ( key, md ) -> {
+                missing.remove( memberMap.get( key ) );
+                parts.put( key, new MetadataMergePart( md ) );
+            } );
+            contributions.putAll( reused );
+            contributingMembers.addAll( reused.keySet() );
+
+            logger.debug( "Reused {} member contributions for {} in {}, {} members left to merge", reused.size(),
+                          toMergePath, group.getKey(), missing.size() );
+        }
 
         MetadataIncrementalResult incrementalResult =
-                new MetadataIncrementalResult( new HashSet<>( members ), Collections.emptySet(), master );
+                new MetadataIncrementalResult( missing, Collections.emptySet() );
 
-        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, "cached", this::retrieveCached );
+        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, "cached", this::retrieveCached,
+                                          parts, contributions );
 
         contributingMembers.addAll( incrementalResult.merged );
 
-        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, "downloaded", this::downloadMissing );
+        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, "downloaded", this::downloadMissing,
+                                          parts, contributions );
 
         contributingMembers.addAll( incrementalResult.merged );
 
-        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, "generated", this::generateMissing );
+        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, "generated", this::generateMissing,
+                                          parts, contributions );
 
         contributingMembers.addAll( incrementalResult.merged );
 
+        final List<MetadataMergePart> ordered = new ArrayList<>( parts.size() );
+        members.forEach( member -> {
+            final MetadataMergePart part = parts.get( member.getKey() );
+            if ( part != null )
+            {
+                ordered.add( part );
+            }
+        } );
+
         if ( metadataProviders != null )
         {
-            master = mergeProviderMetadata( group, incrementalResult.result, toMergePath );
-        }
-        else
-        {
-            master = incrementalResult.result;
+            ordered.addAll( getProviderMetadata( group, toMergePath ) );
         }
 
+        final Metadata master = merger.mergeInOrder( ordered, group, toMergePath, mavenMDGeneratorService );
+
         if ( !incrementalResult.missing.isEmpty() )
         {
             logger.warn(
@@ -603,7 +638,7 @@ public class MavenMetadataGenerator
         logger.debug( "Get versioning, versions: {}, release: {}, latest: {}", versions, versioning.getRelease(), versioning.getLatest() );
         if ( versions != null && !versions.isEmpty() )
         {
-            merger.sortVersions( master );
+            // already sorted by the merge
             return master;
         }
 
@@ -625,8 +660,8 @@ public class MavenMetadataGenerator
         }
 
         logger.info(
-                "The group metadata generation is not successful for path: {} in group: {}, incrementalResult.merged: {}, incrementalResult.result: {}, incrementalResult.missing: {}. ",
-                path, group, incrementalResult.merged, incrementalResult.result, incrementalResult.missing );
+                "The group metadata generation is not successful for path: {} in group: {}, incrementalResult.merged: {}, result: {}, incrementalResult.missing: {}. ",
+                path, group, incrementalResult.merged, master, incrementalResult.missing );
         return null;
     }
 
@@ -649,8 +684,7 @@ public class MavenMetadataGenerator
 
                     try (InputStream in = memberMetaTxfr.openInputStream())
                     {
-                        String content = IOUtils.toString( in );
-                        Metadata memberMeta = reader.read( new StringReader( content ), false );
+                        Metadata memberMeta = reader.read( in, false );
 
                         clearObsoleteFiles( memberMetaTxfr );
 
@@ -712,12 +746,17 @@ public class MavenMetadataGenerator
     {
         private final ArtifactStore store;
         private final Metadata metadata;
+        private final MetadataMergePart part;
         private final boolean missing;
 
+        /**
+         * Also prepares the metadata for merging, on the thread that fetched it.
+         */
         public MetadataResult( final ArtifactStore store, final Metadata metadata )
         {
             this.store = store;
             this.metadata = metadata;
+            this.part = metadata == null ? null : new MetadataMergePart( metadata );
             this.missing = metadata == null;
         }
     }
@@ -726,25 +765,23 @@ public class MavenMetadataGenerator
     {
         private final Set<ArtifactStore> missing;
         private final Set<StoreKey> merged;
-        private final Metadata result;
 
-        public MetadataIncrementalResult( final Set<ArtifactStore> missing, final Set<StoreKey> merged,
-                                          final Metadata result )
+        public MetadataIncrementalResult( final Set<ArtifactStore> missing, final Set<StoreKey> merged )
         {
             this.missing = missing;
             this.merged = merged;
-            this.result = result;
         }
     }
 
     private MetadataIncrementalResult mergeMissing( final Group group,
                                                     final MetadataIncrementalResult incrementalResult,
                                                     final String toMergePath, String description,
-                                                    BiFunction<ArtifactStore, String, Callable<MetadataResult>> func )
+                                                    BiFunction<ArtifactStore, String, Callable<MetadataResult>> func,
+                                                    final Map<StoreKey, MetadataMergePart> parts,
+                                                    final Map<StoreKey, Metadata> contributions )
             throws IndyWorkflowException
     {
         Set<ArtifactStore> missing = incrementalResult.missing;
-        Metadata master = incrementalResult.result;
 
         logger.debug( "Merge member metadata for {}, {}, missing: {}, size: {}", group.getKey(), description,
                       missing, missing.size() );
@@ -768,7 +805,11 @@ public class MavenMetadataGenerator
                     else
                     {
                         included.add( mr.store.getKey() );
-                        merger.merge( master, mr.metadata, group, toMergePath );
+                        if ( contributions != null )
+                        {
+                            contributions.put( mr.store.getKey(), mr.metadata.clone() );
+                        }
+                        parts.put( mr.store.getKey(), mr.part );
                         putToMetadataCache( mr.store.getKey(), toMergePath, new MetadataInfo( mr.metadata ) );
                     }
                 }
@@ -783,47 +824,69 @@ public class MavenMetadataGenerator
             throw new IndyWorkflowException( "Failed to merge downloaded " + description + " member metadata.", e );
         }
 
-        return new MetadataIncrementalResult( resultingMissing, included, master );
+        return new MetadataIncrementalResult( resultingMissing, included );
     }
 
-    private Metadata mergeProviderMetadata( final Group group, final Metadata master,
-                                                             final String toMergePath )
+    /**
+     * @return the metadata of the non-store providers, prepared for merging, in provider order
+     */
+    private List<MetadataMergePart> getProviderMetadata( final Group group, final String toMergePath )
             throws IndyWorkflowException
     {
 
         logger.debug( "Merge metadata for non-store providers in: {} on path: {}", group.getKey(), toMergePath );
 
-        DrainingExecutorCompletionService<Metadata> svc =
+        DrainingExecutorCompletionService<MetadataMergePart> svc =
                 new DrainingExecutorCompletionService<>( mavenMDGeneratorService );
 
-        detectOverloadVoid( () -> metadataProviders.forEach( provider -> svc.submit( ()->{
-            try
+        final MetadataMergePart[] parts = new MetadataMergePart[metadataProviders.size()];
+        detectOverloadVoid( () -> {
+            for ( int i = 0; i < parts.length; i++ )
             {
-                logger.info("Start to get metadata {} from the provider: {}", toMergePath, provider.getClass().getSimpleName());
+                final int index = i;
+                final MavenMetadataProvider provider = metadataProviders.get( i );
+                svc.submit( () -> {
+                    try
+                    {
+                        logger.info( "Start to get metadata {} from the provider: {}", toMergePath,
+                                     provider.getClass().getSimpleName() );
 
-                return provider.getMetadata( group.getKey(), toMergePath );
-            }
-            catch ( IndyWorkflowException e )
-            {
-                logger.error( String.format(
-                        "Cannot read metadata: %s from metadata provider: %s. Reason: %s",
-                        toMergePath, provider.getClass().getSimpleName(),
-                        e.getMessage() ), e );
-            }
+                        final Metadata metadata = provider.getMetadata( group.getKey(), toMergePath );
+                        if ( metadata != null )
+                        {
+                            parts[index] = new MetadataMergePart( metadata );
+                        }
+                    }
+                    catch ( IndyWorkflowException e )
+                    {
+                        logger.error( String.format( "Cannot read metadata: %s from metadata provider: %s. Reason: %s",
+                                                     toMergePath, provider.getClass().getSimpleName(),
+                                                     e.getMessage() ), e );
+                    }
 
-            return null;
-        }) ) );
+                    return parts[index];
+                } );
+            }
+        } );
 
+        final List<MetadataMergePart> result = new ArrayList<>( parts.length );
         try
         {
-            svc.drain( metadata -> {
-                if ( metadata != null )
+            // waiting for every provider also makes their parts visible here
+            svc.drain( part -> {
+                if ( part != null )
                 {
-                    logger.info("Merging the metadata {} from the provider.", toMergePath);
-
-                    merger.merge( master, metadata, group, toMergePath );
+                    logger.info( "Merging the metadata {} from the provider.", toMergePath );
                 }
             } );
+
+            for ( MetadataMergePart part : parts )
+            {
+                if ( part != null )
+                {
+                    result.add( part );
+                }
+            }
         }
         catch ( InterruptedException e )
         {
@@ -834,7 +897,7 @@ public class MavenMetadataGenerator
             throw new IndyWorkflowException( "Failed to merge provider member metadata.", e );
         }
 
-        return master;
+        return result;
     }
 
     private Callable<MetadataResult> downloadMissing( ArtifactStore store, String toMergePath )
@@ -856,8 +919,7 @@ public class MavenMetadataGenerator
 
                     try (InputStream in = memberMetaTxfr.openInputStream())
                     {
-                        String content = IOUtils.toString( in );
-                        Metadata memberMeta = reader.read( new StringReader( content ), false );
+                        Metadata memberMeta = reader.read( in, false );
                         return new MetadataResult( store, memberMeta );
                     }
                 }
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.commonjava.indy.model.core.StoreKey;
+
+import java.io.Serializable;
+
+/**
+ * The metadata one group member contributed to a merged group metadata, kept in the group's {@link MetadataInfo} so
+ * that a change in one member only needs that member's metadata to be read again.
+ */
+public class MemberMetadata
+        implements Serializable
+{
+    private final StoreKey storeKey;
+
+    private final Metadata metadata;
+
+    public MemberMetadata( final StoreKey storeKey, final Metadata metadata )
+    {
+        this.storeKey = storeKey;
+        this.metadata = metadata;
+    }
+
+    public StoreKey getStoreKey()
+    {
+        return storeKey;
+    }
+
+    public Metadata getMetadata()
+    {
+        return metadata;
+    }
+}
@@ -17,6 +17,7 @@ package org.commonjava.indy.pkg.maven.content;
 
 import org.commonjava.indy.conf.InternalFeatureConfig;
 import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.pkg.maven.content.cache.MavenMetadataCache;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
@@ -25,6 +26,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.util.List;
 
 @ApplicationScoped
 public class MetadataCacheManager
@@ -55,10 +57,29 @@ public class MetadataCacheManager
         }
     }
 
+    /**
+     * @return the cached metadata info, or null if there is none. Member contributions kept by
+     * {@link #removeMember(StoreKey, String, StoreKey)} are not returned here, see {@link #getMemberMetadata(MetadataKey)}.
+     */
     public MetadataInfo get( MetadataKey metadataKey )
     {
         if (internalFeatureConfig.isMavenMetadataCacheEnabled()) {
-            return metadataCache.get(metadataKey);
+            final MetadataInfo info = metadataCache.get( metadataKey );
+            return info == null || info.isContributionsOnly() ? null : info;
+        }
+        return null;
+    }
+
+    /**
+     * @return the member contributions recorded for the group metadata, whether or not the merged metadata is still
+     * cached; or null if none were recorded
+     */
+    public List<MemberMetadata> getMemberMetadata( MetadataKey metadataKey )
+    {
+        if ( isIncrementalMergeEnabled() )
+        {
+            final MetadataInfo info = metadataCache.get( metadataKey );
+            return info == null ? null : info.getMemberMetadata();
         }
         return null;
     }
@@ -76,4 +97,40 @@ public class MetadataCacheManager
             metadataCache.remove(metadataKey);
         }
     }
+
+    public boolean isIncrementalMergeEnabled()
+    {
+        return internalFeatureConfig.isMavenMetadataCacheEnabled()
+                && internalFeatureConfig.isMavenMetadataIncrementalMergeEnabled();
+    }
+
+    /**
+     * Invalidate the merged metadata of a group after the given member's metadata changed. If the group metadata
+     * recorded its member contributions, those of the other hosted members are kept so the next merge doesn't re-read
+     * them (see {@link MetadataInfo#withoutMember(StoreKey)}); otherwise the entry is removed.
+     */
+    public void removeMember( StoreKey groupKey, String path, StoreKey member )
+    {
+        if ( !isIncrementalMergeEnabled() || member.getType() == StoreType.group )
+        {
+            // contributions are recorded per concrete member, a nested group can't be singled out
+            remove( groupKey, path );
+            return;
+        }
+
+        final MetadataKey key = new MetadataKey( groupKey, path );
+        metadataCache.execute( cache -> {
+            try
+            {
+                return cache.computeIfPresent( key, ( k, info ) -> info.withoutMember( member ) );
+            }
+            catch ( RuntimeException e )
+            {
+                // e.g. a remote cache that can't update atomically; a racy read-modify-write could keep a stale
+                // contribution, so drop the whole entry instead
+                logger.debug( "Cannot update {} in place, removing it. Reason: {}", key, e.getMessage() );
+                return cache.remove( key );
+            }
+        } );
+    }
 }
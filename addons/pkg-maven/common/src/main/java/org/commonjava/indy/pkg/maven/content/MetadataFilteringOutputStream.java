@@ -0,0 +1,564 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.commonjava.atlas.maven.ident.util.SnapshotUtils;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.util.IdempotentCloseOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Removes the versions a location doesn't provide from a maven-metadata.xml as it is written:
+ * <ul>
+ *     <li>prohibited &lt;version&gt; entries of &lt;versions&gt; are dropped</li>
+ *     <li>a prohibited &lt;latest&gt; is replaced by the last version left in &lt;versions&gt;</li>
+ *     <li>&lt;release&gt; is emptied if releases are not allowed</li>
+ *     <li>&lt;snapshot&gt; and &lt;snapshotVersions&gt; are emptied if snapshots are not allowed</li>
+ * </ul>
+ * The document is tokenized as it comes, and everything else is written through unchanged. Only the token being read
+ * and the &lt;version&gt; or &lt;latest&gt; element being decided on are held in memory, so memory use doesn't depend
+ * on the size of the document. As &lt;latest&gt; usually comes before &lt;versions&gt;, a prohibited one is replaced
+ * right after &lt;/versions&gt;; readers of maven-metadata.xml don't depend on the order of elements in
+ * &lt;versioning&gt;.
+ * <p>
+ * The output stream given by {@link org.commonjava.maven.galley.io.AbstractTransferDecorator#decorateWrite} is
+ * pushed to, so this filters the bytes as they are written instead of pulling them through an XML parser. Markup is
+ * ASCII, and bytes of multi-byte UTF-8 characters are never mistaken for it.
+ */
+final class MetadataFilteringOutputStream
+        extends IdempotentCloseOutputStream
+{
+    private static final String VERSIONING = "versioning";
+
+    private static final String VERSIONS = "versions";
+
+    private static final String VERSION = "version";
+
+    private static final String LATEST = "latest";
+
+    private static final String RELEASE = "release";
+
+    private static final String SNAPSHOT = "snapshot";
+
+    private static final String SNAPSHOT_VERSIONS = "snapshotVersions";
+
+    private final Logger logger = LoggerFactory.getLogger( this.getClass() );
+
+    private final boolean allowsSnapshots;
+
+    private final boolean allowsReleases;
+
+    private final Transfer transfer;
+
+    private final Deque<String> path = new ArrayDeque<>();
+
+    /** the markup being read, from '&lt;' to '&gt;' */
+    private final Bytes markup = new Bytes();
+
+    /** output held back until it is known whether it stays */
+    private final Bytes held = new Bytes();
+
+    /** text of the element being captured */
+    private final Bytes value = new Bytes();
+
+    private boolean inMarkup;
+
+    private byte quote;
+
+    private String capturing;
+
+    private int captureDepth;
+
+    private int droppingDepth = -1;
+
+    private boolean inVersions;
+
+    private boolean versionsClosed;
+
+    private boolean latestDeferred;
+
+    private String lastAllowedVersion;
+
+    private boolean finished;
+
+    MetadataFilteringOutputStream( final OutputStream stream, final boolean allowsSnapshots,
+                                   final boolean allowsReleases, final Transfer transfer )
+    {
+        super( stream );
+        this.allowsSnapshots = allowsSnapshots;
+        this.allowsReleases = allowsReleases;
+        this.transfer = transfer;
+    }
+
+    @Override
+    public void write( final int b )
+            throws IOException
+    {
+        write( new byte[] { (byte) b }, 0, 1 );
+    }
+
+    @Override
+    public void write( final byte[] buff, final int offset, final int len )
+            throws IOException
+    {
+        if ( offset < 0 || len < 0 || len > buff.length - offset )
+        {
+            throw new ArrayIndexOutOfBoundsException( "Out of bounds exception" );
+        }
+
+        final int end = offset + len;
+        int i = offset;
+        while ( i < end )
+        {
+            if ( inMarkup )
+            {
+                final byte b = buff[i++];
+                markup.append( b );
+                if ( endsMarkup( b ) )
+                {
+                    inMarkup = false;
+                    onMarkup();
+                    markup.reset();
+                }
+            }
+            else
+            {
+                int next = i;
+                while ( next < end && buff[next] != '<' )
+                {
+                    next++;
+                }
+                if ( next > i )
+                {
+                    onText( buff, i, next - i );
+                }
+                if ( next < end )
+                {
+                    inMarkup = true;
+                    quote = 0;
+                    markup.append( buff[next] );
+                    next++;
+                }
+                i = next;
+            }
+        }
+    }
+
+    @Override
+    public void flush()
+            throws IOException
+    {
+        out.flush();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if ( !finished )
+        {
+            finished = true;
+            // anything left is a broken document; keep it as it is
+            held.writeTo( out );
+            markup.writeTo( out );
+            held.reset();
+            markup.reset();
+        }
+        super.close();
+    }
+
+    private boolean endsMarkup( final byte b )
+    {
+        final int length = markup.length();
+        final byte second = length > 1 ? markup.get( 1 ) : 0;
+        if ( second == '!' || second == '?' )
+        {
+            if ( b != '>' )
+            {
+                return false;
+            }
+            if ( markup.startsWith( "<!--" ) )
+            {
+                return length >= 7 && markup.get( length - 2 ) == '-' && markup.get( length - 3 ) == '-';
+            }
+            if ( markup.startsWith( "<![CDATA[" ) )
+            {
+                return length >= 12 && markup.get( length - 2 ) == ']' && markup.get( length - 3 ) == ']';
+            }
+            if ( second == '?' )
+            {
+                return length >= 4 && markup.get( length - 2 ) == '?';
+            }
+            // doctype; internal subsets are not expected in metadata
+            return length >= 4 && !markup.startsWith( "<![" ) && !markup.startsWith( "<!-" );
+        }
+
+        if ( quote != 0 )
+        {
+            if ( b == quote )
+            {
+                quote = 0;
+            }
+            return false;
+        }
+        if ( length > 1 && ( b == '"' || b == '\'' ) )
+        {
+            quote = b;
+            return false;
+        }
+        return b == '>';
+    }
+
+    private void onText( final byte[] buff, final int offset, final int len )
+            throws IOException
+    {
+        if ( droppingDepth >= 0 )
+        {
+            return;
+        }
+
+        if ( capturing != null )
+        {
+            held.append( buff, offset, len );
+            value.append( buff, offset, len );
+        }
+        else if ( inVersions )
+        {
+            // whitespace before the next version, which goes with it
+            held.append( buff, offset, len );
+        }
+        else
+        {
+            out.write( buff, offset, len );
+        }
+    }
+
+    private void onMarkup()
+            throws IOException
+    {
+        final byte second = markup.length() > 1 ? markup.get( 1 ) : 0;
+        if ( second == '!' || second == '?' )
+        {
+            onText( markup.array(), 0, markup.length() );
+        }
+        else if ( second == '/' )
+        {
+            onEndTag( markup.elementName( 2 ) );
+        }
+        else
+        {
+            onStartTag( markup.elementName( 1 ), markup.get( markup.length() - 2 ) == '/' );
+        }
+    }
+
+    private void onStartTag( final String name, final boolean empty )
+            throws IOException
+    {
+        final String parent = path.peek();
+        if ( !empty )
+        {
+            path.push( name );
+        }
+
+        if ( droppingDepth >= 0 )
+        {
+            return;
+        }
+
+        if ( capturing != null )
+        {
+            held.append( markup );
+            return;
+        }
+
+        if ( inVersions && VERSION.equals( name ) && VERSIONS.equals( parent ) && !empty )
+        {
+            startCapture( VERSION );
+            return;
+        }
+
+        if ( VERSIONING.equals( parent ) && !empty )
+        {
+            if ( LATEST.equals( name ) )
+            {
+                writeHeld();
+                startCapture( LATEST );
+                return;
+            }
+
+            if ( ( RELEASE.equals( name ) && !allowsReleases ) || ( !allowsSnapshots && ( SNAPSHOT.equals( name )
+                    || SNAPSHOT_VERSIONS.equals( name ) ) ) )
+            {
+                logger.debug( "FILTER: Suppressing prohibited {} from: {}", name, transfer );
+                droppingDepth = path.size();
+                writeMarkup();
+                return;
+            }
+
+            if ( VERSIONS.equals( name ) )
+            {
+                writeMarkup();
+                inVersions = true;
+                return;
+            }
+        }
+
+        writeHeld();
+        writeMarkup();
+    }
+
+    private void onEndTag( final String name )
+            throws IOException
+    {
+        final int depth = path.size();
+        if ( depth > 0 )
+        {
+            path.pop();
+        }
+
+        if ( droppingDepth >= 0 )
+        {
+            if ( depth == droppingDepth )
+            {
+                droppingDepth = -1;
+                writeMarkup();
+            }
+            return;
+        }
+
+        if ( capturing != null )
+        {
+            held.append( markup );
+            if ( depth == captureDepth )
+            {
+                endCapture();
+            }
+            return;
+        }
+
+        if ( inVersions && VERSIONS.equals( name ) )
+        {
+            inVersions = false;
+            versionsClosed = true;
+            writeHeld();
+            writeMarkup();
+            if ( latestDeferred )
+            {
+                writeLatest();
+            }
+            return;
+        }
+
+        if ( latestDeferred && VERSIONING.equals( name ) )
+        {
+            writeLatest();
+        }
+
+        writeHeld();
+        writeMarkup();
+    }
+
+    private void startCapture( final String name )
+    {
+        capturing = name;
+        captureDepth = path.size();
+        value.reset();
+        held.append( markup );
+    }
+
+    private void endCapture()
+            throws IOException
+    {
+        final String captured = capturing;
+        capturing = null;
+
+        final String version = value.toString().trim();
+        if ( isAllowed( version ) )
+        {
+            writeHeld();
+            if ( VERSION.equals( captured ) )
+            {
+                lastAllowedVersion = version;
+            }
+            return;
+        }
+
+        held.reset();
+        if ( VERSION.equals( captured ) )
+        {
+            logger.debug( "FILTER: Removing prohibited version: {} from: {}", version, transfer );
+        }
+        else
+        {
+            logger.debug( "FILTER: Recalculating LATEST version; supplied value is prohibited: {} from: {}", version,
+                          transfer );
+            if ( versionsClosed )
+            {
+                writeLatest();
+            }
+            else
+            {
+                latestDeferred = true;
+            }
+        }
+    }
+
+    private boolean isAllowed( final String version )
+    {
+        final boolean snapshot = SnapshotUtils.isSnapshotVersion( version );
+        return snapshot ? allowsSnapshots : allowsReleases;
+    }
+
+    private void writeLatest()
+            throws IOException
+    {
+        latestDeferred = false;
+        final String latest = lastAllowedVersion == null ? "" : lastAllowedVersion;
+        out.write( ( "<" + LATEST + ">" + latest + "</" + LATEST + ">" ).getBytes( UTF_8 ) );
+    }
+
+    private void writeHeld()
+            throws IOException
+    {
+        held.writeTo( out );
+        held.reset();
+    }
+
+    private void writeMarkup()
+            throws IOException
+    {
+        markup.writeTo( out );
+    }
+
+    /**
+     * Growable byte buffer, reused for every token.
+     */
+    private static final class Bytes
+    {
+        private byte[] bytes = new byte[256];
+
+        private int length;
+
+        void append( final byte b )
+        {
+            ensure( 1 );
+            bytes[length++] = b;
+        }
+
+        void append( final byte[] buff, final int offset, final int len )
+        {
+            ensure( len );
+            System.arraycopy( buff, offset, bytes, length, len );
+            length += len;
+        }
+
+        void append( final Bytes other )
+        {
+            append( other.bytes, 0, other.length );
+        }
+
+        byte get( final int index )
+        {
+            return bytes[index];
+        }
+
+        byte[] array()
+        {
+            return bytes;
+        }
+
+        int length()
+        {
+            return length;
+        }
+
+        void reset()
+        {
+            length = 0;
+        }
+
+        void writeTo( final OutputStream out )
+                throws IOException
+        {
+            if ( length > 0 )
+            {
+                out.write( bytes, 0, length );
+            }
+        }
+
+        boolean startsWith( final String ascii )
+        {
+            if ( length < ascii.length() )
+            {
+                return false;
+            }
+            for ( int i = 0; i < ascii.length(); i++ )
+            {
+                if ( bytes[i] != ascii.charAt( i ) )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the local name of the element in this tag, which starts at the given index
+         */
+        String elementName( final int start )
+        {
+            int nameStart = start;
+            int end = start;
+            while ( end < length )
+            {
+                final byte b = bytes[end];
+                if ( b == ':' )
+                {
+                    nameStart = end + 1;
+                }
+                else if ( b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r' || b == '\n' )
+                {
+                    break;
+                }
+                end++;
+            }
+            return new String( bytes, nameStart, end - nameStart, UTF_8 );
+        }
+
+        @Override
+        public String toString()
+        {
+            return new String( bytes, 0, length, UTF_8 );
+        }
+
+        private void ensure( final int extra )
+        {
+            if ( length + extra > bytes.length )
+            {
+                bytes = Arrays.copyOf( bytes, Math.max( bytes.length * 2, length + extra ) );
+            }
+        }
+    }
+}
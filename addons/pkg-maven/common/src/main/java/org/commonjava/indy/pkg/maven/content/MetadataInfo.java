@@ -16,8 +16,12 @@
 package org.commonjava.indy.pkg.maven.content;
 
 import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
 
 import java.io.Serializable;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Used to bind group metadata and its metadata merge info together for caching easily
@@ -29,6 +33,8 @@ public class MetadataInfo
 
     private String metadataMergeInfo;
 
+    private List<MemberMetadata> memberMetadata;
+
     public MetadataInfo( final Metadata metadata )
     {
         this.metadata = metadata;
@@ -53,4 +59,50 @@ public class MetadataInfo
     {
         this.metadataMergeInfo = metadataMergeInfo;
     }
+
+    /**
+     * Metadata of each contributing member, in group order, for group metadata merged incrementally. Null when the
+     * contributions were not recorded.
+     */
+    public List<MemberMetadata> getMemberMetadata()
+    {
+        return memberMetadata;
+    }
+
+    public void setMemberMetadata( List<MemberMetadata> memberMetadata )
+    {
+        this.memberMetadata = memberMetadata;
+    }
+
+    /**
+     * @return whether this only holds member contributions kept from invalidated group metadata, and no merged
+     * metadata
+     */
+    public boolean isContributionsOnly()
+    {
+        return metadata == null && memberMetadata != null;
+    }
+
+    /**
+     * @return a copy of this info without merged metadata, keeping the contributions of hosted members other than the
+     * given one, so the group metadata is merged again from those plus whatever the other members hold now; or null if
+     * no contributions were recorded, meaning the group metadata has to be merged from scratch.
+     * <p>
+     * Contributions of remote members are not kept: their metadata changes upstream without notice, so it is read
+     * again (subject to the remote's own metadata timeout) whenever the group metadata is merged.
+     */
+    public MetadataInfo withoutMember( final StoreKey member )
+    {
+        if ( memberMetadata == null )
+        {
+            return null;
+        }
+
+        final MetadataInfo result = new MetadataInfo( null );
+        result.setMemberMetadata( memberMetadata.stream()
+                                                .filter( mm -> mm.getStoreKey().getType() == StoreType.hosted
+                                                        && !mm.getStoreKey().equals( member ) )
+                                                .collect( Collectors.toList() ) );
+        return result;
+    }
 }
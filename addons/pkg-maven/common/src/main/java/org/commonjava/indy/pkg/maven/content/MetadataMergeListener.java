@@ -54,7 +54,7 @@ public class MetadataMergeListener
         logger.debug( "Clear merged path {}, origin: {}, affected: {}", path, originatingStore, affectedGroups );
         cacheManager.remove( new MetadataKey( originatingStore.getKey(), path ) );
         affectedGroups.forEach( group -> {
-            cacheManager.remove( new MetadataKey( group.getKey(), path ) );
+            cacheManager.removeMember( group.getKey(), path, originatingStore.getKey() );
         } );
     }
 
@@ -18,6 +18,7 @@ package org.commonjava.indy.pkg.maven.content.cache;
 import org.commonjava.indy.pkg.maven.content.MetadataKey;
 import org.commonjava.indy.pkg.maven.content.MetadataInfo;
 import org.commonjava.indy.pkg.maven.content.MetadataKeyTransformer;
+import org.commonjava.indy.pkg.maven.content.marshaller.MemberMetadataMarshaller;
 import org.commonjava.indy.pkg.maven.content.marshaller.MetadataInfoMarshaller;
 import org.commonjava.indy.pkg.maven.content.marshaller.MetadataKeyMarshaller;
 import org.commonjava.indy.pkg.maven.content.marshaller.MetadataMarshaller;
@@ -65,6 +66,7 @@ public class MetadataCacheProducer
         {
             List<BaseMarshaller> infoMarshallers = new ArrayList<>();
             infoMarshallers.add( new MetadataInfoMarshaller() );
+            infoMarshallers.add( new MemberMetadataMarshaller() );
             infoMarshallers.add( new MetadataMarshaller() );
             infoMarshallers.add( new VersioningMarshaller() );
             infoMarshallers.add( new SnapshotMarshaller() );
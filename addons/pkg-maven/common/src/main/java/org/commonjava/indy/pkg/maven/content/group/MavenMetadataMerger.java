@@ -18,19 +18,19 @@ package org.commonjava.indy.pkg.maven.content.group;
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
 import org.apache.maven.artifact.repository.metadata.Versioning;
-import org.commonjava.atlas.maven.ident.util.VersionUtils;
-import org.commonjava.atlas.maven.ident.version.InvalidVersionSpecificationException;
-import org.commonjava.atlas.maven.ident.version.SingleVersion;
 import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.pkg.maven.content.MemberMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 import static org.commonjava.atlas.maven.ident.util.SnapshotUtils.LOCAL_SNAPSHOT_VERSION_PART;
 import static org.commonjava.maven.galley.io.checksum.ChecksumAlgorithm.*;
@@ -130,37 +130,80 @@ public class MavenMetadataMerger
         return master;
     }
 
+    /**
+     * Select the previously recorded member contributions that can be merged again, in their recorded order, skipping
+     * the ones of stores no longer in the group.
+     *
+     * @param members the keys of the concrete stores currently in the group
+     * @return the reusable contributions by member key
+     */
+    public Map<StoreKey, Metadata> reusableContributions( final List<MemberMetadata> contributions,
+                                                          final Set<StoreKey> members )
+    {
+        final Map<StoreKey, Metadata> reusable = new LinkedHashMap<>();
+        for ( final MemberMetadata contribution : contributions )
+        {
+            final StoreKey member = contribution.getStoreKey();
+            if ( members.contains( member ) && !reusable.containsKey( member ) )
+            {
+                reusable.put( member, contribution.getMetadata() );
+            }
+        }
+
+        return reusable;
+    }
+
+    /**
+     * Merge the given parts in list order, giving the same result as {@link #merge(Metadata, Metadata, Group, String)}
+     * of each source in that order followed by {@link #sortVersions(Metadata)}, whatever order the parts were prepared
+     * in.
+     * <p>
+     * Everything but the versions is merged one part after the other. The versions, which are the bulk of the work, go
+     * through a {@link VersionIndex}, in which large merges may run on the given executor.
+     *
+     * @param executor may be null to merge on the calling thread only
+     */
+    public Metadata mergeInOrder( final List<MetadataMergePart> parts, final Group group, final String path,
+                                  final Executor executor )
+    {
+        final Metadata master = new Metadata();
+        master.setVersioning( new Versioning() );
+
+        final VersionIndex versions = new VersionIndex();
+        for ( final MetadataMergePart part : parts )
+        {
+            merge( master, part.getMetadata(), group, path );
+            versions.add( part.getVersions() );
+        }
+
+        if ( versions.size() > 0 )
+        {
+            setSortedVersions( master.getVersioning(), versions.sorted( executor ) );
+        }
+
+        return master;
+    }
+
     public void sortVersions( Metadata metadata )
     {
         Versioning versioning = metadata.getVersioning();
         if ( versioning != null && versioning.getVersions() != null )
         {
+            setSortedVersions( versioning, VersionIndex.sort( versioning.getVersions() ) );
+        }
+    }
 
-            List<SingleVersion> versionObjects =
-                    versioning.getVersions().stream().map( (v)->{
-                        try
-                        {
-                            return VersionUtils.createSingleVersion( v );
-                        }
-                        catch (InvalidVersionSpecificationException e )
-                        {
-                            return null;
-                        }
-                    } ).filter( Objects::nonNull ).collect( Collectors.toList() );
-
-            Collections.sort( versionObjects );
-
-            versioning.setVersions(
-                    versionObjects.stream().map( SingleVersion::renderStandard ).collect( Collectors.toList() ) );
+    private void setSortedVersions( final Versioning versioning, final List<String> sorted )
+    {
+        versioning.setVersions( sorted );
 
-            if ( versionObjects.size() > 0 )
+        if ( sorted.size() > 0 )
+        {
+            String latest = sorted.get( sorted.size() - 1 );
+            versioning.setLatest( latest );
+            if ( !latest.endsWith( LOCAL_SNAPSHOT_VERSION_PART ) )
             {
-                String latest = versionObjects.get( versionObjects.size() - 1 ).renderStandard();
-                versioning.setLatest( latest );
-                if ( !latest.endsWith( LOCAL_SNAPSHOT_VERSION_PART ) )
-                {
-                    versioning.setRelease( latest );
-                }
+                versioning.setRelease( latest );
             }
         }
     }
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * One source's metadata, prepared for {@link MavenMetadataMerger#mergeInOrder}: its versions parsed and sorted as a
+ * {@link VersionIndex.Run}, and a copy of everything else. This is meant to be done by the thread that fetched the
+ * metadata, leaving only the merge of sorted runs to the merging thread.
+ * <p>
+ * The source metadata is not changed. A part belongs to the merge it is given to, which consumes it.
+ */
+public final class MetadataMergePart
+{
+    private final Metadata metadata;
+
+    private final VersionIndex.Run versions;
+
+    public MetadataMergePart( final Metadata source )
+    {
+        this.metadata = source.clone();
+
+        final Versioning versioning = metadata.getVersioning();
+        if ( versioning != null )
+        {
+            this.versions = VersionIndex.prepare( versioning.getVersions() );
+            versioning.setVersions( new ArrayList<>() );
+        }
+        else
+        {
+            this.versions = VersionIndex.prepare( Collections.emptyList() );
+        }
+    }
+
+    /**
+     * @return the source metadata without its versions
+     */
+    Metadata getMetadata()
+    {
+        return metadata;
+    }
+
+    VersionIndex.Run getVersions()
+    {
+        return versions;
+    }
+}
@@ -0,0 +1,419 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.commonjava.atlas.maven.ident.util.VersionUtils;
+import org.commonjava.atlas.maven.ident.version.InvalidVersionSpecificationException;
+import org.commonjava.atlas.maven.ident.version.SingleVersion;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Sorted, de-duplicated union of the version lists of several maven-metadata.xml files.
+ * <p>
+ * Each list is first prepared as a {@link Run}: its versions parsed and stably sorted. Parsed versions are cached
+ * across merges, since the same version strings turn up in the metadata of many artifacts and many members; the cache
+ * keeps the most recently used ones, in stripes so that concurrent merges rarely contend. Runs are
+ * {@link #add(Run) added} in merge order; a version already added by an earlier run is dropped, using an
+ * open-addressing hash table over the version strings. {@link #sorted(Executor)} then merges the runs pairwise, in a
+ * tree of fixed shape, earlier runs first among versions that compare as equal.
+ * <p>
+ * The result is what stably sorting the concatenated lists with duplicates removed gives, which is what
+ * {@link MavenMetadataMerger} used to do with {@link java.util.List#contains(Object)} and
+ * {@link Collections#sort(List)}. Versions that can't be parsed are left out of it.
+ */
+public final class VersionIndex
+{
+    /**
+     * Below this many versions in a level of the merge tree, handing the merges to another thread costs more than it
+     * saves.
+     */
+    static final int PARALLEL_MERGE_MIN_VERSIONS = 16384;
+
+    static final int MAX_CACHED_VERSIONS = 65536;
+
+    private static final int CACHE_STRIPES = 16;
+
+    private static final ParsedCache[] PARSED = new ParsedCache[CACHE_STRIPES];
+
+    static
+    {
+        for ( int i = 0; i < CACHE_STRIPES; i++ )
+        {
+            PARSED[i] = new ParsedCache( MAX_CACHED_VERSIONS / CACHE_STRIPES );
+        }
+    }
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private static final Comparator<Entry> ORDER = ( a, b ) -> a.version.compareTo( b.version );
+
+    private final List<Entry[]> runs = new ArrayList<>();
+
+    private String[] keys = new String[64];
+
+    private int[] hashes = new int[64];
+
+    private int size;
+
+    /**
+     * @return the parsed form of a version, from the cache if it was parsed before
+     */
+    public static SingleVersion parse( final String version )
+            throws InvalidVersionSpecificationException
+    {
+        final SingleVersion parsed = entry( version ).version;
+        if ( parsed == null )
+        {
+            // parse again for the error
+            return VersionUtils.createSingleVersion( version );
+        }
+        return parsed;
+    }
+
+    /**
+     * Parse and sort a version list, to be {@link #add(Run) added} to an index. This is the part of the work that can be
+     * done for each list separately, e.g. by the thread that read it.
+     */
+    public static Run prepare( final Collection<String> versions )
+    {
+        final List<Entry> entries = new ArrayList<>( versions.size() );
+        for ( final String version : versions )
+        {
+            final Entry entry = entry( version );
+            if ( entry.version != null )
+            {
+                entries.add( entry );
+            }
+        }
+        return new Run( sort( entries.toArray( NO_ENTRIES ) ) );
+    }
+
+    /**
+     * Same as {@link #prepare(Collection)}, for versions that are already parsed. They are identified by their
+     * standard rendering.
+     */
+    public static Run prepareParsed( final Collection<SingleVersion> versions )
+    {
+        final Entry[] entries = new Entry[versions.size()];
+        int i = 0;
+        for ( final SingleVersion version : versions )
+        {
+            entries[i++] = new Entry( version.renderStandard(), version );
+        }
+        return new Run( sort( entries ) );
+    }
+
+    /**
+     * @return the versions sorted, without duplicates or the ones that can't be parsed
+     */
+    public static List<String> sort( final Collection<String> versions )
+    {
+        final VersionIndex index = new VersionIndex();
+        index.add( prepare( versions ) );
+        return index.sorted( null );
+    }
+
+    /**
+     * Add the versions of the run that no earlier run had.
+     */
+    public VersionIndex add( final Run run )
+    {
+        final Entry[] fresh = new Entry[run.entries.length];
+        int count = 0;
+        for ( final Entry entry : run.entries )
+        {
+            if ( insert( entry.raw ) )
+            {
+                fresh[count++] = entry;
+            }
+        }
+
+        if ( count > 0 )
+        {
+            runs.add( count == fresh.length ? fresh : Arrays.copyOf( fresh, count ) );
+        }
+        return this;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param executor runs the merges of large levels of the merge tree; may be null to merge on the calling thread only
+     * @return the standard rendering of every version added, sorted
+     */
+    public List<String> sorted( final Executor executor )
+    {
+        List<Entry[]> level = runs;
+        while ( level.size() > 1 )
+        {
+            int versionCount = 0;
+            for ( final Entry[] run : level )
+            {
+                versionCount += run.length;
+            }
+
+            final Executor levelExecutor = versionCount >= PARALLEL_MERGE_MIN_VERSIONS ? executor : null;
+            final List<CompletableFuture<Entry[]>> merges = new ArrayList<>( ( level.size() + 1 ) / 2 );
+            for ( int i = 0; i < level.size(); i += 2 )
+            {
+                final Entry[] left = level.get( i );
+                final Entry[] right = i + 1 < level.size() ? level.get( i + 1 ) : NO_ENTRIES;
+                merges.add( merge( left, right, levelExecutor ) );
+            }
+
+            final List<Entry[]> next = new ArrayList<>( merges.size() );
+            merges.forEach( merge -> next.add( merge.join() ) );
+            level = next;
+        }
+
+        if ( level.isEmpty() )
+        {
+            return new ArrayList<>();
+        }
+
+        final Entry[] sorted = level.get( 0 );
+        final List<String> result = new ArrayList<>( sorted.length );
+        for ( final Entry entry : sorted )
+        {
+            result.add( entry.rendered );
+        }
+        return result;
+    }
+
+    private boolean insert( final String key )
+    {
+        if ( ( size + 1 ) * 2 > keys.length )
+        {
+            grow();
+        }
+
+        final int hash = key.hashCode();
+        final int mask = keys.length - 1;
+        int slot = mix( hash ) & mask;
+        while ( keys[slot] != null )
+        {
+            if ( hashes[slot] == hash && keys[slot].equals( key ) )
+            {
+                return false;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+
+        keys[slot] = key;
+        hashes[slot] = hash;
+        size++;
+        return true;
+    }
+
+    private void grow()
+    {
+        final String[] oldKeys = keys;
+        final int[] oldHashes = hashes;
+        keys = new String[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+
+        final int mask = keys.length - 1;
+        for ( int i = 0; i < oldKeys.length; i++ )
+        {
+            if ( oldKeys[i] != null )
+            {
+                int slot = mix( oldHashes[i] ) & mask;
+                while ( keys[slot] != null )
+                {
+                    slot = ( slot + 1 ) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private static int mix( final int hash )
+    {
+        final int h = hash * 0x9E3779B9;
+        return h ^ ( h >>> 16 );
+    }
+
+    private static CompletableFuture<Entry[]> merge( final Entry[] left, final Entry[] right, final Executor executor )
+    {
+        if ( right.length == 0 )
+        {
+            return CompletableFuture.completedFuture( left );
+        }
+
+        if ( executor != null )
+        {
+            try
+            {
+                return CompletableFuture.supplyAsync( () -> merge( left, right ), executor );
+            }
+            catch ( final RuntimeException e )
+            {
+                // the pool is overloaded or shutting down
+                LoggerFactory.getLogger( VersionIndex.class )
+                             .debug( "Merging versions on the calling thread: {}", e.getMessage() );
+            }
+        }
+
+        return CompletableFuture.completedFuture( merge( left, right ) );
+    }
+
+    private static Entry[] merge( final Entry[] left, final Entry[] right )
+    {
+        final Entry[] merged = new Entry[left.length + right.length];
+        int l = 0;
+        int r = 0;
+        int m = 0;
+        while ( l < left.length && r < right.length )
+        {
+            // ties go to the left, which holds the earlier runs
+            merged[m++] = ORDER.compare( right[r], left[l] ) < 0 ? right[r++] : left[l++];
+        }
+        System.arraycopy( left, l, merged, m, left.length - l );
+        System.arraycopy( right, r, merged, m + left.length - l, right.length - r );
+        return merged;
+    }
+
+    private static Entry[] sort( final Entry[] entries )
+    {
+        for ( int i = 1; i < entries.length; i++ )
+        {
+            if ( ORDER.compare( entries[i - 1], entries[i] ) > 0 )
+            {
+                // stable, so equal versions keep their order in the list
+                Arrays.sort( entries, ORDER );
+                break;
+            }
+        }
+        return entries;
+    }
+
+    static int cachedVersionCount()
+    {
+        int count = 0;
+        for ( final ParsedCache stripe : PARSED )
+        {
+            synchronized ( stripe )
+            {
+                count += stripe.size();
+            }
+        }
+        return count;
+    }
+
+    private static Entry entry( final String version )
+    {
+        final ParsedCache stripe = PARSED[mix( version.hashCode() ) & ( CACHE_STRIPES - 1 )];
+        Entry entry;
+        synchronized ( stripe )
+        {
+            entry = stripe.get( version );
+        }
+
+        if ( entry == null )
+        {
+            SingleVersion parsed;
+            try
+            {
+                parsed = VersionUtils.createSingleVersion( version );
+            }
+            catch ( InvalidVersionSpecificationException e )
+            {
+                parsed = null;
+            }
+
+            entry = new Entry( version, parsed );
+            synchronized ( stripe )
+            {
+                final Entry cached = stripe.putIfAbsent( version, entry );
+                if ( cached != null )
+                {
+                    entry = cached;
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Least recently used parsed versions, evicted beyond the capacity. Guarded by synchronizing on it.
+     */
+    private static final class ParsedCache
+            extends LinkedHashMap<String, Entry>
+    {
+        private final int capacity;
+
+        private ParsedCache( final int capacity )
+        {
+            super( 16, 0.75f, true );
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<String, Entry> eldest )
+        {
+            return size() > capacity;
+        }
+    }
+
+    /**
+     * A version list, parsed and sorted. See {@link #prepare(Collection)}.
+     */
+    public static final class Run
+    {
+        private final Entry[] entries;
+
+        private Run( final Entry[] entries )
+        {
+            this.entries = entries;
+        }
+
+        public int size()
+        {
+            return entries.length;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final String raw;
+
+        private final SingleVersion version;
+
+        private final String rendered;
+
+        private Entry( final String raw, final SingleVersion version )
+        {
+            this.raw = raw;
+            this.version = version;
+            this.rendered = version == null ? null : version.renderStandard();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.marshaller;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.pkg.maven.content.MemberMetadata;
+import org.infinispan.protostream.MessageMarshaller;
+
+import java.io.IOException;
+
+public class MemberMetadataMarshaller implements MessageMarshaller<MemberMetadata>
+{
+    @Override
+    public MemberMetadata readFrom( ProtoStreamReader reader ) throws IOException
+    {
+        String storeKey = reader.readString( "storeKey" );
+        Metadata metadata = reader.readObject( "metadata", Metadata.class );
+        return new MemberMetadata( StoreKey.fromString( storeKey ), metadata );
+    }
+
+    @Override
+    public void writeTo( ProtoStreamWriter writer, MemberMetadata memberMetadata ) throws IOException
+    {
+        writer.writeString( "storeKey", memberMetadata.getStoreKey().toString() );
+        writer.writeObject( "metadata", memberMetadata.getMetadata(), Metadata.class );
+    }
+
+    @Override
+    public Class<? extends MemberMetadata> getJavaClass()
+    {
+        return MemberMetadata.class;
+    }
+
+    @Override
+    public String getTypeName()
+    {
+        return "metadata_info.MemberMetadata";
+    }
+}
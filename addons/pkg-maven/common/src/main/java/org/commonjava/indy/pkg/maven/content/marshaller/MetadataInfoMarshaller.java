@@ -16,10 +16,13 @@
 package org.commonjava.indy.pkg.maven.content.marshaller;
 
 import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.commonjava.indy.pkg.maven.content.MemberMetadata;
 import org.commonjava.indy.pkg.maven.content.MetadataInfo;
 import org.infinispan.protostream.MessageMarshaller;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class MetadataInfoMarshaller implements MessageMarshaller<MetadataInfo>
 {
@@ -28,6 +31,9 @@ public class MetadataInfoMarshaller implements MessageMarshaller<MetadataInfo>
     {
         MetadataInfo info = new MetadataInfo( reader.readObject( "metadata", Metadata.class) );
         info.setMetadataMergeInfo( reader.readString( "metadataMergeInfo" ) );
+        List<MemberMetadata> memberMetadata =
+                reader.readCollection( "memberMetadata", new ArrayList<>(), MemberMetadata.class );
+        info.setMemberMetadata( memberMetadata.isEmpty() ? null : memberMetadata );
         return info;
     }
 
@@ -36,6 +42,10 @@ public class MetadataInfoMarshaller implements MessageMarshaller<MetadataInfo>
     {
         writer.writeObject( "metadata", metadataInfo.getMetadata(), Metadata.class );
         writer.writeString( "metadataMergeInfo", metadataInfo.getMetadataMergeInfo() );
+        if ( metadataInfo.getMemberMetadata() != null )
+        {
+            writer.writeCollection( "memberMetadata", metadataInfo.getMemberMetadata(), MemberMetadata.class );
+        }
     }
 
     @Override
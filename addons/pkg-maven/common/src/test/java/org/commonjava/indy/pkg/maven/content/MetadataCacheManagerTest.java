@@ -15,6 +15,7 @@
  */
 package org.commonjava.indy.pkg.maven.content;
 
+import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.commonjava.indy.conf.InternalFeatureConfig;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
@@ -25,10 +26,14 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class MetadataCacheManagerTest
 {
@@ -73,6 +78,43 @@ public class MetadataCacheManagerTest
         assertNotNull( ret );
     }
 
+    @Test
+    public void removeMemberKeepsOtherHostedContributions() throws Exception
+    {
+        final InternalFeatureConfig config = new InternalFeatureConfig();
+        config.setMavenMetadataIncrementalMergeEnabled( true );
+        final MetadataCacheManager incremental =
+                        new MetadataCacheManager( cacheProducer.getCache( "maven-metadata-cache" ), config );
+
+        StoreKey group = StoreKey.fromString( "maven:group:public" );
+        StoreKey hosted = StoreKey.fromString( "maven:hosted:test" );
+        StoreKey otherHosted = StoreKey.fromString( "maven:hosted:other" );
+        StoreKey remote = StoreKey.fromString( "maven:remote:test" );
+        String path = "org/foo/bar/maven-metadata.xml";
+        final MetadataKey key = new MetadataKey( group, path );
+
+        final MetadataInfo info = new MetadataInfo( new Metadata() );
+        info.setMemberMetadata( Arrays.asList( new MemberMetadata( hosted, new Metadata() ),
+                                               new MemberMetadata( remote, new Metadata() ),
+                                               new MemberMetadata( otherHosted, new Metadata() ) ) );
+        incremental.put( key, info );
+        assertEquals( 3, incremental.getMemberMetadata( key ).size() );
+
+        incremental.removeMember( group, path, hosted );
+
+        // the kept contributions are not merged metadata
+        assertNull( incremental.get( key ) );
+
+        // remote contributions may be outdated upstream, they are read again on the next merge
+        final List<MemberMetadata> kept = incremental.getMemberMetadata( key );
+        assertEquals( 1, kept.size() );
+        assertEquals( otherHosted, kept.get( 0 ).getStoreKey() );
+
+        // a nested group can't be singled out in the contributions
+        incremental.removeMember( group, path, StoreKey.fromString( "maven:group:nested" ) );
+        assertNull( incremental.getMemberMetadata( key ) );
+    }
+
     @After
     public void tearDown() throws Exception
     {
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MetadataFilteringOutputStreamTest
+{
+    // @formatter:off
+    private static final String GA_METADATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<!-- generated by <some> tool -->\n"
+        + "<metadata modelVersion=\"1.1.0\" xmlns:x=\"urn:x\">\n"
+        + "  <groupId>org.foo</groupId>\n"
+        + "  <artifactId>bar</artifactId>\n"
+        + "  <versioning>\n"
+        + "    <latest>1.3-SNAPSHOT</latest>\n"
+        + "    <release>1.2</release>\n"
+        + "    <versions>\n"
+        + "      <version>1.1</version>\n"
+        + "      <version>1.1-SNAPSHOT</version>\n"
+        + "      <version>1.2</version>\n"
+        + "      <version>1.3-SNAPSHOT</version>\n"
+        + "    </versions>\n"
+        + "    <lastUpdated>20171020231327</lastUpdated>\n"
+        + "  </versioning>\n"
+        + "</metadata>\n";
+    // @formatter:on
+
+    @Test
+    public void snapshotVersionsAreRemovedAndLatestRecalculated()
+            throws IOException
+    {
+        final String result = filter( GA_METADATA, false, true );
+
+        assertThat( result, not( containsString( "SNAPSHOT" ) ) );
+        assertThat( result, containsString( "<version>1.1</version>" ) );
+        assertThat( result, containsString( "<version>1.2</version>" ) );
+        assertThat( result, containsString( "<latest>1.2</latest>" ) );
+        assertThat( result, containsString( "<release>1.2</release>" ) );
+        assertThat( result, containsString( "<!-- generated by <some> tool -->" ) );
+        assertThat( result, containsString( "<lastUpdated>20171020231327</lastUpdated>" ) );
+    }
+
+    @Test
+    public void releasesAreRemovedWhenNotAllowed()
+            throws IOException
+    {
+        final String result = filter( GA_METADATA, true, false );
+
+        assertThat( result, containsString( "<release></release>" ) );
+        assertThat( result, not( containsString( "<version>1.1</version>" ) ) );
+        assertThat( result, not( containsString( "<version>1.2</version>" ) ) );
+        assertThat( result, containsString( "<version>1.1-SNAPSHOT</version>" ) );
+        assertThat( result, containsString( "<latest>1.3-SNAPSHOT</latest>" ) );
+    }
+
+    @Test
+    public void snapshotFieldsAreEmptiedWhenSnapshotsNotAllowed()
+            throws IOException
+    {
+        // @formatter:off
+        final String gav = "<metadata>"
+            + "<groupId>org.foo</groupId><artifactId>bar</artifactId><version>1.0-SNAPSHOT</version>"
+            + "<versioning>"
+            + "<snapshot><timestamp>20230101.000000</timestamp><buildNumber>3</buildNumber></snapshot>"
+            + "<lastUpdated>20230101000000</lastUpdated>"
+            + "<snapshotVersions><snapshotVersion><extension>jar</extension>"
+            + "<value>1.0-20230101.000000-3</value></snapshotVersion></snapshotVersions>"
+            + "</versioning>"
+            + "</metadata>";
+        // @formatter:on
+
+        final String result = filter( gav, false, true );
+
+        assertThat( result, containsString( "<snapshot></snapshot>" ) );
+        assertThat( result, containsString( "<snapshotVersions></snapshotVersions>" ) );
+        assertThat( result, containsString( "<version>1.0-SNAPSHOT</version>" ) );
+        assertThat( result, containsString( "<lastUpdated>20230101000000</lastUpdated>" ) );
+    }
+
+    @Test
+    public void nothingChangesWithoutProhibitedVersions()
+            throws IOException
+    {
+        final String releases = GA_METADATA.replace( "-SNAPSHOT", ".1" );
+
+        assertThat( filter( releases, false, true ), equalTo( releases ) );
+    }
+
+    @Test
+    public void chunkBoundariesDoNotMatter()
+            throws IOException
+    {
+        final String expected = filter( GA_METADATA, false, true );
+        final byte[] bytes = GA_METADATA.getBytes( UTF_8 );
+        final Random random = new Random( 1019 );
+        for ( int round = 0; round < 100; round++ )
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (MetadataFilteringOutputStream stream = new MetadataFilteringOutputStream( out, false, true, null ))
+            {
+                int i = 0;
+                while ( i < bytes.length )
+                {
+                    final int len = Math.min( bytes.length - i, random.nextInt( 8 ) );
+                    if ( len == 1 )
+                    {
+                        stream.write( bytes[i] );
+                    }
+                    else
+                    {
+                        stream.write( bytes, i, len );
+                    }
+                    i += len;
+                }
+            }
+
+            assertThat( "round " + round, new String( out.toByteArray(), UTF_8 ), equalTo( expected ) );
+        }
+    }
+
+    private static String filter( final String metadata, final boolean allowsSnapshots, final boolean allowsReleases )
+            throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MetadataFilteringOutputStream stream = new MetadataFilteringOutputStream( out, allowsSnapshots,
+                                                                                      allowsReleases, null ))
+        {
+            stream.write( metadata.getBytes( UTF_8 ) );
+        }
+        return new String( out.toByteArray(), UTF_8 );
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Plugin;
+import org.apache.maven.artifact.repository.metadata.Snapshot;
+import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.pkg.maven.content.MemberMetadata;
+import org.commonjava.indy.pkg.maven.content.MetadataInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Correctness harness for incremental group metadata merging: after each random change to the group (a member's
+ * metadata changing, a member joining or leaving), merging the recorded contributions of the unchanged members plus
+ * the changed member must give the same result as merging all members from scratch.
+ */
+public class IncrementalMetadataMergeTest
+{
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    private static final int MEMBERS = 20;
+
+    private static final int ROUNDS = 200;
+
+    private final MavenMetadataMerger merger = new MavenMetadataMerger();
+
+    private final Random random = new Random( 20231 );
+
+    private final Group group = new Group( "maven", "public" );
+
+    @Test
+    public void incrementalMergeMatchesFullMerge()
+    {
+        final Map<StoreKey, Metadata> members = new LinkedHashMap<>();
+        for ( int i = 0; i < MEMBERS; i++ )
+        {
+            members.put( memberKey( i ), randomMetadata() );
+        }
+
+        MetadataInfo cached = record( members );
+        for ( int round = 0; round < ROUNDS; round++ )
+        {
+            final List<StoreKey> keys = new ArrayList<>( members.keySet() );
+            final int change = random.nextInt( 3 );
+            final StoreKey changed;
+            if ( change == 0 )
+            {
+                changed = memberKey( MEMBERS + round );
+                members.put( changed, randomMetadata() );
+            }
+            else
+            {
+                changed = keys.get( random.nextInt( keys.size() ) );
+                if ( change == 1 && members.size() > 1 )
+                {
+                    members.remove( changed );
+                }
+                else
+                {
+                    members.put( changed, randomMetadata() );
+                }
+            }
+
+            final MetadataInfo invalidated = cached.withoutMember( changed );
+            assertThat( invalidated.getMetadata(), nullValue() );
+
+            final Map<StoreKey, Metadata> contributions =
+                    merger.reusableContributions( invalidated.getMemberMetadata(), members.keySet() );
+            final List<MetadataMergePart> parts = new ArrayList<>();
+            members.forEach( ( key, md ) -> {
+                contributions.putIfAbsent( key, md );
+                parts.add( new MetadataMergePart( contributions.get( key ) ) );
+            } );
+            final Metadata incremental = merger.mergeInOrder( parts, group, PATH, null );
+            merger.sortVersions( incremental );
+
+            assertThat( contributions.keySet(), equalTo( members.keySet() ) );
+            assertSameMerge( "round " + round, incremental, fullMerge( members ) );
+
+            cached = record( members );
+        }
+    }
+
+    @Test
+    public void contributionsAreNotChangedByMerging()
+    {
+        final Map<StoreKey, Metadata> members = new LinkedHashMap<>();
+        for ( int i = 0; i < MEMBERS; i++ )
+        {
+            members.put( memberKey( i ), randomMetadata() );
+        }
+
+        final MetadataInfo cached = record( members );
+        final List<String> before = describe( cached );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            final List<MetadataMergePart> parts = new ArrayList<>();
+            merger.reusableContributions( cached.getMemberMetadata(), members.keySet() )
+                  .values()
+                  .forEach( md -> parts.add( new MetadataMergePart( md ) ) );
+            merger.mergeInOrder( parts, group, PATH, null );
+        }
+
+        assertThat( describe( cached ), equalTo( before ) );
+    }
+
+    @Test
+    public void withoutContributionsMeansFullMerge()
+    {
+        assertThat( new MetadataInfo( newMetadata() ).withoutMember( memberKey( 0 ) ), nullValue() );
+    }
+
+    private MetadataInfo record( final Map<StoreKey, Metadata> members )
+    {
+        final MetadataInfo info = new MetadataInfo( fullMerge( members ) );
+        info.setMemberMetadata( members.entrySet()
+                                       .stream()
+                                       .map( e -> new MemberMetadata( e.getKey(), e.getValue().clone() ) )
+                                       .collect( Collectors.toList() ) );
+        return info;
+    }
+
+    private Metadata fullMerge( final Map<StoreKey, Metadata> members )
+    {
+        final Metadata master = newMetadata();
+        members.values().forEach( md -> merger.merge( master, md.clone(), group, PATH ) );
+        merger.sortVersions( master );
+        return master;
+    }
+
+    private void assertSameMerge( final String reason, final Metadata actual, final Metadata expected )
+    {
+        final Versioning av = actual.getVersioning();
+        final Versioning ev = expected.getVersioning();
+        assertThat( reason, av.getVersions(), equalTo( ev.getVersions() ) );
+        assertThat( reason, av.getLatest(), equalTo( ev.getLatest() ) );
+        assertThat( reason, av.getRelease(), equalTo( ev.getRelease() ) );
+        assertThat( reason, snapshotVersions( av ), equalTo( snapshotVersions( ev ) ) );
+        assertThat( reason, plugins( actual ), equalTo( plugins( expected ) ) );
+    }
+
+    private static Set<String> snapshotVersions( final Versioning versioning )
+    {
+        return versioning.getSnapshotVersions()
+                         .stream()
+                         .map( sv -> sv.getVersion() + ":" + sv.getExtension() + ":" + sv.getClassifier() )
+                         .collect( Collectors.toSet() );
+    }
+
+    private static Set<String> plugins( final Metadata metadata )
+    {
+        return metadata.getPlugins().stream().map( Plugin::getPrefix ).collect( Collectors.toSet() );
+    }
+
+    private static List<String> describe( final MetadataInfo info )
+    {
+        return info.getMemberMetadata().stream().map( mm -> {
+            final Versioning v = mm.getMetadata().getVersioning();
+            final Snapshot s = v.getSnapshot();
+            return mm.getStoreKey() + " " + v.getVersions() + " " + v.getLatest() + " " + snapshotVersions( v ) + " "
+                    + ( s == null ? null : s.getTimestamp() + "-" + s.getBuildNumber() );
+        } ).collect( Collectors.toList() );
+    }
+
+    private Metadata randomMetadata()
+    {
+        final Metadata md = newMetadata();
+        md.setGroupId( "org.foo" );
+        md.setArtifactId( "bar" );
+
+        final Versioning versioning = md.getVersioning();
+        final Set<String> versions = new HashSet<>();
+        final int count = 1 + random.nextInt( 10 );
+        for ( int i = 0; i < count; i++ )
+        {
+            versions.add( random.nextInt( 5 ) + "." + random.nextInt( 10 ) + ( random.nextInt( 4 ) == 0 ? "-SNAPSHOT" : "" ) );
+        }
+        versioning.setVersions( new ArrayList<>( versions ) );
+        versioning.setLastUpdated( "2023010" + random.nextInt( 10 ) + "000000" );
+
+        if ( random.nextBoolean() )
+        {
+            final Snapshot snapshot = new Snapshot();
+            snapshot.setTimestamp( "20230101.00000" + random.nextInt( 10 ) );
+            snapshot.setBuildNumber( 1 + random.nextInt( 5 ) );
+            versioning.setSnapshot( snapshot );
+
+            final SnapshotVersion sv = new SnapshotVersion();
+            sv.setVersion( "1.0-" + snapshot.getTimestamp() + "-" + snapshot.getBuildNumber() );
+            sv.setExtension( random.nextBoolean() ? "jar" : "pom" );
+            sv.setUpdated( versioning.getLastUpdated() );
+            versioning.getSnapshotVersions().add( sv );
+        }
+
+        if ( random.nextInt( 4 ) == 0 )
+        {
+            final Plugin plugin = new Plugin();
+            plugin.setArtifactId( "plugin-" + random.nextInt( 3 ) );
+            plugin.setPrefix( "p" + random.nextInt( 3 ) );
+            plugin.setName( plugin.getArtifactId() );
+            md.addPlugin( plugin );
+        }
+
+        return md;
+    }
+
+    private static Metadata newMetadata()
+    {
+        final Metadata md = new Metadata();
+        md.setVersioning( new Versioning() );
+        return md;
+    }
+
+    private static StoreKey memberKey( final int i )
+    {
+        return new StoreKey( "maven", i % 2 == 0 ? StoreType.hosted : StoreType.remote, "member-" + i );
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.commonjava.atlas.maven.ident.util.VersionUtils;
+import org.commonjava.atlas.maven.ident.version.InvalidVersionSpecificationException;
+import org.commonjava.atlas.maven.ident.version.SingleVersion;
+import org.commonjava.indy.model.core.Group;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to merge the maven-metadata.xml of a large group, once every member's metadata has been read.
+ * <p>
+ * "completionOrder" merges each member into the group metadata one after the other with
+ * {@link MavenMetadataMerger#merge}, which is what MavenMetadataGenerator did as member fetches completed, then parses
+ * and sorts the versions the way {@link MavenMetadataMerger#sortVersions} did before {@link VersionIndex}. "groupOrder"
+ * prepares every member's {@link MetadataMergePart} on a pool, as the fetching threads now do, and merges them in group
+ * order with {@link MavenMetadataMerger#mergeInOrder}, which sorts too. Members have overlapping version ranges, like
+ * the remotes of a group proxying the same artifacts.
+ * <p>
+ * This is not run by the build. Run it with {@link #main(String[])} from the test classpath.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 1 )
+@Measurement( iterations = 3 )
+@Fork( 1 )
+public class MetadataMergeBenchmark
+{
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    @Param( { "500" } )
+    public int members;
+
+    @Param( { "5000" } )
+    public int versions;
+
+    @Param( { "8" } )
+    public int threads;
+
+    private final MavenMetadataMerger merger = new MavenMetadataMerger();
+
+    private final Group group = new Group( "maven", "public" );
+
+    private List<Metadata> memberMetadata;
+
+    private List<Metadata> sources;
+
+    private ExecutorService executor;
+
+    @Setup
+    public void setup()
+    {
+        executor = Executors.newFixedThreadPool( threads );
+        memberMetadata = new ArrayList<>( members );
+        for ( int m = 0; m < members; m++ )
+        {
+            final Metadata md = new Metadata();
+            md.setGroupId( "org.foo" );
+            md.setArtifactId( "bar" );
+
+            final Versioning versioning = new Versioning();
+            final int first = m * 20;
+            for ( int v = first; v < first + versions; v++ )
+            {
+                versioning.addVersion( ( v / 1000 ) + "." + ( v / 10 % 100 ) + "." + ( v % 10 ) );
+            }
+            versioning.setLatest( versioning.getVersions().get( versions - 1 ) );
+            versioning.setRelease( versioning.getLatest() );
+            versioning.setLastUpdated( String.format( "20230101%06d", m ) );
+            md.setVersioning( versioning );
+
+            memberMetadata.add( md );
+        }
+    }
+
+    /**
+     * Both merges may change the member metadata they are given, so each shot gets fresh copies.
+     */
+    @Setup( Level.Invocation )
+    public void copySources()
+    {
+        sources = new ArrayList<>( members );
+        memberMetadata.forEach( md -> sources.add( md.clone() ) );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int completionOrder()
+    {
+        final Metadata master = new Metadata();
+        master.setVersioning( new Versioning() );
+        for ( Metadata source : sources )
+        {
+            merger.merge( master, source, group, PATH );
+        }
+
+        final List<SingleVersion> parsed = new ArrayList<>();
+        for ( String version : master.getVersioning().getVersions() )
+        {
+            try
+            {
+                parsed.add( VersionUtils.createSingleVersion( version ) );
+            }
+            catch ( InvalidVersionSpecificationException e )
+            {
+                // left out
+            }
+        }
+        Collections.sort( parsed );
+
+        final List<String> sorted = new ArrayList<>( parsed.size() );
+        parsed.forEach( v -> sorted.add( v.renderStandard() ) );
+        master.getVersioning().setVersions( sorted );
+        return sorted.size();
+    }
+
+    @Benchmark
+    public int groupOrder()
+            throws InterruptedException, ExecutionException
+    {
+        final List<Future<MetadataMergePart>> prepared = new ArrayList<>( members );
+        for ( Metadata source : sources )
+        {
+            prepared.add( executor.submit( () -> new MetadataMergePart( source ) ) );
+        }
+
+        final List<MetadataMergePart> parts = new ArrayList<>( members );
+        for ( Future<MetadataMergePart> part : prepared )
+        {
+            parts.add( part.get() );
+        }
+
+        return merger.mergeInOrder( parts, group, PATH, executor ).getVersioning().getVersions().size();
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( MetadataMergeBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
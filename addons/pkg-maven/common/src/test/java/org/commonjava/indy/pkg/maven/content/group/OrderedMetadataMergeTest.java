@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Snapshot;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.commonjava.indy.model.core.Group;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Merging group metadata through {@link MavenMetadataMerger#mergeInOrder} must give what merging the members one after
+ * the other in group order and sorting the versions gives, whichever threads prepared and merged the parts.
+ */
+public class OrderedMetadataMergeTest
+{
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    private static final int MEMBERS = 64;
+
+    private static final int VERSIONS = 1000;
+
+    private final MavenMetadataMerger merger = new MavenMetadataMerger();
+
+    private final Group group = new Group( "maven", "public" );
+
+    private final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void parallelMergeMatchesSequentialMerge()
+    {
+        final List<Metadata> members = randomMembers( new Random( 1017 ) );
+
+        final Metadata sequential = new Metadata();
+        sequential.setVersioning( new Versioning() );
+        members.forEach( md -> merger.merge( sequential, md.clone(), group, PATH ) );
+        merger.sortVersions( sequential );
+
+        final List<MetadataMergePart> parts = new ArrayList<>();
+        members.forEach( md -> parts.add( new MetadataMergePart( md ) ) );
+        final Metadata ordered = merger.mergeInOrder( parts, group, PATH, executor );
+
+        assertSameMerge( ordered, sequential );
+    }
+
+    @Test
+    public void preparationOrderDoesNotMatter()
+            throws Exception
+    {
+        final List<Metadata> members = randomMembers( new Random( 1018 ) );
+
+        Metadata first = null;
+        for ( int round = 0; round < 5; round++ )
+        {
+            final List<Integer> order = new ArrayList<>();
+            for ( int i = 0; i < members.size(); i++ )
+            {
+                order.add( i );
+            }
+            Collections.shuffle( order, new Random( round ) );
+
+            final MetadataMergePart[] prepared = new MetadataMergePart[members.size()];
+            final List<Future<?>> futures = new ArrayList<>();
+            for ( final int i : order )
+            {
+                futures.add( executor.submit( () -> prepared[i] = new MetadataMergePart( members.get( i ) ) ) );
+            }
+            for ( final Future<?> future : futures )
+            {
+                future.get();
+            }
+
+            final List<MetadataMergePart> parts = new ArrayList<>();
+            Collections.addAll( parts, prepared );
+            final Metadata merged = merger.mergeInOrder( parts, group, PATH, executor );
+            if ( first == null )
+            {
+                first = merged;
+            }
+            else
+            {
+                assertSameMerge( merged, first );
+            }
+        }
+    }
+
+    private void assertSameMerge( final Metadata actual, final Metadata expected )
+    {
+        final Versioning av = actual.getVersioning();
+        final Versioning ev = expected.getVersioning();
+        assertThat( av.getVersions(), equalTo( ev.getVersions() ) );
+        assertThat( av.getLatest(), equalTo( ev.getLatest() ) );
+        assertThat( av.getRelease(), equalTo( ev.getRelease() ) );
+        assertThat( av.getLastUpdated(), equalTo( ev.getLastUpdated() ) );
+        assertThat( av.getSnapshot().getTimestamp(), equalTo( ev.getSnapshot().getTimestamp() ) );
+        assertThat( av.getSnapshot().getBuildNumber(), equalTo( ev.getSnapshot().getBuildNumber() ) );
+    }
+
+    private static List<Metadata> randomMembers( final Random random )
+    {
+        final List<Metadata> members = new ArrayList<>();
+        for ( int m = 0; m < MEMBERS; m++ )
+        {
+            final Metadata md = new Metadata();
+            md.setGroupId( "org.foo" );
+            md.setArtifactId( "bar" );
+
+            final Versioning versioning = new Versioning();
+            for ( int v = 0; v < VERSIONS; v++ )
+            {
+                // enough distinct versions for the merge to go parallel
+                versioning.addVersion( random.nextInt( 500 ) + "." + random.nextInt( 100 ) );
+            }
+            versioning.setLatest( versioning.getVersions().get( VERSIONS - 1 ) );
+            versioning.setRelease( versioning.getLatest() );
+            versioning.setLastUpdated( "202301" + ( 10 + random.nextInt( 20 ) ) + "000000" );
+
+            final Snapshot snapshot = new Snapshot();
+            snapshot.setTimestamp( "20230101.0000" + ( 10 + m ) );
+            snapshot.setBuildNumber( m );
+            versioning.setSnapshot( snapshot );
+
+            md.setVersioning( versioning );
+            members.add( md );
+        }
+        return members;
+    }
+}
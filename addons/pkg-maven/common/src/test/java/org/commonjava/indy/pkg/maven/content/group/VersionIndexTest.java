@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.commonjava.atlas.maven.ident.util.VersionUtils;
+import org.commonjava.atlas.maven.ident.version.InvalidVersionSpecificationException;
+import org.commonjava.atlas.maven.ident.version.SingleVersion;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class VersionIndexTest
+{
+    @Test
+    public void mergedRunsMatchSortingTheConcatenatedLists()
+    {
+        final Random random = new Random( 1018 );
+        for ( int round = 0; round < 50; round++ )
+        {
+            final List<List<String>> lists = new ArrayList<>();
+            final int count = 1 + random.nextInt( 20 );
+            for ( int i = 0; i < count; i++ )
+            {
+                lists.add( randomVersions( random, random.nextInt( 200 ), 30 ) );
+            }
+
+            final VersionIndex index = new VersionIndex();
+            lists.forEach( versions -> index.add( VersionIndex.prepare( versions ) ) );
+
+            assertThat( "round " + round, index.sorted( null ), equalTo( sortConcatenated( lists ) ) );
+        }
+    }
+
+    @Test
+    public void parallelMergeMatchesSerialMerge()
+    {
+        final Random random = new Random( 1019 );
+        final List<VersionIndex.Run> runs = new ArrayList<>();
+        final List<VersionIndex.Run> sameRuns = new ArrayList<>();
+        for ( int i = 0; i < 100; i++ )
+        {
+            final List<String> versions = randomVersions( random, 1000, 300 );
+            runs.add( VersionIndex.prepare( versions ) );
+            sameRuns.add( VersionIndex.prepare( versions ) );
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            final VersionIndex serial = new VersionIndex();
+            runs.forEach( serial::add );
+            final VersionIndex parallel = new VersionIndex();
+            sameRuns.forEach( parallel::add );
+
+            assertThat( parallel.size() >= VersionIndex.PARALLEL_MERGE_MIN_VERSIONS, equalTo( true ) );
+            assertThat( parallel.sorted( executor ), equalTo( serial.sorted( null ) ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void equalVersionsKeepTheirFirstOccurrenceOrder()
+    {
+        final VersionIndex index = new VersionIndex();
+        index.add( VersionIndex.prepare( Arrays.asList( "2.0", "1.0.0" ) ) );
+        index.add( VersionIndex.prepare( Arrays.asList( "1.0", "1.0.0", "0.9" ) ) );
+
+        assertThat( index.size(), equalTo( 4 ) );
+        assertThat( index.sorted( null ), equalTo( Arrays.asList( "0.9", "1.0.0", "1.0", "2.0" ) ) );
+    }
+
+    @Test
+    public void unparseableVersionsAreLeftOut()
+    {
+        assertThat( VersionIndex.sort( Arrays.asList( "1.1", "not.a.version", "1.0" ) ),
+                    equalTo( Arrays.asList( "1.0", "1.1" ) ) );
+    }
+
+    @Test
+    public void parsedVersionsAreCached()
+            throws Exception
+    {
+        assertThat( VersionIndex.parse( "3.14.15" ), sameInstance( VersionIndex.parse( "3.14.15" ) ) );
+    }
+
+    @Test
+    public void parsedVersionCacheKeepsRecentlyUsedVersionsWithinBounds()
+            throws Exception
+    {
+        final SingleVersion used = VersionIndex.parse( "2.71.828" );
+        for ( int i = 0; i < VersionIndex.MAX_CACHED_VERSIONS * 2; i++ )
+        {
+            VersionIndex.parse( "1." + i );
+            if ( i % 1000 == 0 )
+            {
+                assertThat( VersionIndex.parse( "2.71.828" ), sameInstance( used ) );
+            }
+        }
+
+        assertThat( VersionIndex.cachedVersionCount() <= VersionIndex.MAX_CACHED_VERSIONS, equalTo( true ) );
+        assertThat( VersionIndex.parse( "1." + ( VersionIndex.MAX_CACHED_VERSIONS * 2 - 1 ) ),
+                    sameInstance( VersionIndex.parse( "1." + ( VersionIndex.MAX_CACHED_VERSIONS * 2 - 1 ) ) ) );
+    }
+
+    /**
+     * What MavenMetadataMerger did before: merge the lists with contains(), then parse and sort.
+     */
+    private static List<String> sortConcatenated( final List<List<String>> lists )
+    {
+        final List<String> merged = new ArrayList<>();
+        lists.forEach( versions -> versions.forEach( v -> {
+            if ( !merged.contains( v ) )
+            {
+                merged.add( v );
+            }
+        } ) );
+
+        final List<SingleVersion> parsed = new ArrayList<>();
+        for ( String version : merged )
+        {
+            try
+            {
+                parsed.add( VersionUtils.createSingleVersion( version ) );
+            }
+            catch ( InvalidVersionSpecificationException e )
+            {
+                // left out
+            }
+        }
+        Collections.sort( parsed );
+
+        final List<String> sorted = new ArrayList<>();
+        parsed.forEach( v -> sorted.add( v.renderStandard() ) );
+        return sorted;
+    }
+
+    private static List<String> randomVersions( final Random random, final int count, final int bound )
+    {
+        final List<String> versions = new ArrayList<>();
+        for ( int i = 0; i < count; i++ )
+        {
+            final StringBuilder sb = new StringBuilder();
+            sb.append( random.nextInt( bound ) ).append( '.' ).append( random.nextInt( bound ) );
+            if ( random.nextInt( 5 ) == 0 )
+            {
+                // compares equal to the version without it
+                sb.append( ".0" );
+            }
+            if ( random.nextInt( 8 ) == 0 )
+            {
+                sb.append( "-SNAPSHOT" );
+            }
+            versions.add( sb.toString() );
+        }
+
+        if ( random.nextInt( 4 ) == 0 )
+        {
+            versions.add( "bad-version-" + random.nextInt( 3 ) );
+        }
+        return versions;
+    }
+}
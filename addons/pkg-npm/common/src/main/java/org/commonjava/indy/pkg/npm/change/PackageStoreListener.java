@@ -43,6 +43,7 @@ import java.io.IOException;
 import java.util.Set;
 
 import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.commonjava.indy.pkg.npm.content.AbbreviatedPackageMetadataGenerator.NPM_ABBREVIATED_METADATA_SUFFIX;
 import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 import static org.commonjava.indy.util.LocationUtils.getKey;
@@ -147,7 +148,8 @@ public class PackageStoreListener
             logger.info( "Updating merged package metadata file: {} in store: {}", path, store );
 
             final Transfer[] toDelete = { fileManager.getStorageReference( store, path ),
-                            fileManager.getStorageReference( store, path + GroupMergeHelper.MERGEINFO_SUFFIX ) };
+                            fileManager.getStorageReference( store, path + GroupMergeHelper.MERGEINFO_SUFFIX ),
+                            fileManager.getStorageReference( store, path + NPM_ABBREVIATED_METADATA_SUFFIX ) };
 
             for ( final Transfer item : toDelete )
             {
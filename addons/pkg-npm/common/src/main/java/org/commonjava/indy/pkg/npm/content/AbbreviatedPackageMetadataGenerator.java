@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.commonjava.cdi.util.weft.Locker;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates the abbreviated ("corgi") form of a package.json, which npm clients ask for with the
+ * {@value #NPM_ABBREVIATED_METADATA_CONTENT_TYPE} media type. It keeps the package name, dist-tags and modified time,
+ * and only the fields of each version needed to install it.
+ * <p>
+ * It is generated once from a hosted, remote or merged package.json, and cached next to it with the
+ * {@value #NPM_ABBREVIATED_METADATA_SUFFIX} suffix. It is deleted along with the package.json, and regenerated if it
+ * is older than the package.json.
+ */
+@ApplicationScoped
+public class AbbreviatedPackageMetadataGenerator
+{
+    public static final String NPM_ABBREVIATED_METADATA_CONTENT_TYPE = "application/vnd.npm.install-v1+json";
+
+    public static final String NPM_ABBREVIATED_METADATA_SUFFIX = ".corgi";
+
+    private static final String NAME = "name";
+
+    private static final String DIST_TAGS = "dist-tags";
+
+    private static final String TIME = "time";
+
+    private static final String MODIFIED = "modified";
+
+    private static final String VERSIONS = "versions";
+
+    private static final Set<String> VERSION_FIELDS = new HashSet<>(
+            Arrays.asList( "name", "version", "deprecated", "dependencies", "optionalDependencies",
+                           "devDependencies", "bundleDependencies", "bundledDependencies", "peerDependencies",
+                           "peerDependenciesMeta", "bin", "directories", "dist", "engines", "os", "cpu",
+                           "_hasShrinkwrap", "hasInstallScript" ) );
+
+    private static final int THREAD_WAITING_TIME_SECONDS = 240;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Locker<String> generatorLocks = new Locker<>();
+
+    @Inject
+    private IndyObjectMapper mapper;
+
+    protected AbbreviatedPackageMetadataGenerator()
+    {
+    }
+
+    public AbbreviatedPackageMetadataGenerator( final IndyObjectMapper mapper )
+    {
+        this.mapper = mapper;
+    }
+
+    /**
+     * @return the abbreviated package metadata cached next to the given package.json, generating it first if it is
+     * missing or older than the package.json
+     */
+    public Transfer getAbbreviated( final Transfer packageMetadata )
+            throws IndyWorkflowException
+    {
+        final Transfer abbreviated = packageMetadata.getSiblingMeta( NPM_ABBREVIATED_METADATA_SUFFIX );
+        if ( abbreviated == null )
+        {
+            return null;
+        }
+
+        if ( isCurrent( abbreviated, packageMetadata ) )
+        {
+            logger.trace( "Abbreviated package metadata: {} is current.", abbreviated );
+            return abbreviated;
+        }
+
+        AtomicReference<IndyWorkflowException> wfEx = new AtomicReference<>();
+        generatorLocks.ifUnlocked( abbreviated.getResource().toString(), p -> {
+            if ( isCurrent( abbreviated, packageMetadata ) )
+            {
+                return true;
+            }
+
+            logger.debug( "Generating abbreviated package metadata: {}", abbreviated );
+            final ByteArrayOutputStream generated = new ByteArrayOutputStream();
+            try (InputStream in = packageMetadata.openInputStream( false ))
+            {
+                abbreviate( in, generated );
+            }
+            catch ( final IOException e )
+            {
+                wfEx.set( new IndyWorkflowException( "Failed to read package metadata: {}.\nError: {}", e,
+                                                     packageMetadata, e.getMessage() ) );
+                return false;
+            }
+
+            try (OutputStream out = abbreviated.openOutputStream( TransferOperation.GENERATE, false ))
+            {
+                generated.writeTo( out );
+            }
+            catch ( final IOException e )
+            {
+                wfEx.set( new IndyWorkflowException( "Failed to write abbreviated package metadata to: {}.\nError: {}",
+                                                     e, abbreviated, e.getMessage() ) );
+                return false;
+            }
+
+            return true;
+        }, ( p, generatorLock ) -> {
+            logger.info(
+                    "The abbreviated package metadata generation is still in process by another thread for {}, so block current thread to wait for result",
+                    abbreviated );
+
+            return generatorLocks.waitForLock( THREAD_WAITING_TIME_SECONDS, generatorLock );
+        } );
+
+        IndyWorkflowException ex = wfEx.get();
+        if ( ex != null )
+        {
+            throw ex;
+        }
+
+        return abbreviated.exists() ? abbreviated : null;
+    }
+
+    /**
+     * Streams a package.json into its abbreviated form.
+     */
+    public void abbreviate( final InputStream packageMetadata, final OutputStream out )
+            throws IOException
+    {
+        try (JsonParser parser = mapper.getFactory().createParser( packageMetadata );
+             JsonGenerator generator = mapper.getFactory().createGenerator( out ))
+        {
+            if ( parser.nextToken() != JsonToken.START_OBJECT )
+            {
+                throw new JsonParseException( parser, "Package metadata is not a JSON object" );
+            }
+
+            generator.writeStartObject();
+            while ( parser.nextToken() == JsonToken.FIELD_NAME )
+            {
+                final String field = parser.currentName();
+                final JsonToken value = parser.nextToken();
+                if ( NAME.equals( field ) || DIST_TAGS.equals( field ) )
+                {
+                    generator.writeFieldName( field );
+                    generator.copyCurrentStructure( parser );
+                }
+                else if ( TIME.equals( field ) && value == JsonToken.START_OBJECT )
+                {
+                    copyModified( parser, generator );
+                }
+                else if ( VERSIONS.equals( field ) && value == JsonToken.START_OBJECT )
+                {
+                    generator.writeObjectFieldStart( VERSIONS );
+                    while ( parser.nextToken() == JsonToken.FIELD_NAME )
+                    {
+                        generator.writeFieldName( parser.currentName() );
+                        if ( parser.nextToken() == JsonToken.START_OBJECT )
+                        {
+                            copyVersion( parser, generator );
+                        }
+                        else
+                        {
+                            generator.copyCurrentStructure( parser );
+                        }
+                    }
+                    generator.writeEndObject();
+                }
+                else
+                {
+                    parser.skipChildren();
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private void copyModified( final JsonParser parser, final JsonGenerator generator )
+            throws IOException
+    {
+        while ( parser.nextToken() == JsonToken.FIELD_NAME )
+        {
+            final String key = parser.currentName();
+            if ( parser.nextToken() == JsonToken.VALUE_STRING && MODIFIED.equals( key ) )
+            {
+                generator.writeStringField( MODIFIED, parser.getText() );
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void copyVersion( final JsonParser parser, final JsonGenerator generator )
+            throws IOException
+    {
+        generator.writeStartObject();
+        while ( parser.nextToken() == JsonToken.FIELD_NAME )
+        {
+            final String field = parser.currentName();
+            parser.nextToken();
+            if ( VERSION_FIELDS.contains( field ) )
+            {
+                generator.writeFieldName( field );
+                generator.copyCurrentStructure( parser );
+            }
+            else
+            {
+                parser.skipChildren();
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private boolean isCurrent( final Transfer abbreviated, final Transfer packageMetadata )
+    {
+        return abbreviated.exists() && abbreviated.lastModified() >= packageMetadata.lastModified();
+    }
+}
@@ -71,12 +71,7 @@ public class DecoratorUtils
 
             int nextQuote = raw.indexOf( "\"", quote + 1 );
 
-            String url = raw.substring( quote + 1, nextQuote );
-            String path = getPath( url );
-            if ( path != null )
-            {
-                url = UrlUtils.buildUrl( contextURL, path );
-            }
+            String url = maskTarballUrl( raw.substring( quote + 1, nextQuote ), contextURL );
             final String value = "\"" + url + "\"";
             sb.append( value );
             raw = raw.substring( nextQuote + 1 );
@@ -85,6 +80,22 @@ public class DecoratorUtils
         return sb.toString();
     }
 
+    /**
+     * Replace a tarball url with the context url, e.g., "https://registry.npmjs.org/jquery/-/jquery-1.5.1.tgz" to
+     * "http://${indy}/api/content/npm/remote/test/jquery/-/jquery-1.5.1.tgz". Urls that can't be parsed are returned
+     * as they are.
+     */
+    public static String maskTarballUrl( String url, String contextURL )
+            throws MalformedURLException
+    {
+        String path = getPath( url );
+        if ( path != null )
+        {
+            return UrlUtils.buildUrl( contextURL, path );
+        }
+        return url;
+    }
+
     private static String getPath( String url )
     {
         URL url1;
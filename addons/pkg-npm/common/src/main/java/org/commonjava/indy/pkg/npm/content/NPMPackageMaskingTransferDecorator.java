@@ -21,21 +21,18 @@ import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.io.AbstractTransferDecorator;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
-import org.commonjava.maven.galley.util.IdempotentCloseInputStream;
 import org.commonjava.maven.galley.util.UrlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.commonjava.indy.content.ContentManager.ENTRY_POINT_BASE_URI;
 import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
-import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.updatePackageJson;
+import static org.commonjava.indy.pkg.npm.content.AbbreviatedPackageMetadataGenerator.NPM_ABBREVIATED_METADATA_SUFFIX;
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
@@ -67,7 +64,9 @@ public class NPMPackageMaskingTransferDecorator
 
         logger.debug( "Masking decorator decorateRead, transfer: {}", transfer );
 
-        if ( !( transfer.getFullPath().endsWith( NPM_METADATA_NAME ) ) )
+        final String fullPath = transfer.getFullPath();
+        if ( !fullPath.endsWith( NPM_METADATA_NAME )
+                        && !fullPath.endsWith( NPM_METADATA_NAME + NPM_ABBREVIATED_METADATA_SUFFIX ) )
         {
             return stream;
         }
@@ -84,91 +83,4 @@ public class NPMPackageMaskingTransferDecorator
         logger.debug( "Use contextURL: {}", contextURL );
         return new PackageMaskingInputStream( stream, contextURL );
     }
-
-    private static class PackageMaskingInputStream
-            extends IdempotentCloseInputStream
-    {
-        final Logger logger = LoggerFactory.getLogger( this.getClass() );
-
-        int position;
-
-        private String contextURL;
-
-        private byte[] bytes;
-
-        boolean masked;
-
-        private static final int SIZE = 1024;
-
-        private PackageMaskingInputStream( final InputStream stream, final String contextURL )
-        {
-            super( stream );
-            this.contextURL = contextURL;
-        }
-
-        @Override
-        public synchronized int read() throws IOException
-        {
-            if ( !masked )
-            {
-                mask( contextURL );
-            }
-            if ( position < bytes.length )
-            {
-                return bytes[position++];
-            }
-            return -1;
-        }
-
-        @Override
-        public synchronized int read( byte[] b, int off, int len ) throws IOException
-        {
-            if ( !masked )
-            {
-                mask( contextURL );
-            }
-            if ( position >= bytes.length )
-            {
-                return -1;
-            }
-            int read = 0;
-            for ( int i = 0; i < len; i++ )
-            {
-                if ( position < bytes.length )
-                {
-                    b[off + i] = bytes[position++];
-                    read++;
-                }
-                else
-                {
-                    break;
-                }
-            }
-            return read;
-        }
-
-        private void mask( String contextURL ) throws IOException
-        {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            int read;
-            {
-                byte[] buffer = new byte[SIZE];
-                while ( ( read = super.read(buffer, 0, buffer.length) ) >= 0 )
-                {
-                    bos.write( buffer, 0, read );
-                }
-            }
-            byte[] rawBytes = bos.toByteArray();
-            String raw = new String( rawBytes, UTF_8 );
-
-            logger.trace( "Mask for raw:\n{}", raw );
-
-            String s = updatePackageJson( raw, contextURL );
-
-            logger.trace( "Masked:\n{}", s );
-            bytes = s.getBytes();
-            masked = true;
-        }
-    }
-
 }
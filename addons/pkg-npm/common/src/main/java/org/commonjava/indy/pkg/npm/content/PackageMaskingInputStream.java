@@ -0,0 +1,356 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.commonjava.maven.galley.util.IdempotentCloseInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.maskTarballUrl;
+
+/**
+ * Replaces the dist.tarball urls of a package.json with context urls (see {@link DecoratorUtils#maskTarballUrl}) while
+ * it is read.
+ * <p>
+ * The content is tokenized with a Jackson streaming parser, but not re-generated: the bytes the parser consumes are
+ * kept until it has moved past them, then copied out as they are, so the formatting of the document is unchanged and
+ * only the tarball values are rewritten. At most the parser's read-ahead plus the current token is held in memory. If
+ * the content turns out not to be valid JSON, the rest of it is passed through untouched.
+ */
+class PackageMaskingInputStream
+        extends IdempotentCloseInputStream
+{
+    private static final String DIST = "dist";
+
+    private static final String TARBALL = "tarball";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final JsonFactory JSON_FACTORY =
+            new JsonFactory().disable( JsonParser.Feature.AUTO_CLOSE_SOURCE );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final String contextURL;
+
+    private JsonParser parser;
+
+    /* bytes read by the parser and not copied out yet are window[windowPos, windowEnd); windowOffset is the offset of
+     * window[windowPos] in the original content */
+    private byte[] window = new byte[BUFFER_SIZE * 2];
+
+    private int windowPos;
+
+    private int windowEnd;
+
+    private long windowOffset;
+
+    /* content ready to be read is out[outPos, outEnd) */
+    private byte[] out = new byte[BUFFER_SIZE];
+
+    private int outPos;
+
+    private int outEnd;
+
+    private boolean passThrough;
+
+    private boolean done;
+
+    PackageMaskingInputStream( final InputStream stream, final String contextURL )
+    {
+        super( stream );
+        this.contextURL = contextURL;
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        if ( outPos == outEnd && !fill() )
+        {
+            return -1;
+        }
+        return out[outPos++] & 0xff;
+    }
+
+    @Override
+    public int read( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        if ( len == 0 )
+        {
+            return 0;
+        }
+        if ( outPos == outEnd && !fill() )
+        {
+            return -1;
+        }
+
+        final int read = Math.min( len, outEnd - outPos );
+        System.arraycopy( out, outPos, b, off, read );
+        outPos += read;
+        return read;
+    }
+
+    @Override
+    public long skip( final long n )
+            throws IOException
+    {
+        long skipped = 0;
+        while ( skipped < n && ( outPos < outEnd || fill() ) )
+        {
+            final int step = (int) Math.min( n - skipped, outEnd - outPos );
+            outPos += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available()
+    {
+        return outEnd - outPos;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        try
+        {
+            if ( parser != null )
+            {
+                parser.close();
+            }
+        }
+        finally
+        {
+            super.close();
+        }
+    }
+
+    /**
+     * Advance the parser until some content is ready to be read.
+     *
+     * @return false at the end of the content
+     */
+    private boolean fill()
+            throws IOException
+    {
+        outPos = 0;
+        outEnd = 0;
+        while ( outEnd == 0 && !done )
+        {
+            if ( passThrough )
+            {
+                passThrough();
+            }
+            else
+            {
+                nextToken();
+            }
+        }
+        return outEnd > 0;
+    }
+
+    private void nextToken()
+            throws IOException
+    {
+        if ( parser == null )
+        {
+            parser = JSON_FACTORY.createParser( new RecordingInputStream() );
+        }
+
+        final JsonToken token;
+        try
+        {
+            token = parser.nextToken();
+        }
+        catch ( JsonProcessingException e )
+        {
+            logger.warn( "Failed to parse package.json, will not mask the rest of it. Reason: {}", e.getMessage() );
+            passThrough = true;
+            return;
+        }
+
+        if ( token == null )
+        {
+            copyWindow( windowEnd - windowPos );
+            done = true;
+        }
+        else if ( token == JsonToken.VALUE_STRING && isDistTarball( parser.getParsingContext() ) )
+        {
+            final long start = parser.currentTokenLocation().getByteOffset();
+            final String url = parser.getText();
+            final long end = parser.currentLocation().getByteOffset();
+            if ( start < windowOffset || end < start )
+            {
+                passThrough = true;
+                return;
+            }
+
+            copyWindow( (int) ( start - windowOffset ) );
+            final String masked = maskTarballUrl( url, contextURL );
+            logger.trace( "Masked tarball url: {} to: {}", url, masked );
+            emit( '"' );
+            final byte[] value = JsonStringEncoder.getInstance().quoteAsUTF8( masked );
+            emit( value, 0, value.length );
+            emit( '"' );
+            dropWindow( (int) ( end - windowOffset ) );
+        }
+        else if ( windowEnd - windowPos >= BUFFER_SIZE )
+        {
+            // the parser may have read past the end of the token (e.g. past the colon after a field name), so only
+            // copy out what comes before it
+            final long start = parser.currentTokenLocation().getByteOffset();
+            if ( start < windowOffset )
+            {
+                passThrough = true;
+                return;
+            }
+            copyWindow( (int) ( start - windowOffset ) );
+        }
+    }
+
+    /**
+     * Copy out whatever the parser had read, then the rest of the original content as it is.
+     */
+    private void passThrough()
+            throws IOException
+    {
+        if ( windowPos < windowEnd )
+        {
+            copyWindow( windowEnd - windowPos );
+            return;
+        }
+
+        ensureOutCapacity( BUFFER_SIZE );
+        final int read = in.read( out, outEnd, BUFFER_SIZE );
+        if ( read < 0 )
+        {
+            done = true;
+        }
+        else
+        {
+            outEnd += read;
+        }
+    }
+
+    private static boolean isDistTarball( final JsonStreamContext context )
+    {
+        return context.inObject() && TARBALL.equals( context.getCurrentName() ) && context.getParent() != null
+                && DIST.equals( context.getParent().getCurrentName() );
+    }
+
+    private void copyWindow( final int count )
+    {
+        emit( window, windowPos, count );
+        dropWindow( count );
+    }
+
+    private void dropWindow( final int count )
+    {
+        windowPos += count;
+        windowOffset += count;
+    }
+
+    private void emit( final int b )
+    {
+        ensureOutCapacity( 1 );
+        out[outEnd++] = (byte) b;
+    }
+
+    private void emit( final byte[] b, final int off, final int len )
+    {
+        ensureOutCapacity( len );
+        System.arraycopy( b, off, out, outEnd, len );
+        outEnd += len;
+    }
+
+    private void ensureOutCapacity( final int len )
+    {
+        if ( outEnd + len > out.length )
+        {
+            final byte[] grown = new byte[Math.max( out.length * 2, outEnd + len )];
+            System.arraycopy( out, 0, grown, 0, outEnd );
+            out = grown;
+        }
+    }
+
+    /**
+     * What the parser reads from. Everything it reads is also appended to the window, until it is copied out.
+     */
+    private final class RecordingInputStream
+            extends InputStream
+    {
+        @Override
+        public int read()
+                throws IOException
+        {
+            final byte[] single = new byte[1];
+            return read( single, 0, 1 ) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+                throws IOException
+        {
+            final int read = in.read( b, off, len );
+            if ( read > 0 )
+            {
+                record( b, off, read );
+            }
+            return read;
+        }
+
+        private void record( final byte[] b, final int off, final int len )
+        {
+            if ( windowEnd + len > window.length )
+            {
+                final int kept = windowEnd - windowPos;
+                if ( kept + len > window.length )
+                {
+                    final byte[] grown = new byte[Math.max( window.length * 2, kept + len )];
+                    System.arraycopy( window, windowPos, grown, 0, kept );
+                    window = grown;
+                }
+                else
+                {
+                    System.arraycopy( window, windowPos, window, 0, kept );
+                }
+                windowPos = 0;
+                windowEnd = kept;
+            }
+            System.arraycopy( b, off, window, windowEnd, len );
+            windowEnd += len;
+        }
+    }
+}
@@ -18,6 +18,11 @@ package org.commonjava.indy.pkg.npm.content;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.commonjava.cdi.util.weft.DrainingExecutorCompletionService;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.Locker;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.DirectContentAccess;
 import org.commonjava.indy.content.DownloadManager;
@@ -55,10 +60,14 @@ import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
+import static org.commonjava.indy.core.ctl.PoolUtils.detectOverloadVoid;
 import static org.commonjava.indy.data.StoreDataManager.IGNORE_READONLY;
+import static org.commonjava.indy.pkg.npm.content.AbbreviatedPackageMetadataGenerator.NPM_ABBREVIATED_METADATA_SUFFIX;
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 import static org.commonjava.maven.galley.util.PathUtils.normalize;
 import static org.commonjava.maven.galley.util.PathUtils.parentPath;
@@ -82,6 +91,15 @@ public class PackageMetadataGenerator
     @Inject
     private DownloadManager downloadManager;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named="npm-metadata-generator", threads=50, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE, maxLoadFactor = 10000 )
+    private WeftExecutorService npmMDGeneratorService;
+
+    private final Locker<String> mergerLocks = new Locker<>();
+
+    private static final int THREAD_WAITING_TIME_SECONDS = 240;
+
     protected PackageMetadataGenerator()
     {
     }
@@ -92,6 +110,7 @@ public class PackageMetadataGenerator
                                      final GroupMergeHelper mergeHelper, final NotFoundCache nfc,
                                      final PathGenerator pathGenerator,
                                      final NPMStoragePathCalculator storagePathCalculator,
+                                     final WeftExecutorService npmMDGeneratorService,
                                      final MergedContentAction... mergedContentActions )
     {
         super( fileManager, storeManager, mergeHelper, nfc, mergedContentActions );
@@ -100,6 +119,7 @@ public class PackageMetadataGenerator
         this.pathGenerator = pathGenerator;
         this.merger = merger;
         this.storagePathCalculator = storagePathCalculator;
+        this.npmMDGeneratorService = npmMDGeneratorService;
     }
 
     @Override
@@ -134,48 +154,55 @@ public class PackageMetadataGenerator
                 toMergePath = normalize( normalize( parentPath( toMergePath ) ), NPM_METADATA_NAME );
             }
 
-            final List<Transfer> sources = new ArrayList<>(  );
-
-            for ( ArtifactStore member : members )
-            {
-
-                logger.debug( "Retrieve raw file from the member store: {}", member );
-                final Transfer source = fileManager.retrieveRaw( member, toMergePath, eventMetadata );
-                if ( source == null )
+            AtomicReference<IndyWorkflowException> wfEx = new AtomicReference<>();
+            final String mergePath = toMergePath;
+            mergerLocks.ifUnlocked( computeKey( group, toMergePath ), p -> {
+                try
                 {
-                    // Skip to generate for remote, it does not support to get the tgz list from remote registry
-                    // and will report the MethodNotAllowedError and then get the remote repo disabled.
-                    if ( StoreType.remote == member.getKey().getType() )
+                    if ( exists( target ) )
                     {
-                        continue;
+                        logger.debug( "Merged metadata file: {} was generated by another thread.", target );
+                        return true;
                     }
-                    logger.debug( "Package metadata missing in store: {}, try to generate.", member );
-                    final Transfer generated = generateFileContent( member, toMergePath, eventMetadata );
-                    if ( generated != null )
+
+                    final List<Transfer> sources = retrieveMemberMetadata( members, mergePath, eventMetadata );
+
+                    final byte[] merged = merger.merge( sources, group, mergePath );
+                    if ( merged != null )
                     {
-                        sources.add( generated );
+                        try (OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true,
+                                                                         eventMetadata ))
+                        {
+                            fos.write( merged );
+                        }
+                        catch ( final IOException e )
+                        {
+                            throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}", e,
+                                                             target, e.getMessage() );
+                        }
+
+                        helper.writeMergeInfo( helper.generateMergeInfo( sources ), group, mergePath );
                     }
                 }
-                else
+                catch ( IndyWorkflowException e )
                 {
-                    sources.add( source );
+                    wfEx.set( e );
+                    return false;
                 }
-            }
 
-            final byte[] merged = merger.merge( sources, group, toMergePath );
-            if ( merged != null )
-            {
-                try (OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true, eventMetadata ))
-                {
-                    fos.write( merged );
-                }
-                catch ( final IOException e )
-                {
-                    throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}", e, target,
-                                                     e.getMessage() );
-                }
+                return true;
+            }, ( p, mergerLock ) -> {
+                logger.info(
+                        "The package metadata generation is still in process by another thread for the metadata file for this path {} in group {}, so block current thread to wait for result",
+                        mergePath, group );
+
+                return mergerLocks.waitForLock( THREAD_WAITING_TIME_SECONDS, mergerLock );
+            } );
 
-                helper.writeMergeInfo( helper.generateMergeInfo( sources ), group, toMergePath );
+            IndyWorkflowException ex = wfEx.get();
+            if ( ex != null )
+            {
+                throw ex;
             }
         }
 
@@ -187,6 +214,90 @@ public class PackageMetadataGenerator
         return null;
     }
 
+    /**
+     * Retrieves the package metadata of the members in parallel, keeping them in member order, as the first member
+     * providing a version wins in the merge.
+     */
+    private List<Transfer> retrieveMemberMetadata( final List<ArtifactStore> members, final String toMergePath,
+                                                   final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        final Transfer[] retrieved = new Transfer[members.size()];
+
+        DrainingExecutorCompletionService<Void> svc =
+                new DrainingExecutorCompletionService<>( npmMDGeneratorService );
+
+        detectOverloadVoid( () -> {
+            for ( int i = 0; i < members.size(); i++ )
+            {
+                final int idx = i;
+                // the retrievals may set metadata, so each gets its own copy of the request's
+                final EventMetadata memberMetadata = new EventMetadata( eventMetadata );
+                svc.submit( () -> {
+                    retrieved[idx] = retrieveFromMember( members.get( idx ), toMergePath, memberMetadata );
+                    return null;
+                } );
+            }
+        } );
+
+        try
+        {
+            svc.drain( v -> {
+            } );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyWorkflowException( "Interrupted while retrieving member package metadata: {}", e,
+                                             toMergePath );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof IndyWorkflowException )
+            {
+                throw (IndyWorkflowException) e.getCause();
+            }
+            throw new IndyWorkflowException( "Failed to retrieve member package metadata: {}", e.getCause(),
+                                             toMergePath );
+        }
+
+        final List<Transfer> sources = new ArrayList<>( members.size() );
+        for ( Transfer source : retrieved )
+        {
+            if ( source != null )
+            {
+                sources.add( source );
+            }
+        }
+        return sources;
+    }
+
+    private Transfer retrieveFromMember( final ArtifactStore member, final String toMergePath,
+                                         final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        logger.debug( "Retrieve raw file from the member store: {}", member );
+        final Transfer source = fileManager.retrieveRaw( member, toMergePath, eventMetadata );
+        if ( source != null )
+        {
+            return source;
+        }
+
+        // Skip to generate for remote, it does not support to get the tgz list from remote registry
+        // and will report the MethodNotAllowedError and then get the remote repo disabled.
+        if ( StoreType.remote == member.getKey().getType() )
+        {
+            return null;
+        }
+        logger.debug( "Package metadata missing in store: {}, try to generate.", member );
+        return generateFileContent( member, toMergePath, eventMetadata );
+    }
+
+    private String computeKey( final Group group, final String path )
+    {
+        return group.getKey().toString() + "-" + path;
+    }
+
     @Override
     public Transfer generateFileContent( final ArtifactStore store, final String path, final EventMetadata eventMetadata )
                     throws IndyWorkflowException
@@ -407,6 +518,55 @@ public class PackageMetadataGenerator
 
     }
 
+    @Override
+    public void handleContentDeletion( final ArtifactStore store, final String path,
+                                       final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        super.handleContentDeletion( store, path, eventMetadata );
+        if ( path.endsWith( NPM_METADATA_NAME ) )
+        {
+            clearAbbreviated( store, path );
+        }
+    }
+
+    @Override
+    public void handleContentStorage( final ArtifactStore store, final String path, final Transfer result,
+                                      final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        super.handleContentStorage( store, path, result, eventMetadata );
+        if ( path.endsWith( NPM_METADATA_NAME ) )
+        {
+            clearAbbreviated( store, path );
+        }
+    }
+
+    @Override
+    protected void clearMergedFile( final Group group, final String path )
+    {
+        super.clearMergedFile( group, path );
+        clearAbbreviated( group, path );
+    }
+
+    private void clearAbbreviated( final ArtifactStore store, final String path )
+    {
+        try
+        {
+            final Transfer abbreviated = fileManager.getTransfer( store, path + NPM_ABBREVIATED_METADATA_SUFFIX );
+            if ( exists( abbreviated ) )
+            {
+                logger.debug( "Deleting abbreviated package metadata: {}", abbreviated );
+                abbreviated.delete( false );
+            }
+        }
+        catch ( final IndyWorkflowException | IOException e )
+        {
+            logger.error( "Failed to delete abbreviated package metadata: {}/{}. Error: {}", store.getKey(),
+                          path + NPM_ABBREVIATED_METADATA_SUFFIX, e.getMessage() );
+        }
+    }
+
     private boolean exists( final Transfer transfer )
     {
         return transfer != null && transfer.exists();
@@ -15,13 +15,18 @@
  */
 package org.commonjava.indy.pkg.npm.content.group;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import org.apache.commons.io.IOUtils;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.pkg.npm.model.PackageMetadata;
+import org.commonjava.indy.pkg.npm.model.VersionMetadata;
 import org.commonjava.indy.pkg.npm.model.io.PackageSerializerModule;
 import org.commonjava.maven.galley.model.Transfer;
 import org.slf4j.Logger;
@@ -35,9 +40,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import static org.apache.commons.io.IOUtils.closeQuietly;
 import static org.commonjava.indy.util.LocationUtils.getKey;
 
 @ApplicationScoped
@@ -55,6 +61,8 @@ public class PackageMetadataMerger
 
     private List<PackageMetadataProvider> metadataProviders;
 
+    private static final String VERSIONS = "versions";
+
     public PackageMetadataMerger()
     {
     }
@@ -84,8 +92,6 @@ public class PackageMetadataMerger
         Logger logger = LoggerFactory.getLogger( getClass() );
         logger.debug( "Generating merged metadata in: {}:{}", group.getKey(), path );
 
-        InputStream stream = null;
-
         boolean merged = false;
 
         final PackageMetadata packageMetadata = new PackageMetadata();
@@ -97,15 +103,11 @@ public class PackageMetadataMerger
                 continue;
             }
 
-            try
+            try (InputStream stream = src.openInputStream())
             {
-                stream = src.openInputStream();
-                String content = IOUtils.toString( stream );
-                logger.debug( "Adding in metadata content from: {}\n\n{}\n\n", src, content );
+                logger.debug( "Adding in metadata content from: {}", src );
 
-                PackageMetadata md = mapper.readValue( content, PackageMetadata.class );
-
-                merged = packageMetadata.merge( md, true ) || merged;
+                merged = mergeFrom( stream, packageMetadata, true ) || merged;
             }
             catch ( final IOException e )
             {
@@ -113,10 +115,6 @@ public class PackageMetadataMerger
                 logger.error( String.format( "Cannot read metadata: %s from artifact-store: %s. Reason: %s",
                                              src.getPath(), key, e.getMessage() ), e );
             }
-            finally
-            {
-                closeQuietly( stream );
-            }
         }
 
         if ( metadataProviders != null )
@@ -142,20 +140,15 @@ public class PackageMetadataMerger
         if ( merged )
         {
 
-            String output = null;
             try
             {
-                output = mapper.writeValueAsString( packageMetadata );
+                return mapper.writeValueAsBytes( packageMetadata );
             }
             catch ( JsonProcessingException e )
             {
                 logger.error( String.format( "Cannot convert from metadata: %s to String. Reason: %s", packageMetadata,
                                              e.getMessage() ), e );
             }
-            if ( output != null )
-            {
-                return output.getBytes();
-            }
         }
 
         return null;
@@ -166,8 +159,6 @@ public class PackageMetadataMerger
         Logger logger = LoggerFactory.getLogger( getClass() );
         logger.debug( "[NPM] Generating merged metadata when publish" );
 
-        InputStream stream = null;
-
         final PackageMetadata packageMetadata = new PackageMetadata();
 
         for ( final Transfer src : sources )
@@ -177,15 +168,11 @@ public class PackageMetadataMerger
                 continue;
             }
 
-            try
+            try (InputStream stream = src.openInputStream())
             {
-                stream = src.openInputStream();
-                String content = IOUtils.toString( stream );
-                logger.debug( "[NPM] Adding in metadata content from: {}\n\n{}\n\n", src, content );
-
-                PackageMetadata md = mapper.readValue( content, PackageMetadata.class );
+                logger.debug( "[NPM] Adding in metadata content from: {}", src );
 
-                packageMetadata.merge( md, false );
+                mergeFrom( stream, packageMetadata, false );
             }
             catch ( final IOException e )
             {
@@ -193,10 +180,6 @@ public class PackageMetadataMerger
                 logger.error( String.format( "[NPM] Cannot read metadata: %s from artifact-store: %s. Reason: %s",
                                              src.getPath(), key, e.getMessage() ), e );
             }
-            finally
-            {
-                closeQuietly( stream );
-            }
         }
 
         String output = null;
@@ -219,4 +202,64 @@ public class PackageMetadataMerger
         return null;
     }
 
+    /**
+     * Streams a packument into the one being merged. Version entries are bound one at a time, and in group merging the
+     * ones already in the merged versions map are skipped without being bound. The remaining fields are buffered as
+     * tokens and merged through {@link PackageMetadata#merge(PackageMetadata, boolean)}. Nothing is merged from a
+     * packument that fails to parse.
+     */
+    private boolean mergeFrom( final InputStream stream, final PackageMetadata packageMetadata,
+                               final boolean isForGroup )
+            throws IOException
+    {
+        try (JsonParser parser = mapper.getFactory().createParser( stream ))
+        {
+            if ( parser.nextToken() != JsonToken.START_OBJECT )
+            {
+                throw new JsonParseException( parser, "Package metadata is not a JSON object" );
+            }
+
+            final Map<String, VersionMetadata> versions = packageMetadata.getVersions();
+            final Map<String, VersionMetadata> added = new LinkedHashMap<>();
+            final TokenBuffer others = new TokenBuffer( parser );
+            others.writeStartObject();
+            while ( parser.nextToken() == JsonToken.FIELD_NAME )
+            {
+                final String field = parser.currentName();
+                if ( parser.nextToken() == JsonToken.START_OBJECT && VERSIONS.equals( field ) )
+                {
+                    while ( parser.nextToken() == JsonToken.FIELD_NAME )
+                    {
+                        final String version = parser.currentName();
+                        parser.nextToken();
+                        if ( isForGroup && versions.containsKey( version ) )
+                        {
+                            parser.skipChildren();
+                        }
+                        else
+                        {
+                            added.put( version, mapper.readValue( parser, VersionMetadata.class ) );
+                        }
+                    }
+                }
+                else
+                {
+                    others.writeFieldName( field );
+                    others.copyCurrentStructure( parser );
+                }
+            }
+            others.writeEndObject();
+
+            final PackageMetadata md;
+            try (JsonParser othersParser = others.asParser())
+            {
+                md = mapper.readValue( othersParser, PackageMetadata.class );
+            }
+
+            final boolean changed = packageMetadata.merge( md, isForGroup );
+            versions.putAll( added );
+            return changed || !added.isEmpty();
+        }
+    }
+
 }
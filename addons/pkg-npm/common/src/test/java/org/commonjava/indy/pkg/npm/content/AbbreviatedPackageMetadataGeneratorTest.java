@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.content.IndyPathGenerator;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.commonjava.indy.pkg.npm.content.AbbreviatedPackageMetadataGenerator.NPM_ABBREVIATED_METADATA_SUFFIX;
+import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class AbbreviatedPackageMetadataGeneratorTest
+{
+    private static final String PATH = "jquery/package.json";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private CacheProvider cacheProvider;
+
+    private IndyObjectMapper mapper;
+
+    private AbbreviatedPackageMetadataGenerator generator;
+
+    private Transfer packageMetadata;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheProvider = new FileCacheProvider( temp.newFolder( "cache" ), new IndyPathGenerator(
+                Collections.singleton( new NPMStoragePathCalculator( new SpecialPathManagerImpl() ) ) ),
+                                               new NoOpFileEventManager(),
+                                               new TransferDecoratorManager( new NoOpTransferDecorator() ), false );
+
+        mapper = new IndyObjectMapper( true );
+        generator = new AbbreviatedPackageMetadataGenerator( mapper );
+
+        HostedRepository hosted = new HostedRepository( NPM_PKG_KEY, "test-hosted" );
+        packageMetadata = cacheProvider.getTransfer( new ConcreteResource( LocationUtils.toLocation( hosted ), PATH ) );
+    }
+
+    @Test
+    public void onlyInstallFieldsAreKept()
+            throws Exception
+    {
+        initTestData( packageMetadata, "metadata/package-1.json" );
+
+        Transfer abbreviated = generator.getAbbreviated( packageMetadata );
+        assertThat( abbreviated, notNullValue() );
+        assertThat( abbreviated.getPath(), equalTo( PATH + NPM_ABBREVIATED_METADATA_SUFFIX ) );
+
+        JsonNode full = readTree( packageMetadata );
+        JsonNode corgi = readTree( abbreviated );
+
+        assertThat( fieldNames( corgi ), equalTo( Arrays.asList( "name", "dist-tags", "versions", "modified" ) ) );
+        assertThat( corgi.get( "name" ), equalTo( full.get( "name" ) ) );
+        assertThat( corgi.get( "dist-tags" ), equalTo( full.get( "dist-tags" ) ) );
+        assertThat( corgi.get( "modified" ).asText(), equalTo( full.get( "time" ).get( "modified" ).asText() ) );
+
+        JsonNode version = corgi.get( "versions" ).get( "1.5.1" );
+        JsonNode fullVersion = full.get( "versions" ).get( "1.5.1" );
+        assertThat( fieldNames( version ),
+                    equalTo( Arrays.asList( "name", "dependencies", "version", "bin", "engines", "directories",
+                                            "dist", "deprecated" ) ) );
+        assertThat( version.get( "dist" ), equalTo( fullVersion.get( "dist" ) ) );
+        assertThat( version.get( "dependencies" ), equalTo( fullVersion.get( "dependencies" ) ) );
+        assertThat( version.get( "readme" ), nullValue() );
+    }
+
+    @Test
+    public void abbreviatedMetadataIsRegeneratedWhenOutdated()
+            throws Exception
+    {
+        initTestData( packageMetadata, "metadata/package-1.json" );
+
+        Transfer abbreviated = generator.getAbbreviated( packageMetadata );
+        long generated = abbreviated.lastModified();
+        assertThat( readTree( abbreviated ).get( "versions" ).has( "1.5.1" ), equalTo( true ) );
+
+        assertThat( generator.getAbbreviated( packageMetadata ).lastModified(), equalTo( generated ) );
+
+        Thread.sleep( 10 );
+        initTestData( packageMetadata, "metadata/package-2.json" );
+
+        abbreviated = generator.getAbbreviated( packageMetadata );
+        assertThat( abbreviated.lastModified() >= packageMetadata.lastModified(), equalTo( true ) );
+        assertThat( readTree( abbreviated ).get( "versions" ).has( "1.6.2" ), equalTo( true ) );
+    }
+
+    private JsonNode readTree( final Transfer transfer )
+            throws IOException
+    {
+        try (InputStream in = transfer.openInputStream( false ))
+        {
+            return mapper.readTree( in );
+        }
+    }
+
+    private List<String> fieldNames( final JsonNode node )
+    {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining( names::add );
+        return names;
+    }
+
+    private void initTestData( final Transfer transfer, final String resourcePath )
+            throws IOException
+    {
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream( resourcePath );
+             OutputStream out = transfer.openOutputStream( TransferOperation.DOWNLOAD, false ))
+        {
+            if ( in == null )
+            {
+                fail( "Cannot find test resource: " + resourcePath + " on classpath!" );
+            }
+
+            IOUtils.copy( in, out );
+        }
+    }
+}
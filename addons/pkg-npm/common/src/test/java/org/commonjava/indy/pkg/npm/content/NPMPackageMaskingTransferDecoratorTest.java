@@ -28,10 +28,12 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.commonjava.indy.content.ContentManager.ENTRY_POINT_BASE_URI;
 import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
 import static org.junit.Assert.assertEquals;
@@ -88,6 +90,39 @@ public class NPMPackageMaskingTransferDecoratorTest
         assertEquals( expected, ret );
     }
 
+    @Test
+    public void testOnlyDistTarballMasked() throws Exception
+    {
+        String raw = "{\"tarball\": \"https://registry.npmjs.org/a/-/a-1.0.tgz\",\n"
+                + "  \"versions\": {\"1.0\": {\"dist\" : { \"tarball\" :\t\"https://registry.npmjs.org/a/-/a-1.0.tgz\" },\n"
+                + "  \"other\": {\"tarball\": \"https://registry.npmjs.org/a/-/a-1.0.tgz\"}}}}";
+        String expected = "{\"tarball\": \"https://registry.npmjs.org/a/-/a-1.0.tgz\",\n"
+                + "  \"versions\": {\"1.0\": {\"dist\" : { \"tarball\" :\t\"http://localhost/api/content/npm/group/test/a/-/a-1.0.tgz\" },\n"
+                + "  \"other\": {\"tarball\": \"https://registry.npmjs.org/a/-/a-1.0.tgz\"}}}}";
+
+        assertEquals( expected, mask( raw ) );
+    }
+
+    @Test
+    public void testInvalidJsonPassedThrough() throws Exception
+    {
+        String raw = "{\"versions\": {\"1.0\": {\"dist\": {\"tarball\": \"https://registry.npmjs.org/a/-/a-1.0.tgz\"}},"
+                + " not json \"dist\": {\"tarball\": \"https://registry.npmjs.org/a/-/a-2.0.tgz\"}";
+        String expected = "{\"versions\": {\"1.0\": {\"dist\": {\"tarball\": \"http://localhost/api/content/npm/group/test/a/-/a-1.0.tgz\"}},"
+                + " not json \"dist\": {\"tarball\": \"https://registry.npmjs.org/a/-/a-2.0.tgz\"}";
+
+        assertEquals( expected, mask( raw ) );
+    }
+
+    private String mask( String raw ) throws Exception
+    {
+        try (InputStream stream = new PackageMaskingInputStream( new ByteArrayInputStream( raw.getBytes( UTF_8 ) ),
+                                                                 "http://localhost/api/content/npm/group/test" ))
+        {
+            return IOUtils.toString( stream, UTF_8 );
+        }
+    }
+
     private InputStream getResourceAsStream( String path )
     {
         return getClass().getClassLoader().getResourceAsStream( path );
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.updatePackageJson;
+
+/**
+ * Heap allocated per package.json read through {@link NPMPackageMaskingTransferDecorator}, for packuments of about the
+ * size of popular packages (up to 10 MB, like @types/node).
+ * <p>
+ * "buffered" reads the whole document into a String and masks it with {@link DecoratorUtils#updatePackageJson}, which
+ * is what the decorator did before masking was streamed; "streaming" reads it through {@link PackageMaskingInputStream}.
+ * Both copy the result into a fixed buffer, like the response writer does. Compare the gc.alloc.rate.norm results
+ * (bytes per operation). Buffered masking takes time quadratic in the document size, so each iteration is a single
+ * shot, and larger packuments (aws-sdk is about 40 MB) are left out.
+ * <p>
+ * This is not run by the build. Run it with {@link #main(String[])} from the test classpath.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class PackageMaskingBenchmark
+{
+    private static final String CONTEXT_URL = "http://localhost/api/content/npm/remote/npmjs";
+
+    @Param( { "1", "5", "10" } )
+    public int sizeMB;
+
+    private byte[] packument;
+
+    private final byte[] readBuffer = new byte[8192];
+
+    @Setup
+    public void setup()
+    {
+        packument = generatePackument( sizeMB * 1024 * 1024 );
+    }
+
+    @Benchmark
+    public long buffered()
+            throws IOException
+    {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        IOUtils.copy( new ByteArrayInputStream( packument ), bos );
+        final String masked = updatePackageJson( new String( bos.toByteArray(), StandardCharsets.UTF_8 ), CONTEXT_URL );
+        return drain( new ByteArrayInputStream( masked.getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+
+    @Benchmark
+    public long streaming()
+            throws IOException
+    {
+        try (InputStream in = new PackageMaskingInputStream( new ByteArrayInputStream( packument ), CONTEXT_URL ))
+        {
+            return drain( in );
+        }
+    }
+
+    private long drain( final InputStream in )
+            throws IOException
+    {
+        long total = 0;
+        int read;
+        while ( ( read = in.read( readBuffer ) ) >= 0 )
+        {
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * A packument shaped like the registry's: one entry per version, each with its dependencies and dist.
+     */
+    static byte[] generatePackument( final int size )
+    {
+        final StringBuilder sb = new StringBuilder( size + 4096 );
+        sb.append( "{\n  \"_id\": \"@types/node\",\n  \"name\": \"@types/node\",\n  \"versions\": {\n" );
+        int version = 0;
+        while ( sb.length() < size )
+        {
+            if ( version > 0 )
+            {
+                sb.append( ",\n" );
+            }
+            final String v = "1." + ( version / 100 ) + "." + ( version % 100 );
+            sb.append( "    \"" ).append( v ).append( "\": {\n" )
+              .append( "      \"name\": \"@types/node\",\n" )
+              .append( "      \"version\": \"" ).append( v ).append( "\",\n" )
+              .append( "      \"description\": \"TypeScript definitions for Node.js\",\n" )
+              .append( "      \"license\": \"MIT\",\n" )
+              .append( "      \"dependencies\": {\n" )
+              .append( "        \"undici-types\": \"~5.26.4\"\n" )
+              .append( "      },\n" )
+              .append( "      \"typesPublisherContentHash\": \"" ).append( Integer.toHexString( v.hashCode() ) )
+              .append( "d5a3c1f2e4b6a8c0d2e4f6a8b0c2d4e6f8a0b2c4d6e8f0a2b4c6d8e0f2a4\",\n" )
+              .append( "      \"dist\": {\n" )
+              .append( "        \"integrity\": \"sha512-KXxkNgAt0M4VJ2jDdiqDKVXXGB9xo1Cxzj1uYjSpqJ4LtBn1cPWHXr2qH0ZGtx3G0AJcsWTf7ByUdvq2jr3A==\",\n" )
+              .append( "        \"shasum\": \"7dd7d0e2c2d48f6a5f0e5e2e3a4ea9e2a5d9c3a1\",\n" )
+              .append( "        \"tarball\": \"https://registry.npmjs.org/@types/node/-/node-" ).append( v ).append( ".tgz\",\n" )
+              .append( "        \"fileCount\": 63,\n" )
+              .append( "        \"unpackedSize\": 3784912\n" )
+              .append( "      }\n" )
+              .append( "    }" );
+            version++;
+        }
+        sb.append( "\n  }\n}\n" );
+        return sb.toString().getBytes( StandardCharsets.UTF_8 );
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( PackageMaskingBenchmark.class.getSimpleName() )
+                                        .addProfiler( GCProfiler.class )
+                                        .build() ).run();
+    }
+}
@@ -29,12 +29,15 @@ import org.commonjava.indy.core.content.DefaultDownloadManager;
 import org.commonjava.indy.core.content.group.GroupMergeHelper;
 import org.commonjava.indy.core.inject.ExpiringMemoryNotFoundCache;
 import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.pkg.npm.content.group.PackageMetadataMerger;
 import org.commonjava.indy.pkg.npm.model.PackageMetadata;
 import org.commonjava.indy.pkg.npm.model.VersionMetadata;
+import org.commonjava.indy.pkg.npm.model.io.PackageSerializerModule;
 import org.commonjava.indy.util.LocationUtils;
 import org.commonjava.maven.galley.GalleyCore;
 import org.commonjava.maven.galley.GalleyCoreBuilder;
@@ -53,9 +56,18 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG_KEY;
 import static org.junit.Assert.assertEquals;
@@ -79,6 +91,8 @@ public class PackageMetadataGeneratorTest
 
     private SpecialPathManager specialPathManager;
 
+    private final AtomicInteger groupMerges = new AtomicInteger();
+
     @Before
     public void setup() throws Exception
     {
@@ -96,7 +110,17 @@ public class PackageMetadataGeneratorTest
                         new PoolWeftExecutorService( "test-rescan-executor", (ThreadPoolExecutor) Executors.newCachedThreadPool(), 2, 10f, false);
 
         final LocationExpander locations = new IndyLocationExpander( stores );
-        final PackageMetadataMerger merger = new PackageMetadataMerger(  );
+        final IndyObjectMapper mapper = new IndyObjectMapper( true );
+        mapper.registerModule( new PackageSerializerModule() );
+        final PackageMetadataMerger merger = new PackageMetadataMerger( Collections.emptyList(), mapper )
+        {
+            @Override
+            public byte[] merge( final Collection<Transfer> sources, final Group group, final String path )
+            {
+                groupMerges.incrementAndGet();
+                return super.merge( sources, group, path );
+            }
+        };
         final TypeMapper types = new StandardTypeMapper();
 
         final DownloadManager
@@ -107,12 +131,16 @@ public class PackageMetadataGeneratorTest
 
         final GroupMergeHelper helper = new GroupMergeHelper( downloads );
 
+        WeftExecutorService npmMDGeneratorService =
+                        new PoolWeftExecutorService( "test-npm-metadata-generator", (ThreadPoolExecutor) Executors.newCachedThreadPool(), 4, 10f, false);
+
         specialPathManager = new SpecialPathManagerImpl(  );
         fileManager = new DefaultDownloadManager( stores, core.getTransferManager(), core.getLocationExpander(), rescanService );
         generator = new PackageMetadataGenerator( contentAccess, stores, downloads, types, merger, helper,
                                                   new MemoryNotFoundCache(), new IndyPathGenerator(
                         Collections.singleton( new NPMStoragePathCalculator( specialPathManager ) ) ),
-                                                  new NPMStoragePathCalculator( specialPathManager ) );
+                                                  new NPMStoragePathCalculator( specialPathManager ),
+                                                  npmMDGeneratorService );
 
     }
 
@@ -253,6 +281,58 @@ public class PackageMetadataGeneratorTest
         assertNotNull( metafile );
     }
 
+    @Test
+    public void concurrentGroupRequestsMergeOnce() throws Exception
+    {
+        ChangeSummary summary = new ChangeSummary( "test","Init NPM group." );
+        final HostedRepository hosted1 = new HostedRepository( NPM_PKG_KEY, "npm-hosted-1" );
+        final HostedRepository hosted2 = new HostedRepository( NPM_PKG_KEY, "npm-hosted-2" );
+        initStore( hosted1, summary );
+        initStore( hosted2, summary );
+
+        storeFile( LocationUtils.toLocation( hosted1 ), "jquery/package.json", "metadata/package-1.json" );
+        storeFile( LocationUtils.toLocation( hosted2 ), "jquery/package.json", "metadata/package-2.json" );
+
+        final Group group = new Group( NPM_PKG_KEY, "npm-group", hosted1.getKey(), hosted2.getKey() );
+        stores.storeArtifactStore( group, summary, false, true, new EventMetadata() );
+        final List<ArtifactStore> members = Arrays.asList( hosted1, hosted2 );
+
+        final int clients = 8;
+        final ExecutorService clientPool = Executors.newFixedThreadPool( clients );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final List<Future<Transfer>> results = new ArrayList<>();
+        try
+        {
+            for ( int i = 0; i < clients; i++ )
+            {
+                results.add( clientPool.submit( () -> {
+                    start.await();
+                    return generator.generateGroupFileContent( group, members, "jquery/package.json",
+                                                               new EventMetadata() );
+                } ) );
+            }
+            start.countDown();
+
+            for ( Future<Transfer> result : results )
+            {
+                assertNotNull( result.get( 30, TimeUnit.SECONDS ) );
+            }
+        }
+        finally
+        {
+            clientPool.shutdownNow();
+        }
+
+        assertEquals( 1, groupMerges.get() );
+
+        final IndyObjectMapper mapper = new IndyObjectMapper( true );
+        try ( InputStream input = results.get( 0 ).get().openInputStream() )
+        {
+            PackageMetadata packageMetadata = mapper.readValue( input, PackageMetadata.class );
+            assertEquals( 2, packageMetadata.getVersions().size() );
+        }
+    }
+
     private void verifyMetadata( Transfer metadataFile ) throws Exception
     {
 
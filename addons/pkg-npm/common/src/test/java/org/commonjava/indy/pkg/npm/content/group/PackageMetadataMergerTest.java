@@ -420,6 +420,32 @@ public class PackageMetadataMergerTest
         assertThat( versions.get( "1.5.1" ).getVersion(), equalTo( "1.5.1" ) );
     }
 
+    @Test
+    public void streamedMergeMatchesBoundMerge() throws Exception
+    {
+        String path = "jquery";
+        List<Transfer> sources = new ArrayList<>();
+        PackageMetadata expected = new PackageMetadata();
+        for ( String resource : Arrays.asList( "package-1.json", "package-2.json", "package-1-decorated.json" ) )
+        {
+            HostedRepository h = new HostedRepository( NPM_PKG_KEY, "test-" + resource );
+            Transfer t = cacheProvider.getTransfer( new ConcreteResource( LocationUtils.toLocation( h ), path ) );
+            initTestData( t, VERSION_META + resource );
+            sources.add( t );
+
+            try (InputStream in = t.openInputStream())
+            {
+                expected.merge( mapper.readValue( in, PackageMetadata.class ), true );
+            }
+        }
+
+        Group g = new Group( NPM_PKG_KEY, "test-group" );
+
+        byte[] output = new PackageMetadataMerger( Collections.emptyList(), mapper ).merge( sources, g, path );
+
+        assertThat( mapper.readTree( output ), equalTo( mapper.readTree( mapper.writeValueAsBytes( expected ) ) ) );
+    }
+
     private void initTestData( Transfer transfer, String resourcePath ) throws IOException
     {
         try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream( resourcePath );
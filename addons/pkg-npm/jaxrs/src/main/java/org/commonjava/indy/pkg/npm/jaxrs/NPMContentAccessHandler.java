@@ -31,6 +31,7 @@ import org.commonjava.indy.core.model.StoreHttpExchangeMetadata;
 import org.commonjava.indy.model.core.PackageTypes;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.pkg.npm.content.AbbreviatedPackageMetadataGenerator;
 import org.commonjava.indy.pkg.npm.content.group.PackageMetadataMerger;
 import org.commonjava.indy.pkg.npm.inject.NPMContentHandler;
 import org.commonjava.indy.util.AcceptInfo;
@@ -48,6 +49,7 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
@@ -58,6 +60,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -65,6 +68,8 @@ import java.util.function.Supplier;
 
 import static java.lang.Thread.sleep;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.commonjava.indy.pkg.npm.content.AbbreviatedPackageMetadataGenerator.NPM_ABBREVIATED_METADATA_CONTENT_TYPE;
+import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 
 @ApplicationScoped
 @NPMContentHandler
@@ -90,6 +95,9 @@ public class NPMContentAccessHandler
     @Inject
     private PackageMetadataMerger packageMetadataMerger;
 
+    @Inject
+    private AbbreviatedPackageMetadataGenerator abbreviatedMetadataGenerator;
+
     @Override
     public Response doCreate( String packageType, String type, String name, String path, HttpServletRequest request,
                               EventMetadata eventMetadata, Supplier<URI> uriBuilder )
@@ -209,12 +217,31 @@ public class NPMContentAccessHandler
                         logger.debug( "Got retrieved transfer reference: {}", item );
                     }
 
+                    // describe what a GET with the same Accept header would serve
+                    Transfer served = item;
+                    String contentType = getNPMContentType( path );
+                    final boolean isPackageMetadata = item.getPath().endsWith( NPM_METADATA_NAME );
+                    if ( isPackageMetadata && acceptsAbbreviatedMetadata( request ) )
+                    {
+                        final Transfer abbreviated = getAbbreviatedMetadata( item );
+                        if ( abbreviated != null )
+                        {
+                            served = abbreviated;
+                            contentType = NPM_ABBREVIATED_METADATA_CONTENT_TYPE;
+                            // the upstream headers describe the full package metadata
+                            httpMetadata = null;
+                        }
+                    }
+
                     logger.debug( "Building 200 response. Using HTTP metadata: {}", httpMetadata );
 
                     final Response.ResponseBuilder builder = Response.ok();
 
-                    responseHelper.setInfoHeaders( builder, item, sk, path, true, getNPMContentType( path ),
-                                    httpMetadata );
+                    responseHelper.setInfoHeaders( builder, served, sk, path, true, contentType, httpMetadata );
+                    if ( isPackageMetadata )
+                    {
+                        builder.header( HttpHeaders.VARY, HttpHeaders.ACCEPT );
+                    }
                     if ( builderModifier != null )
                     {
                         builderModifier.accept( builder );
@@ -358,15 +385,35 @@ public class NPMContentAccessHandler
 //                            responseHelper.throwError( ApplicationStatus.SERVER_ERROR, new NullPointerException( path ), "Retrieval of mapped file from storage failed." );
 //                        }
 
+                        Transfer served = item;
+                        String contentType = getNPMContentType( path );
+                        HttpExchangeMetadata httpMetadata = contentController.getHttpMetadata( item );
+
+                        final boolean isPackageMetadata = item.getPath().endsWith( NPM_METADATA_NAME );
+                        if ( isPackageMetadata && acceptsAbbreviatedMetadata( request ) )
+                        {
+                            final Transfer abbreviated = getAbbreviatedMetadata( item );
+                            if ( abbreviated != null )
+                            {
+                                served = abbreviated;
+                                contentType = NPM_ABBREVIATED_METADATA_CONTENT_TYPE;
+                                // the upstream headers describe the full package metadata
+                                httpMetadata = null;
+                            }
+                        }
+
                         logger.info( "RETURNING: retrieval of content: {}:{}", sk, path );
                         // open the stream here to prevent deletion while waiting for the transfer back to the user to start...
-                        InputStream in = openInputStreamSafe( item, eventMetadata );
+                        InputStream in = openInputStreamSafe( served, eventMetadata );
 
                         final Response.ResponseBuilder builder =
                                 Response.ok( new TransferStreamingOutput( in ) );
 
-                        responseHelper.setInfoHeaders( builder, item, sk, path, false, getNPMContentType( path ),
-                                        contentController.getHttpMetadata( item ) );
+                        responseHelper.setInfoHeaders( builder, served, sk, path, false, contentType, httpMetadata );
+                        if ( isPackageMetadata )
+                        {
+                            builder.header( HttpHeaders.VARY, HttpHeaders.ACCEPT );
+                        }
                         response = responseWithBuilder( builder, builderModifier );
 
 //                        // generating .http-metadata.json for npm group and remote retrieve to resolve header requirements
@@ -398,6 +445,38 @@ public class NPMContentAccessHandler
         return response;
     }
 
+    private boolean acceptsAbbreviatedMetadata( final HttpServletRequest request )
+    {
+        final Enumeration<String> accepts = request.getHeaders( ApplicationHeader.accept.key() );
+        while ( accepts != null && accepts.hasMoreElements() )
+        {
+            final String accept = accepts.nextElement();
+            if ( accept != null && accept.contains( NPM_ABBREVIATED_METADATA_CONTENT_TYPE ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * npm clients can install from the full package metadata too, so it is served if the abbreviated one is not
+     * available.
+     */
+    private Transfer getAbbreviatedMetadata( final Transfer item )
+    {
+        try
+        {
+            return abbreviatedMetadataGenerator.getAbbreviated( item );
+        }
+        catch ( final IndyWorkflowException e )
+        {
+            logger.warn( "Failed to get abbreviated package metadata for: {}, serving the full one. Reason: {}", item,
+                         e.getMessage() );
+            return null;
+        }
+    }
+
     /**
      * Due to race condition, the target file may be deleted / regenerated, especially for metadata. Add retry here to safely open the input stream.
      */
@@ -22,64 +22,112 @@ import org.slf4j.LoggerFactory;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
- * This output stream will cache the original stream and do replacing based on the passed
- * in candidates in content of original stream during flushing
+ * This output stream does replacing based on the passed in candidates in content of original stream, while it is
+ * written. Bytes are passed through to the original stream as they come, except for the few at the end which may still
+ * turn out to be the start of a candidate (see {@link StreamingReplacer}); those are written when the stream is
+ * {@link #finish() finished} or closed.
  */
 class ContentReplacingOutputStream
         extends ServletOutputStream
 {
     private static final Logger logger = LoggerFactory.getLogger( ContentReplacingOutputStream.class );
 
-    private StringBuffer buffer = new StringBuffer();
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int count;
 
     private final ServletOutputStream originalStream;
 
-    private final Map<String, String> reposReplacing;
+    private final StreamingReplacer replacer;
+
+    private int state = StreamingReplacer.ROOT;
 
+    private boolean closed;
+
+    /**
+     * @param reposReplacing replacement to origin, i.e. every value found in the content is replaced by its key
+     */
     ContentReplacingOutputStream( final ServletOutputStream originalStream, final Map<String, String> reposReplacing )
     {
         this.originalStream = originalStream;
-        this.reposReplacing = reposReplacing;
+
+        final Map<String, String> replacements = new HashMap<>( reposReplacing.size() );
+        for ( Map.Entry<String, String> repoReplacing : reposReplacing.entrySet() )
+        {
+            final String replaceTo = repoReplacing.getKey();
+            final String origin = repoReplacing.getValue();
+            logger.trace( "Repository Proxy: Content rewriting: Replacing {} to {}", origin, replaceTo );
+            replacements.put( origin, replaceTo );
+        }
+        this.replacer = StreamingReplacer.forReplacements( replacements );
     }
 
     @Override
     public void write( int b )
+            throws IOException
     {
-        buffer.append( (char) b );
+        step( (byte) b );
     }
 
     @Override
-    public void flush()
+    public void write( byte[] b, int off, int len )
             throws IOException
     {
-        try
+        final int end = off + len;
+        for ( int i = off; i < end; i++ )
         {
-            String content = buffer.toString();
-            for ( Map.Entry<String, String> repoReplacing : reposReplacing.entrySet() )
-            {
-                final String replaceTo = repoReplacing.getKey();
-                final String origin = repoReplacing.getValue();
-                logger.trace( "Repository Proxy: Content rewriting: Replacing {} to {}", origin, replaceTo );
-                content = RepoProxyUtils.replaceAllWithNoRegex( content, origin, replaceTo );
-            }
-            originalStream.write( content.getBytes() );
-            originalStream.flush();
+            step( b[i] );
         }
-        finally
+    }
+
+    @Override
+    public void flush()
+            throws IOException
+    {
+        flushBuffer();
+        originalStream.flush();
+    }
+
+    /**
+     * Write out the bytes held back for a possible match, since no more content will come, and flush.
+     */
+    void finish()
+            throws IOException
+    {
+        if ( closed )
         {
-            buffer = new StringBuffer();
+            return;
         }
+
+        final byte[] pending = replacer.prefix( state );
+        emit( pending, 0, pending.length );
+        state = StreamingReplacer.ROOT;
+        flush();
     }
 
     @Override
     public void close()
             throws IOException
     {
-        flush();
-        IOUtils.closeQuietly( originalStream, null );
+        if ( closed )
+        {
+            return;
+        }
+        try
+        {
+            finish();
+        }
+        finally
+        {
+            closed = true;
+            IOUtils.closeQuietly( originalStream, null );
+        }
     }
 
     @Override
@@ -93,4 +141,70 @@ class ContentReplacingOutputStream
     {
         originalStream.setWriteListener( writeListener );
     }
+
+    private void step( final byte b )
+            throws IOException
+    {
+        final byte[] held = replacer.prefix( state );
+        final int next = replacer.next( state, b );
+        final int nextDepth = replacer.prefix( next ).length;
+
+        // of the held bytes plus this one, only the last nextDepth can still be part of a match
+        final int released = held.length + 1 - nextDepth;
+        if ( released > held.length )
+        {
+            emit( held, 0, held.length );
+            emit( b );
+        }
+        else if ( released > 0 )
+        {
+            emit( held, 0, released );
+        }
+        state = next;
+
+        final int matchLength = replacer.matchLength( next );
+        if ( matchLength > 0 )
+        {
+            emit( replacer.prefix( next ), 0, nextDepth - matchLength );
+            final byte[] replacement = replacer.replacement( next );
+            emit( replacement, 0, replacement.length );
+            state = StreamingReplacer.ROOT;
+        }
+    }
+
+    private void emit( final byte b )
+            throws IOException
+    {
+        if ( count == BUFFER_SIZE )
+        {
+            flushBuffer();
+        }
+        buffer[count++] = b;
+    }
+
+    private void emit( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        if ( len > BUFFER_SIZE - count )
+        {
+            flushBuffer();
+            if ( len > BUFFER_SIZE )
+            {
+                originalStream.write( b, off, len );
+                return;
+            }
+        }
+        System.arraycopy( b, off, buffer, count, len );
+        count += len;
+    }
+
+    private void flushBuffer()
+            throws IOException
+    {
+        if ( count > 0 )
+        {
+            originalStream.write( buffer, 0, count );
+            count = 0;
+        }
+    }
 }
@@ -56,4 +56,13 @@ public class ContentReplacingResponseWrapper extends HttpServletResponseWrapper
     {
         return this.out;
     }
+
+    /**
+     * Write out any content held back for a possible replacement. Call when nothing more will be written.
+     */
+    public void finish()
+            throws IOException
+    {
+        this.out.finish();
+    }
 }
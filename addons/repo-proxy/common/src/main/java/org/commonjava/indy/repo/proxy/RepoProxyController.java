@@ -30,6 +30,7 @@ import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.MediaType;
@@ -210,6 +211,7 @@ public class RepoProxyController
         // Here we do not use redirect but forward.
         // doRedirect( (HttpServletResponse)response, proxyTo );
         doForward( httpRequest, decoratedResponse, proxyToPath.get() );
+        finishContentReplacing( httpRequest, decoratedResponse );
 
         return true;
     }
@@ -327,6 +329,30 @@ public class RepoProxyController
         httpRequest.getRequestDispatcher( forwardTo ).forward( httpRequest, response );
     }
 
+    /**
+     * Content replacing streams hold back the last few bytes of content that may start a replacement, so write them
+     * out once the forwarded request is done with the response. Outer wrappers are finished first, as they write into
+     * the inner ones. Async requests finish them when closing the stream instead.
+     */
+    private void finishContentReplacing( final HttpServletRequest httpRequest, final ServletResponse response )
+            throws IOException
+    {
+        if ( httpRequest.isAsyncStarted() )
+        {
+            return;
+        }
+
+        ServletResponse current = response;
+        while ( current instanceof ServletResponseWrapper )
+        {
+            if ( current instanceof ContentReplacingResponseWrapper )
+            {
+                ( (ContentReplacingResponseWrapper) current ).finish();
+            }
+            current = ( (ServletResponseWrapper) current ).getResponse();
+        }
+    }
+
     private void trace( final String template, final Object... params )
     {
         RepoProxyUtils.trace( this.logger, template, params );
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.repo.proxy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aho-Corasick automaton over the UTF-8 bytes of a set of target strings, used by
+ * {@link ContentReplacingOutputStream} to replace them in a byte stream as it flows.
+ * <p>
+ * The automaton only holds the targets; the matching state of a stream is a single state number. Each state stands for
+ * the bytes of the target prefix leading to it, so the bytes held back while a match may still complete are never
+ * copied anywhere: they are {@link #prefix(int) the prefix of the current state}, never longer than the longest target.
+ * <p>
+ * A match is replaced as soon as its last byte is seen; when several targets end on the same byte, the longest one
+ * wins. Because UTF-8 is self-synchronizing, matching bytes of valid UTF-8 targets never splits a multi-byte character.
+ */
+final class StreamingReplacer
+{
+    static final int ROOT = 0;
+
+    private static final int MAX_COMPILED = 1024;
+
+    private static final Map<Map<String, String>, StreamingReplacer> COMPILED = new ConcurrentHashMap<>();
+
+    private final int[] transitions;
+
+    private final byte[][] prefixes;
+
+    private final int[] matchLengths;
+
+    private final byte[][] replacements;
+
+    /**
+     * @param replacements target to replacement
+     * @return the automaton for the given replacements, compiled once and shared by all streams using the same ones
+     */
+    static StreamingReplacer forReplacements( final Map<String, String> replacements )
+    {
+        StreamingReplacer replacer = COMPILED.get( replacements );
+        if ( replacer == null )
+        {
+            if ( COMPILED.size() >= MAX_COMPILED )
+            {
+                COMPILED.clear();
+            }
+            replacer = new StreamingReplacer( replacements );
+            COMPILED.put( Collections.unmodifiableMap( new HashMap<>( replacements ) ), replacer );
+        }
+        return replacer;
+    }
+
+    /**
+     * @param targets target to replacement
+     */
+    StreamingReplacer( final Map<String, String> targets )
+    {
+        final List<byte[]> prefixList = new ArrayList<>();
+        final List<int[]> children = new ArrayList<>();
+        final List<byte[]> replacementList = new ArrayList<>();
+        prefixList.add( new byte[0] );
+        children.add( newChildren() );
+        replacementList.add( null );
+
+        // build the trie of targets
+        for ( Map.Entry<String, String> entry : targets.entrySet() )
+        {
+            final byte[] target = entry.getKey().getBytes( StandardCharsets.UTF_8 );
+            if ( target.length == 0 )
+            {
+                continue;
+            }
+
+            int state = ROOT;
+            for ( int i = 0; i < target.length; i++ )
+            {
+                final int b = target[i] & 0xff;
+                int next = children.get( state )[b];
+                if ( next < 0 )
+                {
+                    next = prefixList.size();
+                    final byte[] prefix = new byte[i + 1];
+                    System.arraycopy( target, 0, prefix, 0, i + 1 );
+                    prefixList.add( prefix );
+                    children.add( newChildren() );
+                    replacementList.add( null );
+                    children.get( state )[b] = next;
+                }
+                state = next;
+            }
+            replacementList.set( state, entry.getValue().getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+        final int size = prefixList.size();
+        transitions = new int[size * 256];
+        prefixes = prefixList.toArray( new byte[0][] );
+        replacements = new byte[size][];
+        matchLengths = new int[size];
+
+        // breadth-first over the trie: complete the transition table through failure links, and record for every
+        // state the longest target ending there, either its own or one inherited from its failure state
+        final int[] failure = new int[size];
+        final Queue<Integer> queue = new ArrayDeque<>();
+        for ( int b = 0; b < 256; b++ )
+        {
+            final int child = children.get( ROOT )[b];
+            if ( child < 0 )
+            {
+                transitions[b] = ROOT;
+            }
+            else
+            {
+                transitions[b] = child;
+                failure[child] = ROOT;
+                queue.add( child );
+            }
+        }
+        setMatch( ROOT, replacementList, failure );
+
+        while ( !queue.isEmpty() )
+        {
+            final int state = queue.remove();
+            setMatch( state, replacementList, failure );
+            for ( int b = 0; b < 256; b++ )
+            {
+                final int child = children.get( state )[b];
+                final int fallback = transitions[failure[state] * 256 + b];
+                if ( child < 0 )
+                {
+                    transitions[state * 256 + b] = fallback;
+                }
+                else
+                {
+                    transitions[state * 256 + b] = child;
+                    failure[child] = fallback;
+                    queue.add( child );
+                }
+            }
+        }
+    }
+
+    int next( final int state, final byte b )
+    {
+        return transitions[state * 256 + ( b & 0xff )];
+    }
+
+    /**
+     * @return the bytes matched so far by the given state
+     */
+    byte[] prefix( final int state )
+    {
+        return prefixes[state];
+    }
+
+    /**
+     * @return length of the longest target ending at the given state, or 0 if none does
+     */
+    int matchLength( final int state )
+    {
+        return matchLengths[state];
+    }
+
+    byte[] replacement( final int state )
+    {
+        return replacements[state];
+    }
+
+    /**
+     * @return length of the longest target, i.e. the most bytes a stream ever holds back
+     */
+    int maxLookback()
+    {
+        int max = 0;
+        for ( byte[] prefix : prefixes )
+        {
+            max = Math.max( max, prefix.length );
+        }
+        return max;
+    }
+
+    private void setMatch( final int state, final List<byte[]> replacementList, final int[] failure )
+    {
+        final byte[] own = replacementList.get( state );
+        if ( own != null )
+        {
+            matchLengths[state] = prefixes[state].length;
+            replacements[state] = own;
+        }
+        else if ( state != ROOT )
+        {
+            // failure states are shallower, so they are already done
+            matchLengths[state] = matchLengths[failure[state]];
+            replacements[state] = replacements[failure[state]];
+        }
+    }
+
+    private static int[] newChildren()
+    {
+        final int[] children = new int[256];
+        Arrays.fill( children, -1 );
+        return children;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.repo.proxy;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ContentReplacingOutputStreamTest
+{
+    private static final int PAYLOAD_SIZE = 50 * 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Test
+    public void replaceAcrossWritesKeepingMultiByteCharacters()
+            throws Exception
+    {
+        final String content = "{\"name\":\"\u00fcn\u00efc\u00f6d\u00e9-\u5305\",\"tarball\":\"http://localhost/api/content/npm/remote/"
+                + "npmjs/\u00fcn\u00efc\u00f6d\u00e9-\u5305/-/pkg-1.0.tgz\",\"emoji\":\"\ud83d\ude00\"}";
+        final Map<String, String> replacing = Collections.singletonMap( "group/public", "remote/npmjs" );
+
+        final String expected = content.replace( "remote/npmjs", "group/public" );
+        assertThat( replaceByteByByte( content, replacing ), equalTo( expected ) );
+        assertThat( replaceAtOnce( content, replacing ), equalTo( expected ) );
+    }
+
+    @Test
+    public void replaceOverlappingCandidates()
+            throws Exception
+    {
+        final Map<String, String> replacing = new HashMap<>();
+        replacing.put( "group/public", "remote/npmjs" );
+        replacing.put( "npm:group:public", "npm:remote:npmjs" );
+
+        final String content = "remote/npmjremote/npmjs npm:remote:npmjs npm:remote:npm remote/npmjs";
+        final String expected = "remote/npmjgroup/public npm:group:public npm:remote:npm group/public";
+        assertThat( replaceByteByByte( content, replacing ), equalTo( expected ) );
+        assertThat( replaceAtOnce( content, replacing ), equalTo( expected ) );
+    }
+
+    @Test
+    public void heldBackPartialMatchWrittenOnClose()
+            throws Exception
+    {
+        final Map<String, String> replacing = Collections.singletonMap( "group/public", "remote/npmjs" );
+        assertThat( replaceAtOnce( "ends with remote/npm", replacing ), equalTo( "ends with remote/npm" ) );
+        assertThat( replaceAtOnce( "ends with remote/npmjs", replacing ), equalTo( "ends with group/public" ) );
+    }
+
+    @Test
+    public void throughputOn50MBPayload()
+            throws Exception
+    {
+        final Map<String, String> replacing = new HashMap<>();
+        replacing.put( "api/content/npm/group/public", "api/content/npm/remote/npmjs" );
+        replacing.put( "npm:group:public", "npm:remote:npmjs" );
+
+        final String unit = "{\"version\":\"1.0.0\",\"dist\":{\"tarball\":\"http://indy/api/content/npm/remote/npmjs/"
+                + "pkg/-/pkg-1.0.0.tgz\",\"shasum\":\"0123456789abcdef\"},\"repo\":\"npm:remote:npmjs\","
+                + "\"description\":\"Lorem ipsum dolor sit amet, consectetur adipiscing elit \u00fcn\u00efc\u00f6d\u00e9\"},\n";
+        final byte[] unitBytes = unit.getBytes( StandardCharsets.UTF_8 );
+        final byte[] expectedUnit = unit.replace( "api/content/npm/remote/npmjs", "api/content/npm/group/public" )
+                                        .replace( "npm:remote:npmjs", "npm:group:public" )
+                                        .getBytes( StandardCharsets.UTF_8 );
+
+        final int units = PAYLOAD_SIZE / unitBytes.length;
+        final byte[] chunk = new byte[8192];
+        final MessageDigest expected = MessageDigest.getInstance( "SHA-256" );
+        final DigestingServletOutputStream sink = new DigestingServletOutputStream();
+
+        final long start = System.nanoTime();
+        try (ContentReplacingOutputStream out = new ContentReplacingOutputStream( sink, replacing ))
+        {
+            int filled = 0;
+            for ( int i = 0; i < units; i++ )
+            {
+                expected.update( expectedUnit );
+                for ( int pos = 0; pos < unitBytes.length; )
+                {
+                    final int len = Math.min( chunk.length - filled, unitBytes.length - pos );
+                    System.arraycopy( unitBytes, pos, chunk, filled, len );
+                    filled += len;
+                    pos += len;
+                    if ( filled == chunk.length )
+                    {
+                        out.write( chunk, 0, filled );
+                        filled = 0;
+                    }
+                }
+            }
+            out.write( chunk, 0, filled );
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        final long inputSize = (long) units * unitBytes.length;
+        logger.info( "Rewrote {} MB in {} ms ({} MB/s)", inputSize >> 20, elapsed / 1_000_000,
+                     ( inputSize >> 20 ) * 1_000_000_000L / Math.max( elapsed, 1 ) );
+
+        assertThat( sink.size, equalTo( (long) units * expectedUnit.length ) );
+        assertThat( sink.digest.digest(), equalTo( expected.digest() ) );
+    }
+
+    private static String replaceByteByByte( final String content, final Map<String, String> replacing )
+            throws IOException
+    {
+        final ByteArrayServletOutputStream sink = new ByteArrayServletOutputStream();
+        try (ContentReplacingOutputStream out = new ContentReplacingOutputStream( sink, replacing ))
+        {
+            for ( byte b : content.getBytes( StandardCharsets.UTF_8 ) )
+            {
+                out.write( b );
+            }
+        }
+        return new String( sink.bytes.toByteArray(), StandardCharsets.UTF_8 );
+    }
+
+    private static String replaceAtOnce( final String content, final Map<String, String> replacing )
+            throws IOException
+    {
+        final ByteArrayServletOutputStream sink = new ByteArrayServletOutputStream();
+        try (ContentReplacingOutputStream out = new ContentReplacingOutputStream( sink, replacing ))
+        {
+            out.write( content.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        return new String( sink.bytes.toByteArray(), StandardCharsets.UTF_8 );
+    }
+
+    private static abstract class TestServletOutputStream
+            extends ServletOutputStream
+    {
+        @Override
+        public boolean isReady()
+        {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener( final WriteListener writeListener )
+        {
+        }
+    }
+
+    private static final class ByteArrayServletOutputStream
+            extends TestServletOutputStream
+    {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public void write( final int b )
+        {
+            bytes.write( b );
+        }
+
+        @Override
+        public void write( final byte[] b, final int off, final int len )
+        {
+            bytes.write( b, off, len );
+        }
+    }
+
+    private static final class DigestingServletOutputStream
+            extends TestServletOutputStream
+    {
+        private final MessageDigest digest;
+
+        private long size;
+
+        private DigestingServletOutputStream()
+                throws Exception
+        {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        }
+
+        @Override
+        public void write( final int b )
+        {
+            digest.update( (byte) b );
+            size++;
+        }
+
+        @Override
+        public void write( final byte[] b, final int off, final int len )
+        {
+            digest.update( b, off, len );
+            size += len;
+        }
+    }
+}
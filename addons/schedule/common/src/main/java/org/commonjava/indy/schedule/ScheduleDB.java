@@ -15,14 +15,20 @@
  */
 package org.commonjava.indy.schedule;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.schedule.conf.ScheduleDBConfig;
 import org.commonjava.indy.schedule.datastax.model.DtxExpiration;
@@ -44,12 +50,18 @@ import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @ApplicationScoped
 public class ScheduleDB
@@ -70,6 +82,11 @@ public class ScheduleDB
     @Inject
     Event<ScheduleTriggerEvent> eventDispatcher;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( threads = 8, priority = 5, named = "schedule-expiration" )
+    WeftExecutorService expirationExecutor;
+
     private final Logger logger = LoggerFactory.getLogger( this.getClass() );
 
     private Session session;
@@ -82,6 +99,8 @@ public class ScheduleDB
 
     private PreparedStatement preparedSingleScheduleQuery;
 
+    private PreparedStatement preparedSchedulesByJobNamesQuery;
+
     private PreparedStatement preparedExpiredUpdate;
 
     private PreparedStatement preparedScheduleByTypeQuery;
@@ -92,6 +111,8 @@ public class ScheduleDB
 
     ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
 
+    private ScheduleExpirationSweeper sweeper;
+
     public ScheduleDB() {}
 
     public ScheduleDB( IndyConfiguration indyConfig, ScheduleDBConfig config, CassandraClient client, CacheProducer cacheProducer )
@@ -130,6 +151,11 @@ public class ScheduleDB
                                         + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
                                         + " WHERE storekey = ? and  jobname = ?" );
 
+        preparedSchedulesByJobNamesQuery = session.prepare(
+                        "SELECT storekey, jobtype, jobname, scheduletime, scheduleuid, payload, lifespan, expired FROM "
+                                        + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
+                                        + " WHERE storekey = ? and jobname IN ?" );
+
         preparedExpiredUpdate = session.prepare( "UPDATE " + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
                                                                  + " SET expired = true WHERE  storekey = ? and  jobname = ?" );
 
@@ -148,6 +174,12 @@ public class ScheduleDB
                                         + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
                                         + " WHERE storekey = ? " );
 
+        // without CDI, triggers are fired by the sweeping thread
+        sweeper = new ScheduleExpirationSweeper( new CassandraSweepStore(), config.getSweepPageSize(),
+                                                 config.getSweepBatchSize(), config.getSweepConcurrency(),
+                                                 expirationExecutor == null ? Runnable::run : expirationExecutor,
+                                                 this::fireTrigger );
+
         StrongCounter remoteCounter = cacheProducer.getStrongCounter( "scheduleCounter" );
         AtomicLong localCounter = new AtomicLong( 0 );
         if ( remoteCounter != null )
@@ -251,23 +283,16 @@ public class ScheduleDB
 
     public void queryAndSetExpiredSchedule( Date date )
     {
-        Collection<DtxExpiration> expirations = queryExpirations( date );
-        expirations.forEach( expiration -> {
-            if ( expiration.getExpirationTime().before( new Date() ) )
-            {
-                DtxSchedule schedule = querySchedule( expiration.getStorekey(), expiration.getJobName() );
-
-                if ( schedule != null && !schedule.getExpired() && schedule.getScheduleUID()
-                                                                           .equals( expiration.getScheduleUID() ) )
-                {
-                    BoundStatement boundU = preparedExpiredUpdate.bind( schedule.getStoreKey(), schedule.getJobName() );
-                    executeSession( boundU );
+        ScheduleExpirationSweeper.Result result = sweeper.sweep( calculateExpirationPID( date ), new Date() );
+        if ( result.getExpired() > 0 || result.getFailed() > 0 )
+        {
+            logger.info( "Expiration sweep for: {} done. {}", date, result );
+        }
+    }
 
-                    logger.debug( "Expired entry: {}", schedule );
-                    eventDispatcher.fire( new ScheduleTriggerEvent( schedule.getJobType(), schedule.getPayload() ) );
-                }
-            }
-        } );
+    private void fireTrigger( DtxSchedule schedule )
+    {
+        eventDispatcher.fire( new ScheduleTriggerEvent( schedule.getJobType(), schedule.getPayload() ) );
     }
 
     public Collection<DtxSchedule> querySchedulesByJobType( String jobType )
@@ -343,6 +368,100 @@ public class ScheduleDB
         return null;
     }
 
+    private <T> CompletableFuture<T> executeSessionAsync( Statement statement, Function<ResultSet, T> mapper )
+    {
+        if ( session == null || session.isClosed() )
+        {
+            client.close();
+            client.init();
+            this.init();
+        }
+
+        final ResultSetFuture future = session.executeAsync( statement );
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        // the listener runs on the driver's I/O thread, so the mapping (which may fetch more pages) and whatever is
+        // chained to the result run on the expiration executor instead
+        final Executor callbackExecutor = expirationExecutor == null ? ForkJoinPool.commonPool() : expirationExecutor;
+        future.addListener( () -> {
+            try
+            {
+                callbackExecutor.execute( () -> {
+                    try
+                    {
+                        result.complete( mapper.apply( future.getUninterruptibly() ) );
+                    }
+                    catch ( RuntimeException e )
+                    {
+                        result.completeExceptionally( e );
+                    }
+                } );
+            }
+            catch ( RuntimeException e )
+            {
+                result.completeExceptionally( e );
+            }
+        }, Runnable::run );
+        return result;
+    }
+
+    /**
+     * Expiration sweeps against cassandra: the expiration partition is paged through, and the schedules of a store are
+     * queried and marked expired a chunk at a time, asynchronously.
+     */
+    private final class CassandraSweepStore
+            implements ScheduleExpirationSweeper.Store
+    {
+        @Override
+        public void forEachExpirationPage( long partition, int pageSize, Consumer<List<DtxExpiration>> consumer )
+        {
+            BoundStatement bound = preparedExpiredQuery.bind( partition );
+            bound.setFetchSize( pageSize );
+            ResultSet resultSet = executeSession( bound );
+
+            List<DtxExpiration> page = new ArrayList<>( pageSize );
+            for ( Row row : resultSet )
+            {
+                page.add( toDtxExpiration( row ) );
+                if ( resultSet.getAvailableWithoutFetching() == 0 )
+                {
+                    // fetch the next page while this one is handled
+                    if ( !resultSet.isFullyFetched() )
+                    {
+                        resultSet.fetchMoreResults();
+                    }
+                    consumer.accept( page );
+                    page = new ArrayList<>( pageSize );
+                }
+            }
+
+            if ( !page.isEmpty() )
+            {
+                consumer.accept( page );
+            }
+        }
+
+        @Override
+        public CompletableFuture<Collection<DtxSchedule>> querySchedules( String storeKey,
+                                                                          Collection<String> jobNames )
+        {
+            BoundStatement bound = preparedSchedulesByJobNamesQuery.bind( storeKey, new ArrayList<>( jobNames ) );
+            return executeSessionAsync( bound, resultSet -> {
+                Collection<DtxSchedule> schedules = new ArrayList<>( jobNames.size() );
+                resultSet.forEach( row -> schedules.add( toDtxSchedule( row ) ) );
+                return schedules;
+            } );
+        }
+
+        @Override
+        public CompletableFuture<Void> markExpired( String storeKey, Collection<String> jobNames )
+        {
+            BatchStatement batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+            jobNames.forEach( jobName -> batch.add( preparedExpiredUpdate.bind( storeKey, jobName ) ) );
+            return executeSessionAsync( batch, resultSet -> null );
+        }
+    }
+
     private ResultSet executeSession ( BoundStatement bind )
     {
         boolean exception = false;
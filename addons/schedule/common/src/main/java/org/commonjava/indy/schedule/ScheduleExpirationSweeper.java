@@ -0,0 +1,299 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.schedule;
+
+import org.commonjava.indy.schedule.datastax.model.DtxExpiration;
+import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Finds the schedules of an expiration partition that are due, marks them expired and triggers them.
+ * <p>
+ * The partition is read a page at a time. The due expirations of a page are grouped by store, and each group is handled
+ * in chunks: the chunk's schedules are fetched with one query, the ones still matching their expiration are marked
+ * expired with one unlogged batch (all rows of a chunk are in the same schedule partition), then their triggers are
+ * handed to the dispatch executor. At most 'concurrency' chunks are in flight at a time, and a page is finished before
+ * the next one is read.
+ * <p>
+ * A chunk whose schedules could not be read or marked is not triggered. Its schedules are picked up again by the next
+ * sweep, as they are not marked expired. Once marked, a chunk is always triggered: if the dispatch executor rejects
+ * it, its triggers run on the calling thread.
+ */
+public class ScheduleExpirationSweeper
+{
+    /**
+     * Storage operations used by a sweep.
+     */
+    public interface Store
+    {
+        /**
+         * Hands the expirations of the partition to the consumer, a page at a time.
+         */
+        void forEachExpirationPage( long partition, int pageSize, Consumer<List<DtxExpiration>> consumer );
+
+        /**
+         * @return the schedules of the store with the given job names; missing ones are left out
+         */
+        CompletableFuture<Collection<DtxSchedule>> querySchedules( String storeKey, Collection<String> jobNames );
+
+        /**
+         * Marks the store's schedules with the given job names expired, all at once.
+         */
+        CompletableFuture<Void> markExpired( String storeKey, Collection<String> jobNames );
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Store store;
+
+    private final int pageSize;
+
+    private final int batchSize;
+
+    private final Semaphore inFlight;
+
+    private final Executor dispatchExecutor;
+
+    private final Consumer<DtxSchedule> trigger;
+
+    public ScheduleExpirationSweeper( final Store store, final int pageSize, final int batchSize,
+                                      final int concurrency, final Executor dispatchExecutor,
+                                      final Consumer<DtxSchedule> trigger )
+    {
+        this.store = store;
+        this.pageSize = pageSize;
+        this.batchSize = batchSize;
+        this.inFlight = new Semaphore( concurrency );
+        this.dispatchExecutor = dispatchExecutor;
+        this.trigger = trigger;
+    }
+
+    /**
+     * Sweeps the partition for schedules due before the given time. Returns once the due schedules are marked expired;
+     * their triggers may still be running on the dispatch executor.
+     */
+    public Result sweep( final long partition, final Date now )
+    {
+        final Result result = new Result();
+        store.forEachExpirationPage( partition, pageSize, page -> sweepPage( page, now, result ) );
+        logger.debug( "Swept expiration partition: {}. {}", partition, result );
+        return result;
+    }
+
+    private void sweepPage( final List<DtxExpiration> page, final Date now, final Result result )
+    {
+        result.scanned.addAndGet( page.size() );
+
+        final Map<String, List<DtxExpiration>> dueByStore = new LinkedHashMap<>();
+        for ( DtxExpiration expiration : page )
+        {
+            if ( expiration.getExpirationTime().before( now ) )
+            {
+                dueByStore.computeIfAbsent( expiration.getStorekey(), k -> new ArrayList<>() ).add( expiration );
+            }
+        }
+
+        final List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        sweep:
+        for ( Map.Entry<String, List<DtxExpiration>> entry : dueByStore.entrySet() )
+        {
+            final String storeKey = entry.getKey();
+            final List<DtxExpiration> due = entry.getValue();
+            result.due.addAndGet( due.size() );
+            for ( int i = 0; i < due.size(); i += batchSize )
+            {
+                final List<DtxExpiration> chunk = due.subList( i, Math.min( due.size(), i + batchSize ) );
+                try
+                {
+                    inFlight.acquire();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    logger.warn( "Interrupted while sweeping expirations, the rest is left for the next sweep" );
+                    break sweep;
+                }
+
+                chunks.add( expireChunk( storeKey, chunk, result ).whenComplete( ( v, e ) -> inFlight.release() ) );
+            }
+        }
+
+        CompletableFuture.allOf( chunks.toArray( new CompletableFuture[0] ) ).exceptionally( e -> null ).join();
+    }
+
+    private CompletableFuture<Void> expireChunk( final String storeKey, final List<DtxExpiration> chunk,
+                                                 final Result result )
+    {
+        final Map<String, DtxExpiration> byJobName = new HashMap<>( chunk.size() * 2 );
+        chunk.forEach( expiration -> byJobName.put( expiration.getJobName(), expiration ) );
+
+        final CompletableFuture<Collection<DtxSchedule>> query;
+        try
+        {
+            result.queries.incrementAndGet();
+            query = store.querySchedules( storeKey, byJobName.keySet() );
+        }
+        catch ( RuntimeException e )
+        {
+            return failed( storeKey, e, result );
+        }
+
+        return query.thenCompose( schedules -> {
+            final List<DtxSchedule> expired = new ArrayList<>();
+            schedules.forEach( schedule -> {
+                final DtxExpiration expiration = byJobName.get( schedule.getJobName() );
+                if ( expiration != null && !Boolean.TRUE.equals( schedule.getExpired() )
+                        && schedule.getScheduleUID().equals( expiration.getScheduleUID() ) )
+                {
+                    expired.add( schedule );
+                }
+            } );
+
+            if ( expired.isEmpty() )
+            {
+                return CompletableFuture.completedFuture( null );
+            }
+
+            final List<String> jobNames = new ArrayList<>( expired.size() );
+            expired.forEach( schedule -> jobNames.add( schedule.getJobName() ) );
+
+            result.batches.incrementAndGet();
+            return store.markExpired( storeKey, jobNames ).thenRun( () -> {
+                result.expired.addAndGet( expired.size() );
+                try
+                {
+                    dispatchExecutor.execute( () -> dispatch( storeKey, expired ) );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    // the schedules are marked expired already, so the next sweep won't see them; trigger them here
+                    logger.warn( "Dispatch of {} expired schedules of: {} rejected, triggering them inline. Reason: {}",
+                                 expired.size(), storeKey, e.getMessage() );
+                    dispatch( storeKey, expired );
+                }
+            } );
+        } ).exceptionally( e -> {
+            failed( storeKey, e, result );
+            return null;
+        } );
+    }
+
+    private void dispatch( final String storeKey, final List<DtxSchedule> expired )
+    {
+        for ( DtxSchedule schedule : expired )
+        {
+            try
+            {
+                logger.debug( "Expired entry: {}", schedule );
+                trigger.accept( schedule );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "Failed to trigger expired schedule: {} of: {}", schedule.getJobName(), storeKey, e );
+            }
+        }
+    }
+
+    private CompletableFuture<Void> failed( final String storeKey, final Throwable error, final Result result )
+    {
+        result.failed.incrementAndGet();
+        logger.error( "Failed to expire schedules of: {}, they are left for the next sweep. Reason: {}", storeKey,
+                      error.getMessage(), error );
+        return CompletableFuture.completedFuture( null );
+    }
+
+    /**
+     * Counts of one sweep.
+     */
+    public static final class Result
+    {
+        private final AtomicLong scanned = new AtomicLong();
+
+        private final AtomicLong due = new AtomicLong();
+
+        private final AtomicLong expired = new AtomicLong();
+
+        private final AtomicLong queries = new AtomicLong();
+
+        private final AtomicLong batches = new AtomicLong();
+
+        private final AtomicLong failed = new AtomicLong();
+
+        /**
+         * @return number of expiration rows read
+         */
+        public long getScanned()
+        {
+            return scanned.get();
+        }
+
+        /**
+         * @return number of expiration rows past their expiration time
+         */
+        public long getDue()
+        {
+            return due.get();
+        }
+
+        /**
+         * @return number of schedules marked expired and triggered
+         */
+        public long getExpired()
+        {
+            return expired.get();
+        }
+
+        public long getQueries()
+        {
+            return queries.get();
+        }
+
+        public long getBatches()
+        {
+            return batches.get();
+        }
+
+        /**
+         * @return number of chunks left for the next sweep because of errors
+         */
+        public long getFailed()
+        {
+            return failed.get();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Result{scanned=" + scanned + ", due=" + due + ", expired=" + expired + ", queries=" + queries
+                    + ", batches=" + batches + ", failed=" + failed + '}';
+        }
+    }
+}
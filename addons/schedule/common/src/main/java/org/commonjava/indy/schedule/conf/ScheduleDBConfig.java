@@ -29,6 +29,12 @@ import java.util.Properties;
 public class ScheduleDBConfig implements IndyConfigInfo
 {
 
+    public static final int DEFAULT_SWEEP_PAGE_SIZE = 5000;
+
+    public static final int DEFAULT_SWEEP_BATCH_SIZE = 100;
+
+    public static final int DEFAULT_SWEEP_CONCURRENCY = 16;
+
     private String scheduleKeyspace;
 
     private int replicationFactor;
@@ -41,6 +47,12 @@ public class ScheduleDBConfig implements IndyConfigInfo
 
     private Boolean enabled;
 
+    private int sweepPageSize;
+
+    private int sweepBatchSize;
+
+    private int sweepConcurrency;
+
     public ScheduleDBConfig () {}
 
     public ScheduleDBConfig( String keyspace, int replicationFactor, long partitionKeyRange, long period )
@@ -94,6 +106,39 @@ public class ScheduleDBConfig implements IndyConfigInfo
         this.offsetHours = offsetHours;
     }
 
+    public int getSweepPageSize()
+    {
+        return sweepPageSize > 0 ? sweepPageSize : DEFAULT_SWEEP_PAGE_SIZE;
+    }
+
+    @ConfigName( "schedule.sweep.page.size" )
+    public void setSweepPageSize( int sweepPageSize )
+    {
+        this.sweepPageSize = sweepPageSize;
+    }
+
+    public int getSweepBatchSize()
+    {
+        return sweepBatchSize > 0 ? sweepBatchSize : DEFAULT_SWEEP_BATCH_SIZE;
+    }
+
+    @ConfigName( "schedule.sweep.batch.size" )
+    public void setSweepBatchSize( int sweepBatchSize )
+    {
+        this.sweepBatchSize = sweepBatchSize;
+    }
+
+    public int getSweepConcurrency()
+    {
+        return sweepConcurrency > 0 ? sweepConcurrency : DEFAULT_SWEEP_CONCURRENCY;
+    }
+
+    @ConfigName( "schedule.sweep.concurrency" )
+    public void setSweepConcurrency( int sweepConcurrency )
+    {
+        this.sweepConcurrency = sweepConcurrency;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
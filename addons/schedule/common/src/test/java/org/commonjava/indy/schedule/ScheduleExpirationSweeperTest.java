@@ -0,0 +1,295 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.schedule;
+
+import org.commonjava.indy.schedule.datastax.model.DtxExpiration;
+import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Sweeps against an in-memory stand-in for the schedule and expiration tables, which counts the round trips a
+ * cassandra session would make.
+ */
+public class ScheduleExpirationSweeperTest
+{
+    private static final long PARTITION = 1;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ExecutorService queryExecutor = Executors.newFixedThreadPool( 8 );
+
+    private final ExecutorService dispatchExecutor = Executors.newSingleThreadExecutor();
+
+    private final InMemoryStore store = new InMemoryStore();
+
+    private final Collection<DtxSchedule> triggered = new ConcurrentLinkedQueue<>();
+
+    @After
+    public void shutdown()
+    {
+        queryExecutor.shutdownNow();
+        dispatchExecutor.shutdownNow();
+    }
+
+    @Test
+    public void dueSchedulesAreExpiredAndTriggeredOnce()
+            throws Exception
+    {
+        final Date now = new Date();
+        store.add( "maven:remote:central", "a.jar", -1000 );
+        store.add( "maven:remote:central", "b.jar", 60000 );
+        store.add( "maven:hosted:builds", "c.jar", -1000 );
+
+        // rescheduled after this expiration was recorded
+        final DtxExpiration stale = store.add( "maven:hosted:builds", "d.jar", -1000 );
+        store.schedules.get( key( "maven:hosted:builds", "d.jar" ) ).setScheduleUID( UUID.randomUUID() );
+
+        final ScheduleExpirationSweeper.Result result = sweeper( 100, 10, 4 ).sweep( PARTITION, now );
+        awaitDispatch();
+
+        assertThat( result.getScanned(), equalTo( 4L ) );
+        assertThat( result.getDue(), equalTo( 3L ) );
+        assertThat( result.getExpired(), equalTo( 2L ) );
+        assertThat( triggered.size(), equalTo( 2 ) );
+        assertThat( store.schedules.get( key( "maven:remote:central", "a.jar" ) ).getExpired(), equalTo( true ) );
+        assertThat( store.schedules.get( key( "maven:remote:central", "b.jar" ) ).getExpired(), equalTo( false ) );
+        assertThat( store.schedules.get( key( stale.getStorekey(), stale.getJobName() ) ).getExpired(),
+                    equalTo( false ) );
+
+        sweeper( 100, 10, 4 ).sweep( PARTITION, now );
+        awaitDispatch();
+        assertThat( triggered.size(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void failedChunksAreLeftForTheNextSweep()
+            throws Exception
+    {
+        store.add( "maven:remote:central", "a.jar", -1000 );
+        store.failMarks = true;
+
+        final ScheduleExpirationSweeper.Result failed = sweeper( 100, 10, 4 ).sweep( PARTITION, new Date() );
+        awaitDispatch();
+        assertThat( failed.getFailed(), equalTo( 1L ) );
+        assertThat( triggered.size(), equalTo( 0 ) );
+
+        store.failMarks = false;
+        sweeper( 100, 10, 4 ).sweep( PARTITION, new Date() );
+        awaitDispatch();
+        assertThat( triggered.size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void rejectedDispatchTriggersMarkedSchedulesInline()
+    {
+        store.add( "maven:remote:central", "a.jar", -1000 );
+        store.add( "maven:remote:central", "b.jar", -1000 );
+
+        final ScheduleExpirationSweeper rejecting =
+                new ScheduleExpirationSweeper( store, 100, 10, 4, command -> {
+                    throw new RejectedExecutionException( "dispatch pool is full" );
+                }, triggered::add );
+        final ScheduleExpirationSweeper.Result result = rejecting.sweep( PARTITION, new Date() );
+
+        assertThat( result.getExpired(), equalTo( 2L ) );
+        assertThat( result.getFailed(), equalTo( 0L ) );
+        assertThat( triggered.size(), equalTo( 2 ) );
+        assertThat( store.schedules.get( key( "maven:remote:central", "a.jar" ) ).getExpired(), equalTo( true ) );
+    }
+
+    @Test
+    public void largeSweepIsBatchedAndBounded()
+            throws Exception
+    {
+        final int stores = 200;
+        final int perStore = 1000;
+        for ( int s = 0; s < stores; s++ )
+        {
+            for ( int j = 0; j < perStore; j++ )
+            {
+                store.add( "maven:remote:repo-" + s, "org/foo/" + j + "/foo.jar", j % 10 == 0 ? 60000 : -1000 );
+            }
+        }
+
+        final int concurrency = 8;
+        final long start = System.nanoTime();
+        final ScheduleExpirationSweeper.Result result =
+                sweeper( 5000, 100, concurrency ).sweep( PARTITION, new Date() );
+        awaitDispatch();
+        final long millis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+        final int due = stores * perStore * 9 / 10;
+        assertThat( result.getExpired(), equalTo( (long) due ) );
+        assertThat( triggered.size(), equalTo( due ) );
+
+        // one query and one batch per store chunk, instead of a query and an update per row
+        assertThat( (long) store.queries.get(), equalTo( result.getQueries() ) );
+        assertThat( (long) store.queries.get(), lessThanOrEqualTo( (long) stores * ( perStore / 100 + 1 ) ) );
+        assertThat( store.batches.get(), equalTo( store.queries.get() ) );
+        assertThat( store.maxInFlight.get(), lessThanOrEqualTo( concurrency ) );
+        logger.debug( "Swept {} expirations ({} due) in {} ms with {} queries and {} batches", result.getScanned(),
+                      due, millis, store.queries.get(), store.batches.get() );
+    }
+
+    private ScheduleExpirationSweeper sweeper( final int pageSize, final int batchSize, final int concurrency )
+    {
+        return new ScheduleExpirationSweeper( store, pageSize, batchSize, concurrency, dispatchExecutor,
+                                              triggered::add );
+    }
+
+    private void awaitDispatch()
+            throws Exception
+    {
+        // triggers are handed over before the sweep returns, and the single dispatch thread runs them in order
+        dispatchExecutor.submit( () -> {
+        } ).get();
+    }
+
+    private static String key( final String storeKey, final String jobName )
+    {
+        return storeKey + "#" + jobName;
+    }
+
+    /**
+     * Expiration rows are kept ordered by store and job name, as cassandra clusters them in a partition. Queries and
+     * batches complete on another thread, like driver callbacks.
+     */
+    private final class InMemoryStore
+            implements ScheduleExpirationSweeper.Store
+    {
+        private final Map<String, DtxExpiration> expirations = new TreeMap<>();
+
+        private final Map<String, DtxSchedule> schedules = new ConcurrentHashMap<>();
+
+        private final AtomicInteger queries = new AtomicInteger();
+
+        private final AtomicInteger batches = new AtomicInteger();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        private volatile boolean failMarks;
+
+        private DtxExpiration add( final String storeKey, final String jobName, final long expiresInMillis )
+        {
+            final UUID uid = UUID.randomUUID();
+            final Date scheduled = new Date();
+            final Date expiration = new Date( scheduled.getTime() + expiresInMillis );
+            schedules.put( key( storeKey, jobName ),
+                           new DtxSchedule( storeKey, "CONTENT", jobName, uid, scheduled, "{}", expiresInMillis ) );
+
+            final DtxExpiration row = new DtxExpiration( PARTITION, uid, expiration, storeKey, jobName );
+            expirations.put( key( storeKey, jobName ), row );
+            return row;
+        }
+
+        @Override
+        public void forEachExpirationPage( final long partition, final int pageSize,
+                                           final Consumer<List<DtxExpiration>> consumer )
+        {
+            List<DtxExpiration> page = new ArrayList<>( pageSize );
+            for ( DtxExpiration row : expirations.values() )
+            {
+                page.add( row );
+                if ( page.size() == pageSize )
+                {
+                    consumer.accept( page );
+                    page = new ArrayList<>( pageSize );
+                }
+            }
+            if ( !page.isEmpty() )
+            {
+                consumer.accept( page );
+            }
+        }
+
+        @Override
+        public CompletableFuture<Collection<DtxSchedule>> querySchedules( final String storeKey,
+                                                                          final Collection<String> jobNames )
+        {
+            queries.incrementAndGet();
+            final List<String> names = new ArrayList<>( jobNames );
+            return async( () -> {
+                final List<DtxSchedule> found = new ArrayList<>();
+                names.forEach( name -> {
+                    final DtxSchedule schedule = schedules.get( key( storeKey, name ) );
+                    if ( schedule != null )
+                    {
+                        found.add( copy( schedule ) );
+                    }
+                } );
+                return found;
+            } );
+        }
+
+        @Override
+        public CompletableFuture<Void> markExpired( final String storeKey, final Collection<String> jobNames )
+        {
+            batches.incrementAndGet();
+            final List<String> names = new ArrayList<>( jobNames );
+            return async( () -> {
+                if ( failMarks )
+                {
+                    throw new IllegalStateException( "No host available" );
+                }
+                names.forEach( name -> schedules.get( key( storeKey, name ) ).setExpired( true ) );
+                return null;
+            } );
+        }
+
+        private <T> CompletableFuture<T> async( final java.util.function.Supplier<T> call )
+        {
+            maxInFlight.accumulateAndGet( inFlight.incrementAndGet(), Math::max );
+            return CompletableFuture.supplyAsync( call, queryExecutor )
+                                    .whenComplete( ( v, e ) -> inFlight.decrementAndGet() );
+        }
+
+        private DtxSchedule copy( final DtxSchedule schedule )
+        {
+            final DtxSchedule copy =
+                    new DtxSchedule( schedule.getStoreKey(), schedule.getJobType(), schedule.getJobName(),
+                                     schedule.getScheduleUID(), schedule.getScheduleTime(), schedule.getPayload(),
+                                     schedule.getLifespan() );
+            copy.setExpired( schedule.getExpired() );
+            return copy;
+        }
+    }
+}
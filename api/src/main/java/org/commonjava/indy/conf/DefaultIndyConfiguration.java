@@ -42,7 +42,6 @@ public class DefaultIndyConfiguration
 
     public static final int DEFAULT_STORE_DISABLE_TIMEOUT_SECONDS = 1800; // 30 minutes
 
-    public static final int DEFAULT_NFC_EXPIRATION_SWEEP_MINUTES = 30;
 
     public static final int DEFAULT_NFC_MAX_RESULT_SET_SIZE = 5000;
 
@@ -68,6 +67,26 @@ public class DefaultIndyConfiguration
 
     public static final int DEFAULT_CASSANDRA_KEYSPACE_REPLICAS = 1;
 
+    public static final int DEFAULT_GROUP_PROBE_SEQUENTIAL_MEMBERS = 1;
+
+    public static final int DEFAULT_GROUP_PROBE_FANOUT = 4;
+
+    public static final int DEFAULT_GROUP_RESOLUTION_CACHE_MAX_SIZE = 100000;
+
+    public static final double DEFAULT_NFC_FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+    public static final int DEFAULT_NFC_FILTER_REBUILD_MINUTES = 60;
+
+    public static final int DEFAULT_NFC_FILTER_FULL_REBUILD_HOURS = 24;
+
+    public static final int DEFAULT_NFC_MAX_ENTRIES = 0;
+
+    public static final int DEFAULT_MERGED_PATH_INDEX_MAX_PATHS = 100000;
+
+    public static final int DEFAULT_TOUCH_BUFFER_FLUSH_SECONDS = 5;
+
+    public static final int DEFAULT_TOUCH_BUFFER_RESET_THRESHOLD_SECONDS = 60;
+
     private Integer passthroughTimeoutSeconds;
 
     private Integer notFoundCacheTimeoutSeconds;
@@ -78,8 +97,6 @@ public class DefaultIndyConfiguration
 
     private String nfcProvider;
 
-    private Integer nfcExpirationSweepMinutes;
-
     private Integer nfcMaxResultSetSize;
 
     private Integer remoteMetadataTimeoutSeconds;
@@ -116,6 +133,42 @@ public class DefaultIndyConfiguration
 
     private Boolean storeManagementRestEnabled = true;
 
+    private boolean groupProbeEnabled;
+
+    private String groupProbeGroupsPattern;
+
+    private Integer groupProbeSequentialMembers;
+
+    private Integer groupProbeFanout;
+
+    private Boolean groupProbeCancelEnabled;
+
+    private boolean groupResolutionCacheEnabled;
+
+    private Integer groupResolutionCacheMaxSize;
+
+    private Boolean groupResolutionCacheReleaseOnly;
+
+    private boolean nfcFilterEnabled;
+
+    private Double nfcFilterFalsePositiveRate;
+
+    private Integer nfcFilterRebuildMinutes;
+
+    private Integer nfcFilterFullRebuildHours;
+
+    private Integer nfcMaxEntries;
+
+    private boolean mergedPathIndexEnabled;
+
+    private Integer mergedPathIndexMaxPaths;
+
+    private boolean touchBufferEnabled;
+
+    private Integer touchBufferFlushSeconds;
+
+    private Integer touchBufferResetThresholdSeconds;
+
     public DefaultIndyConfiguration()
     {
     }
@@ -228,10 +281,17 @@ public class DefaultIndyConfiguration
         return storeDisableTimeoutSeconds == null ? DEFAULT_STORE_DISABLE_TIMEOUT_SECONDS : storeDisableTimeoutSeconds;
     }
 
+    /**
+     * @deprecated NFC entries expire on a timer wheel now, there is no periodic sweep to configure. The setting is
+     * ignored.
+     */
+    @Deprecated
     @ConfigName( "nfc.sweep.minutes" )
     public void setDefaultNfcExpirationSweepMinutes( final int minutes )
     {
-        this.nfcExpirationSweepMinutes = minutes;
+        LoggerFactory.getLogger( getClass() )
+                     .warn( "'nfc.sweep.minutes' is no longer used and will be ignored: NFC entries expire on their own "
+                                    + "timeout now. Please remove it from the configuration." );
     }
 
     @ConfigName( "nfc.maxresultsetsize" )
@@ -240,12 +300,6 @@ public class DefaultIndyConfiguration
         this.nfcMaxResultSetSize = size;
     }
 
-    @Override
-    public int getNfcExpirationSweepMinutes()
-    {
-        return nfcExpirationSweepMinutes == null ? DEFAULT_NFC_EXPIRATION_SWEEP_MINUTES : nfcExpirationSweepMinutes;
-    }
-
     @Override
     public int getNfcMaxResultSetSize()
     {
@@ -460,6 +514,232 @@ public class DefaultIndyConfiguration
     {
         return storeManagementRestEnabled;
     }
+    @ConfigName( "group.probe.enabled" )
+    public void setGroupProbeEnabled( boolean groupProbeEnabled )
+    {
+        this.groupProbeEnabled = groupProbeEnabled;
+    }
+
+    @Override
+    public boolean isGroupProbeEnabled()
+    {
+        return groupProbeEnabled;
+    }
+
+    @ConfigName( "group.probe.groups" )
+    public void setGroupProbeGroupsPattern( String groupProbeGroupsPattern )
+    {
+        this.groupProbeGroupsPattern = groupProbeGroupsPattern;
+    }
+
+    @Override
+    public String getGroupProbeGroupsPattern()
+    {
+        return groupProbeGroupsPattern;
+    }
+
+    @ConfigName( "group.probe.sequential.members" )
+    public void setGroupProbeSequentialMembers( Integer groupProbeSequentialMembers )
+    {
+        this.groupProbeSequentialMembers = groupProbeSequentialMembers;
+    }
+
+    @Override
+    public int getGroupProbeSequentialMembers()
+    {
+        return groupProbeSequentialMembers == null ?
+                DEFAULT_GROUP_PROBE_SEQUENTIAL_MEMBERS :
+                groupProbeSequentialMembers;
+    }
+
+    @ConfigName( "group.probe.fanout" )
+    public void setGroupProbeFanout( Integer groupProbeFanout )
+    {
+        this.groupProbeFanout = groupProbeFanout;
+    }
+
+    @Override
+    public int getGroupProbeFanout()
+    {
+        return groupProbeFanout == null ? DEFAULT_GROUP_PROBE_FANOUT : groupProbeFanout;
+    }
+
+    @ConfigName( "group.probe.cancel.enabled" )
+    public void setGroupProbeCancelEnabled( Boolean groupProbeCancelEnabled )
+    {
+        this.groupProbeCancelEnabled = groupProbeCancelEnabled;
+    }
+
+    @Override
+    public boolean isGroupProbeCancelEnabled()
+    {
+        return groupProbeCancelEnabled == null || groupProbeCancelEnabled;
+    }
+
+    @ConfigName( "group.resolution.cache.enabled" )
+    public void setGroupResolutionCacheEnabled( boolean groupResolutionCacheEnabled )
+    {
+        this.groupResolutionCacheEnabled = groupResolutionCacheEnabled;
+    }
+
+    @Override
+    public boolean isGroupResolutionCacheEnabled()
+    {
+        return groupResolutionCacheEnabled;
+    }
+
+    @ConfigName( "group.resolution.cache.size" )
+    public void setGroupResolutionCacheMaxSize( Integer groupResolutionCacheMaxSize )
+    {
+        this.groupResolutionCacheMaxSize = groupResolutionCacheMaxSize;
+    }
+
+    @Override
+    public int getGroupResolutionCacheMaxSize()
+    {
+        return groupResolutionCacheMaxSize == null ?
+                DEFAULT_GROUP_RESOLUTION_CACHE_MAX_SIZE :
+                groupResolutionCacheMaxSize;
+    }
+
+    @ConfigName( "group.resolution.cache.release.only" )
+    public void setGroupResolutionCacheReleaseOnly( Boolean groupResolutionCacheReleaseOnly )
+    {
+        this.groupResolutionCacheReleaseOnly = groupResolutionCacheReleaseOnly;
+    }
+
+    @Override
+    public boolean isGroupResolutionCacheReleaseOnly()
+    {
+        return groupResolutionCacheReleaseOnly == null || groupResolutionCacheReleaseOnly;
+    }
+
+    @ConfigName( "nfc.filter.enabled" )
+    public void setNfcFilterEnabled( boolean nfcFilterEnabled )
+    {
+        this.nfcFilterEnabled = nfcFilterEnabled;
+    }
+
+    @Override
+    public boolean isNfcFilterEnabled()
+    {
+        return nfcFilterEnabled;
+    }
+
+    @ConfigName( "nfc.filter.fpp" )
+    public void setNfcFilterFalsePositiveRate( Double nfcFilterFalsePositiveRate )
+    {
+        this.nfcFilterFalsePositiveRate = nfcFilterFalsePositiveRate;
+    }
+
+    @Override
+    public double getNfcFilterFalsePositiveRate()
+    {
+        return nfcFilterFalsePositiveRate == null ?
+                DEFAULT_NFC_FILTER_FALSE_POSITIVE_RATE :
+                nfcFilterFalsePositiveRate;
+    }
+
+    @ConfigName( "nfc.filter.rebuild.minutes" )
+    public void setNfcFilterRebuildMinutes( Integer nfcFilterRebuildMinutes )
+    {
+        this.nfcFilterRebuildMinutes = nfcFilterRebuildMinutes;
+    }
+
+    @Override
+    public int getNfcFilterRebuildMinutes()
+    {
+        return nfcFilterRebuildMinutes == null ? DEFAULT_NFC_FILTER_REBUILD_MINUTES : nfcFilterRebuildMinutes;
+    }
+
+    @ConfigName( "nfc.filter.full.rebuild.hours" )
+    public void setNfcFilterFullRebuildHours( Integer nfcFilterFullRebuildHours )
+    {
+        this.nfcFilterFullRebuildHours = nfcFilterFullRebuildHours;
+    }
+
+    @Override
+    public int getNfcFilterFullRebuildHours()
+    {
+        return nfcFilterFullRebuildHours == null ?
+                DEFAULT_NFC_FILTER_FULL_REBUILD_HOURS :
+                nfcFilterFullRebuildHours;
+    }
+
+    @ConfigName( "nfc.max.entries" )
+    public void setNfcMaxEntries( Integer nfcMaxEntries )
+    {
+        this.nfcMaxEntries = nfcMaxEntries;
+    }
+
+    @Override
+    public int getNfcMaxEntries()
+    {
+        return nfcMaxEntries == null ? DEFAULT_NFC_MAX_ENTRIES : nfcMaxEntries;
+    }
+
+    @ConfigName( "merged.path.index.enabled" )
+    public void setMergedPathIndexEnabled( boolean mergedPathIndexEnabled )
+    {
+        this.mergedPathIndexEnabled = mergedPathIndexEnabled;
+    }
+
+    @Override
+    public boolean isMergedPathIndexEnabled()
+    {
+        return mergedPathIndexEnabled;
+    }
+
+    @ConfigName( "merged.path.index.max.paths" )
+    public void setMergedPathIndexMaxPaths( Integer mergedPathIndexMaxPaths )
+    {
+        this.mergedPathIndexMaxPaths = mergedPathIndexMaxPaths;
+    }
+
+    @Override
+    public int getMergedPathIndexMaxPaths()
+    {
+        return mergedPathIndexMaxPaths == null ? DEFAULT_MERGED_PATH_INDEX_MAX_PATHS : mergedPathIndexMaxPaths;
+    }
+
+    @ConfigName( "touch.buffer.enabled" )
+    public void setTouchBufferEnabled( boolean touchBufferEnabled )
+    {
+        this.touchBufferEnabled = touchBufferEnabled;
+    }
+
+    @Override
+    public boolean isTouchBufferEnabled()
+    {
+        return touchBufferEnabled;
+    }
+
+    @ConfigName( "touch.buffer.flush.seconds" )
+    public void setTouchBufferFlushSeconds( Integer touchBufferFlushSeconds )
+    {
+        this.touchBufferFlushSeconds = touchBufferFlushSeconds;
+    }
+
+    @Override
+    public int getTouchBufferFlushSeconds()
+    {
+        return touchBufferFlushSeconds == null ? DEFAULT_TOUCH_BUFFER_FLUSH_SECONDS : touchBufferFlushSeconds;
+    }
+
+    @ConfigName( "touch.buffer.reset.threshold.seconds" )
+    public void setTouchBufferResetThresholdSeconds( Integer touchBufferResetThresholdSeconds )
+    {
+        this.touchBufferResetThresholdSeconds = touchBufferResetThresholdSeconds;
+    }
+
+    @Override
+    public int getTouchBufferResetThresholdSeconds()
+    {
+        return touchBufferResetThresholdSeconds == null ?
+                DEFAULT_TOUCH_BUFFER_RESET_THRESHOLD_SECONDS :
+                touchBufferResetThresholdSeconds;
+    }
+
     @Override
     public InputStream getDefaultConfig()
     {
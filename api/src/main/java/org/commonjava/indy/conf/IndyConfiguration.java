@@ -51,12 +51,6 @@ public interface IndyConfiguration
 
     int getStoreDisableTimeoutSeconds();
 
-    /**
-     * Number of minutes between sweeps of the NFC expiration reaper thread.
-     * @since 1.1.15
-     */
-    int getNfcExpirationSweepMinutes();
-
     /**
      * List of http headers to look for and include in the MDC.
      * @since 1.3
@@ -141,4 +135,127 @@ public interface IndyConfiguration
      * @since 3.3.0
      */
     boolean isStoreManagementRestEnabled();
+
+    /**
+     * Whether group retrieval probes remote members speculatively. Members after the first
+     * {@link #getGroupProbeSequentialMembers()} ones are checked for existence concurrently, so a slow remote early in
+     * the group doesn't hold up the members after it. The first member in group order holding the path still wins.
+     * Paths handled by a content generator are not probed, as a member may generate them.
+     * @since 3.5.2
+     */
+    boolean isGroupProbeEnabled();
+
+    /**
+     * Regex of the group names speculative probing is used for. Null means all groups, when probing is enabled.
+     * @since 3.5.2
+     */
+    String getGroupProbeGroupsPattern();
+
+    /**
+     * Number of leading group members that are always retrieved in order, without probing.
+     * @since 3.5.2
+     */
+    int getGroupProbeSequentialMembers();
+
+    /**
+     * Maximum number of existence probes outstanding ahead of the member being retrieved, per group request.
+     * @since 3.5.2
+     */
+    int getGroupProbeFanout();
+
+    /**
+     * Whether outstanding probes are cancelled once the group request has its result, or when the retrieval reaches
+     * their member before they finish. When false they run to completion, which warms the not-found cache.
+     * @since 3.5.2
+     */
+    boolean isGroupProbeCancelEnabled();
+
+    /**
+     * Whether group retrieval remembers which member served a path, so repeat requests go straight to that member.
+     * @since 3.5.2
+     */
+    boolean isGroupResolutionCacheEnabled();
+
+    /**
+     * Maximum number of (group, path) resolutions remembered.
+     * @since 3.5.2
+     */
+    int getGroupResolutionCacheMaxSize();
+
+    /**
+     * Whether only release paths are remembered, leaving out snapshot and metadata paths.
+     * @since 3.5.2
+     */
+    boolean isGroupResolutionCacheReleaseOnly();
+
+    /**
+     * Whether the cassandra NFC keeps per-store Bloom filters of its entries, so a path that is definitely not in the
+     * NFC is answered without querying cassandra.
+     * @since 3.5.2
+     */
+    boolean isNfcFilterEnabled();
+
+    /**
+     * Target false positive probability of the NFC Bloom filters.
+     * @since 3.5.2
+     */
+    double getNfcFilterFalsePositiveRate();
+
+    /**
+     * Number of minutes between refreshes of stale NFC Bloom filters. A store's filter is stale once it answers
+     * noticeably more false positives than configured, or has grown to twice its size at the last refresh; only those
+     * stores are read back from cassandra, one partition each.
+     * @since 3.5.2
+     */
+    int getNfcFilterRebuildMinutes();
+
+    /**
+     * Number of hours between full rebuilds of the NFC Bloom filters, which scan the whole nfc table page by page. The
+     * filters are also fully built at startup; zero or less means only then. Between full rebuilds, entries another
+     * node added are missed until this node records the same path as missing.
+     * @since 3.5.2
+     */
+    int getNfcFilterFullRebuildHours();
+
+    /**
+     * Maximum number of entries the in-memory NFC holds before evicting the least recently used ones; zero or less
+     * means unbounded.
+     * @since 3.5.2
+     */
+    int getNfcMaxEntries();
+
+    /**
+     * Whether the mergable paths of each store are indexed, so clean-ups on group membership changes don't list the
+     * whole content of the stores involved. The index only sees files stored through this node, so it is ignored, with
+     * a warning at startup, unless the node is standalone and not clustered.
+     * @since 3.5.2
+     */
+    boolean isMergedPathIndexEnabled();
+
+    /**
+     * Maximum number of mergable paths indexed per store. Stores holding more are dropped from the index, and listed
+     * on each clean-up instead.
+     * @since 3.5.2
+     */
+    int getMergedPathIndexMaxPaths();
+
+    /**
+     * Whether the content timeout resets done when files are accessed are buffered and done in batches.
+     * @since 3.5.2
+     */
+    boolean isTouchBufferEnabled();
+
+    /**
+     * Number of seconds between flushes of the buffered content timeout resets.
+     * @since 3.5.2
+     */
+    int getTouchBufferFlushSeconds();
+
+    /**
+     * Number of seconds after a content timeout reset during which accesses to the same file don't reset it again,
+     * unless the file would expire within that many seconds given the smallest content timeout of its store. Capped at
+     * a quarter of the smallest of the passthrough and remote metadata timeouts.
+     * @since 3.5.2
+     */
+    int getTouchBufferResetThresholdSeconds();
 }
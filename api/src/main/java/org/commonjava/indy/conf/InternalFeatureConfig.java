@@ -39,6 +39,11 @@ public class InternalFeatureConfig implements IndyConfigInfo {
 
     private boolean mavenMetadataCacheEnabled = TRUE;
 
+    /**
+     * Whether cached group metadata records per-member contributions, to be re-merged incrementally. False by default.
+     */
+    private boolean mavenMetadataIncrementalMergeEnabled;
+
     /**
      * Indy disables a remote store when transfer error happens, and try to re-enable it
      * after a timeout specified either by global 'storeDisableTimeoutSeconds' or store specific timeout.
@@ -93,6 +98,15 @@ public class InternalFeatureConfig implements IndyConfigInfo {
         this.mavenMetadataCacheEnabled = mavenMetadataCacheEnabled;
     }
 
+    public boolean isMavenMetadataIncrementalMergeEnabled() {
+        return mavenMetadataIncrementalMergeEnabled;
+    }
+
+    @ConfigName("maven.metadata.incremental.merge.enabled")
+    public void setMavenMetadataIncrementalMergeEnabled(boolean mavenMetadataIncrementalMergeEnabled) {
+        this.mavenMetadataIncrementalMergeEnabled = mavenMetadataIncrementalMergeEnabled;
+    }
+
     public boolean isStoreAutoDisableAndReEnable() {
         return storeAutoDisableAndReEnable;
     }
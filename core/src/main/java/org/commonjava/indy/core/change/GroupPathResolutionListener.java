@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.change;
+
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.change.event.ArtifactStoreEnablementEvent;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.core.content.GroupPathResolutionCache;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.event.FileDeletionEvent;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps the {@link GroupPathResolutionCache} consistent with group memberships and content. Resolutions are dropped
+ * for changed, deleted, enabled or disabled stores and every group containing them, and for paths that were stored or
+ * deleted in any store.
+ */
+@ApplicationScoped
+public class GroupPathResolutionListener
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private GroupPathResolutionCache resolutionCache;
+
+    @Inject
+    private StoreDataManager storeDataManager;
+
+    protected GroupPathResolutionListener()
+    {
+    }
+
+    public GroupPathResolutionListener( final GroupPathResolutionCache resolutionCache,
+                                        final StoreDataManager storeDataManager )
+    {
+        this.resolutionCache = resolutionCache;
+        this.storeDataManager = storeDataManager;
+    }
+
+    public void onStoreUpdate( @Observes final ArtifactStorePostUpdateEvent event )
+    {
+        invalidateStores( event );
+    }
+
+    public void onStoreDeletion( @Observes final ArtifactStoreDeletePostEvent event )
+    {
+        invalidateStores( event );
+    }
+
+    public void onStoreEnablement( @Observes final ArtifactStoreEnablementEvent event )
+    {
+        if ( !event.isPreprocessing() )
+        {
+            invalidateStores( event );
+        }
+    }
+
+    public void onFileStorage( @Observes final FileStorageEvent event )
+    {
+        invalidatePath( event.getTransfer() );
+    }
+
+    public void onFileDeletion( @Observes final FileDeletionEvent event )
+    {
+        invalidatePath( event.getTransfer() );
+    }
+
+    private void invalidatePath( final Transfer transfer )
+    {
+        if ( transfer != null && resolutionCache.size() > 0 )
+        {
+            resolutionCache.invalidatePath( transfer.getPath() );
+        }
+    }
+
+    private void invalidateStores( final Iterable<ArtifactStore> stores )
+    {
+        // even when nothing is cached yet, the generation has to be bumped so a resolution overlapping this change
+        // isn't cached afterwards
+        final Set<StoreKey> keys = new HashSet<>();
+        for ( ArtifactStore store : stores )
+        {
+            final StoreKey key = store.getKey();
+            keys.add( key );
+            try
+            {
+                for ( Group group : storeDataManager.query().getGroupsAffectedBy( key ) )
+                {
+                    keys.add( group.getKey() );
+                }
+            }
+            catch ( IndyDataException e )
+            {
+                logger.warn( "Failed to find groups affected by {}, clearing all group path resolutions. Reason: {}",
+                             key, e.getMessage() );
+                resolutionCache.clear();
+                return;
+            }
+        }
+
+        logger.trace( "Invalidating group path resolutions of: {}", keys );
+        resolutionCache.invalidateStores( keys );
+    }
+}
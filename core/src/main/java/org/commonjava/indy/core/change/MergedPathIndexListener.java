@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.change;
+
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.core.content.MergedPathIndex;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.event.FileDeletionEvent;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.model.SpecialPathInfo;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.io.SpecialPathManager;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+/**
+ * Keeps the {@link MergedPathIndex} up to date with the mergable files stored in and deleted from each store.
+ */
+@ApplicationScoped
+public class MergedPathIndexListener
+{
+    @Inject
+    private MergedPathIndex mergedPathIndex;
+
+    @Inject
+    private SpecialPathManager specialPathManager;
+
+    public void onFileStorage( @Observes final FileStorageEvent event )
+    {
+        final Transfer transfer = event.getTransfer();
+        if ( !mergedPathIndex.isEnabled() || transfer == null )
+        {
+            return;
+        }
+
+        final SpecialPathInfo pathInfo = specialPathManager.getSpecialPathInfo( transfer.getPath() );
+        final StoreKey key = LocationUtils.getKey( transfer );
+        if ( pathInfo != null && pathInfo.isMergable() && key != null )
+        {
+            mergedPathIndex.add( key, transfer.getPath() );
+        }
+    }
+
+    public void onFileDeletion( @Observes final FileDeletionEvent event )
+    {
+        final Transfer transfer = event.getTransfer();
+        if ( !mergedPathIndex.isEnabled() || transfer == null )
+        {
+            return;
+        }
+
+        final StoreKey key = LocationUtils.getKey( transfer );
+        if ( key != null )
+        {
+            mergedPathIndex.remove( key, transfer.getPath() );
+        }
+    }
+
+    public void onStoreDeletion( @Observes final ArtifactStoreDeletePostEvent event )
+    {
+        if ( mergedPathIndex.isEnabled() )
+        {
+            for ( ArtifactStore store : event )
+            {
+                mergedPathIndex.clear( store.getKey() );
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.change;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the path clean-ups done by {@link StoreContentListener}: how many paths were looked at, against how many
+ * files were actually cleared.
+ */
+public class PathCleanupMetrics
+{
+    private final LongAdder cleanups = new LongAdder();
+
+    private final LongAdder indexedCleanups = new LongAdder();
+
+    private final LongAdder scanned = new LongAdder();
+
+    private final LongAdder cleared = new LongAdder();
+
+    private final LongAdder seeded = new LongAdder();
+
+    void recordCleanup( final boolean indexed, final long scannedPaths, final long clearedPaths )
+    {
+        cleanups.increment();
+        if ( indexed )
+        {
+            indexedCleanups.increment();
+        }
+        scanned.add( scannedPaths );
+        cleared.add( clearedPaths );
+    }
+
+    void recordSeed( final long listedPaths )
+    {
+        seeded.increment();
+        scanned.add( listedPaths );
+    }
+
+    /**
+     * @return number of clean-ups done for one origin store
+     */
+    public long getCleanupCount()
+    {
+        return cleanups.sum();
+    }
+
+    /**
+     * @return number of clean-ups that used the merged path index instead of listing storage
+     */
+    public long getIndexedCleanupCount()
+    {
+        return indexedCleanups.sum();
+    }
+
+    /**
+     * @return number of paths listed or looked up, including the listings that seeded the merged path index
+     */
+    public long getScannedPathCount()
+    {
+        return scanned.sum();
+    }
+
+    /**
+     * @return number of files deleted
+     */
+    public long getClearedPathCount()
+    {
+        return cleared.sum();
+    }
+
+    /**
+     * @return number of stores listed to seed the merged path index
+     */
+    public long getSeededStoreCount()
+    {
+        return seeded.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PathCleanupMetrics{cleanups=" + cleanups.sum() + ", indexedCleanups=" + indexedCleanups.sum()
+                + ", scanned=" + scanned.sum() + ", cleared=" + cleared.sum() + ", seeded=" + seeded.sum() + '}';
+    }
+}
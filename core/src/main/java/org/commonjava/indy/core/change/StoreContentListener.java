@@ -25,6 +25,7 @@ import org.commonjava.indy.change.event.ArtifactStoreEnablementEvent;
 import org.commonjava.indy.change.event.ArtifactStorePreUpdateEvent;
 import org.commonjava.indy.content.DirectContentAccess;
 import org.commonjava.indy.content.StoreContentAction;
+import org.commonjava.indy.core.content.MergedPathIndex;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
@@ -43,6 +44,7 @@ import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -84,6 +86,16 @@ public class StoreContentListener
     @Inject
     private StoreDataManager storeDataManager;
 
+    @Inject
+    private MergedPathIndex mergedPathIndex;
+
+    private final PathCleanupMetrics cleanupMetrics = new PathCleanupMetrics();
+
+    private final Predicate<String> mergablePath = ( path ) -> {
+        SpecialPathInfo pathInfo = specialPathManager.getSpecialPathInfo( path );
+        return ( pathInfo != null && pathInfo.isMergable() );
+    };
+
     /**
      * Handles store disable/enablement.
      */
@@ -158,9 +170,13 @@ public class StoreContentListener
     private int clearPath( String path, ArtifactStore store )
     {
         logger.info( "Clear path: {}, store: {}", path, store.getKey() );
+        int cleared = 0;
         try
         {
-            delete( directContentAccess.getTransfer( store, path ) );
+            if ( delete( directContentAccess.getTransfer( store, path ) ) )
+            {
+                cleared++;
+            }
         }
         catch ( IndyWorkflowException e )
         {
@@ -170,10 +186,21 @@ public class StoreContentListener
         boolean deleteOriginPath = true;
         StreamSupport.stream( storeContentActions.spliterator(), false )
                      .forEach( action -> action.clearStoreContent( path, store, Collections.emptySet(), deleteOriginPath ) );
-        return 1;
+        return cleared;
     }
 
     private int clearPath( String path, ArtifactStore origin, Set<Group> affectedGroups, boolean deleteOriginPath )
+    {
+        return clearPath( path, origin, affectedGroups, affectedGroups, deleteOriginPath );
+    }
+
+    /**
+     * Deletes the path from the origin (if asked to) and from the holding groups, then clears it via the store-content
+     * actions for all the affected groups, since those may have not-found or metadata cache entries for it without
+     * holding a merged copy.
+     */
+    private int clearPath( String path, ArtifactStore origin, Set<Group> affectedGroups, Set<Group> holdingGroups,
+                           boolean deleteOriginPath )
     {
         logger.info( "Clear path: {}, origin: {}, affectedGroups: {}", path, origin.getKey(), affectedGroups );
 
@@ -193,7 +220,7 @@ public class StoreContentListener
             }
         }
 
-        affectedGroups.forEach( g -> {
+        holdingGroups.forEach( g -> {
             try
             {
                 Transfer gt = directContentAccess.getTransfer( g, path );
@@ -295,27 +322,119 @@ public class StoreContentListener
     private Callable<Integer> clearPathsProcessor( ArtifactStore origin, Predicate<? super String> pathFilter,
                                                    Set<Group> affectedGroups, boolean deleteOriginPath )
     {
+        // the index only holds mergable paths, so clean-ups of any other paths list the storage
+        if ( mergedPathIndex.isEnabled() && !deleteOriginPath && pathFilter == mergablePath )
+        {
+            return () -> clearIndexedPaths( origin, affectedGroups );
+        }
+
+        final AtomicInteger scanned = new AtomicInteger( 0 );
+        final AtomicInteger cleared = new AtomicInteger( 0 );
         if ( origin.getType() == StoreType.remote )
         {
-            return () -> listPathsAnd( affectedGroups, mergablePath(), this::clearPath,
-                                       this.directContentAccess );
+            return () -> {
+                listPathsAnd( affectedGroups, counting( mergablePath(), scanned ),
+                              ( p, g ) -> cleared.addAndGet( clearPath( p, g ) ), this.directContentAccess );
+                return recordCleanup( origin, false, scanned.get(), cleared.get() );
+            };
         }
         else
         {
-            return () -> listPathsAnd( origin.getKey(), pathFilter,
-                                       p -> clearPath( p, origin, affectedGroups, deleteOriginPath ),
-                                       this.directContentAccess );
+            return () -> {
+                listPathsAnd( origin.getKey(), counting( pathFilter, scanned ),
+                              p -> cleared.addAndGet( clearPath( p, origin, affectedGroups, deleteOriginPath ) ),
+                              this.directContentAccess );
+                return recordCleanup( origin, false, scanned.get(), cleared.get() );
+            };
         }
     }
 
-    private Predicate<? super String> mergablePath()
+    /**
+     * Same clean-up as {@link #clearPathsProcessor}, for clean-ups of mergable paths only, using the mergable paths
+     * recorded by the {@link MergedPathIndex} instead of listing storage. Groups only hold merged files, so these are
+     * the only paths in them a membership change can supersede. The origin's paths are cleared from the groups holding
+     * them, rather than from every affected group.
+     */
+    private int clearIndexedPaths( ArtifactStore origin, Set<Group> affectedGroups )
+    {
+        final Map<Group, Set<String>> groupPaths = new LinkedHashMap<>();
+        affectedGroups.forEach( g -> groupPaths.put( g, indexedPaths( g ) ) );
+
+        int scanned = 0;
+        int cleared = 0;
+        if ( origin.getType() == StoreType.remote )
+        {
+            for ( Map.Entry<Group, Set<String>> entry : groupPaths.entrySet() )
+            {
+                for ( String path : entry.getValue() )
+                {
+                    scanned++;
+                    cleared += clearPath( path, entry.getKey() );
+                }
+            }
+        }
+        else
+        {
+            for ( String path : indexedPaths( origin ) )
+            {
+                scanned++;
+                final Set<Group> holding = new HashSet<>();
+                groupPaths.forEach( ( g, paths ) -> {
+                    if ( paths.contains( path ) )
+                    {
+                        holding.add( g );
+                    }
+                } );
+                cleared += clearPath( path, origin, affectedGroups, holding, false );
+            }
+        }
+
+        return recordCleanup( origin, true, scanned, cleared );
+    }
+
+    /**
+     * @return the mergable paths the store holds, listing its storage first if the index wasn't seeded for it yet
+     */
+    private Set<String> indexedPaths( ArtifactStore store )
     {
-        return ( path ) -> {
-            SpecialPathInfo pathInfo = specialPathManager.getSpecialPathInfo( path );
-            return ( pathInfo != null && pathInfo.isMergable() );
+        final StoreKey key = store.getKey();
+        Set<String> paths = mergedPathIndex.getPaths( key );
+        if ( paths == null )
+        {
+            final AtomicInteger listed = new AtomicInteger( 0 );
+            final Set<String> found = new HashSet<>();
+            listPathsAnd( key, counting( mergablePath(), listed ), found::add, this.directContentAccess );
+            mergedPathIndex.seed( key, found );
+            cleanupMetrics.recordSeed( listed.get() );
+            logger.info( "Seeded merged path index of: {}, listed: {}, mergable: {}", key, listed.get(),
+                         found.size() );
+
+            paths = found;
+        }
+        return paths;
+    }
+
+    private int recordCleanup( ArtifactStore origin, boolean indexed, int scanned, int cleared )
+    {
+        cleanupMetrics.recordCleanup( indexed, scanned, cleared );
+        logger.debug( "Cleaned up paths for origin: {}, indexed: {}, scanned: {}, cleared: {}. Totals: {}",
+                      origin.getKey(), indexed, scanned, cleared, cleanupMetrics );
+        return cleared;
+    }
+
+    private static Predicate<String> counting( Predicate<? super String> pathFilter, AtomicInteger scanned )
+    {
+        return path -> {
+            scanned.incrementAndGet();
+            return pathFilter.test( path );
         };
     }
 
+    private Predicate<? super String> mergablePath()
+    {
+        return mergablePath;
+    }
+
     /**
      * Clean all paths including http-metadata, checksum, etc, for complete data integrity.
      */
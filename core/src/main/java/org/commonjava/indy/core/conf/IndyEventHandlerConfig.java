@@ -39,8 +39,38 @@ public class IndyEventHandlerConfig
 
     public static final String HANDLER_KAFKA = "kafka";
 
+    public static final String OVERFLOW_DROP_ACCESS_FIRST = "drop-access-first";
+
+    public static final String OVERFLOW_BLOCK = "block";
+
+    public static final String OVERFLOW_SPILL = "spill";
+
+    private static final int DEFAULT_FILE_EVENT_QUEUE_SIZE = 10000;
+
+    private static final int DEFAULT_FILE_EVENT_BATCH_SIZE = 500;
+
+    private static final long DEFAULT_FILE_EVENT_LINGER_MILLIS = 100;
+
+    private static final int DEFAULT_FILE_EVENT_PUBLISHER_THREADS = 2;
+
+    private static final long DEFAULT_FILE_EVENT_BLOCK_TIMEOUT_MILLIS = 5000;
+
     private String fileEventHandler = HANDLER_DEFAULT;
 
+    private int fileEventQueueSize = DEFAULT_FILE_EVENT_QUEUE_SIZE;
+
+    private int fileEventBatchSize = DEFAULT_FILE_EVENT_BATCH_SIZE;
+
+    private long fileEventLingerMillis = DEFAULT_FILE_EVENT_LINGER_MILLIS;
+
+    private int fileEventPublisherThreads = DEFAULT_FILE_EVENT_PUBLISHER_THREADS;
+
+    private String fileEventOverflowPolicy = OVERFLOW_DROP_ACCESS_FIRST;
+
+    private long fileEventBlockTimeoutMillis = DEFAULT_FILE_EVENT_BLOCK_TIMEOUT_MILLIS;
+
+    private String fileEventSpillDir;
+
     public String getFileEventHandler()
     {
         return fileEventHandler;
@@ -51,6 +81,95 @@ public class IndyEventHandlerConfig
         this.fileEventHandler = fileEventHandler;
     }
 
+    /**
+     * Max number of file events waiting to be published.
+     */
+    public int getFileEventQueueSize()
+    {
+        return fileEventQueueSize;
+    }
+
+    public void setFileEventQueueSize( int fileEventQueueSize )
+    {
+        this.fileEventQueueSize = fileEventQueueSize;
+    }
+
+    /**
+     * Max number of file events sent to Kafka before flushing the producer.
+     */
+    public int getFileEventBatchSize()
+    {
+        return fileEventBatchSize;
+    }
+
+    public void setFileEventBatchSize( int fileEventBatchSize )
+    {
+        this.fileEventBatchSize = fileEventBatchSize;
+    }
+
+    /**
+     * How long a publisher thread waits for the first event of a batch before checking for spilled events.
+     */
+    public long getFileEventLingerMillis()
+    {
+        return fileEventLingerMillis;
+    }
+
+    public void setFileEventLingerMillis( long fileEventLingerMillis )
+    {
+        this.fileEventLingerMillis = fileEventLingerMillis;
+    }
+
+    public int getFileEventPublisherThreads()
+    {
+        return fileEventPublisherThreads;
+    }
+
+    public void setFileEventPublisherThreads( int fileEventPublisherThreads )
+    {
+        this.fileEventPublisherThreads = fileEventPublisherThreads;
+    }
+
+    /**
+     * What to do with a file event when the queue is full: {@link #OVERFLOW_DROP_ACCESS_FIRST},
+     * {@link #OVERFLOW_BLOCK} or {@link #OVERFLOW_SPILL}.
+     */
+    public String getFileEventOverflowPolicy()
+    {
+        return fileEventOverflowPolicy;
+    }
+
+    public void setFileEventOverflowPolicy( String fileEventOverflowPolicy )
+    {
+        this.fileEventOverflowPolicy = fileEventOverflowPolicy;
+    }
+
+    /**
+     * How long the event producer waits for room in a full queue before dropping the event, when it blocks.
+     */
+    public long getFileEventBlockTimeoutMillis()
+    {
+        return fileEventBlockTimeoutMillis;
+    }
+
+    public void setFileEventBlockTimeoutMillis( long fileEventBlockTimeoutMillis )
+    {
+        this.fileEventBlockTimeoutMillis = fileEventBlockTimeoutMillis;
+    }
+
+    /**
+     * Directory for file events spilled from a full queue. Defaults to a directory in the Indy work dir.
+     */
+    public String getFileEventSpillDir()
+    {
+        return fileEventSpillDir;
+    }
+
+    public void setFileEventSpillDir( String fileEventSpillDir )
+    {
+        this.fileEventSpillDir = fileEventSpillDir;
+    }
+
     @Override
     public void parameter(String name, String value)
     {
@@ -63,6 +182,41 @@ public class IndyEventHandlerConfig
                 this.fileEventHandler = value;
                 break;
             }
+            case "file.event.queue.size":
+            {
+                this.fileEventQueueSize = Integer.parseInt( value.trim() );
+                break;
+            }
+            case "file.event.batch.size":
+            {
+                this.fileEventBatchSize = Integer.parseInt( value.trim() );
+                break;
+            }
+            case "file.event.linger.ms":
+            {
+                this.fileEventLingerMillis = Long.parseLong( value.trim() );
+                break;
+            }
+            case "file.event.publisher.threads":
+            {
+                this.fileEventPublisherThreads = Integer.parseInt( value.trim() );
+                break;
+            }
+            case "file.event.overflow.policy":
+            {
+                this.fileEventOverflowPolicy = value.trim();
+                break;
+            }
+            case "file.event.block.timeout.ms":
+            {
+                this.fileEventBlockTimeoutMillis = Long.parseLong( value.trim() );
+                break;
+            }
+            case "file.event.spill.dir":
+            {
+                this.fileEventSpillDir = value.trim();
+                break;
+            }
             default: break;
         }
 
@@ -0,0 +1,403 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.commonjava.indy.core.content.PathMaskChecker.extractGroupIdPath;
+import static org.commonjava.indy.core.content.PathMaskChecker.isRegexPattern;
+
+/**
+ * The path mask patterns of one store, compiled once for {@link PathMaskChecker}:
+ * <ul>
+ *     <li>plain patterns, metadata groupId paths and raw patterns in prefix tries, so a path is checked against all of
+ *     them in a single walk over its characters</li>
+ *     <li>regex patterns in one combined {@link Pattern}, with a {@link Matcher} reused per thread</li>
+ * </ul>
+ * Checking a path allocates nothing and compiles nothing.
+ */
+final class CompiledPathMask
+{
+    private static final Logger logger = LoggerFactory.getLogger( CompiledPathMask.class );
+
+    private static final String METADATA_SUFFIX = "maven-metadata.xml";
+
+    private static final Pattern BACK_REFERENCE = Pattern.compile( "\\\\[1-9]|\\\\k<" );
+
+    private final Set<String> source;
+
+    private final PrefixTrie plainPatterns;
+
+    private final PrefixTrie allPatterns;
+
+    private final PrefixTrie metadataGroupIdPaths;
+
+    private final boolean hasMetadataPatterns;
+
+    private final boolean hasRegexPatterns;
+
+    private final Pattern[] regexes;
+
+    private final ThreadLocal<Matcher[]> matchers;
+
+    CompiledPathMask( final Set<String> patterns )
+    {
+        this.source = patterns;
+
+        final List<String> plain = new ArrayList<>();
+        final List<String> groupIdPaths = new ArrayList<>();
+        final List<String> regexSources = new ArrayList<>();
+        boolean metadata = false;
+        for ( String pattern : patterns )
+        {
+            if ( pattern == null )
+            {
+                continue;
+            }
+            if ( isRegexPattern( pattern ) )
+            {
+                regexSources.add( pattern.substring( 2, pattern.length() - 1 ) );
+            }
+            else
+            {
+                plain.add( pattern );
+            }
+
+            if ( pattern.endsWith( METADATA_SUFFIX ) )
+            {
+                metadata = true;
+                final String groupIdPath = extractGroupIdPath( pattern );
+                if ( groupIdPath != null )
+                {
+                    groupIdPaths.add( groupIdPath );
+                }
+            }
+        }
+
+        this.plainPatterns = new PrefixTrie( plain );
+        this.allPatterns = new PrefixTrie( patterns );
+        this.metadataGroupIdPaths = new PrefixTrie( groupIdPaths );
+        this.hasMetadataPatterns = metadata;
+        this.hasRegexPatterns = !regexSources.isEmpty();
+        this.regexes = compile( regexSources );
+        this.matchers = ThreadLocal.withInitial( () -> {
+            final Matcher[] m = new Matcher[regexes.length];
+            for ( int i = 0; i < regexes.length; i++ )
+            {
+                m[i] = regexes[i].matcher( "" );
+            }
+            return m;
+        } );
+    }
+
+    private CompiledPathMask( final CompiledPathMask compiled, final Set<String> source )
+    {
+        this.source = source;
+        this.plainPatterns = compiled.plainPatterns;
+        this.allPatterns = compiled.allPatterns;
+        this.metadataGroupIdPaths = compiled.metadataGroupIdPaths;
+        this.hasMetadataPatterns = compiled.hasMetadataPatterns;
+        this.hasRegexPatterns = compiled.hasRegexPatterns;
+        this.regexes = compiled.regexes;
+        this.matchers = compiled.matchers;
+    }
+
+    /**
+     * @return this mask, compiled from the given pattern set, which must be equal to the one this was compiled from
+     */
+    CompiledPathMask withSource( final Set<String> patterns )
+    {
+        return new CompiledPathMask( this, patterns );
+    }
+
+    /**
+     * @return the pattern set this was compiled from, to tell whether the store's patterns were replaced since
+     */
+    Set<String> getSource()
+    {
+        return source;
+    }
+
+    boolean isEmpty()
+    {
+        return source == null || source.isEmpty();
+    }
+
+    boolean hasRegexPatterns()
+    {
+        return hasRegexPatterns;
+    }
+
+    boolean hasMetadataPatterns()
+    {
+        return hasMetadataPatterns;
+    }
+
+    /**
+     * @return true if the path starts with one of the plain patterns
+     */
+    boolean matchesPlainPrefix( final String path )
+    {
+        return plainPatterns.hasPrefixOf( path );
+    }
+
+    /**
+     * @return true if the path starts with one of the plain patterns, or is the start of one
+     */
+    boolean isPrefixRelatedToPlain( final String path )
+    {
+        return plainPatterns.isPrefixRelated( path );
+    }
+
+    /**
+     * Same as {@link #isPrefixRelatedToPlain(String)}, with regex patterns taken as plain strings as well.
+     */
+    boolean isPrefixRelatedToAny( final String path )
+    {
+        return allPatterns.isPrefixRelated( path );
+    }
+
+    boolean isPrefixRelatedToMetadataGroupId( final String path )
+    {
+        return metadataGroupIdPaths.isPrefixRelated( path );
+    }
+
+    /**
+     * @return true if the whole path matches one of the regex patterns
+     */
+    boolean matchesRegex( final String path )
+    {
+        for ( Matcher matcher : matchers.get() )
+        {
+            if ( matcher.reset( path ).matches() )
+            {
+                matcher.reset( "" );
+                return true;
+            }
+            matcher.reset( "" );
+        }
+        return false;
+    }
+
+    /**
+     * Combine the regexes into one alternation, so that a path is matched against all of them in one pass. Regexes
+     * with back-references can't be combined, since their group numbers would change, so they are kept apart; regexes
+     * that don't compile are left out, since they can never match. If the alternation doesn't compile although each
+     * regex does (e.g. two of them declare the same named group), the regexes are all kept apart.
+     */
+    private static Pattern[] compile( final List<String> regexSources )
+    {
+        final List<Pattern> compiled = new ArrayList<>();
+        final List<Pattern> combinable = new ArrayList<>();
+        final StringBuilder combined = new StringBuilder();
+        for ( String regex : regexSources )
+        {
+            final Pattern pattern;
+            try
+            {
+                pattern = Pattern.compile( regex );
+            }
+            catch ( PatternSyntaxException e )
+            {
+                logger.warn( "Ignoring invalid path mask regex: {}. Reason: {}", regex, e.getMessage() );
+                continue;
+            }
+
+            if ( BACK_REFERENCE.matcher( regex ).find() )
+            {
+                compiled.add( pattern );
+                continue;
+            }
+
+            combinable.add( pattern );
+            if ( combined.length() > 0 )
+            {
+                combined.append( '|' );
+            }
+            combined.append( "(?:" ).append( regex ).append( ')' );
+        }
+
+        if ( combinable.size() == 1 )
+        {
+            compiled.add( 0, combinable.get( 0 ) );
+        }
+        else if ( !combinable.isEmpty() )
+        {
+            try
+            {
+                compiled.add( 0, Pattern.compile( combined.toString() ) );
+            }
+            catch ( PatternSyntaxException e )
+            {
+                logger.warn( "Cannot combine path mask regexes, matching them one by one. Reason: {}",
+                             e.getMessage() );
+                compiled.addAll( 0, combinable );
+            }
+        }
+        return compiled.toArray( new Pattern[0] );
+    }
+
+    /**
+     * Character trie of strings, answering prefix questions about a path in one walk over it.
+     */
+    static final class PrefixTrie
+    {
+        private final Node root;
+
+        PrefixTrie( final Iterable<String> strings )
+        {
+            final Builder builder = new Builder();
+            for ( String s : strings )
+            {
+                if ( s != null )
+                {
+                    builder.add( s );
+                }
+            }
+            this.root = builder.freeze();
+        }
+
+        /**
+         * @return true if one of the strings is a prefix of the path
+         */
+        boolean hasPrefixOf( final String path )
+        {
+            Node node = root;
+            if ( node == null )
+            {
+                return false;
+            }
+            for ( int i = 0; ; i++ )
+            {
+                if ( node.terminal )
+                {
+                    return true;
+                }
+                if ( i == path.length() )
+                {
+                    return false;
+                }
+                node = node.child( path.charAt( i ) );
+                if ( node == null )
+                {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * @return true if one of the strings is a prefix of the path, or the path is a prefix of one of them
+         */
+        boolean isPrefixRelated( final String path )
+        {
+            Node node = root;
+            if ( node == null )
+            {
+                return false;
+            }
+            for ( int i = 0; i < path.length(); i++ )
+            {
+                if ( node.terminal )
+                {
+                    return true;
+                }
+                node = node.child( path.charAt( i ) );
+                if ( node == null )
+                {
+                    return false;
+                }
+            }
+            // the path was consumed without leaving the trie, so it is the start of at least one string
+            return true;
+        }
+
+        private static final class Node
+        {
+            private final char[] keys;
+
+            private final Node[] children;
+
+            private final boolean terminal;
+
+            private Node( final char[] keys, final Node[] children, final boolean terminal )
+            {
+                this.keys = keys;
+                this.children = children;
+                this.terminal = terminal;
+            }
+
+            private Node child( final char c )
+            {
+                final int idx = Arrays.binarySearch( keys, c );
+                return idx < 0 ? null : children[idx];
+            }
+        }
+
+        private static final class Builder
+        {
+            private final TreeMap<Character, Builder> children = new TreeMap<>();
+
+            private boolean terminal;
+
+            private boolean used;
+
+            private void add( final String s )
+            {
+                used = true;
+                Builder node = this;
+                for ( int i = 0; i < s.length(); i++ )
+                {
+                    node = node.children.computeIfAbsent( s.charAt( i ), c -> new Builder() );
+                }
+                node.terminal = true;
+            }
+
+            private Node freeze()
+            {
+                if ( !used )
+                {
+                    return null;
+                }
+                return doFreeze();
+            }
+
+            private Node doFreeze()
+            {
+                final char[] keys = new char[children.size()];
+                final Node[] nodes = new Node[children.size()];
+                int i = 0;
+                for ( Map.Entry<Character, Builder> entry : children.entrySet() )
+                {
+                    keys[i] = entry.getKey();
+                    nodes[i] = entry.getValue().doFreeze();
+                    i++;
+                }
+                return new Node( keys, nodes, terminal );
+            }
+        }
+    }
+}
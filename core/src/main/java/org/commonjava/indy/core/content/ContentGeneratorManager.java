@@ -67,6 +67,21 @@ public class ContentGeneratorManager
         }
     }
 
+    /**
+     * @return whether any content generator handles the path, i.e. whether it may be generated instead of stored
+     */
+    public boolean canProcess( final String path )
+    {
+        for ( final ContentGenerator generator : contentGenerators )
+        {
+            if ( generator.canProcess( path ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public Transfer generateFileContentAnd( final ArtifactStore store, final String path,
                                             final EventMetadata eventMetadata, Consumer<Transfer> consumer )
                     throws IndyWorkflowException
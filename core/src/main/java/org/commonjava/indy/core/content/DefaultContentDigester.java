@@ -34,6 +34,10 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 import static org.commonjava.indy.core.content.ContentMetadataGenerator.FORCE_CHECKSUM_AND_WRITE;
 import static org.commonjava.maven.galley.io.ChecksummingTransferDecorator.FORCE_CHECKSUM;
@@ -58,6 +62,11 @@ public class DefaultContentDigester
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
+    private static final String FORCED_CALCULATION_SUFFIX = "#forced";
+
+    // checksum calculations in progress, by metadata cache key, so concurrent digests of a transfer read it only once
+    private final Map<String, CompletableFuture<TransferMetadata>> calculations = new ConcurrentHashMap<>();
+
     protected DefaultContentDigester()
     {
     }
@@ -128,7 +137,8 @@ public class DefaultContentDigester
             return new TransferMetadata( Collections.emptyMap(), 0L );
         }
 
-        if ( Boolean.parseBoolean( String.valueOf( eventMetadata.get( FORCE_CHECKSUM_AND_WRITE ) ) ) )
+        final boolean forced = Boolean.parseBoolean( String.valueOf( eventMetadata.get( FORCE_CHECKSUM_AND_WRITE ) ) );
+        if ( forced )
         {
             removeMetadata( transfer );
         }
@@ -143,6 +153,38 @@ public class DefaultContentDigester
         }
 
         String cacheKey = generateCacheKey( transfer );
+        // a forced calculation also writes the checksum files, so it can't be satisfied by joining an unforced one
+        String calculationKey = forced ? cacheKey + FORCED_CALCULATION_SUFFIX : cacheKey;
+        CompletableFuture<TransferMetadata> calculation = new CompletableFuture<>();
+        CompletableFuture<TransferMetadata> existing = calculations.putIfAbsent( calculationKey, calculation );
+        if ( existing != null )
+        {
+            logger.debug( "TransferMetadata for: {} (forced: {}) is already being calculated. Waiting for it.",
+                          cacheKey, forced );
+            return awaitCalculation( existing, transfer );
+        }
+
+        try
+        {
+            TransferMetadata meta = calculate( transfer, cacheKey, eventMetadata );
+            calculation.complete( meta );
+            return meta;
+        }
+        catch ( IndyWorkflowException | RuntimeException e )
+        {
+            calculation.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            calculations.remove( calculationKey, calculation );
+        }
+    }
+
+    private TransferMetadata calculate( final Transfer transfer, final String cacheKey,
+                                        final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
         logger.debug( "TransferMetadata missing for: {}. Re-reading with FORCE_CHECKSUM now to calculate it.",
                       cacheKey );
 
@@ -150,8 +192,10 @@ public class DefaultContentDigester
         try(InputStream stream = transfer.openInputStream( false, forcedEventMetadata ) )
         {
             // depend on ChecksummingTransferDecorator to calculate / store metadata as this gets read, using
-            // the FORCE_CHECKSUM metadata key to control its generation.
-            IOUtils.toByteArray( stream );
+            // the FORCE_CHECKSUM metadata key to control its generation. The content itself is discarded as it is
+            // read, through a reused scratch buffer, so memory use doesn't depend on the file size.
+            long size = IOUtils.consume( stream );
+            logger.trace( "Read {} bytes of: {} to calculate checksums", size, cacheKey );
         }
         catch ( IOException e )
         {
@@ -163,4 +207,33 @@ public class DefaultContentDigester
 
         return getContentMetadata( transfer );
     }
+
+    private TransferMetadata awaitCalculation( final CompletableFuture<TransferMetadata> calculation,
+                                               final Transfer transfer )
+            throws IndyWorkflowException
+    {
+        try
+        {
+            return calculation.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyWorkflowException( "Interrupted while waiting for checksums of: %s", e, transfer );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IndyWorkflowException )
+            {
+                throw (IndyWorkflowException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new IndyWorkflowException( "Failed to calculate checksums (MD5, SHA-256, etc.) for: %s. Reason: %s",
+                                             cause, transfer, cause.getMessage() );
+        }
+    }
 }
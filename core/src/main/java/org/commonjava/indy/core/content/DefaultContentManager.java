@@ -17,6 +17,9 @@ package org.commonjava.indy.core.content;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.content.ContentDigester;
@@ -46,11 +49,13 @@ import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -96,6 +101,18 @@ public class DefaultContentManager
     @Inject
     private GroupRepositoryFilterManager repositoryFilterManager;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "group-member-probe", threads = 16, priority = 8, maxLoadFactor = 100, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE )
+    private WeftExecutorService probeExecutor;
+
+    @Inject
+    private GroupPathResolutionCache resolutionCache;
+
+    private final GroupProbeMetrics probeMetrics = new GroupProbeMetrics();
+
+    private HedgedMemberRetriever hedgedRetriever;
+
     protected DefaultContentManager()
     {
     }
@@ -112,6 +129,21 @@ public class DefaultContentManager
         this.nfc = nfc;
         this.contentDigester = contentDigester;
         this.contentGeneratorManager = contentGeneratorManager;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        hedgedRetriever = new HedgedMemberRetriever( indyConfig, downloadManager, probeExecutor, probeMetrics );
+    }
+
+    /**
+     * @return counters and latencies of the speculative probes issued for group retrievals
+     */
+    public GroupProbeMetrics getGroupProbeMetrics()
+    {
+        return probeMetrics;
     }
 
     @Override
@@ -207,31 +239,69 @@ public class DefaultContentManager
         Transfer item;
         if ( group == store.getKey().getType() )
         {
-            List<ArtifactStore> members = getOrderedConcreteStoresAndFilter( (Group) store, path );
-            if ( logger.isDebugEnabled() )
+            final boolean cacheable =
+                    resolutionCache != null && resolutionCache.isCacheable( store.getPackageType(), path );
+            final long resolutionGeneration = cacheable ? resolutionCache.getGeneration() : 0;
+
+            item = cacheable ? retrieveResolved( store, path, eventMetadata ) : null;
+            if ( item == null )
             {
-                logger.debug( "{} is a group. Attempting downloads from (in order):\n  {}", store.getKey(),
-                              StringUtils.join( members, "\n  " ) );
+                item = retrieveFromMembers( (Group) store, path, eventMetadata );
+
+                // generated group content is located in the group itself, and is not cached as a resolution
+                if ( cacheable && item != null )
+                {
+                    resolutionCache.put( store.getKey(), path, LocationUtils.getKey( item ), resolutionGeneration );
+                }
             }
+        }
+        else
+        {
+            item = doRetrieve( store, path, eventMetadata );
+        }
+
+        if ( item != null )
+        {
+            logger.info( "Returning transfer {} from {}", item, store.getKey() );
+        }
+        else
+        {
+            logger.trace( "Not found path {} from {}", path, store.getKey() );
+        }
+
+        return item;
+    }
+
+    private Transfer retrieveFromMembers( final Group store, final String path, final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        List<ArtifactStore> members = getOrderedConcreteStoresAndFilter( store, path );
+        if ( logger.isDebugEnabled() )
+        {
+            logger.debug( "{} is a group. Attempting downloads from (in order):\n  {}", store.getKey(),
+                          StringUtils.join( members, "\n  " ) );
+        }
 
-            item = contentGeneratorManager.generateGroupFileContent( (Group) store, members, path, eventMetadata );
-            boolean generated = ( item != null );
+        Transfer item = contentGeneratorManager.generateGroupFileContent( store, members, path, eventMetadata );
+        boolean generated = ( item != null );
 
-            if ( !generated )
+        if ( !generated )
+        {
+            if ( PathMaskChecker.checkMask( store, path ) )
             {
-                if ( PathMaskChecker.checkMask( store, path ) )
+                // a probe can't tell that a member would generate the path, so generated paths aren't probed
+                if ( hedgedRetriever != null && hedgedRetriever.isEnabledFor( store )
+                        && !contentGeneratorManager.canProcess( path ) )
+                {
+                    item = hedgedRetriever.retrieve( store, members, path,
+                                                     member -> retrieveMember( store, member, path,
+                                                                               eventMetadata ) );
+                }
+                else
                 {
                     for ( final ArtifactStore member : members )
                     {
-                        try
-                        {
-                            item = doRetrieve( member, path, eventMetadata );
-                        }
-                        catch ( IndyWorkflowException e )
-                        {
-                            logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}",
-                                          path, member, store, e.getMessage() );
-                        }
+                        item = retrieveMember( store, member, path, eventMetadata );
                         if ( item != null )
                         {
                             // get the item from the first member store
@@ -241,23 +311,68 @@ public class DefaultContentManager
                 }
             }
         }
-        else
+
+        return item;
+    }
+
+    /**
+     * Retrieve the path from the member that served it for the group last time, if it is known. A member that doesn't
+     * serve it anymore is forgotten, and the group is resolved as usual.
+     */
+    private Transfer retrieveResolved( final ArtifactStore store, final String path,
+                                       final EventMetadata eventMetadata )
+    {
+        if ( !PathMaskChecker.checkMask( store, path ) )
         {
-            item = doRetrieve( store, path, eventMetadata );
+            return null;
         }
 
-        if ( item != null )
+        final StoreKey memberKey = resolutionCache.get( store.getKey(), path );
+        if ( memberKey == null )
         {
-            logger.info( "Returning transfer {} from {}", item, store.getKey() );
+            return null;
         }
-        else
+
+        Transfer item = null;
+        try
         {
-            logger.trace( "Not found path {} from {}", path, store.getKey() );
+            final ArtifactStore member = storeManager.getArtifactStore( memberKey );
+            // the repository filters may exclude the member for this path by now, e.g. after a filter script changed
+            if ( member != null && !repositoryFilterManager.filter( path, (Group) store,
+                                                                    Collections.singletonList( member ) ).isEmpty() )
+            {
+                item = retrieveMember( store, member, path, eventMetadata );
+            }
+        }
+        catch ( IndyDataException e )
+        {
+            logger.warn( "Failed to load resolved member {} of {}. Reason: {}", memberKey, store.getKey(),
+                         e.getMessage() );
         }
 
+        if ( item == null )
+        {
+            logger.debug( "Resolved member {} of {} no longer serves {}", memberKey, store.getKey(), path );
+            resolutionCache.invalidate( store.getKey(), path );
+        }
         return item;
     }
 
+    private Transfer retrieveMember( final ArtifactStore store, final ArtifactStore member, final String path,
+                                     final EventMetadata eventMetadata )
+    {
+        try
+        {
+            return doRetrieve( member, path, eventMetadata );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}", path,
+                          member, store, e.getMessage() );
+        }
+        return null;
+    }
+
     private List<ArtifactStore> getOrderedConcreteStoresAndFilter( Group group, String path ) throws IndyWorkflowException
     {
         List<ArtifactStore> members;
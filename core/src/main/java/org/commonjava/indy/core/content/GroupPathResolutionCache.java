@@ -0,0 +1,412 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
+
+/**
+ * Remembers which member of a group served a path, so a repeat request for the path can go straight to that member
+ * instead of resolving the group's members and trying each of them in turn.
+ * <p>
+ * Entries are bounded in number and expire after the not-found cache timeout, since the members before the resolved one may start holding the path once their not-found entries expire.
+ * They are dropped by {@link org.commonjava.indy.core.change.GroupPathResolutionListener} when a group's membership
+ * changes, when a member is deleted, disabled or enabled, and when the path is stored or deleted anywhere.
+ * <p>
+ * Every store invalidation bumps a generation counter, and a resolution that overlapped one is not cached.
+ * <p>
+ * Lookups read a concurrent map without locking, and only record when each entry was last used. Mutations are
+ * serialized on a lock, which also guards the reverse indexes. Eviction is approximately least recently used: once
+ * the cache grows past its maximum size, the least recently used entries are evicted in one pass, down to a little
+ * under the maximum, so the pass doesn't run on every new entry.
+ */
+@ApplicationScoped
+public class GroupPathResolutionCache
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConfiguration config;
+
+    private final Object lock = new Object();
+
+    private final Map<ResolutionKey, Resolution> entries = new ConcurrentHashMap<>( 1024 );
+
+    private final Map<StoreKey, Set<ResolutionKey>> byGroup = new HashMap<>();
+
+    private final Map<StoreKey, Set<ResolutionKey>> byMember = new HashMap<>();
+
+    private final Map<String, Set<ResolutionKey>> byPath = new HashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder stale = new LongAdder();
+
+    private boolean enabled;
+
+    private boolean releaseOnly;
+
+    private int maxSize;
+
+    private long expirationMillis;
+
+    protected GroupPathResolutionCache()
+    {
+    }
+
+    public GroupPathResolutionCache( final int maxSize, final long expiration, final TimeUnit unit,
+                                     final boolean releaseOnly )
+    {
+        this.enabled = true;
+        this.maxSize = maxSize;
+        this.expirationMillis = unit.toMillis( expiration );
+        this.releaseOnly = releaseOnly;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        enabled = config.isGroupResolutionCacheEnabled();
+        maxSize = config.getGroupResolutionCacheMaxSize();
+        expirationMillis = TimeUnit.SECONDS.toMillis( config.getNotFoundCacheTimeoutSeconds() );
+        releaseOnly = config.isGroupResolutionCacheReleaseOnly();
+        logger.info( "Group path resolution cache enabled: {}, max size: {}, release paths only: {}", enabled,
+                     maxSize, releaseOnly );
+    }
+
+    /**
+     * @return whether resolutions of the path may be cached at all. When restricted to release paths, snapshot and
+     * metadata paths are left out, since the member serving them changes as content is deployed.
+     */
+    public boolean isCacheable( final String packageType, final String path )
+    {
+        if ( !enabled || maxSize <= 0 || path == null )
+        {
+            return false;
+        }
+
+        if ( !releaseOnly )
+        {
+            return true;
+        }
+
+        if ( PKG_TYPE_NPM.equals( packageType ) )
+        {
+            // only tarballs are immutable, package metadata is merged and changes with every publish
+            return path.contains( "/-/" );
+        }
+
+        if ( path.contains( "SNAPSHOT" ) )
+        {
+            return false;
+        }
+
+        final String filename = path.substring( path.lastIndexOf( '/' ) + 1 );
+        return !filename.startsWith( "maven-metadata" ) && !filename.startsWith( "archetype-catalog" )
+                && !filename.endsWith( ".http-metadata.json" );
+    }
+
+    /**
+     * @return the member that served the path for the group last time, or null if unknown
+     */
+    public StoreKey get( final StoreKey group, final String path )
+    {
+        final ResolutionKey key = new ResolutionKey( group, normalize( path ) );
+        final Resolution resolution = entries.get( key );
+        if ( resolution != null )
+        {
+            if ( resolution.expiresAt > System.currentTimeMillis() )
+            {
+                resolution.lastUsed = System.nanoTime();
+                hits.increment();
+                return resolution.member;
+            }
+            removeExpired( key, resolution );
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Record the member that served the path for the group, unless anything was invalidated since the given
+     * {@link #getGeneration() generation} was read.
+     */
+    public void put( final StoreKey group, final String path, final StoreKey member, final long expectedGeneration )
+    {
+        if ( member == null || member.equals( group ) )
+        {
+            return;
+        }
+
+        final ResolutionKey key = new ResolutionKey( group, normalize( path ) );
+        synchronized ( lock )
+        {
+            if ( generation.get() != expectedGeneration )
+            {
+                logger.trace( "Stores or content changed while resolving {} in {}; not caching it", path, group );
+                return;
+            }
+
+            remove( key );
+            entries.put( key, new Resolution( member, System.currentTimeMillis() + expirationMillis ) );
+            byGroup.computeIfAbsent( group, k -> new HashSet<>() ).add( key );
+            byMember.computeIfAbsent( member, k -> new HashSet<>() ).add( key );
+            byPath.computeIfAbsent( key.path, k -> new HashSet<>() ).add( key );
+
+            if ( entries.size() > maxSize )
+            {
+                evictLeastRecentlyUsed();
+            }
+        }
+    }
+
+    /**
+     * Drop a resolution that turned out to be wrong, e.g. the member doesn't hold the path anymore.
+     */
+    public void invalidate( final StoreKey group, final String path )
+    {
+        stale.increment();
+        synchronized ( lock )
+        {
+            generation.incrementAndGet();
+            remove( new ResolutionKey( group, normalize( path ) ) );
+        }
+    }
+
+    /**
+     * Drop the resolutions made for the given groups, or by the given stores as members.
+     */
+    public void invalidateStores( final Collection<StoreKey> keys )
+    {
+        synchronized ( lock )
+        {
+            generation.incrementAndGet();
+            for ( StoreKey key : keys )
+            {
+                removeAll( byGroup.get( key ) );
+                removeAll( byMember.get( key ) );
+            }
+        }
+    }
+
+    /**
+     * Drop the resolutions of the path in all groups. Unlike store changes this doesn't bump the generation, as every
+     * retrieval from a remote member stores the path too. A resolution racing with a deletion is caught as stale by
+     * the next request.
+     */
+    public void invalidatePath( final String path )
+    {
+        synchronized ( lock )
+        {
+            removeAll( byPath.get( normalize( path ) ) );
+        }
+    }
+
+    public void clear()
+    {
+        synchronized ( lock )
+        {
+            generation.incrementAndGet();
+            entries.clear();
+            byGroup.clear();
+            byMember.clear();
+            byPath.clear();
+        }
+    }
+
+    /**
+     * @return a counter that increases whenever any cached resolution may have become obsolete
+     */
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of cached resolutions that pointed to a member no longer holding the path
+     */
+    public long getStaleCount()
+    {
+        return stale.sum();
+    }
+
+    public double getHitRate()
+    {
+        final long h = hits.sum();
+        final long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "GroupPathResolutionCache{size=" + size() + ", hits=" + hits.sum() + ", misses=" + misses.sum()
+                + ", stale=" + stale.sum() + '}';
+    }
+
+    private void removeExpired( final ResolutionKey key, final Resolution resolution )
+    {
+        synchronized ( lock )
+        {
+            // unless it was replaced meanwhile
+            if ( entries.get( key ) == resolution )
+            {
+                remove( key );
+            }
+        }
+    }
+
+    /**
+     * Evict the least recently used entries, down to 15/16 of the maximum size. Called with the lock held.
+     */
+    private void evictLeastRecentlyUsed()
+    {
+        final int target = maxSize - maxSize / 16;
+        final List<Map.Entry<ResolutionKey, Resolution>> candidates = new ArrayList<>( entries.entrySet() );
+        if ( candidates.size() <= target )
+        {
+            return;
+        }
+
+        candidates.sort( Comparator.comparingLong( e -> e.getValue().lastUsed ) );
+        candidates.subList( 0, candidates.size() - target ).forEach( e -> remove( e.getKey() ) );
+    }
+
+    private void removeAll( final Set<ResolutionKey> keys )
+    {
+        if ( keys != null )
+        {
+            new HashSet<>( keys ).forEach( this::remove );
+        }
+    }
+
+    private void remove( final ResolutionKey key )
+    {
+        final Resolution resolution = entries.remove( key );
+        if ( resolution == null )
+        {
+            return;
+        }
+
+        unindex( byGroup, key.group, key );
+        unindex( byMember, resolution.member, key );
+        unindex( byPath, key.path, key );
+    }
+
+    private static <K> void unindex( final Map<K, Set<ResolutionKey>> index, final K indexKey,
+                                     final ResolutionKey key )
+    {
+        final Set<ResolutionKey> keys = index.get( indexKey );
+        if ( keys != null && keys.remove( key ) && keys.isEmpty() )
+        {
+            index.remove( indexKey );
+        }
+    }
+
+    private static String normalize( final String path )
+    {
+        return path.startsWith( "/" ) ? path.substring( 1 ) : path;
+    }
+
+    private static final class Resolution
+    {
+        private final StoreKey member;
+
+        private final long expiresAt;
+
+        private volatile long lastUsed = System.nanoTime();
+
+        private Resolution( final StoreKey member, final long expiresAt )
+        {
+            this.member = member;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class ResolutionKey
+    {
+        private final StoreKey group;
+
+        private final String path;
+
+        private ResolutionKey( final StoreKey group, final String path )
+        {
+            this.group = group;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof ResolutionKey ) )
+            {
+                return false;
+            }
+            final ResolutionKey that = (ResolutionKey) o;
+            return group.equals( that.group ) && path.equals( that.path );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * group.hashCode() + path.hashCode();
+        }
+    }
+}
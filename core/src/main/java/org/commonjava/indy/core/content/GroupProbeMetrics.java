@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies of the speculative member probes issued by {@link HedgedMemberRetriever}.
+ */
+public class GroupProbeMetrics
+{
+    private final LongAdder probes = new LongAdder();
+
+    private final LongAdder found = new LongAdder();
+
+    private final LongAdder missing = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder cancelled = new LongAdder();
+
+    private final LongAdder skippedRetrievals = new LongAdder();
+
+    private final LongAdder totalLatencyNanos = new LongAdder();
+
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    void recordProbe( final HedgedMemberRetriever.ProbeResult result, final long latencyNanos )
+    {
+        probes.increment();
+        switch ( result )
+        {
+            case FOUND:
+                found.increment();
+                break;
+            case MISSING:
+                missing.increment();
+                break;
+            default:
+                failed.increment();
+        }
+
+        totalLatencyNanos.add( latencyNanos );
+        maxLatencyNanos.accumulateAndGet( latencyNanos, Math::max );
+    }
+
+    void recordCancelled()
+    {
+        cancelled.increment();
+    }
+
+    void recordSkippedRetrieval()
+    {
+        skippedRetrievals.increment();
+    }
+
+    public long getProbeCount()
+    {
+        return probes.sum();
+    }
+
+    public long getFoundCount()
+    {
+        return found.sum();
+    }
+
+    public long getMissingCount()
+    {
+        return missing.sum();
+    }
+
+    public long getFailedCount()
+    {
+        return failed.sum();
+    }
+
+    public long getCancelledCount()
+    {
+        return cancelled.sum();
+    }
+
+    /**
+     * @return number of member retrievals that were not attempted because the member's probe reported a miss
+     */
+    public long getSkippedRetrievalCount()
+    {
+        return skippedRetrievals.sum();
+    }
+
+    public double getMeanLatencyMillis()
+    {
+        final long count = probes.sum();
+        return count == 0 ? 0 : totalLatencyNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos( 1 );
+    }
+
+    public long getMaxLatencyMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( maxLatencyNanos.get() );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "GroupProbeMetrics{probes=" + probes.sum() + ", found=" + found.sum() + ", missing=" + missing.sum()
+                + ", failed=" + failed.sum() + ", cancelled=" + cancelled.sum() + ", skippedRetrievals="
+                + skippedRetrievals.sum() + ", meanLatencyMillis=" + getMeanLatencyMillis() + ", maxLatencyMillis="
+                + getMaxLatencyMillis() + '}';
+    }
+}
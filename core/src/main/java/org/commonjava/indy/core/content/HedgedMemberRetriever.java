@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.cdi.util.weft.exception.PoolOverloadException;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.content.DownloadManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.commonjava.indy.model.core.StoreType.remote;
+
+/**
+ * Retrieves a path from the members of a group with speculative existence probes. Members are retrieved in group
+ * order; while one is being retrieved, the remote members after it (except the first
+ * {@link IndyConfiguration#getGroupProbeSequentialMembers()} members) are probed concurrently with
+ * {@link DownloadManager#exists(ArtifactStore, String)}, at most {@link IndyConfiguration#getGroupProbeFanout()}
+ * probes ahead.
+ * <p>
+ * A member's content is only used after every member before it missed. When the retrieval reaches a member whose
+ * probe already reported a miss, the member is skipped. A probe that hasn't finished by then is cancelled and the
+ * member retrieved as usual, so a slow probe never holds up the retrieval.
+ * <p>
+ * Only use this for paths no content generator handles: a probe can't tell that a member would generate the path.
+ */
+final class HedgedMemberRetriever
+{
+    enum ProbeResult
+    {
+        FOUND, MISSING, FAILED
+    }
+
+    /**
+     * Retrieves the path from one member, returning null if the member doesn't have it.
+     */
+    @FunctionalInterface
+    interface MemberRetrieval
+    {
+        Transfer retrieve( ArtifactStore member )
+                throws IndyWorkflowException;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final IndyConfiguration config;
+
+    private final DownloadManager downloadManager;
+
+    private final ExecutorService probeExecutor;
+
+    private final GroupProbeMetrics metrics;
+
+    private volatile CompiledGroupsPattern groupsPattern;
+
+    HedgedMemberRetriever( final IndyConfiguration config, final DownloadManager downloadManager,
+                           final ExecutorService probeExecutor, final GroupProbeMetrics metrics )
+    {
+        this.config = config;
+        this.downloadManager = downloadManager;
+        this.probeExecutor = probeExecutor;
+        this.metrics = metrics;
+    }
+
+    boolean isEnabledFor( final Group group )
+    {
+        if ( config == null || probeExecutor == null || !config.isGroupProbeEnabled() )
+        {
+            return false;
+        }
+
+        final String regex = config.getGroupProbeGroupsPattern();
+        if ( regex == null || regex.trim().isEmpty() )
+        {
+            return true;
+        }
+
+        CompiledGroupsPattern compiled = groupsPattern;
+        if ( compiled == null || !compiled.regex.equals( regex ) )
+        {
+            compiled = new CompiledGroupsPattern( regex );
+            groupsPattern = compiled;
+        }
+        return compiled.pattern != null && compiled.pattern.matcher( group.getName() ).matches();
+    }
+
+    Transfer retrieve( final Group group, final List<ArtifactStore> members, final String path,
+                       final MemberRetrieval retrieval )
+            throws IndyWorkflowException
+    {
+        final int size = members.size();
+        final int sequential = Math.max( 0, Math.min( config.getGroupProbeSequentialMembers(), size ) );
+        final int fanout = Math.max( 1, config.getGroupProbeFanout() );
+
+        @SuppressWarnings( "unchecked" )
+        final Future<ProbeResult>[] probes = new Future[size];
+        int nextProbe = sequential;
+        int outstanding = 0;
+        try
+        {
+            for ( int i = 0; i < size; i++ )
+            {
+                // probe the members after the one about to be retrieved, so they overlap with its retrieval
+                for ( nextProbe = Math.max( nextProbe, i + 1 ); nextProbe < size && outstanding < fanout;
+                      nextProbe++ )
+                {
+                    final ArtifactStore candidate = members.get( nextProbe );
+                    if ( candidate.getKey().getType() == remote && !candidate.isDisabled() )
+                    {
+                        probes[nextProbe] = submitProbe( candidate, path );
+                        if ( probes[nextProbe] == null )
+                        {
+                            // executor is saturated; retrieve the remaining members without probing them
+                            nextProbe = size;
+                            break;
+                        }
+                        outstanding++;
+                    }
+                }
+
+                final ArtifactStore member = members.get( i );
+                final Future<ProbeResult> probe = probes[i];
+                if ( probe != null )
+                {
+                    probes[i] = null;
+                    outstanding--;
+                    if ( !probe.isDone() )
+                    {
+                        // don't wait for the probe, nor let it race with the retrieval of the same member
+                        cancel( probe );
+                    }
+                    else if ( result( probe, member, path ) == ProbeResult.MISSING )
+                    {
+                        logger.trace( "Probe of {} missed {}, skipping it in group {}", member.getKey(), path,
+                                      group.getKey() );
+                        metrics.recordSkippedRetrieval();
+                        continue;
+                    }
+                }
+
+                final Transfer item = retrieval.retrieve( member );
+                if ( item != null )
+                {
+                    return item;
+                }
+            }
+        }
+        finally
+        {
+            for ( Future<ProbeResult> probe : probes )
+            {
+                if ( probe != null )
+                {
+                    cancel( probe );
+                }
+            }
+        }
+
+        return null;
+    }
+
+    GroupProbeMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    private Future<ProbeResult> submitProbe( final ArtifactStore member, final String path )
+    {
+        try
+        {
+            return probeExecutor.submit( () -> probe( member, path ) );
+        }
+        catch ( RejectedExecutionException | PoolOverloadException e )
+        {
+            logger.debug( "Probe of {} in {} rejected: {}", path, member.getKey(), e.getMessage() );
+            return null;
+        }
+    }
+
+    private ProbeResult probe( final ArtifactStore member, final String path )
+    {
+        final long start = System.nanoTime();
+        ProbeResult result;
+        try
+        {
+            result = downloadManager.exists( member, path ) ? ProbeResult.FOUND : ProbeResult.MISSING;
+        }
+        catch ( IndyWorkflowException | RuntimeException e )
+        {
+            logger.debug( "Probe of {} in {} failed: {}", path, member.getKey(), e.getMessage() );
+            result = ProbeResult.FAILED;
+        }
+
+        final long latency = System.nanoTime() - start;
+        metrics.recordProbe( result, latency );
+        logger.trace( "Probe of {} in {}: {} in {}us", path, member.getKey(), result, latency / 1000 );
+        return result;
+    }
+
+    private ProbeResult result( final Future<ProbeResult> probe, final ArtifactStore member, final String path )
+    {
+        try
+        {
+            return probe.get();
+        }
+        catch ( InterruptedException e )
+        {
+            // the probe is done, so this doesn't happen; keep the flag and retrieve the member as usual
+            Thread.currentThread().interrupt();
+            return ProbeResult.FAILED;
+        }
+        catch ( ExecutionException | CancellationException e )
+        {
+            logger.debug( "Probe of {} in {} failed: {}", path, member.getKey(), e.getMessage() );
+            return ProbeResult.FAILED;
+        }
+    }
+
+    private void cancel( final Future<ProbeResult> probe )
+    {
+        if ( config.isGroupProbeCancelEnabled() && probe.cancel( true ) )
+        {
+            metrics.recordCancelled();
+        }
+    }
+
+    private final class CompiledGroupsPattern
+    {
+        private final String regex;
+
+        private final Pattern pattern;
+
+        private CompiledGroupsPattern( final String regex )
+        {
+            Pattern compiled = null;
+            try
+            {
+                compiled = Pattern.compile( regex );
+            }
+            catch ( PatternSyntaxException e )
+            {
+                logger.warn( "Invalid group probe pattern: '{}', probing is disabled. Reason: {}", regex,
+                             e.getMessage() );
+            }
+            this.regex = regex;
+            this.pattern = compiled;
+        }
+    }
+}
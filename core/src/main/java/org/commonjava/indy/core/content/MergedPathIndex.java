@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.commonjava.indy.conf.DefaultIndyConfiguration.DEFAULT_MERGED_PATH_INDEX_MAX_PATHS;
+
+/**
+ * Remembers the mergable paths (metadata and the like) each store holds, so the clean-up done by
+ * {@link org.commonjava.indy.core.change.StoreContentListener} when group memberships change doesn't have to list the
+ * whole content of the stores involved. For a group these are the merged files it has generated; for a hosted or
+ * remote repository they are the paths a group may have merged from it.
+ * <p>
+ * Paths are added and removed by {@link org.commonjava.indy.core.change.MergedPathIndexListener} as files are stored and
+ * deleted. Since content stored before startup isn't seen that way, a store's paths are only trusted once they have
+ * been {@link #seed(StoreKey, Collection) seeded} from a listing of its storage; that listing is done once per store,
+ * instead of once per membership change.
+ * <p>
+ * The paths of a store are only indexed up to a maximum number; stores holding more are dropped from the index and
+ * never {@link #isSeeded(StoreKey) seeded}, so their clean-ups list storage again.
+ * <p>
+ * The index only sees the files stored through this node, so it stays disabled when the content storage is shared by
+ * other nodes, which write merged files of their own.
+ */
+@ApplicationScoped
+public class MergedPathIndex
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConfiguration config;
+
+    private final Map<StoreKey, Set<String>> paths = new ConcurrentHashMap<>();
+
+    private final Set<StoreKey> seeded = ConcurrentHashMap.newKeySet();
+
+    private final Set<StoreKey> overflowed = ConcurrentHashMap.newKeySet();
+
+    private boolean enabled;
+
+    private int maxPaths = DEFAULT_MERGED_PATH_INDEX_MAX_PATHS;
+
+    protected MergedPathIndex()
+    {
+    }
+
+    public MergedPathIndex( final boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+    public MergedPathIndex( final boolean enabled, final int maxPaths )
+    {
+        this.enabled = enabled;
+        this.maxPaths = maxPaths;
+    }
+
+    public MergedPathIndex( final IndyConfiguration config )
+    {
+        this.config = config;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        enabled = config.isMergedPathIndexEnabled();
+        maxPaths = config.getMergedPathIndexMaxPaths();
+        if ( enabled && ( !Boolean.TRUE.equals( config.isStandalone() ) || config.isClusterEnabled() ) )
+        {
+            logger.warn( "Merged path index is not used, since the content storage is shared with other nodes" );
+            enabled = false;
+        }
+        logger.info( "Merged path index enabled: {}", enabled );
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void add( final StoreKey key, final String path )
+    {
+        if ( enabled && !overflowed.contains( key ) )
+        {
+            final Set<String> stored = paths.computeIfAbsent( key, k -> ConcurrentHashMap.newKeySet() );
+            if ( stored.add( path ) && stored.size() > maxPaths )
+            {
+                overflow( key );
+            }
+        }
+    }
+
+    public void remove( final StoreKey key, final String path )
+    {
+        final Set<String> stored = paths.get( key );
+        if ( stored != null )
+        {
+            stored.remove( path );
+        }
+    }
+
+    /**
+     * @return whether the store's paths have been seeded, and {@link #getPaths(StoreKey)} can be trusted
+     */
+    public boolean isSeeded( final StoreKey key )
+    {
+        return seeded.contains( key );
+    }
+
+    /**
+     * Adds the mergable paths found by listing the store's storage, after which its paths are kept up to date by
+     * storage events alone. Paths stored while the listing ran were added by their events already.
+     */
+    public void seed( final StoreKey key, final Collection<String> listed )
+    {
+        if ( !enabled || overflowed.contains( key ) )
+        {
+            return;
+        }
+
+        final Set<String> stored = paths.computeIfAbsent( key, k -> ConcurrentHashMap.newKeySet() );
+        stored.addAll( listed );
+        if ( stored.size() > maxPaths )
+        {
+            overflow( key );
+            return;
+        }
+        seeded.add( key );
+        logger.debug( "Seeded merged path index of: {} with {} paths", key, listed.size() );
+    }
+
+    /**
+     * @return a copy of the store's mergable paths, or null if they were not seeded yet
+     */
+    public Set<String> getPaths( final StoreKey key )
+    {
+        if ( !seeded.contains( key ) )
+        {
+            return null;
+        }
+
+        final Set<String> stored = paths.get( key );
+        return stored == null ? new HashSet<>() : new HashSet<>( stored );
+    }
+
+    /**
+     * Forgets the store's paths, e.g. when it is deleted. They are listed again if the store is needed later.
+     */
+    public void clear( final StoreKey key )
+    {
+        seeded.remove( key );
+        overflowed.remove( key );
+        paths.remove( key );
+    }
+
+    private void overflow( final StoreKey key )
+    {
+        if ( overflowed.add( key ) )
+        {
+            logger.info( "Store: {} holds more than {} mergable paths, dropping it from the merged path index", key,
+                         maxPaths );
+        }
+        seeded.remove( key );
+        paths.remove( key );
+    }
+
+    public int size( final StoreKey key )
+    {
+        final Set<String> stored = paths.get( key );
+        return stored == null ? 0 : stored.size();
+    }
+}
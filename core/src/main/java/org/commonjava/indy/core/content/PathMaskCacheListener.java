@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+
+/**
+ * Drops the compiled path masks of {@link PathMaskChecker} for stores that were updated or deleted.
+ */
+@ApplicationScoped
+public class PathMaskCacheListener
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    public void onStoreUpdate( @Observes final ArtifactStorePostUpdateEvent event )
+    {
+        for ( final ArtifactStore store : event )
+        {
+            logger.trace( "Invalidating compiled path mask of updated store: {}", store.getKey() );
+            PathMaskChecker.invalidate( store.getKey() );
+        }
+    }
+
+    public void onStoreDeletion( @Observes final ArtifactStoreDeletePostEvent event )
+    {
+        for ( final ArtifactStore store : event )
+        {
+            logger.trace( "Invalidating compiled path mask of deleted store: {}", store.getKey() );
+            PathMaskChecker.invalidate( store.getKey() );
+        }
+    }
+}
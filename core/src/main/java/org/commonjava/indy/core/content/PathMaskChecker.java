@@ -16,19 +16,26 @@
 package org.commonjava.indy.core.content;
 
 import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Path mask checks for stores. The mask patterns of each store are compiled once into a {@link CompiledPathMask},
+ * cached by store key. A cached mask is used as long as the store still holds the same pattern set it was compiled
+ * from, and is dropped when the store is updated or deleted (see {@link PathMaskCacheListener}).
+ */
 public class PathMaskChecker
 {
     private static final Logger logger = LoggerFactory.getLogger( PathMaskChecker.class );
 
+    private static final Map<StoreKey, CompiledPathMask> compiledMasks = new ConcurrentHashMap<>();
+
     public static boolean checkMask(final ArtifactStore repo, final String path){
         Set<String> maskPatterns = repo.getPathMaskPatterns();
         logger.trace( "Checking mask in: {}, patterns: {}", repo.getKey(), maskPatterns );
@@ -39,23 +46,17 @@ public class PathMaskChecker
             return true;
         }
 
-        for ( String pattern : maskPatterns )
+        final CompiledPathMask mask = getCompiledMask( repo, maskPatterns );
+        if ( mask.matchesPlainPrefix( path ) )
         {
-            // adding allPlaintext to the condition to reduce the number of isRegexPattern() calls
-            if ( isRegexPattern( pattern ) )
-            {
-                final String realRegex = pattern.substring( 2, pattern.length() - 1 );
-                if ( path.matches( realRegex ) )
-                {
-                    logger.trace( "Checking mask in: {}, pattern with regex: {} - MATCH", repo.getName(), realRegex );
-                    return true;
-                }
-            }
-            else if ( path.startsWith( pattern ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", repo.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", repo.getName(), path );
+            return true;
+        }
+
+        if ( mask.matchesRegex( path ) )
+        {
+            logger.trace( "Checking mask in: {}, path: {} with regex - MATCH", repo.getName(), path );
+            return true;
         }
 
         logger.debug( "Path {} not available in path mask {} of repo {}", path, maskPatterns, repo );
@@ -75,45 +76,29 @@ public class PathMaskChecker
             return true;
         }
 
-        // if the pattern contains the metadata path, let's try to extract the groupId to filter the repos.
-        List<String> metadataPatterns = maskPatterns.stream()
-                .filter(pattern -> pattern.endsWith("maven-metadata.xml"))
-                .collect( Collectors.toList() );
+        final CompiledPathMask mask = getCompiledMask( store, maskPatterns );
 
-        if ( metadataPatterns.isEmpty() )
+        // if the pattern contains the metadata path, let's try to extract the groupId to filter the repos.
+        if ( !mask.hasMetadataPatterns() )
         {
-            for ( String pattern : maskPatterns )
+            if ( mask.hasRegexPatterns() )
             {
-                if ( isRegexPattern( pattern ) )
-                {
-                    // if there is a regexp pattern we cannot check presence of directory listing, because we would have to
-                    // check only the beginning of the regexp and that's impossible, so we have to assume that the path is
-                    // present
-                    return true;
-                }
+                // if there is a regexp pattern we cannot check presence of directory listing, because we would have to
+                // check only the beginning of the regexp and that's impossible, so we have to assume that the path is
+                // present
+                return true;
             }
         }
-        else
+        else if ( mask.isPrefixRelatedToMetadataGroupId( path ) )
         {
-            boolean matches = metadataPatterns.stream()
-                    .map(pattern -> extractGroupIdPath(pattern))
-                    .filter( Objects::nonNull )
-                    .anyMatch(groupIdPath -> path.startsWith( groupIdPath ) || groupIdPath.startsWith( path ) );
-
-            if ( matches )
-            {
-                logger.trace( "Checking mask in: {}, pattern with groupId path. - MATCH.", store.getName() );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, pattern with groupId path. - MATCH.", store.getName() );
+            return true;
         }
 
-        for ( String pattern : maskPatterns )
+        if ( mask.isPrefixRelatedToAny( path ) )
         {
-            if ( path.startsWith( pattern ) || pattern.startsWith( path ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", store.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", store.getName(), path );
+            return true;
         }
 
         logger.debug( "Listing for path {} not enabled by path mask {} of repo {}", path, maskPatterns, store.getKey() );
@@ -146,17 +131,11 @@ public class PathMaskChecker
             return true;
         }
 
-        for ( String pattern : maskPatterns )
+        // metadata patterns are listed as full paths, not use regex pattern
+        if ( getCompiledMask( store, maskPatterns ).isPrefixRelatedToPlain( path ) )
         {
-            if ( isRegexPattern( pattern ) )
-            {
-                continue; // metadata patterns are listed as full paths, not use regex pattern
-            }
-            else if ( path.startsWith( pattern ) || pattern.startsWith( path ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", store.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", store.getName(), path );
+            return true;
         }
 
         logger.debug( "Metadata patterns not matched, path: {}, patterns: {}, repo: {}", path, maskPatterns,
@@ -164,6 +143,36 @@ public class PathMaskChecker
         return false;
     }
 
+    /**
+     * Forget the compiled mask of a store, e.g. because the store was updated or deleted.
+     */
+    public static void invalidate( final StoreKey key )
+    {
+        compiledMasks.remove( key );
+    }
+
+    public static void clearCompiledMasks()
+    {
+        compiledMasks.clear();
+    }
+
+    private static CompiledPathMask getCompiledMask( final ArtifactStore store, final Set<String> maskPatterns )
+    {
+        final StoreKey key = store.getKey();
+        final CompiledPathMask cached = compiledMasks.get( key );
+        if ( cached != null && cached.getSource() == maskPatterns )
+        {
+            return cached;
+        }
+
+        // a copy of the store (e.g. loaded again from the store cache) holds an equal set, that needn't be compiled again
+        final CompiledPathMask compiled = cached != null && cached.getSource().equals( maskPatterns ) ?
+                cached.withSource( maskPatterns ) :
+                new CompiledPathMask( maskPatterns );
+        compiledMasks.put( key, compiled );
+        return compiled;
+    }
+
     public static boolean isRegexPattern( String pattern )
     {
         return pattern != null && pattern.startsWith( "r|" ) && pattern.endsWith( "|" );
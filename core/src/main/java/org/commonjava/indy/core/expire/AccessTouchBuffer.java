@@ -0,0 +1,456 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.expire;
+
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Write-behind buffer for the content timeout resets done by {@link TimeoutEventListener} when files are accessed.
+ * Instead of rescheduling the expiration of a file on every access, accesses are recorded per (store, path) and the
+ * resets are done in batches every few seconds, once for all the accesses to a path since the last flush.
+ * <p>
+ * A path whose expiration was reset less than the threshold ago is not reset again, as long as its remaining lifetime,
+ * judged by the smallest content timeout of its store, is still above the threshold. The threshold is also capped at
+ * a quarter of the smallest configured proxy timeout.
+ * <p>
+ * Pending accesses and recent resets are kept in stripes, each guarded by its own lock, so concurrent accesses to
+ * different paths rarely contend.
+ */
+@ApplicationScoped
+public class AccessTouchBuffer
+{
+    static final int STRIPES = 64;
+
+    // the threshold is at most this fraction of the smallest configured content timeout
+    static final int MAX_THRESHOLD_FRACTION = 4;
+
+    private static final String FLUSH_THREAD_NAME = "timeout-touch-flush";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private ScheduleManager scheduleManager;
+
+    @Inject
+    private IndyConfiguration config;
+
+    @Inject
+    private StoreDataManager storeDataManager;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final LongAdder touches = new LongAdder();
+
+    private final LongAdder flushed = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private ToLongFunction<StoreKey> timeouts = this::getSmallestTimeoutMillis;
+
+    private boolean enabled;
+
+    private long thresholdMillis;
+
+    private ScheduledExecutorService flushService;
+
+    protected AccessTouchBuffer()
+    {
+        for ( int i = 0; i < STRIPES; i++ )
+        {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Buffer flushed only by calling {@link #flush()}.
+     *
+     * @param timeouts smallest content timeout of a store in milliseconds, or zero or less if its content never expires
+     */
+    public AccessTouchBuffer( final ScheduleManager scheduleManager, final long threshold, final TimeUnit unit,
+                              final LongSupplier clock, final ToLongFunction<StoreKey> timeouts )
+    {
+        this();
+        this.scheduleManager = scheduleManager;
+        this.thresholdMillis = unit.toMillis( threshold );
+        this.clock = clock;
+        this.timeouts = timeouts;
+        this.enabled = true;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        enabled = config.isTouchBufferEnabled();
+        thresholdMillis = TimeUnit.SECONDS.toMillis( config.getTouchBufferResetThresholdSeconds() );
+        if ( !enabled )
+        {
+            return;
+        }
+
+        final long smallestTimeout = TimeUnit.SECONDS.toMillis(
+                smallestPositive( config.getPassthroughTimeoutSeconds(), config.getRemoteMetadataTimeoutSeconds() ) );
+        if ( smallestTimeout > 0 && thresholdMillis > smallestTimeout / MAX_THRESHOLD_FRACTION )
+        {
+            logger.warn( "Timeout touch buffer reset threshold of {}ms is too close to the smallest content timeout of "
+                                 + "{}ms, using {}ms", thresholdMillis, smallestTimeout,
+                         smallestTimeout / MAX_THRESHOLD_FRACTION );
+            thresholdMillis = smallestTimeout / MAX_THRESHOLD_FRACTION;
+        }
+
+        flushService = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory( FLUSH_THREAD_NAME, new ThreadGroup( FLUSH_THREAD_NAME ), true, 2 ) );
+
+        final int flushSeconds = Math.max( 1, config.getTouchBufferFlushSeconds() );
+        flushService.scheduleWithFixedDelay( this::flush, flushSeconds, flushSeconds, TimeUnit.SECONDS );
+        logger.info( "Timeout touch buffer enabled, flushed every {} seconds, reset threshold: {} seconds",
+                     flushSeconds, TimeUnit.MILLISECONDS.toSeconds( thresholdMillis ) );
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( flushService != null )
+        {
+            flushService.shutdownNow();
+            flush();
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Records an access to the path, whose expiration will be reset by the next flush unless it was reset recently and
+     * won't expire within the threshold.
+     */
+    public void touch( final StoreKey key, final String path )
+    {
+        touches.increment();
+
+        final Touch touch = new Touch( key, path );
+        final Stripe stripe = stripeOf( touch );
+        final long now = clock.getAsLong();
+        synchronized ( stripe )
+        {
+            final Reset reset = stripe.resets.get( touch );
+            if ( reset != null && reset.skips( now ) )
+            {
+                skipped.increment();
+            }
+            else if ( !stripe.pending.add( touch ) )
+            {
+                coalesced.increment();
+            }
+        }
+    }
+
+    /**
+     * Records that the path's expiration was just reset some other way, e.g. when it was stored.
+     */
+    public void recordReset( final StoreKey key, final String path )
+    {
+        if ( thresholdMillis <= 0 )
+        {
+            return;
+        }
+
+        final Touch touch = new Touch( key, path );
+        final Stripe stripe = stripeOf( touch );
+        final long now = clock.getAsLong();
+        final Reset reset = new Reset( now, timeouts.applyAsLong( key ) );
+        synchronized ( stripe )
+        {
+            stripe.resets.put( touch, reset );
+            stripe.pending.remove( touch );
+        }
+    }
+
+    /**
+     * Resets the expiration of every path accessed since the last flush, and forgets resets older than the threshold.
+     * @return number of resets done
+     */
+    public synchronized int flush()
+    {
+        int count = 0;
+        final Map<StoreKey, Long> storeTimeouts = new HashMap<>();
+        for ( final Stripe stripe : stripes )
+        {
+            final Set<Touch> batch;
+            synchronized ( stripe )
+            {
+                batch = stripe.pending;
+                stripe.pending = new HashSet<>();
+            }
+
+            final long now = clock.getAsLong();
+            final Map<Touch, Reset> reset = new HashMap<>( batch.size() );
+            for ( final Touch touch : batch )
+            {
+                if ( resetTimeout( touch ) && thresholdMillis > 0 )
+                {
+                    final long timeout = storeTimeouts.computeIfAbsent( touch.key, timeouts::applyAsLong );
+                    reset.put( touch, new Reset( now, timeout ) );
+                }
+            }
+            count += reset.size();
+
+            synchronized ( stripe )
+            {
+                if ( thresholdMillis > 0 )
+                {
+                    stripe.resets.putAll( reset );
+                    stripe.resets.values().removeIf( r -> !r.skips( now ) );
+                }
+            }
+        }
+
+        if ( count > 0 )
+        {
+            logger.debug( "Flushed {} timeout resets. {}", count, this );
+        }
+        return count;
+    }
+
+    private boolean resetTimeout( final Touch touch )
+    {
+        try
+        {
+            if ( touch.key.getType() == StoreType.hosted )
+            {
+                scheduleManager.setSnapshotTimeouts( touch.key, touch.path );
+            }
+            else
+            {
+                scheduleManager.setProxyTimeouts( touch.key, touch.path );
+            }
+            flushed.increment();
+            return true;
+        }
+        catch ( final IndySchedulerException | RuntimeException e )
+        {
+            failed.increment();
+            logger.error( "Failed to reset timeouts of: {} in: {}. Reason: {}", touch.path, touch.key,
+                          e.getMessage(), e );
+            return false;
+        }
+    }
+
+    /**
+     * @return the smallest content timeout the store applies, or zero if its content never expires
+     */
+    private long getSmallestTimeoutMillis( final StoreKey key )
+    {
+        final ArtifactStore store;
+        try
+        {
+            store = storeDataManager.getArtifactStore( key );
+        }
+        catch ( final IndyDataException e )
+        {
+            logger.warn( "Failed to retrieve store: {} to find its content timeout. Reason: {}", key, e.getMessage() );
+            // never skip resets when the timeout is unknown
+            return 1;
+        }
+
+        if ( store instanceof HostedRepository )
+        {
+            return TimeUnit.SECONDS.toMillis( Math.max( 0, ( (HostedRepository) store ).getSnapshotTimeoutSeconds() ) );
+        }
+        else if ( store instanceof RemoteRepository )
+        {
+            final RemoteRepository repo = (RemoteRepository) store;
+            if ( repo.isPassthrough() )
+            {
+                return TimeUnit.SECONDS.toMillis( Math.max( 0, config.getPassthroughTimeoutSeconds() ) );
+            }
+
+            final int metadataTimeout = repo.getMetadataTimeoutSeconds() == 0 ?
+                    config.getRemoteMetadataTimeoutSeconds() :
+                    repo.getMetadataTimeoutSeconds();
+            return TimeUnit.SECONDS.toMillis( smallestPositive( repo.getCacheTimeoutSeconds(), metadataTimeout ) );
+        }
+        return 0;
+    }
+
+    private static int smallestPositive( final int first, final int second )
+    {
+        if ( first <= 0 )
+        {
+            return Math.max( 0, second );
+        }
+        return second <= 0 ? first : Math.min( first, second );
+    }
+
+    private Stripe stripeOf( final Touch touch )
+    {
+        final int hash = touch.hashCode();
+        return stripes[( hash ^ ( hash >>> 16 ) ) & ( STRIPES - 1 )];
+    }
+
+    /**
+     * @return number of accesses recorded
+     */
+    public long getTouchCount()
+    {
+        return touches.sum();
+    }
+
+    /**
+     * @return number of timeout resets done by flushes
+     */
+    public long getFlushedCount()
+    {
+        return flushed.sum();
+    }
+
+    /**
+     * @return number of accesses folded into a reset already pending for the same path
+     */
+    public long getCoalescedCount()
+    {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of accesses not leading to a reset, because the path was reset less than the threshold ago and
+     * won't expire within the threshold
+     */
+    public long getSkippedCount()
+    {
+        return skipped.sum();
+    }
+
+    public long getFailedCount()
+    {
+        return failed.sum();
+    }
+
+    public int getPendingCount()
+    {
+        int count = 0;
+        for ( final Stripe stripe : stripes )
+        {
+            synchronized ( stripe )
+            {
+                count += stripe.pending.size();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AccessTouchBuffer{touches=" + touches.sum() + ", flushed=" + flushed.sum() + ", coalesced="
+                + coalesced.sum() + ", skipped=" + skipped.sum() + ", failed=" + failed.sum() + '}';
+    }
+
+    private static final class Stripe
+    {
+        private Set<Touch> pending = new HashSet<>();
+
+        private final Map<Touch, Reset> resets = new HashMap<>();
+    }
+
+    private final class Reset
+    {
+        private final long time;
+
+        private final long expiration;
+
+        /**
+         * @param timeout smallest timeout the path may have been given, or zero or less if it never expires
+         */
+        private Reset( final long time, final long timeout )
+        {
+            this.time = time;
+            this.expiration = timeout > 0 ? time + timeout : Long.MAX_VALUE;
+        }
+
+        boolean skips( final long now )
+        {
+            return now - time < thresholdMillis && expiration - now > thresholdMillis;
+        }
+    }
+
+    private static final class Touch
+    {
+        private final StoreKey key;
+
+        private final String path;
+
+        private Touch( final StoreKey key, final String path )
+        {
+            this.key = key;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof Touch ) )
+            {
+                return false;
+            }
+            final Touch touch = (Touch) o;
+            return key.equals( touch.key ) && path.equals( touch.path );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( key, path );
+        }
+    }
+}
@@ -69,6 +69,9 @@ public class TimeoutEventListener
     @Inject
     private SpecialPathManager specialPathManager;
 
+    @Inject
+    private AccessTouchBuffer touchBuffer;
+
     public void onExpirationEvent( @Observes final SchedulerEvent event )
     {
         if ( !( event instanceof SchedulerTriggerEvent ) || !event.getJobType()
@@ -152,6 +155,7 @@ public class TimeoutEventListener
                 try
                 {
                     scheduleManager.setSnapshotTimeouts( key, transfer.getPath() );
+                    recordReset( key, transfer );
                 }
                 catch ( final IndySchedulerException e )
                 {
@@ -165,6 +169,7 @@ public class TimeoutEventListener
                 try
                 {
                     scheduleManager.setProxyTimeouts( key, transfer.getPath() );
+                    recordReset( key, transfer );
                 }
                 catch ( final IndySchedulerException e )
                 {
@@ -194,7 +199,11 @@ public class TimeoutEventListener
                 final Transfer transfer = event.getTransfer();
                 final StoreType type = key.getType();
 
-                if ( type == StoreType.hosted )
+                if ( type == StoreType.hosted && touchBuffer.isEnabled() )
+                {
+                    touchBuffer.touch( key, transfer.getPath() );
+                }
+                else if ( type == StoreType.hosted )
                 {
                     try
                     {
@@ -211,13 +220,21 @@ public class TimeoutEventListener
                     if ( info == null || !info.isMetadata() )
                     {
                         logger.debug( "Accessed resource {} timeout will be reset.", transfer );
-                        try
+                        if ( touchBuffer.isEnabled() )
                         {
-                            scheduleManager.setProxyTimeouts( key, transfer.getPath() );
+                            touchBuffer.touch( key, transfer.getPath() );
                         }
-                        catch ( final IndySchedulerException e )
+                        else
                         {
-                            logger.error( "Failed to set proxy-cache timeouts related to: {}. Reason: {}", transfer, e );
+                            try
+                            {
+                                scheduleManager.setProxyTimeouts( key, transfer.getPath() );
+                            }
+                            catch ( final IndySchedulerException e )
+                            {
+                                logger.error( "Failed to set proxy-cache timeouts related to: {}. Reason: {}",
+                                              transfer, e );
+                            }
                         }
                     }
                     else
@@ -244,6 +261,17 @@ public class TimeoutEventListener
     {
     }
 
+    /**
+     * A file just stored had its expiration set, so accesses right after don't need to reset it again.
+     */
+    private void recordReset( final StoreKey key, final Transfer transfer )
+    {
+        if ( touchBuffer.isEnabled() )
+        {
+            touchBuffer.recordReset( key, transfer.getPath() );
+        }
+    }
+
     public void onStoreUpdate( @Observes final ArtifactStorePostUpdateEvent event )
     {
         final ArtifactStoreUpdateType eventType = event.getType();
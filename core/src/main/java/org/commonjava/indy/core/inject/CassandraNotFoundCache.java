@@ -20,7 +20,9 @@ import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.galley.KeyedLocation;
@@ -33,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
@@ -40,8 +43,11 @@ import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static org.commonjava.indy.conf.DefaultIndyConfiguration.DEFAULT_NOT_FOUND_CACHE_TIMEOUT_SECONDS;
@@ -56,6 +62,10 @@ public class CassandraNotFoundCache
 
     private static final String TIMEOUT_FORMAT = "yyyy-MM-dd HH:mm:ss z";
 
+    private static final String FILTER_REBUILD_THREAD_NAME = "nfc-filter-rebuild";
+
+    private static final int FILTER_REBUILD_FETCH_SIZE = 5000;
+
     private PreparedStatement preparedInsert;
 
     private PreparedStatement preparedExistQuery;
@@ -68,6 +78,8 @@ public class CassandraNotFoundCache
 
     private PreparedStatement preparedQueryByStore;
 
+    private PreparedStatement preparedPathsByStore;
+
     // @formatter:off
     private static String getSchemaCreateTable( String keyspace )
     {
@@ -100,6 +112,12 @@ public class CassandraNotFoundCache
 
     private Session session;
 
+    private NfcBloomFilter filter;
+
+    private ScheduledExecutorService filterRebuildService;
+
+    private long nextFullFilterRebuild;
+
     protected CassandraNotFoundCache()
     {
     }
@@ -138,12 +156,131 @@ public class CassandraNotFoundCache
 
         preparedQueryByStore = session.prepare( "SELECT * FROM " + keyspace + ".nfc WHERE storekey=?;" );
 
+        preparedPathsByStore = session.prepare( "SELECT path FROM " + keyspace + ".nfc WHERE storekey=?;" );
+
         preparedDeleteByStore = session.prepare( "DELETE FROM " + keyspace + ".nfc WHERE storekey=?;" );
 
         preparedDelete = session.prepare( "DELETE FROM " + keyspace + ".nfc WHERE storekey=? AND path=?;" );
 
         preparedInsert = session.prepare( "INSERT INTO " + keyspace
                                                           + ".nfc (storekey,path,creation,expiration) VALUES (?,?,?,?) USING TTL ?;" ); // ttl in seconds
+
+        if ( config.isNfcFilterEnabled() && filter == null )
+        {
+            startFilter();
+        }
+    }
+
+    /**
+     * The filter answers isMissing() for paths definitely not in the NFC, and is built from the nfc table in the
+     * background. Until the first build completes every path is checked in cassandra. After that, the whole table is
+     * only scanned every few hours; in between, just the stale stores are read back.
+     */
+    private void startFilter()
+    {
+        filter = new NfcBloomFilter( config.getNfcFilterFalsePositiveRate() );
+        filterRebuildService = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory( FILTER_REBUILD_THREAD_NAME, new ThreadGroup( FILTER_REBUILD_THREAD_NAME ),
+                                        true, 2 ) );
+
+        final int rebuildMins = Math.max( 1, config.getNfcFilterRebuildMinutes() );
+        filterRebuildService.scheduleWithFixedDelay( this::maintainFilter, 0, rebuildMins, TimeUnit.MINUTES );
+        logger.info( "[NFC] Bloom filter enabled, false positive rate: {}, stale stores refreshed every {} minutes, "
+                             + "fully rebuilt every {} hours", config.getNfcFilterFalsePositiveRate(), rebuildMins,
+                     config.getNfcFilterFullRebuildHours() );
+    }
+
+    private void maintainFilter()
+    {
+        final int fullRebuildHours = config.getNfcFilterFullRebuildHours();
+        if ( !filter.isReady() || ( fullRebuildHours > 0 && System.currentTimeMillis() >= nextFullFilterRebuild ) )
+        {
+            rebuildFilter();
+            nextFullFilterRebuild = System.currentTimeMillis() + TimeUnit.HOURS.toMillis( fullRebuildHours );
+        }
+        else
+        {
+            refreshStaleFilters();
+        }
+    }
+
+    private void rebuildFilter()
+    {
+        final long start = System.currentTimeMillis();
+        long count = 0;
+        filter.beginRebuild();
+        try
+        {
+            final SimpleStatement scan = new SimpleStatement( "SELECT storekey, path FROM " + keyspace + ".nfc;" );
+            scan.setFetchSize( FILTER_REBUILD_FETCH_SIZE );
+            for ( Row row : session.execute( scan ) )
+            {
+                filter.rebuildAdd( row.getString( 0 ), row.getString( 1 ) );
+                count++;
+            }
+            filter.completeRebuild();
+            logger.info( "[NFC] Bloom filter rebuilt from {} entries in {}ms: {}", count,
+                         System.currentTimeMillis() - start, filter );
+        }
+        catch ( RuntimeException e )
+        {
+            filter.abortRebuild();
+            logger.warn( "[NFC] Failed to rebuild Bloom filter, keeping the current one. Reason: {}",
+                         e.getMessage(), e );
+        }
+    }
+
+    private void refreshStaleFilters()
+    {
+        final List<String> stale = filter.getStaleStores();
+        if ( stale.isEmpty() )
+        {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        long count = 0;
+        for ( String store : stale )
+        {
+            filter.beginRefresh( store );
+            try
+            {
+                final BoundStatement query = preparedPathsByStore.bind( store );
+                query.setFetchSize( FILTER_REBUILD_FETCH_SIZE );
+                for ( Row row : session.execute( query ) )
+                {
+                    filter.refreshAdd( store, row.getString( 0 ) );
+                    count++;
+                }
+                filter.completeRefresh( store );
+            }
+            catch ( RuntimeException e )
+            {
+                filter.abortRefresh( store );
+                logger.warn( "[NFC] Failed to refresh Bloom filter of {}, keeping the current one. Reason: {}", store,
+                             e.getMessage(), e );
+            }
+        }
+        logger.info( "[NFC] Bloom filters of {} stale stores refreshed from {} entries in {}ms: {}", stale.size(),
+                     count, System.currentTimeMillis() - start, filter );
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( filterRebuildService != null )
+        {
+            filterRebuildService.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the Bloom filter in front of cassandra, or null if it is disabled. Exposes the false positive rate and
+     * memory use.
+     */
+    public NfcBloomFilter getFilter()
+    {
+        return filter;
     }
 
     @Override
@@ -177,6 +314,11 @@ public class CassandraNotFoundCache
         BoundStatement bound = preparedInsert.bind( key.toString(), resource.getPath(), curDate, timeoutDate,
                                                     timeoutInSeconds );
         executeSession( bound );
+        if ( filter != null )
+        {
+            // after the insert, so a concurrent rebuild either reads it from cassandra or gets it from here
+            filter.add( key.toString(), resource.getPath() );
+        }
         inMemoryCache.put( resource, DUMB_CACHE_VALUE, timeoutInSeconds, TimeUnit.SECONDS );
     }
 
@@ -188,9 +330,19 @@ public class CassandraNotFoundCache
             return true;
         }
         StoreKey key = getResourceKey( resource );
+        if ( filter != null && !filter.mightContain( key.toString(), resource.getPath() ) )
+        {
+            filter.recordSkipped();
+            return false;
+        }
+
         BoundStatement bound = preparedExistQuery.bind( key.toString(), resource.getPath() );
         ResultSet result = executeSession( bound );
         Row row = result.one();
+        if ( filter != null )
+        {
+            filter.recordChecked( key.toString(), row != null );
+        }
         if ( row == null )
         {
             return false;
@@ -215,6 +367,10 @@ public class CassandraNotFoundCache
         StoreKey key = ( (KeyedLocation) location ).getKey();
         BoundStatement bound = preparedDeleteByStore.bind( key.toString() );
         executeSession( bound );
+        if ( filter != null )
+        {
+            filter.clear( key.toString() );
+        }
         clearInMemoryCache( location );
     }
 
@@ -243,6 +399,7 @@ public class CassandraNotFoundCache
         StoreKey key = getResourceKey( resource );
         BoundStatement bound = preparedDelete.bind( key.toString(), resource.getPath() );
         executeSession( bound );
+        // the path stays in the filter as a false positive until the store is refreshed or the filter rebuilt
         inMemoryCache.remove( resource );
     }
 
@@ -250,6 +407,10 @@ public class CassandraNotFoundCache
     public void clearAllMissing()
     {
         session.execute( "TRUNCATE " + keyspace + ".nfc;" );
+        if ( filter != null )
+        {
+            filter.clearAll();
+        }
         clearInMemoryCache();
     }
 
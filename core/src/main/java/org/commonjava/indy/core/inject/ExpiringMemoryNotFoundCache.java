@@ -27,22 +27,35 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
 
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.model.galley.RepositoryLocation;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * In-memory NFC. Entries are partitioned by {@link Location}, so clearing or listing the missing paths of one location
+ * only touches that location's entries.
+ * <p>
+ * Expiration is driven by a {@link TimerWheel} advanced every second, which only visits the entries that are due,
+ * instead of scanning the whole cache. When {@link IndyConfiguration#getNfcMaxEntries()} is set, entries beyond it are
+ * evicted with the CLOCK (second chance) approximation of LRU: a lookup marks the entry as referenced, and the eviction
+ * hand skips (and unmarks) referenced entries once before evicting them.
+ * <p>
+ * Lookups are lock-free; changes are serialized on this instance.
+ */
 @ApplicationScoped
 @Alternative
 public class ExpiringMemoryNotFoundCache
@@ -51,15 +64,27 @@ public class ExpiringMemoryNotFoundCache
 
     private static final String TIMEOUT_FORMAT = "yyyy-MM-dd hh:mm:ss z";
 
+    private static final String EXPIRATION_THREAD_NAME = "nfc-expiration";
+
+    private static final long TICK_MILLIS = 1000;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
     protected IndyConfiguration config;
 
-    // TODO: Now using a simple hashmap, need to take attention here to see if need ISPN instead if it is a mem eater.
-    protected final Map<ConcreteResource, Long> missingWithTimeout = new ConcurrentHashMap<>();
+    private final Map<Location, Map<String, Entry>> partitions = new ConcurrentHashMap<>();
+
+    private final TimerWheel wheel = new TimerWheel( TICK_MILLIS, System.currentTimeMillis() );
+
+    private final AtomicLong evictions = new AtomicLong();
 
-    private final ScheduledExecutorService evictionService = Executors.newScheduledThreadPool( 1 );
+    // CLOCK ring of all entries; the hand points at the next eviction candidate, and new entries go right behind it
+    private Entry hand;
+
+    private volatile int size;
+
+    private ScheduledExecutorService expirationService;
 
     protected ExpiringMemoryNotFoundCache()
     {
@@ -74,9 +99,20 @@ public class ExpiringMemoryNotFoundCache
     @PostConstruct
     public void start()
     {
-        // schedule an expiration reaper thread to run according to some offset (in minutes) from the configuration
-        final int sweepMins = config.getNfcExpirationSweepMinutes();
-        evictionService.scheduleAtFixedRate( () -> clearAllExpiredMissing(), sweepMins, sweepMins, TimeUnit.MINUTES );
+        expirationService = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory( EXPIRATION_THREAD_NAME, new ThreadGroup( EXPIRATION_THREAD_NAME ), true,
+                                        Thread.NORM_PRIORITY ) );
+        expirationService.scheduleAtFixedRate( this::clearAllExpiredMissing, TICK_MILLIS, TICK_MILLIS,
+                                               TimeUnit.MILLISECONDS );
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( expirationService != null )
+        {
+            expirationService.shutdownNow();
+        }
     }
 
     @Override
@@ -117,16 +153,21 @@ public class ExpiringMemoryNotFoundCache
             }
         } );
 
-        missingWithTimeout.put( resource, timeout );
+        put( new Entry( resource, timeout ) );
     }
 
     @Override
     public boolean isMissing( final ConcreteResource resource )
     {
-        final Long timeout = missingWithTimeout.get( resource );
+        final Map<String, Entry> partition = partitions.get( resource.getLocation() );
+        final Entry entry = partition == null ? null : partition.get( resource.getPath() );
         boolean result = false;
-        if ( timeout != null && System.currentTimeMillis() < timeout )
+        if ( entry != null && System.currentTimeMillis() < entry.expiresAt )
         {
+            if ( !entry.referenced )
+            {
+                entry.referenced = true;
+            }
             result = true;
         }
 
@@ -135,42 +176,46 @@ public class ExpiringMemoryNotFoundCache
     }
 
     @Override
-    public void clearMissing( final Location location )
+    public synchronized void clearMissing( final Location location )
     {
-        Set<ConcreteResource> paths = keys().stream()
-                    .filter( r -> r != null && r.getLocation().equals( location ) )
-                    .collect( Collectors.toSet() );
-
-        if ( !paths.isEmpty() )
+        final Map<String, Entry> partition = partitions.remove( location );
+        if ( partition != null )
         {
-            paths.forEach( r -> missingWithTimeout.remove( r ) );
+            partition.values().forEach( this::unlink );
         }
     }
 
     @Override
-    public void clearMissing( final ConcreteResource resource )
+    public synchronized void clearMissing( final ConcreteResource resource )
     {
-        missingWithTimeout.remove( resource );
+        final Map<String, Entry> partition = partitions.get( resource.getLocation() );
+        final Entry entry = partition == null ? null : partition.get( resource.getPath() );
+        if ( entry != null )
+        {
+            remove( entry );
+        }
     }
 
     @Override
-    public void clearAllMissing()
+    public synchronized void clearAllMissing()
     {
-        this.missingWithTimeout.clear();
+        partitions.clear();
+        wheel.clear();
+        hand = null;
+        size = 0;
     }
 
     @Override
     public Map<Location, Set<String>> getAllMissing()
     {
-        clearAllExpiredMissing();
-        Set<ConcreteResource> paths = keys();
-
+        final long now = System.currentTimeMillis();
         final Map<Location, Set<String>> result = new HashMap<>();
-        paths.forEach( resource->{
-            final Location loc = resource.getLocation();
-            Set<String> locationPaths = result.computeIfAbsent( loc, k -> new HashSet<>() );
-
-            locationPaths.add( resource.getPath() );
+        partitions.forEach( ( loc, partition ) -> {
+            final Set<String> paths = unexpiredPaths( partition, now );
+            if ( !paths.isEmpty() )
+            {
+                result.put( loc, paths );
+            }
         } );
 
         return result;
@@ -179,64 +224,188 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public Set<String> getMissing( final Location location )
     {
-        clearAllExpiredMissing();
-        return keys().stream()
-                    .filter( r -> r != null && r.getLocation().equals( location ) )
-                    .map( r -> r.getPath() )
-                    .collect( Collectors.toSet() );
+        final Map<String, Entry> partition = partitions.get( location );
+        return partition == null ? new HashSet<>() : unexpiredPaths( partition, System.currentTimeMillis() );
     }
 
-    private Set<ConcreteResource> keys()
+    @Override
+    public long getSize( StoreKey storeKey )
     {
-        Set<ConcreteResource> paths;
-        paths = new HashSet<>(missingWithTimeout.keySet());
+        final long now = System.currentTimeMillis();
+        long count = 0;
+        for ( Map.Entry<Location, Map<String, Entry>> e : partitions.entrySet() )
+        {
+            final Location loc = e.getKey();
+            if ( loc instanceof KeyedLocation && storeKey.equals( ( (KeyedLocation) loc ).getKey() ) )
+            {
+                count += e.getValue().values().stream().filter( entry -> now < entry.expiresAt ).count();
+            }
+        }
+        return count;
+    }
 
-        return paths;
+    @Override
+    public long getSize()
+    {
+        return size;
     }
 
-    private synchronized void clearAllExpiredMissing()
+    /**
+     * @return number of entries evicted to stay within {@link IndyConfiguration#getNfcMaxEntries()}
+     */
+    public long getEvictionCount()
     {
-        try
+        return evictions.get();
+    }
+
+    @Override
+    protected IndyConfiguration getIndyConfiguration()
+    {
+        return config;
+    }
+
+    private synchronized void put( final Entry entry )
+    {
+        final Map<String, Entry> partition =
+                partitions.computeIfAbsent( entry.resource.getLocation(), k -> new ConcurrentHashMap<>() );
+
+        final Entry old = partition.put( entry.resource.getPath(), entry );
+        if ( old != null )
         {
-            long tstamp = System.currentTimeMillis();
-            Set<ConcreteResource> paths = keys().stream().filter( r ->
-                                   {
-                                       if ( r == null )
-                                       {
-                                           return false;
-                                       }
+            unlink( old );
+        }
 
-                                       Long timeout = missingWithTimeout.get( r );
-                                       return timeout != null && timeout < tstamp;
-                                   } ).collect( Collectors.toSet() );
+        if ( entry.expiresAt != Long.MAX_VALUE )
+        {
+            wheel.schedule( entry );
+        }
 
-            if ( !paths.isEmpty() )
+        if ( hand == null )
+        {
+            entry.clockPrev = entry;
+            entry.clockNext = entry;
+            hand = entry;
+        }
+        else
+        {
+            entry.clockPrev = hand.clockPrev;
+            entry.clockNext = hand;
+            hand.clockPrev.clockNext = entry;
+            hand.clockPrev = entry;
+        }
+        size++;
+
+        final int maxEntries = config.getNfcMaxEntries();
+        if ( maxEntries > 0 )
+        {
+            evict( maxEntries );
+        }
+    }
+
+    private void evict( final int maxEntries )
+    {
+        int evicted = 0;
+        while ( size > maxEntries )
+        {
+            final Entry candidate = hand;
+            if ( candidate.referenced )
+            {
+                candidate.referenced = false;
+                hand = candidate.clockNext;
+            }
+            else
             {
-                paths.forEach( r -> missingWithTimeout.remove( r ) );
+                remove( candidate );
+                evicted++;
             }
         }
+
+        if ( evicted > 0 )
+        {
+            evictions.addAndGet( evicted );
+            logger.debug( "[NFC] Evicted {} entries to stay within {} entries", evicted, maxEntries );
+        }
+    }
+
+    private synchronized void clearAllExpiredMissing()
+    {
+        try
+        {
+            wheel.advance( System.currentTimeMillis(), node -> remove( (Entry) node ) );
+        }
         catch ( Throwable error )
         {
-            Logger logger = LoggerFactory.getLogger( getClass() );
             logger.error( "Failed to clear expired entries from NFC", error );
         }
     }
 
-    @Override
-    public long getSize( StoreKey storeKey )
+    /**
+     * Take the entry out of its partition (dropping the partition once empty), the timer wheel and the CLOCK ring.
+     */
+    private void remove( final Entry entry )
     {
-        return 0; // Not support
+        final Location loc = entry.resource.getLocation();
+        final Map<String, Entry> partition = partitions.get( loc );
+        if ( partition != null && partition.remove( entry.resource.getPath(), entry ) && partition.isEmpty() )
+        {
+            partitions.remove( loc, partition );
+        }
+        unlink( entry );
     }
 
-    @Override
-    public long getSize()
+    private void unlink( final Entry entry )
     {
-        return missingWithTimeout.size();
+        wheel.unschedule( entry );
+        if ( entry.clockNext == null )
+        {
+            return;
+        }
+
+        if ( entry.clockNext == entry )
+        {
+            hand = null;
+        }
+        else
+        {
+            if ( hand == entry )
+            {
+                hand = entry.clockNext;
+            }
+            entry.clockPrev.clockNext = entry.clockNext;
+            entry.clockNext.clockPrev = entry.clockPrev;
+        }
+        entry.clockPrev = null;
+        entry.clockNext = null;
+        size--;
     }
 
-    @Override
-    protected IndyConfiguration getIndyConfiguration()
+    private static Set<String> unexpiredPaths( final Map<String, Entry> partition, final long now )
     {
-        return config;
+        final Set<String> paths = new HashSet<>();
+        partition.forEach( ( path, entry ) -> {
+            if ( now < entry.expiresAt )
+            {
+                paths.add( path );
+            }
+        } );
+        return paths;
+    }
+
+    private static final class Entry
+        extends TimerWheel.Node
+    {
+        private final ConcreteResource resource;
+
+        private volatile boolean referenced;
+
+        private Entry clockPrev;
+
+        private Entry clockNext;
+
+        private Entry( final ConcreteResource resource, final long expiresAt )
+        {
+            this.resource = resource;
+            this.expiresAt = expiresAt;
+        }
     }
 }
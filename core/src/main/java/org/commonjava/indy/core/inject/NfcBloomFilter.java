@@ -0,0 +1,473 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-store Bloom filters over the paths held by a not-found cache. A negative answer from
+ * {@link #mightContain(String, String)} means the path was definitely not added since the last rebuild, so the backing
+ * store needn't be queried. Paths can't be removed; removed entries only show up as false positives, until the next
+ * {@link #beginRebuild() rebuild} of all stores or {@link #beginRefresh(String) refresh} of the store. The stores
+ * worth refreshing are listed by {@link #getStaleStores()}.
+ * <p>
+ * The filter of a store grows as paths are added: once a segment holds as many paths as it was sized for, a segment of
+ * twice the capacity and half the false positive probability is added, keeping the overall false positive probability
+ * under twice the configured one.
+ * <p>
+ * Until the first rebuild completes, every path might be contained.
+ */
+public class NfcBloomFilter
+{
+    static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+    // below this, a few expired entries being asked for would already mark a small store stale
+    static final int MIN_STALE_FALSE_POSITIVES = 10;
+
+    private final double falsePositiveProbability;
+
+    private final int initialCapacity;
+
+    private volatile Map<String, StoreFilter> filters = new ConcurrentHashMap<>();
+
+    private volatile Map<String, StoreFilter> building;
+
+    private final Map<String, StoreFilter> refreshing = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final LongAdder truePositives = new LongAdder();
+
+    private final LongAdder falsePositives = new LongAdder();
+
+    public NfcBloomFilter( final double falsePositiveProbability )
+    {
+        this( falsePositiveProbability, DEFAULT_INITIAL_CAPACITY );
+    }
+
+    public NfcBloomFilter( final double falsePositiveProbability, final int initialCapacity )
+    {
+        if ( falsePositiveProbability <= 0 || falsePositiveProbability >= 1 )
+        {
+            throw new IllegalArgumentException( "False positive probability must be in (0, 1): "
+                                                        + falsePositiveProbability );
+        }
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.initialCapacity = Math.max( 16, initialCapacity );
+    }
+
+    public boolean isReady()
+    {
+        return ready;
+    }
+
+    /**
+     * @return false if the path was definitely not added for the store since the last rebuild
+     */
+    public boolean mightContain( final String store, final String path )
+    {
+        if ( !ready )
+        {
+            return true;
+        }
+
+        final StoreFilter filter = filters.get( store );
+        return filter != null && filter.mightContain( hash( path ) );
+    }
+
+    /**
+     * Add a path. Callers must add it after it was written to the backing store, so that a concurrent rebuild either
+     * reads it from there or gets it from here.
+     */
+    public void add( final String store, final String path )
+    {
+        final long hash = hash( path );
+
+        // fresh filters first: if the rebuild completes in between, they are the current filters already. Read the
+        // other way around, a rebuild completing in between would swap in fresh filters missing the path.
+        final Map<String, StoreFilter> rebuilding = building;
+        if ( rebuilding != null )
+        {
+            rebuilding.computeIfAbsent( store, k -> new StoreFilter() ).add( hash );
+        }
+
+        final StoreFilter refreshed = refreshing.get( store );
+        if ( refreshed != null )
+        {
+            refreshed.add( hash );
+        }
+
+        filters.computeIfAbsent( store, k -> new StoreFilter() ).add( hash );
+    }
+
+    public void clear( final String store )
+    {
+        filters.remove( store );
+        refreshing.remove( store );
+        final Map<String, StoreFilter> rebuilding = building;
+        if ( rebuilding != null )
+        {
+            rebuilding.remove( store );
+        }
+    }
+
+    public void clearAll()
+    {
+        filters.clear();
+        refreshing.clear();
+        final Map<String, StoreFilter> rebuilding = building;
+        if ( rebuilding != null )
+        {
+            rebuilding.clear();
+        }
+    }
+
+    /**
+     * Start building fresh filters. Paths added from now on go to both the current and the fresh filters, and the
+     * backing store's entries are to be passed to {@link #rebuildAdd(String, String)}.
+     */
+    public void beginRebuild()
+    {
+        building = new ConcurrentHashMap<>();
+    }
+
+    public void rebuildAdd( final String store, final String path )
+    {
+        building.computeIfAbsent( store, k -> new StoreFilter() ).add( hash( path ) );
+    }
+
+    public void completeRebuild()
+    {
+        building.values().forEach( filter -> filter.refreshedCount = filter.count() );
+        filters = building;
+        building = null;
+        ready = true;
+    }
+
+    public void abortRebuild()
+    {
+        building = null;
+    }
+
+    /**
+     * Start building a fresh filter for one store. Paths added to the store from now on go to both its current and
+     * its fresh filter, and the backing store's entries of the store are to be passed to
+     * {@link #refreshAdd(String, String)}. Refreshes must not overlap a {@link #beginRebuild() rebuild}.
+     */
+    public void beginRefresh( final String store )
+    {
+        refreshing.put( store, new StoreFilter() );
+    }
+
+    public void refreshAdd( final String store, final String path )
+    {
+        final StoreFilter refreshed = refreshing.get( store );
+        if ( refreshed != null )
+        {
+            refreshed.add( hash( path ) );
+        }
+    }
+
+    public void completeRefresh( final String store )
+    {
+        final StoreFilter refreshed = refreshing.get( store );
+        if ( refreshed != null )
+        {
+            refreshed.refreshedCount = refreshed.count();
+            // swap in before it stops receiving added paths, so none is missed in between
+            filters.put( store, refreshed );
+            refreshing.remove( store, refreshed );
+        }
+    }
+
+    public void abortRefresh( final String store )
+    {
+        refreshing.remove( store );
+    }
+
+    /**
+     * @return the stores whose filters answered more false positives than the configured probability accounts for, or
+     * have grown to twice their size at the last rebuild or refresh
+     */
+    public List<String> getStaleStores()
+    {
+        final List<String> stale = new ArrayList<>();
+        filters.forEach( ( store, filter ) -> {
+            if ( filter.isStale() )
+            {
+                stale.add( store );
+            }
+        } );
+        return stale;
+    }
+
+    public void recordSkipped()
+    {
+        skipped.increment();
+    }
+
+    /**
+     * Record the backing store's answer for a path this filter might contain.
+     */
+    public void recordChecked( final String store, final boolean contained )
+    {
+        ( contained ? truePositives : falsePositives ).increment();
+
+        final StoreFilter filter = filters.get( store );
+        if ( filter != null )
+        {
+            ( contained ? filter.truePositives : filter.falsePositives ).increment();
+        }
+    }
+
+    /**
+     * @return number of backing store queries that were skipped
+     */
+    public long getSkippedCount()
+    {
+        return skipped.sum();
+    }
+
+    /**
+     * @return share of the paths this filter might contain which the backing store didn't have, including entries
+     * that were removed or expired since the last rebuild
+     */
+    public double getObservedFalsePositiveRate()
+    {
+        final long fp = falsePositives.sum();
+        final long total = fp + truePositives.sum();
+        return total == 0 ? 0 : (double) fp / total;
+    }
+
+    /**
+     * @return the highest false positive probability of any store filter, estimated from the number of paths added
+     */
+    public double getEstimatedFalsePositiveRate()
+    {
+        double max = 0;
+        for ( StoreFilter filter : filters.values() )
+        {
+            max = Math.max( max, filter.estimatedFalsePositiveRate() );
+        }
+        return max;
+    }
+
+    public long getMemoryBytes()
+    {
+        long bytes = 0;
+        for ( StoreFilter filter : filters.values() )
+        {
+            bytes += filter.memoryBytes();
+        }
+        return bytes;
+    }
+
+    public int getStoreCount()
+    {
+        return filters.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NfcBloomFilter{ready=" + ready + ", stores=" + filters.size() + ", memoryBytes=" + getMemoryBytes()
+                + ", skipped=" + skipped.sum() + ", observedFalsePositiveRate=" + getObservedFalsePositiveRate()
+                + '}';
+    }
+
+    // FNV-1a over the chars, finished with the murmur3 64-bit mixer
+    static long hash( final String path )
+    {
+        long h = 0xcbf29ce484222325L;
+        for ( int i = 0; i < path.length(); i++ )
+        {
+            h ^= path.charAt( i );
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private final class StoreFilter
+    {
+        private volatile Segment[] segments = { new Segment( initialCapacity, falsePositiveProbability ) };
+
+        private final LongAdder truePositives = new LongAdder();
+
+        private final LongAdder falsePositives = new LongAdder();
+
+        private volatile long refreshedCount;
+
+        boolean mightContain( final long hash )
+        {
+            for ( Segment segment : segments )
+            {
+                if ( segment.mightContain( hash ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add( final long hash )
+        {
+            Segment[] current = segments;
+            Segment last = current[current.length - 1];
+            if ( last.count.get() >= last.capacity )
+            {
+                synchronized ( this )
+                {
+                    current = segments;
+                    last = current[current.length - 1];
+                    if ( last.count.get() >= last.capacity )
+                    {
+                        final Segment[] grown = new Segment[current.length + 1];
+                        System.arraycopy( current, 0, grown, 0, current.length );
+                        last = new Segment( last.capacity * 2, last.falsePositiveProbability / 2 );
+                        grown[current.length] = last;
+                        segments = grown;
+                    }
+                }
+            }
+
+            last.add( hash );
+        }
+
+        long count()
+        {
+            long count = 0;
+            for ( Segment segment : segments )
+            {
+                count += segment.count.get();
+            }
+            return count;
+        }
+
+        boolean isStale()
+        {
+            // twice the configured probability is what a grown filter is bounded by
+            final long fp = falsePositives.sum();
+            if ( fp >= MIN_STALE_FALSE_POSITIVES && fp > 2 * falsePositiveProbability * ( fp + truePositives.sum() ) )
+            {
+                return true;
+            }
+            return count() > 2 * Math.max( refreshedCount, initialCapacity );
+        }
+
+        double estimatedFalsePositiveRate()
+        {
+            double none = 1;
+            for ( Segment segment : segments )
+            {
+                none *= 1 - segment.estimatedFalsePositiveRate();
+            }
+            return 1 - none;
+        }
+
+        long memoryBytes()
+        {
+            long bytes = 0;
+            for ( Segment segment : segments )
+            {
+                bytes += segment.words.length() * 8L;
+            }
+            return bytes;
+        }
+    }
+
+    private static final class Segment
+    {
+        private final int capacity;
+
+        private final double falsePositiveProbability;
+
+        private final long bits;
+
+        private final int hashes;
+
+        private final AtomicLongArray words;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Segment( final int capacity, final double falsePositiveProbability )
+        {
+            this.capacity = capacity;
+            this.falsePositiveProbability = falsePositiveProbability;
+
+            final double ln2 = Math.log( 2 );
+            final long optimalBits =
+                    (long) Math.ceil( -capacity * Math.log( falsePositiveProbability ) / ( ln2 * ln2 ) );
+            this.words = new AtomicLongArray( (int) Math.max( 1, ( optimalBits + 63 ) / 64 ) );
+            this.bits = words.length() * 64L;
+            this.hashes = Math.max( 1, (int) Math.round( (double) bits / capacity * ln2 ) );
+        }
+
+        boolean mightContain( final long hash )
+        {
+            final int h1 = (int) hash;
+            final int h2 = (int) ( hash >>> 32 );
+            for ( int i = 1; i <= hashes; i++ )
+            {
+                final long bit = ( ( h1 + (long) i * h2 ) & Long.MAX_VALUE ) % bits;
+                if ( ( words.get( (int) ( bit >>> 6 ) ) & ( 1L << bit ) ) == 0 )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add( final long hash )
+        {
+            final int h1 = (int) hash;
+            final int h2 = (int) ( hash >>> 32 );
+            for ( int i = 1; i <= hashes; i++ )
+            {
+                final long bit = ( ( h1 + (long) i * h2 ) & Long.MAX_VALUE ) % bits;
+                final int index = (int) ( bit >>> 6 );
+                final long mask = 1L << bit;
+                long word;
+                while ( ( ( word = words.get( index ) ) & mask ) == 0 )
+                {
+                    if ( words.compareAndSet( index, word, word | mask ) )
+                    {
+                        break;
+                    }
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        double estimatedFalsePositiveRate()
+        {
+            return Math.pow( 1 - Math.exp( -hashes * (double) count.get() / bits ), hashes );
+        }
+    }
+}
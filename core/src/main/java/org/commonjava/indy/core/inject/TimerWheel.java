@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timer wheel: {@link #LEVELS} wheels of {@link #SLOTS} slots each, the first one advancing every tick
+ * and each next one every {@link #SLOTS} turns of the one before. A node is placed on the lowest wheel its expiration
+ * fits in, and moved down a wheel each time its slot comes up, so expiring nodes costs time proportional to the nodes
+ * that expire, instead of to all nodes. Nodes expiring beyond the last wheel go around it until they come in range.
+ * <p>
+ * Not thread-safe; callers synchronize.
+ */
+final class TimerWheel
+{
+    static final int LEVELS = 4;
+
+    static final int SLOT_BITS = 6;
+
+    static final int SLOTS = 1 << SLOT_BITS;
+
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * Something that expires at a point in time. A node is on at most one wheel at a time.
+     */
+    static class Node
+    {
+        long expiresAt;
+
+        private Node prev;
+
+        private Node next;
+
+        boolean isScheduled()
+        {
+            return next != null;
+        }
+    }
+
+    private final long tickMillis;
+
+    private final Node[][] slots = new Node[LEVELS][SLOTS];
+
+    private long currentTick;
+
+    private int size;
+
+    TimerWheel( final long tickMillis, final long nowMillis )
+    {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        for ( Node[] level : slots )
+        {
+            for ( int i = 0; i < SLOTS; i++ )
+            {
+                final Node sentinel = new Node();
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                level[i] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Put the node on the wheel according to its {@link Node#expiresAt}, taking it off its current slot if needed.
+     */
+    void schedule( final Node node )
+    {
+        if ( node.isScheduled() )
+        {
+            unlink( node );
+        }
+        else
+        {
+            size++;
+        }
+
+        // round up, so a node is never found expired before its time just because of the tick granularity
+        final long expireTick = Math.max( currentTick + 1, ( node.expiresAt + tickMillis - 1 ) / tickMillis );
+        final long delta = expireTick - currentTick;
+
+        int level = 0;
+        while ( level < LEVELS - 1 && delta >= 1L << ( SLOT_BITS * ( level + 1 ) ) )
+        {
+            level++;
+        }
+
+        final Node sentinel = slots[level][(int) ( ( expireTick >>> ( SLOT_BITS * level ) ) & SLOT_MASK )];
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+    }
+
+    void unschedule( final Node node )
+    {
+        if ( node.isScheduled() )
+        {
+            unlink( node );
+            size--;
+        }
+    }
+
+    /**
+     * Advance the wheel up to the given time, handing the nodes expired by then to the given consumer. They are off
+     * the wheel by the time the consumer gets them.
+     */
+    void advance( final long nowMillis, final Consumer<Node> expired )
+    {
+        final long targetTick = nowMillis / tickMillis;
+        while ( currentTick < targetTick )
+        {
+            currentTick++;
+
+            // move nodes down from the higher wheels whose slot comes up with this tick, highest first
+            for ( int level = LEVELS - 1; level > 0; level-- )
+            {
+                if ( ( currentTick & ( ( 1L << ( SLOT_BITS * level ) ) - 1 ) ) == 0 )
+                {
+                    drain( slots[level][(int) ( ( currentTick >>> ( SLOT_BITS * level ) ) & SLOT_MASK )],
+                           nowMillis, expired );
+                }
+            }
+
+            drain( slots[0][(int) ( currentTick & SLOT_MASK )], nowMillis, expired );
+        }
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    void clear()
+    {
+        for ( Node[] level : slots )
+        {
+            for ( Node sentinel : level )
+            {
+                Node node = sentinel.next;
+                while ( node != sentinel )
+                {
+                    final Node next = node.next;
+                    node.prev = null;
+                    node.next = null;
+                    node = next;
+                }
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+        size = 0;
+    }
+
+    private void drain( final Node sentinel, final long nowMillis, final Consumer<Node> expired )
+    {
+        Node node = sentinel.next;
+        sentinel.prev = sentinel;
+        sentinel.next = sentinel;
+        while ( node != sentinel )
+        {
+            final Node next = node.next;
+            node.prev = null;
+            node.next = null;
+            if ( node.expiresAt <= nowMillis )
+            {
+                size--;
+                expired.accept( node );
+            }
+            else
+            {
+                size--;
+                schedule( node );
+            }
+            node = next;
+        }
+    }
+
+    private static void unlink( final Node node )
+    {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.change;
+
+import org.commonjava.indy.change.event.ArtifactStoreEnablementEvent;
+import org.commonjava.indy.core.content.GroupPathResolutionCache;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GroupPathResolutionListenerTest
+{
+    private static final String PATH = "org/foo/bar/1/bar-1.jar";
+
+    @Test
+    public void storeChangeOnEmptyCacheStopsOverlappingResolutionFromBeingCached()
+    {
+        final GroupPathResolutionCache cache = new GroupPathResolutionCache( 100, 1, TimeUnit.HOURS, true );
+        final GroupPathResolutionListener listener =
+                new GroupPathResolutionListener( cache, new MemoryStoreDataManager( true ) );
+
+        final RemoteRepository central = new RemoteRepository( PKG_TYPE_MAVEN, "central", "http://foo.bar/" );
+        final Group group = new Group( PKG_TYPE_MAVEN, "public", central.getKey() );
+
+        final long generation = cache.getGeneration();
+        listener.onStoreEnablement( new ArtifactStoreEnablementEvent( false, new EventMetadata(), true, central ) );
+        cache.put( group.getKey(), PATH, central.getKey(), generation );
+
+        assertThat( cache.get( group.getKey(), PATH ), nullValue() );
+    }
+}
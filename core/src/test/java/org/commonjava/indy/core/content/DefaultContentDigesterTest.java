@@ -0,0 +1,372 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.content.DirectContentAccess;
+import org.commonjava.indy.content.IndyPathGenerator;
+import org.commonjava.indy.content.StoreResource;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.AbstractTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.indy.core.content.ContentMetadataGenerator.FORCE_CHECKSUM_AND_WRITE;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DefaultContentDigesterTest
+{
+    private static final String PATH = "org/foo/bar/1.0/bar-1.0.jar";
+
+    private static DefaultCacheManager cacheManager;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private final AtomicInteger forcedReads = new AtomicInteger();
+
+    private final AtomicBoolean firstRead = new AtomicBoolean();
+
+    private final CountDownLatch firstReadStarted = new CountDownLatch( 1 );
+
+    private final CountDownLatch releaseFirstRead = new CountDownLatch( 1 );
+
+    private HostedRepository hosted;
+
+    private Transfer transfer;
+
+    private DefaultContentDigester digester;
+
+    @BeforeClass
+    public static void setupClass()
+    {
+        cacheManager = new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() );
+    }
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        Cache<String, TransferMetadata> contentMetadata = cacheManager.getCache( "content-metadata", true );
+        contentMetadata.clear();
+
+        FileCacheProvider cacheProvider =
+                new FileCacheProvider( temp.newFolder( "cache" ), new IndyPathGenerator( Collections.emptySet() ),
+                                       new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new DigestingDecorator() ), false );
+
+        hosted = new HostedRepository( MAVEN_PKG_KEY, "test" );
+        transfer = cacheProvider.getTransfer( new ConcreteResource( LocationUtils.toLocation( hosted ), PATH ) );
+        try (OutputStream out = transfer.openOutputStream( TransferOperation.UPLOAD, false ))
+        {
+            out.write( "This is a jar".getBytes() );
+        }
+
+        digester = new DefaultContentDigester( new SingleTransferAccess(),
+                                               new CacheHandle<>( "content-metadata", contentMetadata ) );
+    }
+
+    @After
+    public void release()
+    {
+        releaseFirstRead.countDown();
+    }
+
+    @Test
+    public void concurrentDigestsReadTransferOnce()
+            throws Exception
+    {
+        DigestCall first = new DigestCall( false );
+        first.start();
+        assertThat( firstReadStarted.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+
+        DigestCall second = new DigestCall( false );
+        second.start();
+        awaitWaiting( second );
+
+        releaseFirstRead.countDown();
+        first.join( 10000 );
+        second.join( 10000 );
+
+        assertThat( reads.get(), equalTo( 1 ) );
+        assertThat( second.result, sameInstance( first.result ) );
+        assertThat( first.result.getDigests().get( ContentDigest.MD5 ), equalTo( "md5-1" ) );
+    }
+
+    @Test
+    public void forcedDigestDoesNotJoinUnforcedCalculation()
+            throws Exception
+    {
+        DigestCall unforced = new DigestCall( false );
+        unforced.start();
+        assertThat( firstReadStarted.await( 10, TimeUnit.SECONDS ), equalTo( true ) );
+
+        DigestCall forced = new DigestCall( true );
+        forced.start();
+        awaitWaiting( forced );
+
+        releaseFirstRead.countDown();
+        unforced.join( 10000 );
+        forced.join( 10000 );
+
+        // the forced digest read the content again, with the force flag passed on, instead of joining
+        assertThat( reads.get(), equalTo( 2 ) );
+        assertThat( forcedReads.get(), equalTo( 1 ) );
+        assertThat( forced.result.getDigests().get( ContentDigest.MD5 ), equalTo( "md5-2" ) );
+    }
+
+    @Test
+    public void cachedMetadataIsNotRecalculated()
+            throws Exception
+    {
+        TransferMetadata first = digest();
+        TransferMetadata second = digest();
+
+        assertThat( reads.get(), equalTo( 1 ) );
+        assertThat( second.getDigests(), equalTo( first.getDigests() ) );
+    }
+
+    private TransferMetadata digest()
+            throws IndyWorkflowException
+    {
+        // nothing to wait for
+        firstRead.set( true );
+        return digester.digest( hosted.getKey(), PATH, new EventMetadata() );
+    }
+
+    private static void awaitWaiting( final Thread thread )
+            throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        while ( !isWaiting( thread ) && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertThat( thread.getState().toString(), isWaiting( thread ), equalTo( true ) );
+    }
+
+    private static boolean isWaiting( final Thread thread )
+    {
+        Thread.State state = thread.getState();
+        return state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING;
+    }
+
+    private final class DigestCall
+            extends Thread
+    {
+        private final boolean forced;
+
+        private volatile TransferMetadata result;
+
+        private DigestCall( final boolean forced )
+        {
+            this.forced = forced;
+        }
+
+        @Override
+        public void run()
+        {
+            EventMetadata eventMetadata = new EventMetadata();
+            if ( forced )
+            {
+                eventMetadata.set( FORCE_CHECKSUM_AND_WRITE, Boolean.TRUE );
+            }
+
+            try
+            {
+                result = digester.digest( hosted.getKey(), PATH, eventMetadata );
+            }
+            catch ( IndyWorkflowException e )
+            {
+                throw new IllegalStateException( e );
+            }
+        }
+    }
+
+    /**
+     * Stands in for ChecksummingTransferDecorator: records the metadata once the content has been read. The first
+     * read waits until the test releases it.
+     */
+    private final class DigestingDecorator
+            extends AbstractTransferDecorator
+    {
+        @Override
+        public InputStream decorateRead( final InputStream stream, final Transfer transfer,
+                                         final EventMetadata eventMetadata )
+                throws IOException
+        {
+            final int read = reads.incrementAndGet();
+            if ( Boolean.parseBoolean( String.valueOf( eventMetadata.get( FORCE_CHECKSUM_AND_WRITE ) ) ) )
+            {
+                forcedReads.incrementAndGet();
+            }
+
+            final boolean waitForRelease = firstRead.compareAndSet( false, true );
+            return new FilterInputStream( stream )
+            {
+                private boolean started;
+
+                @Override
+                public int read()
+                        throws IOException
+                {
+                    start();
+                    return super.read();
+                }
+
+                @Override
+                public int read( final byte[] b, final int off, final int len )
+                        throws IOException
+                {
+                    start();
+                    return super.read( b, off, len );
+                }
+
+                @Override
+                public void close()
+                        throws IOException
+                {
+                    super.close();
+                    digester.addMetadata( transfer,
+                                          new TransferMetadata( Collections.singletonMap( ContentDigest.MD5,
+                                                                                          "md5-" + read ),
+                                                                transfer.length() ) );
+                }
+
+                private void start()
+                        throws IOException
+                {
+                    if ( started || !waitForRelease )
+                    {
+                        return;
+                    }
+
+                    started = true;
+                    firstReadStarted.countDown();
+                    try
+                    {
+                        releaseFirstRead.await( 10, TimeUnit.SECONDS );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new IOException( e );
+                    }
+                }
+            };
+        }
+    }
+
+    private final class SingleTransferAccess
+            implements DirectContentAccess
+    {
+        @Override
+        public Transfer getTransfer( final StoreKey storeKey, final String path )
+        {
+            return transfer;
+        }
+
+        @Override
+        public Transfer getTransfer( final ArtifactStore store, final String path )
+        {
+            return transfer;
+        }
+
+        @Override
+        public Transfer retrieveRaw( final ArtifactStore store, final String path, final EventMetadata eventMetadata )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Transfer> retrieveAllRaw( final List<? extends ArtifactStore> stores, final String path,
+                                              final EventMetadata eventMetadata )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean exists( final ArtifactStore store, final String path )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<StoreResource> listRaw( final ArtifactStore store, final String parentPath )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<StoreResource> listRaw( final ArtifactStore store, final String parentPath,
+                                            final EventMetadata eventMetadata )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, List<StoreResource>> listRaw( final ArtifactStore store,
+                                                         final List<String> parentPathList )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, List<StoreResource>> listRaw( final ArtifactStore store,
+                                                         final List<String> parentPathList,
+                                                         final EventMetadata eventMetadata )
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
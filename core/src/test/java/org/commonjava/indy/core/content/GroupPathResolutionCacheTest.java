@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.model.core.StoreType.group;
+import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.commonjava.indy.model.core.StoreType.remote;
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GroupPathResolutionCacheTest
+{
+    private static final String PATH = "org/foo/bar/1/bar-1.jar";
+
+    private final StoreKey publicGroup = new StoreKey( PKG_TYPE_MAVEN, group, "public" );
+
+    private final StoreKey otherGroup = new StoreKey( PKG_TYPE_MAVEN, group, "other" );
+
+    private final StoreKey central = new StoreKey( PKG_TYPE_MAVEN, remote, "central" );
+
+    private final StoreKey local = new StoreKey( PKG_TYPE_MAVEN, hosted, "local" );
+
+    private final GroupPathResolutionCache cache = new GroupPathResolutionCache( 100, 1, TimeUnit.HOURS, true );
+
+    @Test
+    public void resolutionIsRemembered()
+    {
+        assertThat( cache.get( publicGroup, PATH ), nullValue() );
+        cache.put( publicGroup, PATH, central, cache.getGeneration() );
+
+        assertThat( cache.get( publicGroup, PATH ), equalTo( central ) );
+        assertThat( cache.get( publicGroup, "/" + PATH ), equalTo( central ) );
+        assertThat( cache.get( otherGroup, PATH ), nullValue() );
+        assertThat( cache.getHitCount(), equalTo( 2L ) );
+        assertThat( cache.getMissCount(), equalTo( 2L ) );
+        assertThat( cache.getHitRate(), equalTo( 0.5 ) );
+    }
+
+    @Test
+    public void resolutionOverlappingStoreChangeIsNotCached()
+    {
+        final long generation = cache.getGeneration();
+        cache.invalidateStores( Collections.singleton( local ) );
+        cache.put( publicGroup, PATH, central, generation );
+
+        assertThat( cache.get( publicGroup, PATH ), nullValue() );
+    }
+
+    @Test
+    public void storeChangesDropGroupAndMemberResolutions()
+    {
+        cache.put( publicGroup, PATH, central, cache.getGeneration() );
+        cache.put( publicGroup, "org/foo/baz/1/baz-1.jar", local, cache.getGeneration() );
+        cache.put( otherGroup, PATH, central, cache.getGeneration() );
+
+        cache.invalidateStores( Collections.singleton( central ) );
+        assertThat( cache.get( publicGroup, PATH ), nullValue() );
+        assertThat( cache.get( otherGroup, PATH ), nullValue() );
+        assertThat( cache.get( publicGroup, "org/foo/baz/1/baz-1.jar" ), equalTo( local ) );
+
+        cache.invalidateStores( Collections.singleton( publicGroup ) );
+        assertThat( cache.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void pathChangesDropResolutionsInAllGroups()
+    {
+        cache.put( publicGroup, PATH, central, cache.getGeneration() );
+        cache.put( otherGroup, PATH, local, cache.getGeneration() );
+        cache.put( otherGroup, "org/foo/baz/1/baz-1.jar", local, cache.getGeneration() );
+
+        cache.invalidatePath( "/" + PATH );
+        assertThat( cache.get( publicGroup, PATH ), nullValue() );
+        assertThat( cache.get( otherGroup, PATH ), nullValue() );
+        assertThat( cache.size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void leastRecentlyUsedResolutionIsEvicted()
+    {
+        final GroupPathResolutionCache small = new GroupPathResolutionCache( 2, 1, TimeUnit.HOURS, true );
+        small.put( publicGroup, "a.jar", central, small.getGeneration() );
+        small.put( publicGroup, "b.jar", central, small.getGeneration() );
+        small.get( publicGroup, "a.jar" );
+        small.put( publicGroup, "c.jar", central, small.getGeneration() );
+
+        assertThat( small.size(), equalTo( 2 ) );
+        assertThat( small.get( publicGroup, "b.jar" ), nullValue() );
+        assertThat( small.get( publicGroup, "a.jar" ), equalTo( central ) );
+
+        small.invalidateStores( Collections.singleton( central ) );
+        assertThat( small.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void evictionKeepsSizeBoundedAndRecentlyUsedResolutions()
+    {
+        final GroupPathResolutionCache bounded = new GroupPathResolutionCache( 100, 1, TimeUnit.HOURS, true );
+        bounded.put( publicGroup, PATH, local, bounded.getGeneration() );
+        for ( int i = 0; i < 1000; i++ )
+        {
+            bounded.get( publicGroup, PATH );
+            bounded.put( publicGroup, "org/foo/baz/" + i + "/baz-" + i + ".jar", central, bounded.getGeneration() );
+            assertThat( bounded.size() <= 100, equalTo( true ) );
+        }
+
+        assertThat( bounded.get( publicGroup, PATH ), equalTo( local ) );
+        assertThat( bounded.get( publicGroup, "org/foo/baz/999/baz-999.jar" ), equalTo( central ) );
+        assertThat( bounded.get( publicGroup, "org/foo/baz/0/baz-0.jar" ), nullValue() );
+    }
+
+    @Test
+    public void expiredResolutionIsNotReturned()
+    {
+        final GroupPathResolutionCache expiring = new GroupPathResolutionCache( 100, 0, TimeUnit.SECONDS, true );
+        expiring.put( publicGroup, PATH, central, expiring.getGeneration() );
+
+        assertThat( expiring.get( publicGroup, PATH ), nullValue() );
+        assertThat( expiring.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void releaseOnlyLeavesOutSnapshotsAndMetadata()
+    {
+        assertThat( cache.isCacheable( PKG_TYPE_MAVEN, PATH ), equalTo( true ) );
+        assertThat( cache.isCacheable( PKG_TYPE_MAVEN, "org/foo/bar/1.0-SNAPSHOT/bar-1.0-SNAPSHOT.jar" ),
+                    equalTo( false ) );
+        assertThat( cache.isCacheable( PKG_TYPE_MAVEN, "org/foo/bar/maven-metadata.xml" ), equalTo( false ) );
+        assertThat( cache.isCacheable( PKG_TYPE_MAVEN, "org/foo/bar/maven-metadata.xml.sha1" ), equalTo( false ) );
+        assertThat( cache.isCacheable( PKG_TYPE_NPM, "jquery" ), equalTo( false ) );
+        assertThat( cache.isCacheable( PKG_TYPE_NPM, "jquery/-/jquery-1.5.1.tgz" ), equalTo( true ) );
+
+        final GroupPathResolutionCache all = new GroupPathResolutionCache( 100, 1, TimeUnit.HOURS, false );
+        assertThat( all.isCacheable( PKG_TYPE_MAVEN, "org/foo/bar/maven-metadata.xml" ), equalTo( true ) );
+    }
+}
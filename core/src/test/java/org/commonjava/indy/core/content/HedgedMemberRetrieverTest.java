@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.content.DownloadManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class HedgedMemberRetrieverTest
+{
+    private static final String PATH = "org/foo/bar/1/bar-1.pom";
+
+    private final Group group = new Group( "public" );
+
+    private final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+
+    private final Map<StoreKey, Transfer> contents = new HashMap<>();
+
+    private final Map<StoreKey, CountDownLatch> probeGates = new HashMap<>();
+
+    private final Set<StoreKey> probed = ConcurrentHashMap.newKeySet();
+
+    private final List<StoreKey> retrieved = Collections.synchronizedList( new ArrayList<>() );
+
+    private final GroupProbeMetrics metrics = new GroupProbeMetrics();
+
+    private ExecutorService executor;
+
+    private HedgedMemberRetriever retriever;
+
+    @Before
+    public void setup()
+    {
+        config.setGroupProbeEnabled( true );
+        config.setGroupProbeSequentialMembers( 1 );
+        config.setGroupProbeFanout( 4 );
+        executor = Executors.newCachedThreadPool();
+        retriever = new HedgedMemberRetriever( config, downloadManager(), executor, metrics );
+    }
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void firstMemberInGroupOrderWins()
+            throws Exception
+    {
+        final HostedRepository first = new HostedRepository( "first" );
+        final RemoteRepository slow = new RemoteRepository( "slow", "http://slow.example.com/" );
+        final RemoteRepository fast = new RemoteRepository( "fast", "http://fast.example.com/" );
+        final Transfer slowContent = content( slow );
+        content( fast );
+
+        final CountDownLatch slowGate = new CountDownLatch( 1 );
+        probeGates.put( slow.getKey(), slowGate );
+
+        executor.submit( () -> {
+            // let the fast member's probe finish before the slow one does
+            while ( !probed.contains( fast.getKey() ) )
+            {
+                Thread.sleep( 5 );
+            }
+            slowGate.countDown();
+            return null;
+        } );
+
+        final Transfer item = retrieve( first, slow, fast );
+
+        assertThat( item, sameInstance( slowContent ) );
+        assertThat( retrieved, equalTo( Arrays.asList( first.getKey(), slow.getKey() ) ) );
+    }
+
+    @Test
+    public void membersProbedMissingAreSkipped()
+            throws Exception
+    {
+        final HostedRepository first = new HostedRepository( "first" );
+        final RemoteRepository missing1 = new RemoteRepository( "missing1", "http://m1.example.com/" );
+        final RemoteRepository missing2 = new RemoteRepository( "missing2", "http://m2.example.com/" );
+        final RemoteRepository holder = new RemoteRepository( "holder", "http://holder.example.com/" );
+        final Transfer content = content( holder );
+
+        // the probes of the remotes run while the first member is retrieved
+        final Transfer item = retriever.retrieve( group, Arrays.asList( first, missing1, missing2, holder ), PATH,
+                                                  member -> {
+                                                      if ( member == first )
+                                                      {
+                                                          awaitProbes( 3 );
+                                                      }
+                                                      retrieved.add( member.getKey() );
+                                                      return contents.get( member.getKey() );
+                                                  } );
+
+        assertThat( item, sameInstance( content ) );
+        assertThat( retrieved, equalTo( Arrays.asList( first.getKey(), holder.getKey() ) ) );
+        assertThat( metrics.getProbeCount(), equalTo( 3L ) );
+        assertThat( metrics.getMissingCount(), equalTo( 2L ) );
+        assertThat( metrics.getSkippedRetrievalCount(), equalTo( 2L ) );
+    }
+
+    @Test
+    public void unfinishedProbeIsCancelledAndMemberRetrieved()
+            throws Exception
+    {
+        final HostedRepository first = new HostedRepository( "first" );
+        final RemoteRepository slow = new RemoteRepository( "slow", "http://slow.example.com/" );
+        final RemoteRepository holder = new RemoteRepository( "holder", "http://holder.example.com/" );
+        final Transfer content = content( holder );
+
+        // slow's probe would report a miss, but not before the test ends
+        final CountDownLatch slowGate = new CountDownLatch( 1 );
+        probeGates.put( slow.getKey(), slowGate );
+
+        final long start = System.nanoTime();
+        final Transfer item = retrieve( first, slow, holder );
+        slowGate.countDown();
+
+        assertThat( item, sameInstance( content ) );
+        assertThat( retrieved, equalTo( Arrays.asList( first.getKey(), slow.getKey(), holder.getKey() ) ) );
+        assertThat( TimeUnit.NANOSECONDS.toSeconds( System.nanoTime() - start ) < 5, equalTo( true ) );
+        assertThat( metrics.getSkippedRetrievalCount(), equalTo( 0L ) );
+        assertThat( metrics.getCancelledCount() >= 1, equalTo( true ) );
+    }
+
+    @Test
+    public void fanoutBoundsOutstandingProbes()
+            throws Exception
+    {
+        config.setGroupProbeSequentialMembers( 0 );
+        config.setGroupProbeFanout( 2 );
+
+        final RemoteRepository[] remotes = new RemoteRepository[6];
+        for ( int i = 0; i < remotes.length; i++ )
+        {
+            remotes[i] = new RemoteRepository( "remote" + i, "http://r" + i + ".example.com/" );
+        }
+        final CountDownLatch gate = new CountDownLatch( 1 );
+        probeGates.put( remotes[1].getKey(), gate );
+
+        final AtomicInteger probedWhileBlocked = new AtomicInteger();
+        final Transfer item = retriever.retrieve( group, Arrays.asList( remotes ), PATH, member -> {
+            if ( member == remotes[0] )
+            {
+                try
+                {
+                    Thread.sleep( 200 );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                probedWhileBlocked.set( probed.size() );
+                gate.countDown();
+            }
+            retrieved.add( member.getKey() );
+            return null;
+        } );
+
+        assertThat( item, nullValue() );
+        // only the probes of remote1 and remote2 may start while remote0 is retrieved; remote0 itself isn't probed
+        assertThat( probedWhileBlocked.get(), equalTo( 2 ) );
+        assertThat( probed.contains( remotes[0].getKey() ), equalTo( false ) );
+        assertThat( retrieved.get( 0 ), equalTo( remotes[0].getKey() ) );
+    }
+
+    @Test
+    public void onlyConfiguredGroupsAreProbed()
+    {
+        config.setGroupProbeGroupsPattern( "^build-.+" );
+        assertThat( retriever.isEnabledFor( group ), equalTo( false ) );
+        assertThat( retriever.isEnabledFor( new Group( "build-1" ) ), equalTo( true ) );
+
+        config.setGroupProbeGroupsPattern( null );
+        assertThat( retriever.isEnabledFor( group ), equalTo( true ) );
+
+        config.setGroupProbeEnabled( false );
+        assertThat( retriever.isEnabledFor( group ), equalTo( false ) );
+    }
+
+    private Transfer retrieve( final ArtifactStore... members )
+            throws Exception
+    {
+        return retriever.retrieve( group, Arrays.asList( members ), PATH, member -> {
+            retrieved.add( member.getKey() );
+            return contents.get( member.getKey() );
+        } );
+    }
+
+    private void awaitProbes( final int count )
+    {
+        final long deadline = System.currentTimeMillis() + 10000;
+        try
+        {
+            while ( metrics.getProbeCount() < count && System.currentTimeMillis() < deadline )
+            {
+                Thread.sleep( 5 );
+            }
+            // probes are recorded just before their futures complete
+            Thread.sleep( 50 );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Transfer content( final ArtifactStore store )
+    {
+        final Transfer transfer =
+                new Transfer( new ConcreteResource( new SimpleLocation( store.getKey().toString() ), PATH ), null,
+                              null, null );
+        contents.put( store.getKey(), transfer );
+        return transfer;
+    }
+
+    private DownloadManager downloadManager()
+    {
+        return (DownloadManager) Proxy.newProxyInstance( getClass().getClassLoader(),
+                                                         new Class<?>[] { DownloadManager.class },
+                                                         ( proxy, method, args ) -> {
+            if ( !"exists".equals( method.getName() ) )
+            {
+                throw new UnsupportedOperationException( method.getName() );
+            }
+
+            final StoreKey key = ( (ArtifactStore) args[0] ).getKey();
+            final CountDownLatch gate = probeGates.get( key );
+            probed.add( key );
+            if ( gate != null )
+            {
+                gate.await( 10, TimeUnit.SECONDS );
+            }
+            return contents.containsKey( key );
+        } );
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.StoreKey;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.commonjava.indy.model.core.StoreType.group;
+import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MergedPathIndexTest
+{
+    private static final StoreKey PUBLIC = new StoreKey( "maven", group, "public" );
+
+    private static final StoreKey BUILDS = new StoreKey( "maven", hosted, "builds" );
+
+    private static final String METADATA = "org/foo/bar/maven-metadata.xml";
+
+    private final MergedPathIndex index = new MergedPathIndex( true );
+
+    @Test
+    public void pathsAreNotTrustedUntilSeeded()
+    {
+        index.add( PUBLIC, METADATA );
+
+        assertThat( index.isSeeded( PUBLIC ), equalTo( false ) );
+        assertThat( index.getPaths( PUBLIC ), nullValue() );
+
+        index.seed( PUBLIC, Collections.singleton( "org/foo/baz/maven-metadata.xml" ) );
+
+        assertThat( index.getPaths( PUBLIC ),
+                    equalTo( new HashSet<>( Arrays.asList( METADATA, "org/foo/baz/maven-metadata.xml" ) ) ) );
+    }
+
+    @Test
+    public void storageEventsKeepSeededPathsUpToDate()
+    {
+        index.seed( BUILDS, Collections.emptySet() );
+        index.add( BUILDS, METADATA );
+        index.add( BUILDS, "org/foo/bar/1.0/maven-metadata.xml" );
+        index.remove( BUILDS, "org/foo/bar/1.0/maven-metadata.xml" );
+
+        assertThat( index.getPaths( BUILDS ), equalTo( Collections.singleton( METADATA ) ) );
+        assertThat( index.getPaths( PUBLIC ), nullValue() );
+    }
+
+    @Test
+    public void clearedStoresMustBeSeededAgain()
+    {
+        index.seed( BUILDS, Collections.singleton( METADATA ) );
+        index.clear( BUILDS );
+
+        assertThat( index.isSeeded( BUILDS ), equalTo( false ) );
+        assertThat( index.size( BUILDS ), equalTo( 0 ) );
+    }
+
+    @Test
+    public void storesOverTheMaximumAreNotIndexed()
+    {
+        final MergedPathIndex bounded = new MergedPathIndex( true, 2 );
+        bounded.seed( BUILDS, Collections.singleton( METADATA ) );
+        bounded.add( BUILDS, "org/foo/baz/maven-metadata.xml" );
+        assertThat( bounded.getPaths( BUILDS ).size(), equalTo( 2 ) );
+
+        bounded.add( BUILDS, "org/foo/qux/maven-metadata.xml" );
+        assertThat( bounded.getPaths( BUILDS ), nullValue() );
+        assertThat( bounded.size( BUILDS ), equalTo( 0 ) );
+
+        bounded.seed( BUILDS, Collections.singleton( METADATA ) );
+        bounded.add( BUILDS, METADATA );
+        assertThat( bounded.isSeeded( BUILDS ), equalTo( false ) );
+        assertThat( bounded.size( BUILDS ), equalTo( 0 ) );
+
+        bounded.seed( PUBLIC, new HashSet<>( Arrays.asList( "a.xml", "b.xml", "c.xml" ) ) );
+        assertThat( bounded.isSeeded( PUBLIC ), equalTo( false ) );
+
+        bounded.clear( BUILDS );
+        bounded.seed( BUILDS, Collections.singleton( METADATA ) );
+        assertThat( bounded.getPaths( BUILDS ), equalTo( Collections.singleton( METADATA ) ) );
+    }
+
+    @Test
+    public void disabledIndexHoldsNothing()
+    {
+        final MergedPathIndex disabled = new MergedPathIndex( false );
+        disabled.add( BUILDS, METADATA );
+        disabled.seed( BUILDS, Collections.singleton( METADATA ) );
+
+        assertThat( disabled.isSeeded( BUILDS ), equalTo( false ) );
+        assertThat( disabled.size( BUILDS ), equalTo( 0 ) );
+    }
+
+    @Test
+    public void indexIsOnlyUsedWithStorageNotSharedWithOtherNodes()
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setMergedPathIndexEnabled( true );
+
+        config.setStandalone( false );
+        assertThat( new MergedPathIndex( config ).isEnabled(), equalTo( false ) );
+
+        config.setStandalone( true );
+        assertThat( new MergedPathIndex( config ).isEnabled(), equalTo( true ) );
+
+        config.setClusterEnabled( true );
+        assertThat( new MergedPathIndex( config ).isEnabled(), equalTo( false ) );
+    }
+}
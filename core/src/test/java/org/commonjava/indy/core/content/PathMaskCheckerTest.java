@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathMaskCheckerTest
+{
+    private static final List<String> PATHS =
+            Arrays.asList( "", "org/", "org", "org/infinispan/", "org/infinispan/infinispan-core/",
+                           "org/infinispan/infinispan-core/9.4.2.Final-redhat-00001/infinispan-core-9.4.2.Final-redhat-00001.jar",
+                           "org/infinispan/infinispan-query-dsl/maven-metadata.xml",
+                           "org/infinispan/server/infinispan-server/9.4.2.Final-redhat-00001/x.pom",
+                           "org/jboss/eap/jboss-eap-parent/7.2.0.GA-redhat-00002/jboss-eap-parent-7.2.0.GA-redhat-00002.pom",
+                           "org/jboss/", "com/", "com/sun/mail/javax.mail-api/1.6.1.redhat-1/javax.mail-api-1.6.1.redhat-1.jar",
+                           "javax/mail/javax.mail-api/maven-metadata.xml", "javax/mail/", "r|org", "aaa/bbb/ccc" );
+
+    private static final List<Set<String>> MASKS = Arrays.asList(
+            set( "org/infinispan/", "com/sun/" ),
+            set( "r|.+[-.]redhat[-_]\\d+.*|" ),
+            set( "r|org\\/infinispan\\/.+\\/9.4.2.Final-redhat-00001\\/.+|",
+                 "org/infinispan/infinispan-query-dsl/maven-metadata.xml",
+                 "r|org\\/infinispan\\/server\\/.+\\/9.4.2.Final-redhat-00001\\/.+|" ),
+            set( "javax/mail/javax.mail-api/maven-metadata.xml", "com/sun/mail/javax.mail-api/maven-metadata.xml",
+                 "r|javax\\/mail\\/.+\\/1.6.1.redhat-1\\/.+|", "r|com\\/sun\\/mail\\/.+\\/1.6.1.redhat-1\\/.+|" ),
+            set( "r|(a+)/\\1/.*|", "aaa/", "org/jboss/eap/" ),
+            set( "r|[unclosed|", "org/" ),
+            set( "r|(?<dir>org)\\/infinispan\\/.*|", "r|(?<dir>com)\\/sun\\/.*|", "javax/" ) );
+
+    @After
+    public void clearCompiledMasks()
+    {
+        PathMaskChecker.clearCompiledMasks();
+    }
+
+    @Test
+    public void matchesUncompiledChecks()
+    {
+        for ( Set<String> mask : MASKS )
+        {
+            final RemoteRepository repo = new RemoteRepository( "test", "http://example.url" );
+            repo.setPathMaskPatterns( mask );
+            for ( String path : PATHS )
+            {
+                final String msg = mask + " <- " + path;
+                assertEquals( msg, checkMask( mask, path ), PathMaskChecker.checkMask( repo, path ) );
+                assertEquals( msg, checkListingMask( mask, path ), PathMaskChecker.checkListingMask( repo, path ) );
+                assertEquals( msg, checkMavenMetadataMask( mask, path ),
+                              PathMaskChecker.checkMavenMetadataMask( repo, path ) );
+            }
+        }
+    }
+
+    @Test
+    public void recompiledWhenPatternsChange()
+    {
+        final HostedRepository repo = new HostedRepository( "test" );
+        repo.setPathMaskPatterns( set( "org/" ) );
+        assertTrue( PathMaskChecker.checkMask( repo, "org/foo/bar.jar" ) );
+        assertFalse( PathMaskChecker.checkMask( repo, "com/foo/bar.jar" ) );
+
+        repo.setPathMaskPatterns( set( "com/" ) );
+        assertFalse( PathMaskChecker.checkMask( repo, "org/foo/bar.jar" ) );
+        assertTrue( PathMaskChecker.checkMask( repo, "com/foo/bar.jar" ) );
+
+        final HostedRepository copy = new HostedRepository( "test" );
+        copy.setPathMaskPatterns( set( "com/" ) );
+        assertTrue( PathMaskChecker.checkMask( copy, "com/foo/bar.jar" ) );
+
+        repo.setPathMaskPatterns( null );
+        assertTrue( PathMaskChecker.checkMask( repo, "org/foo/bar.jar" ) );
+    }
+
+    private static Set<String> set( String... patterns )
+    {
+        return new HashSet<>( Arrays.asList( patterns ) );
+    }
+
+    private static boolean checkMask( final Set<String> patterns, final String path )
+    {
+        for ( String pattern : patterns )
+        {
+            if ( PathMaskChecker.isRegexPattern( pattern ) )
+            {
+                if ( regexMatches( pattern, path ) )
+                {
+                    return true;
+                }
+            }
+            else if ( path.startsWith( pattern ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean checkListingMask( final Set<String> patterns, final String path )
+    {
+        final boolean hasMetadata = patterns.stream().anyMatch( p -> p.endsWith( "maven-metadata.xml" ) );
+        if ( !hasMetadata )
+        {
+            if ( patterns.stream().anyMatch( PathMaskChecker::isRegexPattern ) )
+            {
+                return true;
+            }
+        }
+        else if ( patterns.stream()
+                          .map( PathMaskChecker::extractGroupIdPath )
+                          .anyMatch( g -> g != null && ( path.startsWith( g ) || g.startsWith( path ) ) ) )
+        {
+            return true;
+        }
+
+        return patterns.stream().anyMatch( p -> path.startsWith( p ) || p.startsWith( path ) );
+    }
+
+    private static boolean checkMavenMetadataMask( final Set<String> patterns, final String path )
+    {
+        return patterns.stream()
+                       .filter( p -> !PathMaskChecker.isRegexPattern( p ) )
+                       .anyMatch( p -> path.startsWith( p ) || p.startsWith( path ) );
+    }
+
+    private static boolean regexMatches( final String pattern, final String path )
+    {
+        try
+        {
+            return path.matches( pattern.substring( 2, pattern.length() - 1 ) );
+        }
+        catch ( RuntimeException e )
+        {
+            // invalid regexes are skipped by the compiled mask
+            return false;
+        }
+    }
+}
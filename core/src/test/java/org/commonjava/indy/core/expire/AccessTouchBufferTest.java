@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.expire;
+
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.commonjava.indy.model.core.StoreType.remote;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AccessTouchBufferTest
+{
+    private static final StoreKey CENTRAL = new StoreKey( "maven", remote, "central" );
+
+    private static final StoreKey BUILDS = new StoreKey( "maven", hosted, "builds" );
+
+    private static final String JAR = "org/foo/bar/1.0/bar-1.0.jar";
+
+    private final RecordingScheduleManager scheduleManager = new RecordingScheduleManager();
+
+    private final AtomicLong now = new AtomicLong( 1_000_000 );
+
+    private final AtomicLong timeout = new AtomicLong( TimeUnit.HOURS.toMillis( 1 ) );
+
+    private final AccessTouchBuffer buffer =
+            new AccessTouchBuffer( scheduleManager, 60, TimeUnit.SECONDS, now::get, key -> timeout.get() );
+
+    @Test
+    public void repeatedAccessesAreResetOnce()
+    {
+        for ( int i = 0; i < 10; i++ )
+        {
+            buffer.touch( CENTRAL, JAR );
+        }
+        buffer.touch( BUILDS, JAR );
+
+        assertThat( buffer.flush(), equalTo( 2 ) );
+        assertThat( scheduleManager.proxyResets, equalTo( Arrays.asList( CENTRAL + ":" + JAR ) ) );
+        assertThat( scheduleManager.snapshotResets, equalTo( Arrays.asList( BUILDS + ":" + JAR ) ) );
+        assertThat( buffer.getFlushedCount(), equalTo( 2L ) );
+        assertThat( buffer.getCoalescedCount(), equalTo( 9L ) );
+        assertThat( buffer.getPendingCount(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void recentlyResetPathsAreSkippedUntilTheThreshold()
+    {
+        buffer.touch( CENTRAL, JAR );
+        buffer.flush();
+
+        now.addAndGet( TimeUnit.SECONDS.toMillis( 59 ) );
+        buffer.touch( CENTRAL, JAR );
+        assertThat( buffer.flush(), equalTo( 0 ) );
+        assertThat( buffer.getSkippedCount(), equalTo( 1L ) );
+
+        now.addAndGet( TimeUnit.SECONDS.toMillis( 1 ) );
+        buffer.touch( CENTRAL, JAR );
+        assertThat( buffer.flush(), equalTo( 1 ) );
+        assertThat( scheduleManager.proxyResets.size(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void pathsAboutToExpireAreResetWithinTheThreshold()
+    {
+        timeout.set( TimeUnit.SECONDS.toMillis( 90 ) );
+        buffer.touch( CENTRAL, JAR );
+        buffer.flush();
+
+        now.addAndGet( TimeUnit.SECONDS.toMillis( 20 ) );
+        buffer.touch( CENTRAL, JAR );
+        assertThat( buffer.flush(), equalTo( 0 ) );
+
+        // 50 seconds left, less than the threshold
+        now.addAndGet( TimeUnit.SECONDS.toMillis( 20 ) );
+        buffer.touch( CENTRAL, JAR );
+        assertThat( buffer.flush(), equalTo( 1 ) );
+        assertThat( buffer.getSkippedCount(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void pathsNeverExpiringAreSkippedUntilTheThreshold()
+    {
+        timeout.set( 0 );
+        buffer.touch( BUILDS, JAR );
+        buffer.flush();
+
+        now.addAndGet( TimeUnit.SECONDS.toMillis( 59 ) );
+        buffer.touch( BUILDS, JAR );
+        assertThat( buffer.flush(), equalTo( 0 ) );
+        assertThat( buffer.getSkippedCount(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void storedPathsAreNotResetByFollowingAccesses()
+    {
+        buffer.touch( CENTRAL, JAR );
+        buffer.recordReset( CENTRAL, JAR );
+        buffer.touch( CENTRAL, JAR );
+
+        assertThat( buffer.flush(), equalTo( 0 ) );
+        assertThat( buffer.getSkippedCount(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void failedResetsAreRetriedOnNextAccess()
+    {
+        scheduleManager.failing = true;
+        buffer.touch( CENTRAL, JAR );
+        assertThat( buffer.flush(), equalTo( 0 ) );
+        assertThat( buffer.getFailedCount(), equalTo( 1L ) );
+
+        scheduleManager.failing = false;
+        buffer.touch( CENTRAL, JAR );
+        assertThat( buffer.flush(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void concurrentAccessesAreAllAccountedFor()
+            throws Exception
+    {
+        final int threads = 8;
+        final int paths = 500;
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final CountDownLatch done = new CountDownLatch( threads );
+        try
+        {
+            for ( int t = 0; t < threads; t++ )
+            {
+                executor.execute( () -> {
+                    for ( int p = 0; p < paths; p++ )
+                    {
+                        buffer.touch( CENTRAL, "org/foo/bar/" + p + "/bar.jar" );
+                    }
+                    done.countDown();
+                } );
+            }
+            done.await();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertThat( buffer.flush(), equalTo( paths ) );
+        assertThat( buffer.getCoalescedCount(), equalTo( (long) ( threads - 1 ) * paths ) );
+        assertThat( buffer.getTouchCount(), equalTo( (long) threads * paths ) );
+    }
+
+    private static final class RecordingScheduleManager
+            implements ScheduleManager
+    {
+        private final List<String> proxyResets = new ArrayList<>();
+
+        private final List<String> snapshotResets = new ArrayList<>();
+
+        private boolean failing;
+
+        @Override
+        public void init()
+        {
+        }
+
+        @Override
+        public void setProxyTimeouts( final StoreKey key, final String path )
+                throws IndySchedulerException
+        {
+            if ( failing )
+            {
+                throw new IndySchedulerException( "Schedule not available" );
+            }
+            proxyResets.add( key + ":" + path );
+        }
+
+        @Override
+        public void setSnapshotTimeouts( final StoreKey key, final String path )
+        {
+            snapshotResets.add( key + ":" + path );
+        }
+
+        @Override
+        public void rescheduleSnapshotTimeouts( final HostedRepository deploy )
+        {
+        }
+
+        @Override
+        public void rescheduleProxyTimeouts( final RemoteRepository repo )
+        {
+        }
+
+        @Override
+        public void rescheduleDisableTimeout( final StoreKey key )
+        {
+        }
+
+        @Override
+        public Expiration findSingleExpiration( final StoreKey key, final String jobType )
+        {
+            return null;
+        }
+
+        @Override
+        public ExpirationSet findMatchingExpirations( final String jobType )
+        {
+            return null;
+        }
+    }
+}
@@ -18,11 +18,15 @@ package org.commonjava.indy.core.inject;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.model.galley.CacheOnlyLocation;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.SimpleLocation;
@@ -88,4 +92,82 @@ public class ExpiringMemoryNotFoundCacheTest
         assertThat( allMissing == null || allMissing.isEmpty(), equalTo( true ) );
     }
 
+    @Test
+    public void clearLocationLeavesOtherLocations()
+    {
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( new DefaultIndyConfiguration() );
+
+        final Location first = new SimpleLocation( "test:first" );
+        final Location second = new SimpleLocation( "test:second" );
+        nfc.addMissing( new ConcreteResource( first, "/path/one" ) );
+        nfc.addMissing( new ConcreteResource( first, "/path/two" ) );
+        nfc.addMissing( new ConcreteResource( second, "/path/one" ) );
+
+        nfc.clearMissing( first );
+
+        assertThat( nfc.getMissing( first ).isEmpty(), equalTo( true ) );
+        assertThat( nfc.getMissing( second ), equalTo( Collections.singleton( "/path/one" ) ) );
+        assertThat( nfc.isMissing( new ConcreteResource( second, "/path/one" ) ), equalTo( true ) );
+        assertThat( nfc.getSize(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void sizeByStoreKey()
+    {
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( new DefaultIndyConfiguration() );
+
+        final StoreKey remote = new StoreKey( "maven", StoreType.remote, "central" );
+        final StoreKey other = new StoreKey( "maven", StoreType.remote, "other" );
+        nfc.addMissing( new ConcreteResource( new CacheOnlyLocation( remote ), "/path/one" ) );
+        nfc.addMissing( new ConcreteResource( new CacheOnlyLocation( remote ), "/path/two" ) );
+        nfc.addMissing( new ConcreteResource( new CacheOnlyLocation( other ), "/path/one" ) );
+
+        assertThat( nfc.getSize( remote ), equalTo( 2L ) );
+        assertThat( nfc.getSize( other ), equalTo( 1L ) );
+        assertThat( nfc.getSize( new StoreKey( "maven", StoreType.remote, "none" ) ), equalTo( 0L ) );
+    }
+
+    @Test
+    public void evictsUnreferencedEntriesBeyondMaxEntries()
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setNfcMaxEntries( 2 );
+
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( config );
+
+        final Location loc = new SimpleLocation( "test:uri" );
+        final ConcreteResource first = new ConcreteResource( loc, "/first" );
+        final ConcreteResource second = new ConcreteResource( loc, "/second" );
+        final ConcreteResource third = new ConcreteResource( loc, "/third" );
+
+        nfc.addMissing( first );
+        nfc.addMissing( second );
+        assertThat( nfc.isMissing( first ), equalTo( true ) );
+
+        nfc.addMissing( third );
+
+        assertThat( nfc.getSize(), equalTo( 2L ) );
+        assertThat( nfc.getEvictionCount(), equalTo( 1L ) );
+        assertThat( nfc.isMissing( first ), equalTo( true ) );
+        assertThat( nfc.isMissing( second ), equalTo( false ) );
+        assertThat( nfc.isMissing( third ), equalTo( true ) );
+    }
+
+    @Test
+    public void expiredEntriesAreRemovedByTheWheel()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setNotFoundCacheTimeoutSeconds( 1 );
+
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( config );
+        nfc.addMissing( new ConcreteResource( new SimpleLocation( "test:uri" ), "/path/to/expired/object" ) );
+        assertThat( nfc.getSize(), equalTo( 1L ) );
+
+        Thread.sleep( TimeUnit.SECONDS.toMillis( 3 ) );
+
+        assertThat( nfc.getSize(), equalTo( 0L ) );
+        assertThat( nfc.getAllMissing().isEmpty(), equalTo( true ) );
+    }
+
 }
@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class NfcBloomFilterTest
+{
+    private static final String STORE = "maven:remote:central";
+
+    private static final int PATHS = 100_000;
+
+    @Test
+    public void everythingMightBeContainedUntilFirstRebuild()
+    {
+        final NfcBloomFilter filter = new NfcBloomFilter( 0.01 );
+        assertThat( filter.mightContain( STORE, "org/foo/1/foo-1.pom" ), equalTo( true ) );
+
+        filter.beginRebuild();
+        filter.completeRebuild();
+        assertThat( filter.mightContain( STORE, "org/foo/1/foo-1.pom" ), equalTo( false ) );
+    }
+
+    @Test
+    public void noFalseNegativesAndBoundedFalsePositives()
+    {
+        final NfcBloomFilter filter = ready( new NfcBloomFilter( 0.01 ) );
+        for ( int i = 0; i < PATHS; i++ )
+        {
+            filter.add( STORE, path( i ) );
+        }
+
+        for ( int i = 0; i < PATHS; i++ )
+        {
+            assertThat( path( i ), filter.mightContain( STORE, path( i ) ), equalTo( true ) );
+        }
+
+        int falsePositives = 0;
+        for ( int i = PATHS; i < PATHS * 2; i++ )
+        {
+            if ( filter.mightContain( STORE, path( i ) ) )
+            {
+                falsePositives++;
+            }
+        }
+
+        // segments grow with halving probabilities, so the overall rate stays under twice the target
+        assertThat( (double) falsePositives / PATHS, lessThan( 0.02 ) );
+        assertThat( filter.getEstimatedFalsePositiveRate(), lessThan( 0.02 ) );
+        assertThat( filter.getMemoryBytes(), greaterThan( 0L ) );
+        assertThat( filter.mightContain( "maven:remote:other", path( 0 ) ), equalTo( false ) );
+    }
+
+    @Test
+    public void rebuildKeepsPathsAddedWhileRebuilding()
+    {
+        final NfcBloomFilter filter = ready( new NfcBloomFilter( 0.01 ) );
+        filter.add( STORE, "removed.pom" );
+
+        filter.beginRebuild();
+        filter.rebuildAdd( STORE, "stored.pom" );
+        filter.add( STORE, "added.pom" );
+        filter.completeRebuild();
+
+        assertThat( filter.mightContain( STORE, "stored.pom" ), equalTo( true ) );
+        assertThat( filter.mightContain( STORE, "added.pom" ), equalTo( true ) );
+        assertThat( filter.mightContain( STORE, "removed.pom" ), equalTo( false ) );
+    }
+
+    @Test
+    public void pathsAddedWhileRebuildCompletesAreKept()
+            throws Exception
+    {
+        final NfcBloomFilter filter = ready( new NfcBloomFilter( 0.01 ) );
+        final Set<String> stored = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean adding = new AtomicBoolean( true );
+
+        final Thread adder = new Thread( () -> {
+            for ( int i = 0; i < PATHS; i++ )
+            {
+                // written to the backing store first, as callers must
+                stored.add( path( i ) );
+                filter.add( STORE, path( i ) );
+            }
+            adding.set( false );
+        } );
+        adder.start();
+
+        while ( adding.get() )
+        {
+            filter.beginRebuild();
+            stored.forEach( p -> filter.rebuildAdd( STORE, p ) );
+            filter.completeRebuild();
+        }
+        adder.join();
+
+        for ( int i = 0; i < PATHS; i++ )
+        {
+            assertThat( path( i ), filter.mightContain( STORE, path( i ) ), equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void clearedStoreContainsNothing()
+    {
+        final NfcBloomFilter filter = ready( new NfcBloomFilter( 0.01 ) );
+        filter.add( STORE, "a.pom" );
+        filter.add( "maven:remote:other", "a.pom" );
+
+        filter.clear( STORE );
+        assertThat( filter.mightContain( STORE, "a.pom" ), equalTo( false ) );
+        assertThat( filter.mightContain( "maven:remote:other", "a.pom" ), equalTo( true ) );
+
+        filter.clearAll();
+        assertThat( filter.getStoreCount(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void observedFalsePositiveRate()
+    {
+        final NfcBloomFilter filter = ready( new NfcBloomFilter( 0.01 ) );
+        filter.recordChecked( STORE, true );
+        filter.recordChecked( STORE, true );
+        filter.recordChecked( STORE, true );
+        filter.recordChecked( STORE, false );
+
+        assertThat( filter.getObservedFalsePositiveRate(), equalTo( 0.25 ) );
+    }
+
+    @Test
+    public void refreshDropsRemovedPathsAndKeepsPathsAddedWhileRefreshing()
+    {
+        final NfcBloomFilter filter = ready( new NfcBloomFilter( 0.01 ) );
+        filter.add( STORE, "removed.pom" );
+        filter.add( "maven:remote:other", "other.pom" );
+
+        filter.beginRefresh( STORE );
+        filter.refreshAdd( STORE, "stored.pom" );
+        filter.add( STORE, "added.pom" );
+        filter.completeRefresh( STORE );
+
+        assertThat( filter.mightContain( STORE, "stored.pom" ), equalTo( true ) );
+        assertThat( filter.mightContain( STORE, "added.pom" ), equalTo( true ) );
+        assertThat( filter.mightContain( STORE, "removed.pom" ), equalTo( false ) );
+        assertThat( filter.mightContain( "maven:remote:other", "other.pom" ), equalTo( true ) );
+    }
+
+    @Test
+    public void storesWithFalsePositivesOrGrownFiltersAreStale()
+    {
+        final NfcBloomFilter filter = ready( new NfcBloomFilter( 0.01, 16 ) );
+        filter.add( STORE, "a.pom" );
+        filter.add( "maven:remote:other", "a.pom" );
+        for ( int i = 0; i < NfcBloomFilter.MIN_STALE_FALSE_POSITIVES - 1; i++ )
+        {
+            filter.recordChecked( STORE, false );
+        }
+        assertThat( filter.getStaleStores().isEmpty(), equalTo( true ) );
+
+        filter.recordChecked( STORE, false );
+        assertThat( filter.getStaleStores(), equalTo( Collections.singletonList( STORE ) ) );
+
+        filter.beginRefresh( STORE );
+        filter.refreshAdd( STORE, "a.pom" );
+        filter.completeRefresh( STORE );
+        assertThat( filter.getStaleStores().isEmpty(), equalTo( true ) );
+
+        for ( int i = 0; i < 32; i++ )
+        {
+            filter.add( "maven:remote:other", path( i ) );
+        }
+        assertThat( filter.getStaleStores(), equalTo( Collections.singletonList( "maven:remote:other" ) ) );
+    }
+
+    private static NfcBloomFilter ready( final NfcBloomFilter filter )
+    {
+        filter.beginRebuild();
+        filter.completeRebuild();
+        return filter;
+    }
+
+    private static String path( final int i )
+    {
+        return "org/commonjava/artifact-" + i + "/1.0/artifact-" + i + "-1.0.pom";
+    }
+}
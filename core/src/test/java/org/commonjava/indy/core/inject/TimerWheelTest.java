@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TimerWheelTest
+{
+    private static final long TICK = 1000;
+
+    @Test
+    public void nodesExpireInTheirTickAcrossAllLevels()
+    {
+        final long start = 0;
+        final TimerWheel wheel = new TimerWheel( TICK, start );
+
+        // one node per wheel level, plus one beyond the last wheel
+        final long[] delays = { 5, 100, 5_000, 300_000, 20_000_000 };
+        final List<TimerWheel.Node> nodes = new ArrayList<>();
+        for ( long delay : delays )
+        {
+            final TimerWheel.Node node = new TimerWheel.Node();
+            node.expiresAt = start + delay * TICK;
+            wheel.schedule( node );
+            nodes.add( node );
+        }
+        assertThat( wheel.size(), equalTo( delays.length ) );
+
+        final List<TimerWheel.Node> expired = new ArrayList<>();
+        for ( int i = 0; i < delays.length; i++ )
+        {
+            wheel.advance( nodes.get( i ).expiresAt - TICK, expired::add );
+            assertThat( expired.size(), equalTo( i ) );
+
+            wheel.advance( nodes.get( i ).expiresAt, expired::add );
+            assertThat( expired.size(), equalTo( i + 1 ) );
+            assertThat( expired.get( i ), equalTo( nodes.get( i ) ) );
+        }
+        assertThat( wheel.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void unscheduledNodesDoNotExpire()
+    {
+        final TimerWheel wheel = new TimerWheel( TICK, 0 );
+        final TimerWheel.Node node = new TimerWheel.Node();
+        node.expiresAt = 10 * TICK;
+        wheel.schedule( node );
+        wheel.unschedule( node );
+
+        final List<TimerWheel.Node> expired = new ArrayList<>();
+        wheel.advance( 20 * TICK, expired::add );
+
+        assertThat( expired.isEmpty(), equalTo( true ) );
+        assertThat( wheel.size(), equalTo( 0 ) );
+    }
+}
@@ -43,14 +43,12 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import javax.inject.Inject;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -78,6 +76,10 @@ public abstract class AbstractStoreDataManager
 
     protected final Locker<StoreKey> opLocks = new Locker<>(); // used internally
 
+    protected final GroupMembershipIndex groupMembershipIndex = new GroupMembershipIndex();
+
+    protected final GroupMembershipGraph groupMembershipGraph = new GroupMembershipGraph();
+
     abstract protected StoreEventDispatcher getStoreEventDispatcher();
 
     @Inject
@@ -107,7 +109,52 @@ public abstract class AbstractStoreDataManager
     @Override
     public ArtifactStoreQuery<ArtifactStore> query()
     {
-        return new DefaultArtifactStoreQuery<>( this );
+        return new DefaultArtifactStoreQuery<>( this, groupMembershipIndex, this::getGroupMembershipGraph,
+                                                getArtifactStoreIndex() );
+    }
+
+    /**
+     * Secondary indexes used by {@link #query()}, for data managers that maintain them on put / remove. Null means
+     * queries filter {@link #streamArtifactStores()}.
+     */
+    protected ArtifactStoreIndex getArtifactStoreIndex()
+    {
+        return null;
+    }
+
+    /**
+     * Flattened group memberships served by {@link #query()}. This is invalidated here whenever a store is stored or
+     * deleted, whether or not events are fired for the change.
+     */
+    public GroupMembershipIndex getGroupMembershipIndex()
+    {
+        return groupMembershipIndex;
+    }
+
+    /**
+     * Reverse membership (member -&gt; containing groups) of all groups, built from the stored groups on first use and
+     * maintained in {@link #doStore} and {@link #deleteArtifactStore} afterward.
+     */
+    public GroupMembershipGraph getGroupMembershipGraph()
+    {
+        if ( !groupMembershipGraph.isInitialized() )
+        {
+            synchronized ( groupMembershipGraph )
+            {
+                if ( !groupMembershipGraph.isInitialized() )
+                {
+                    try
+                    {
+                        groupMembershipGraph.rebuild( getAllArtifactStores() );
+                    }
+                    catch ( IndyDataException e )
+                    {
+                        throw new IllegalStateException( "Failed to build group membership graph", e );
+                    }
+                }
+            }
+        }
+        return groupMembershipGraph;
     }
 
     protected abstract ArtifactStore getArtifactStoreInternal( final StoreKey key );
@@ -313,9 +360,12 @@ public abstract class AbstractStoreDataManager
                 }
 
                 preDelete( store, summary, true, eventMetadata );
+                groupMembershipIndex.invalidate( k );
 
                 ArtifactStore removed = removeArtifactStoreInternal( k );
                 logger.info( "REMOVED store: {}", removed );
+                groupMembershipGraph.storeDeleted( k );
+                groupMembershipIndex.invalidate( k );
 
                 postDelete( store, summary, true, eventMetadata );
             }
@@ -472,6 +522,7 @@ public abstract class AbstractStoreDataManager
             }
             logger.debug( "Starting pre-store actions for {}", k );
             preStore( store, original, summary, original != null, fireEvents, eventMetadata );
+            groupMembershipIndex.invalidate( k );
             logger.debug( "Pre-store actions complete for {}", k );
         }
         catch ( IndyDataException e )
@@ -487,6 +538,10 @@ public abstract class AbstractStoreDataManager
                                String.format( "%s, %s", summary.getSummary(), new Date() ));
         }
         final ArtifactStore old = putArtifactStoreInternal( store.getKey(), store );
+        groupMembershipGraph.storeUpdated( store );
+
+        // invalidate again, in case an ordering was rebuilt from the original between preStore() and the put
+        groupMembershipIndex.invalidate( k );
 
         try
         {
@@ -500,6 +555,8 @@ public abstract class AbstractStoreDataManager
             {
                 logger.error( "postStore() failed for {}. Rollback to old value: {}", store, old );
                 putArtifactStoreInternal( old.getKey(), old );
+                groupMembershipGraph.storeUpdated( old );
+                groupMembershipIndex.invalidate( k );
             }
             error.set( e );
             return false;
@@ -584,51 +641,19 @@ public abstract class AbstractStoreDataManager
         Logger logger = LoggerFactory.getLogger( getClass() );
         logger.debug( "Getting groups affected by: {}", keys );
 
-        List<StoreKey> toProcess = new ArrayList<>( new HashSet<>( keys ) );
-
         Set<Group> groups = new HashSet<>();
-        if ( toProcess.isEmpty() )
+        if ( keys == null || keys.isEmpty() )
         {
             return groups;
         }
 
-        Set<StoreKey> processed = new HashSet<>();
-        final String packageType = toProcess.get( 0 ).getPackageType();
-
-        Set<ArtifactStore> all = this.getStoreKeysByPkgAndType( packageType, group )
-                                     .stream()
-                                     .map( this::getArtifactStoreInternal )
-                                     .filter( Objects::nonNull )
-                                     .collect( Collectors.toSet() );
-
-        while ( !toProcess.isEmpty() )
-        {
-            // as long as we have another key to process, pop it off the list (remove it) and process it.
-            StoreKey next = toProcess.remove( 0 );
-            if ( processed.contains( next ) )
-            {
-                // if we've already handled this group (via another branch in the group membership tree, etc. then don't bother.
-                continue;
-            }
-
-            // use this to avoid reprocessing groups we've already encountered.
-            processed.add( next );
-
-            for ( ArtifactStore store : all )
+        getGroupMembershipGraph().getAffectedBy( keys ).forEach( key -> {
+            ArtifactStore store = getArtifactStoreInternal( key );
+            if ( store instanceof Group )
             {
-                if ( ( store instanceof Group ) && !processed.contains( store.getKey() )  )
-                {
-                    Group g = (Group) store;
-                    if ( g.getConstituents() != null && g.getConstituents().contains( next ) )
-                    {
-                        groups.add( g );
-
-                        // add this group as another one to process for groups that contain it...and recurse upwards
-                        toProcess.add( g.getKey() );
-                    }
-                }
+                groups.add( (Group) store );
             }
-        }
+        } );
 
         return filterAffectedGroups( groups );
     }
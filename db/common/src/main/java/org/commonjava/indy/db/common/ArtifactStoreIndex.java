@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.util.UrlInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Secondary indexes over the stores held by a {@link AbstractStoreDataManager}, so that queries run in time
+ * proportional to the size of their result instead of the number of stores:
+ * <ul>
+ *     <li>package type + store type buckets. The enabled state is checked when the buckets are read, since a store's
+ *     disabled flag may change without the store being put again (e.g. when a disable timeout is set on it)</li>
+ *     <li>store name</li>
+ *     <li>remote repository URL, normalized the way {@link UrlInfo#getUrlWithNoSchemeAndLastSlash()} does it. The
+ *     parsed {@link UrlInfo} is kept, so it isn't re-parsed per query</li>
+ * </ul>
+ * Data managers call {@link #put(ArtifactStore, ArtifactStore)} and {@link #remove(ArtifactStore)} next to their own
+ * storage writes. The URL of a remote repository is indexed as it was when the repository was put.
+ */
+public class ArtifactStoreIndex
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<BucketKey, Map<StoreKey, ArtifactStore>> buckets = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<StoreKey>> byName = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<StoreKey, RemoteUrl>> remotesByUrl = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, RemoteUrl> remoteUrls = new ConcurrentHashMap<>();
+
+    public synchronized void put( final ArtifactStore store, final ArtifactStore previous )
+    {
+        if ( previous != null )
+        {
+            remove( previous );
+        }
+
+        final StoreKey key = store.getKey();
+        buckets.computeIfAbsent( new BucketKey( key.getPackageType(), key.getType() ),
+                                 k -> new ConcurrentHashMap<>() ).put( key, store );
+
+        byName.computeIfAbsent( store.getName(), k -> ConcurrentHashMap.newKeySet() ).add( key );
+
+        if ( store instanceof RemoteRepository )
+        {
+            final String url = ( (RemoteRepository) store ).getUrl();
+            try
+            {
+                final RemoteUrl remoteUrl = new RemoteUrl( (RemoteRepository) store, new UrlInfo( url ) );
+                remoteUrls.put( key, remoteUrl );
+                remotesByUrl.computeIfAbsent( remoteUrl.getUrlInfo().getUrlWithNoSchemeAndLastSlash(),
+                                              k -> new ConcurrentHashMap<>() ).put( key, remoteUrl );
+            }
+            catch ( Exception error )
+            {
+                logger.warn( "Invalid repository, store: {}, url: '{}'. Reason: {}", key, url, error.getMessage() );
+            }
+        }
+    }
+
+    public synchronized void remove( final ArtifactStore store )
+    {
+        if ( store == null )
+        {
+            return;
+        }
+
+        final StoreKey key = store.getKey();
+        buckets.computeIfPresent( new BucketKey( key.getPackageType(), key.getType() ), ( k, stores ) -> {
+            stores.remove( key );
+            return stores.isEmpty() ? null : stores;
+        } );
+
+        byName.computeIfPresent( store.getName(), ( k, keys ) -> {
+            keys.remove( key );
+            return keys.isEmpty() ? null : keys;
+        } );
+
+        final RemoteUrl remoteUrl = remoteUrls.remove( key );
+        if ( remoteUrl != null )
+        {
+            remotesByUrl.computeIfPresent( remoteUrl.getUrlInfo().getUrlWithNoSchemeAndLastSlash(), ( k, remotes ) -> {
+                remotes.remove( key );
+                return remotes.isEmpty() ? null : remotes;
+            } );
+        }
+    }
+
+    public synchronized void rebuild( final Collection<ArtifactStore> stores )
+    {
+        clear();
+        stores.forEach( s -> put( s, null ) );
+        logger.info( "Artifact store index rebuilt with {} stores", stores.size() );
+    }
+
+    public synchronized void clear()
+    {
+        buckets.clear();
+        byName.clear();
+        remotesByUrl.clear();
+        remoteUrls.clear();
+    }
+
+    /**
+     * @param packageType package type, or null for all of them
+     * @param types store types, or null for all of them
+     * @param enabled enabled state, or null for both
+     */
+    public Stream<ArtifactStore> stream( final String packageType, final Set<StoreType> types, final Boolean enabled )
+    {
+        return buckets.entrySet()
+                      .stream()
+                      .filter( e -> e.getKey().matches( packageType, types ) )
+                      .flatMap( e -> e.getValue().values().stream() )
+                      .filter( store -> isInState( store, enabled ) );
+    }
+
+    /**
+     * @param enabled enabled state, or null for both
+     */
+    public Collection<ArtifactStore> get( final String packageType, final StoreType type, final Boolean enabled )
+    {
+        final Map<StoreKey, ArtifactStore> stores = buckets.get( new BucketKey( packageType, type ) );
+        if ( stores == null )
+        {
+            return Collections.emptyList();
+        }
+        if ( enabled == null )
+        {
+            return stores.values();
+        }
+        return stores.values().stream().filter( store -> isInState( store, enabled ) ).collect( Collectors.toList() );
+    }
+
+    public Set<StoreKey> getKeysByName( final String name )
+    {
+        final Set<StoreKey> keys = byName.get( name );
+        return keys == null ? Collections.emptySet() : keys;
+    }
+
+    /**
+     * @return remote repositories whose URL is the same as the given one once scheme and trailing slash are removed
+     */
+    public Collection<RemoteUrl> getRemotesByUrl( final UrlInfo urlInfo )
+    {
+        final Map<StoreKey, RemoteUrl> remotes = remotesByUrl.get( urlInfo.getUrlWithNoSchemeAndLastSlash() );
+        return remotes == null ? Collections.emptyList() : remotes.values();
+    }
+
+    /**
+     * @return all remote repositories of the given package type with a valid URL, for lookups that can't use the
+     * normalized URL (e.g. matching by IP).
+     */
+    public Stream<RemoteUrl> streamRemoteUrls( final String packageType )
+    {
+        return remoteUrls.values()
+                         .stream()
+                         .filter( r -> packageType == null || packageType.equals(
+                                 r.getRepository().getPackageType() ) );
+    }
+
+    /**
+     * A remote repository along with its pre-parsed URL. The IP of the remote host is resolved on every call, so DNS
+     * changes are picked up (subject to the JVM's own DNS cache).
+     */
+    public static final class RemoteUrl
+    {
+        private final RemoteRepository repository;
+
+        private final UrlInfo urlInfo;
+
+        private RemoteUrl( final RemoteRepository repository, final UrlInfo urlInfo )
+        {
+            this.repository = repository;
+            this.urlInfo = urlInfo;
+        }
+
+        public RemoteRepository getRepository()
+        {
+            return repository;
+        }
+
+        public UrlInfo getUrlInfo()
+        {
+            return urlInfo;
+        }
+
+        public String getIp()
+                throws UnknownHostException
+        {
+            return urlInfo.getIpForUrl();
+        }
+    }
+
+    private static boolean isInState( final ArtifactStore store, final Boolean enabled )
+    {
+        return enabled == null || enabled != store.isDisabled();
+    }
+
+    private static final class BucketKey
+    {
+        private final String packageType;
+
+        private final StoreType type;
+
+        private BucketKey( final String packageType, final StoreType type )
+        {
+            this.packageType = packageType;
+            this.type = type;
+        }
+
+        private boolean matches( final String packageType, final Set<StoreType> types )
+        {
+            return ( packageType == null || packageType.equals( this.packageType ) ) && ( types == null
+                    || types.contains( type ) );
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof BucketKey ) )
+            {
+                return false;
+            }
+            final BucketKey that = (BucketKey) o;
+            return type == that.type && packageType.equals( that.packageType );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * packageType.hashCode() + type.hashCode();
+        }
+    }
+}
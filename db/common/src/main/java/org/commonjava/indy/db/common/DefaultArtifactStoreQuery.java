@@ -40,6 +40,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -69,6 +70,12 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
     private final StoreDataManager dataManager;
 
+    private final GroupMembershipIndex membershipIndex;
+
+    private final Supplier<GroupMembershipGraph> membershipGraph;
+
+    private final ArtifactStoreIndex storeIndex;
+
     private String packageType = MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
 
     private Set<StoreType> types;
@@ -76,9 +83,18 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     private Boolean enabled;
 
     public DefaultArtifactStoreQuery( StoreDataManager dataManager )
+    {
+        this( dataManager, (GroupMembershipIndex) null, null, null );
+    }
+
+    public DefaultArtifactStoreQuery( StoreDataManager dataManager, GroupMembershipIndex membershipIndex,
+                                      Supplier<GroupMembershipGraph> membershipGraph, ArtifactStoreIndex storeIndex )
     {
         logger.debug( "CREATE new default store query with data manager only" );
         this.dataManager = dataManager;
+        this.membershipIndex = membershipIndex;
+        this.membershipGraph = membershipGraph;
+        this.storeIndex = storeIndex;
     }
 
     @SuppressWarnings( "unused" )
@@ -88,6 +104,9 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
         logger.debug( "CREATE new default store query with params (internal?)" );
 
         this.dataManager = dataManager;
+        this.membershipIndex = null;
+        this.membershipGraph = null;
+        this.storeIndex = null;
         this.packageType = packageType;
         this.enabled = enabled;
         storeType( storeCls );
@@ -161,6 +180,16 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     private Stream<T> stream( Predicate<ArtifactStore> filter )
             throws IndyDataException
     {
+        if ( storeIndex != null )
+        {
+            Stream<ArtifactStore> stores = storeIndex.stream( packageType, types, enabled );
+            if ( filter != null )
+            {
+                stores = stores.filter( filter );
+            }
+            return stores.map( store -> (T) store );
+        }
+
         /* @formatter:off */
         return dataManager.streamArtifactStores().filter( ( store ) ->
         {
@@ -224,6 +253,23 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     public T getByName( String name )
             throws IndyDataException
     {
+        if ( storeIndex != null )
+        {
+            for ( StoreKey key : storeIndex.getKeysByName( name ) )
+            {
+                if ( ( packageType == null || packageType.equals( key.getPackageType() ) ) && ( types == null
+                        || types.contains( key.getType() ) ) )
+                {
+                    ArtifactStore store = dataManager.getArtifactStore( key );
+                    if ( store != null && ( enabled == null || enabled != store.isDisabled() ) )
+                    {
+                        return (T) store;
+                    }
+                }
+            }
+            return null;
+        }
+
         return stream( store -> name.equals( store.getName() ) ).findFirst().orElse( null );
     }
 
@@ -236,14 +282,30 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
     @Override
     public Set<Group> getGroupsContaining( StoreKey storeKey )
+            throws IndyDataException
     {
         return getGroupsContaining( storeKey, Boolean.TRUE );
     }
 
     @Override
     public Set<Group> getGroupsContaining( StoreKey storeKey, Boolean enabled )
+            throws IndyDataException
     {
-        return getAllGroups( storeKey.getPackageType(), enabled ).stream().filter( g -> g.getConstituents().contains( storeKey ) ).collect( Collectors.toSet() );
+        if ( membershipGraph == null )
+        {
+            return getAllGroups( storeKey.getPackageType(), enabled ).stream().filter( g -> g.getConstituents().contains( storeKey ) ).collect( Collectors.toSet() );
+        }
+
+        final Set<Group> result = new HashSet<>();
+        for ( StoreKey groupKey : membershipGraph.get().getContainingGroups( storeKey ) )
+        {
+            final ArtifactStore store = dataManager.getArtifactStore( groupKey );
+            if ( store instanceof Group && enabled.equals( !store.isDisabled() ) )
+            {
+                result.add( (Group) store );
+            }
+        }
+        return result;
     }
 
     @Override
@@ -274,6 +336,11 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
         final UrlInfo urlInfo = temp;
 
+        if ( storeIndex != null )
+        {
+            return getRemoteRepositoryByUrlFromIndex( packageType, url, urlInfo, enabled );
+        }
+
         // first try to find the remote repo by urlWithNoSchemeAndLastSlash
         final List<RemoteRepository> remoteRepos = getAllRemoteRepositories( packageType, enabled );
         result = remoteRepos.stream().filter( store -> {
@@ -351,6 +418,64 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
         return result;
     }
 
+    private List<RemoteRepository> getRemoteRepositoryByUrlFromIndex( final String packageType, final String url,
+                                                                      final UrlInfo urlInfo, final Boolean enabled )
+    {
+        final Predicate<RemoteRepository> selected =
+                store -> packageType.equals( store.getPackageType() ) && enabled.equals( !store.isDisabled() );
+
+        List<RemoteRepository> result = storeIndex.getRemotesByUrl( urlInfo )
+                                                  .stream()
+                                                  .filter( r -> urlInfo.getProtocol()
+                                                                       .equals( r.getUrlInfo().getProtocol() ) )
+                                                  .map( ArtifactStoreIndex.RemoteUrl::getRepository )
+                                                  .filter( selected )
+                                                  .collect( Collectors.toList() );
+
+        if ( !result.isEmpty() )
+        {
+            logger.debug( "Repositories found because of same host, url is {}, store keys are {}", url, result );
+            return result;
+        }
+
+        // ...if not found by hostname try to search by IP
+        final String ipForUrl;
+        try
+        {
+            ipForUrl = urlInfo.getIpForUrl();
+        }
+        catch ( UnknownHostException ue )
+        {
+            logger.warn( "Failed to find repository by ip, url: '{}', ip fetch error: {}.", url, ue.getMessage() );
+            return emptyList();
+        }
+
+        if ( ipForUrl == null )
+        {
+            return emptyList();
+        }
+
+        return storeIndex.streamRemoteUrls( packageType ).filter( r -> selected.test( r.getRepository() ) ).filter( r -> {
+            final UrlInfo targetUrlInfo = r.getUrlInfo();
+            if ( urlInfo.getPort() != targetUrlInfo.getPort() || !urlInfo.getFileWithNoLastSlash()
+                                                                         .equals( targetUrlInfo.getFileWithNoLastSlash() ) )
+            {
+                return false;
+            }
+
+            try
+            {
+                return ipForUrl.equals( r.getIp() );
+            }
+            catch ( UnknownHostException ue )
+            {
+                logger.warn( "Failed to filter remote: {}, ip fetch error: {}.", r.getRepository().getKey(),
+                             ue.getMessage() );
+                return false;
+            }
+        } ).map( ArtifactStoreIndex.RemoteUrl::getRepository ).collect( Collectors.toList() );
+    }
+
     @Override
     public List<ArtifactStore> getOrderedConcreteStoresInGroup( final String packageType, final String groupName )
                     throws IndyDataException
@@ -438,6 +563,14 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     @Override
     public List<RemoteRepository> getAllRemoteRepositories( String packageType, Boolean enabled )
     {
+        if ( storeIndex != null )
+        {
+            return storeIndex.get( packageType, StoreType.remote, enabled )
+                             .stream()
+                             .map( item -> (RemoteRepository) item )
+                             .collect( Collectors.toList() );
+        }
+
         return dataManager.getArtifactStoresByPkgAndType( packageType, StoreType.remote )
                           .stream()
                           .filter( item -> enabled.equals( !item.isDisabled() ) )
@@ -454,6 +587,14 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     @Override
     public List<HostedRepository> getAllHostedRepositories( String packageType, Boolean enabled )
     {
+        if ( storeIndex != null )
+        {
+            return storeIndex.get( packageType, StoreType.hosted, enabled )
+                             .stream()
+                             .map( item -> (HostedRepository) item )
+                             .collect( Collectors.toList() );
+        }
+
         return dataManager.getArtifactStoresByPkgAndType( packageType, StoreType.hosted )
                           .stream()
                           .filter( item -> enabled.equals( !item.isDisabled() ) )
@@ -470,6 +611,14 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     @Override
     public List<Group> getAllGroups( String packageType, Boolean enabled )
     {
+        if ( storeIndex != null )
+        {
+            return storeIndex.get( packageType, group, enabled )
+                             .stream()
+                             .map( item -> (Group) item )
+                             .collect( Collectors.toList() );
+        }
+
         return dataManager.getArtifactStoresByPkgAndType( packageType, group )
                           .stream()
                           .filter( item -> enabled.equals( !item.isDisabled() ) )
@@ -486,7 +635,24 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
             throw new IndyDataException( "packageType must be set on the query before calling this method!" );
         }
 
-        final Group master = (Group) dataManager.getArtifactStore( new StoreKey( packageType, group, groupName ) );
+        final StoreKey groupKey = new StoreKey( packageType, group, groupName );
+        if ( membershipIndex == null )
+        {
+            return loadGroupOrdering( groupKey, enabled, includeGroups, recurseGroups, new HashSet<>() );
+        }
+
+        return membershipIndex.getOrdering( groupKey, enabled, includeGroups, recurseGroups,
+                                            visited -> loadGroupOrdering( groupKey, enabled, includeGroups,
+                                                                          recurseGroups, visited ) );
+    }
+
+    private List<ArtifactStore> loadGroupOrdering( final StoreKey groupKey, final Boolean enabled,
+                                                   final boolean includeGroups, final boolean recurseGroups,
+                                                   final Set<StoreKey> visited )
+            throws IndyDataException
+    {
+        visited.add( groupKey );
+        final Group master = (Group) dataManager.getArtifactStore( groupKey );
         if ( master == null )
         {
             return emptyList();
@@ -494,15 +660,17 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
         final List<ArtifactStore> result = new ArrayList<>();
 
-        return getMembersOrdering( master, enabled, result, includeGroups, recurseGroups );
+        return getMembersOrdering( master, enabled, result, includeGroups, recurseGroups, visited );
 
     }
 
-    private List<ArtifactStore> getMembersOrdering(final Group groupRepo, final Boolean enabled, final List<ArtifactStore> result,
-                                                   final boolean includeGroups, final boolean recurseGroups) throws IndyDataException
+    private List<ArtifactStore> getMembersOrdering( final Group groupRepo, final Boolean enabled,
+                                                    final List<ArtifactStore> result, final boolean includeGroups,
+                                                    final boolean recurseGroups, final Set<StoreKey> visited )
+            throws IndyDataException
     {
 
-        if ( groupRepo == null || groupRepo.isDisabled() && enabled )
+        if ( groupRepo == null || groupRepo.isDisabled() && Boolean.TRUE.equals( enabled ) )
         {
             return result;
         }
@@ -521,6 +689,8 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
             if (!seen.contains( key ))
             {
                 seen.add( key );
+                // record members even if they're missing or disabled, so adding / enabling them invalidates the ordering
+                visited.add( key );
                 final StoreType type = key.getType();
                 try
                 {
@@ -528,12 +698,13 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
                     {
                         // if we're here, we're definitely recursing groups...
                         Group group = (Group) dataManager.getArtifactStore(key);
-                        getMembersOrdering( group, enabled, result, includeGroups, recurseGroups );
+                        getMembersOrdering( group, enabled, result, includeGroups, recurseGroups, visited );
                     }
                     else
                     {
                         final ArtifactStore store = dataManager.getArtifactStore( key );
-                        if ( store != null && ( store.isDisabled() != enabled ) )
+                        // no enabled state means members are listed whether they are enabled or not
+                        if ( store != null && ( enabled == null || store.isDisabled() != enabled ) )
                         {
                             result.add( store );
                         }
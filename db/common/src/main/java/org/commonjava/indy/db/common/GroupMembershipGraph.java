@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory reverse adjacency map of group membership: for every store key, the keys of the groups that list it as a
+ * constituent. This lets affected-by calculations walk upward through the group tree in time proportional to the
+ * number of groups involved, instead of scanning every group for each key.
+ * <p>
+ * The graph also keeps its own copy of each group's constituents, and diffs updates against that copy rather than
+ * against the original instance handed to the data manager (which may have been modified in place).
+ * <p>
+ * Mutations are serialized on the graph instance; lookups read the concurrent maps without locking.
+ */
+public class GroupMembershipGraph
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<StoreKey, Set<StoreKey>> containedBy = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Set<StoreKey>> constituents = new ConcurrentHashMap<>();
+
+    private volatile boolean initialized;
+
+    public boolean isInitialized()
+    {
+        return initialized;
+    }
+
+    /**
+     * Replace the graph content with the memberships of the given stores, and start accepting incremental updates.
+     */
+    public synchronized void rebuild( final Collection<ArtifactStore> stores )
+    {
+        containedBy.clear();
+        constituents.clear();
+        if ( stores != null )
+        {
+            stores.stream().filter( s -> s instanceof Group ).forEach( s -> doUpdate( (Group) s ) );
+        }
+
+        initialized = true;
+        logger.info( "Group membership graph rebuilt, {} groups, {} member keys", constituents.size(),
+                     containedBy.size() );
+    }
+
+    public synchronized void clear()
+    {
+        containedBy.clear();
+        constituents.clear();
+    }
+
+    /**
+     * Record the current constituents of the stored group. Does nothing for non-group stores, whose storage can't
+     * change membership, or before the graph is initialized, since the initial build will see the stored group.
+     */
+    public synchronized void storeUpdated( final ArtifactStore store )
+    {
+        if ( initialized && store instanceof Group )
+        {
+            doUpdate( (Group) store );
+        }
+    }
+
+    /**
+     * Drop the outgoing edges of a deleted group. Groups that still list the deleted store as a constituent keep
+     * pointing at it, just like their definitions do.
+     */
+    public synchronized void storeDeleted( final StoreKey key )
+    {
+        if ( !initialized )
+        {
+            return;
+        }
+
+        final Set<StoreKey> members = constituents.remove( key );
+        if ( members != null )
+        {
+            members.forEach( member -> unlink( member, key ) );
+        }
+    }
+
+    /**
+     * @return keys of the groups directly listing the given store as a constituent
+     */
+    public Set<StoreKey> getContainingGroups( final StoreKey key )
+    {
+        final Set<StoreKey> groups = containedBy.get( key );
+        return groups == null ? Collections.emptySet() : Collections.unmodifiableSet( groups );
+    }
+
+    /**
+     * Breadth-first walk upward from the given keys.
+     *
+     * @return keys of all groups directly or indirectly containing any of the given stores. Groups in the input are
+     * only included if they are reached from another input key before being processed themselves.
+     */
+    public Set<StoreKey> getAffectedBy( final Collection<StoreKey> keys )
+    {
+        final Set<StoreKey> result = new LinkedHashSet<>();
+        final Set<StoreKey> processed = new HashSet<>();
+        final Deque<StoreKey> toProcess = new ArrayDeque<>( new LinkedHashSet<>( keys ) );
+
+        while ( !toProcess.isEmpty() )
+        {
+            final StoreKey next = toProcess.removeFirst();
+            if ( !processed.add( next ) )
+            {
+                continue;
+            }
+
+            final Set<StoreKey> groups = containedBy.get( next );
+            if ( groups == null )
+            {
+                continue;
+            }
+
+            for ( StoreKey group : groups )
+            {
+                if ( !processed.contains( group ) && result.add( group ) )
+                {
+                    toProcess.addLast( group );
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void doUpdate( final Group group )
+    {
+        final StoreKey groupKey = group.getKey();
+        final Set<StoreKey> updated =
+                group.getConstituents() == null ? new HashSet<>() : new HashSet<>( group.getConstituents() );
+
+        final Set<StoreKey> previous = constituents.put( groupKey, updated );
+        if ( previous != null )
+        {
+            previous.stream().filter( k -> !updated.contains( k ) ).forEach( k -> unlink( k, groupKey ) );
+        }
+
+        updated.forEach( k -> containedBy.computeIfAbsent( k, key -> ConcurrentHashMap.newKeySet() ).add( groupKey ) );
+    }
+
+    private void unlink( final StoreKey member, final StoreKey groupKey )
+    {
+        containedBy.computeIfPresent( member, ( k, groups ) -> {
+            groups.remove( groupKey );
+            return groups.isEmpty() ? null : groups;
+        } );
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Materialized, flattened membership of groups, as returned by
+ * {@link org.commonjava.indy.data.ArtifactStoreQuery#getOrderedConcreteStoresInGroup(String, String, Boolean)} and
+ * {@link org.commonjava.indy.data.ArtifactStoreQuery#getOrderedStoresInGroup(String, String, Boolean)}.
+ * <p>
+ * Each {@link Ordering} remembers every store key visited while it was built (the group itself, nested groups, and all
+ * members, including missing or disabled ones). When any of those stores is updated or deleted, {@link #invalidate(StoreKey)}
+ * drops exactly the orderings that depend on it, so a single store change doesn't throw away the whole index.
+ * <p>
+ * The index keeps a generation counter which is bumped on every invalidation. A load that overlaps an invalidation is
+ * returned to its caller but not cached, so a stale ordering can never be installed after the change that obsoleted it.
+ * <p>
+ * Orderings may also be given a lifespan, for callers whose store changes are not all seen by this node.
+ */
+public class GroupMembershipIndex
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<OrderingKey, Ordering> orderings = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Set<OrderingKey>> dependents = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Builds an ordering on cache miss. Implementations must add every store key they consult to the visited set.
+     */
+    @FunctionalInterface
+    public interface OrderingLoader
+    {
+        List<ArtifactStore> load( Set<StoreKey> visited )
+                throws IndyDataException;
+    }
+
+    /**
+     * Return the cached ordering for the given group and flags, or build (and cache) it using the given loader. The
+     * returned list is shared between callers and is read-only.
+     */
+    public List<ArtifactStore> getOrdering( final StoreKey groupKey, final Boolean enabled, final boolean includeGroups,
+                                            final boolean recurseGroups, final OrderingLoader loader )
+            throws IndyDataException
+    {
+        return getOrdering( groupKey, enabled, includeGroups, recurseGroups, 0, TimeUnit.MILLISECONDS, loader );
+    }
+
+    /**
+     * Same as {@link #getOrdering(StoreKey, Boolean, boolean, boolean, OrderingLoader)}, but a newly built ordering
+     * is only kept for the given lifespan. A lifespan of 0 or less keeps it until it is invalidated.
+     */
+    public List<ArtifactStore> getOrdering( final StoreKey groupKey, final Boolean enabled, final boolean includeGroups,
+                                            final boolean recurseGroups, final long lifespan, final TimeUnit unit,
+                                            final OrderingLoader loader )
+            throws IndyDataException
+    {
+        return getOrCompute( new OrderingKey( groupKey, enabled, includeGroups, recurseGroups ), lifespan, unit,
+                             loader ).getStores();
+    }
+
+    /**
+     * Same as {@link #getOrdering(StoreKey, Boolean, boolean, boolean, OrderingLoader)}, but returns the ordering
+     * handle itself so the caller can check {@link Ordering#isStale()} later on.
+     */
+    public Ordering getOrCompute( final OrderingKey key, final OrderingLoader loader )
+            throws IndyDataException
+    {
+        return getOrCompute( key, 0, TimeUnit.MILLISECONDS, loader );
+    }
+
+    private Ordering getOrCompute( final OrderingKey key, final long lifespan, final TimeUnit unit,
+                                   final OrderingLoader loader )
+            throws IndyDataException
+    {
+        Ordering ordering = orderings.get( key );
+        if ( ordering != null )
+        {
+            if ( !ordering.isExpired() )
+            {
+                return ordering;
+            }
+
+            logger.trace( "Group ordering expired: {}", key );
+            orderings.remove( key, ordering );
+        }
+
+        final long startGeneration = generation.get();
+        final Set<StoreKey> visited = ConcurrentHashMap.newKeySet();
+        visited.add( key.getGroupKey() );
+
+        final List<ArtifactStore> stores = loader.load( visited );
+        final long expiresAt = lifespan > 0 ? System.currentTimeMillis() + unit.toMillis( lifespan ) : Long.MAX_VALUE;
+        ordering = new Ordering( key, stores == null ? Collections.emptyList() : stores, visited, startGeneration,
+                                 expiresAt );
+
+        for ( StoreKey dep : visited )
+        {
+            dependents.computeIfAbsent( dep, k -> ConcurrentHashMap.newKeySet() ).add( key );
+        }
+
+        // if something was invalidated while we were loading, we can't tell whether our result saw the old or the
+        // new state, so hand it back to the caller without caching it.
+        if ( generation.get() == startGeneration )
+        {
+            orderings.put( key, ordering );
+            if ( generation.get() != startGeneration )
+            {
+                // lost a race with an invalidation that happened between the check and the put
+                orderings.remove( key, ordering );
+                ordering.markStale();
+            }
+        }
+        else
+        {
+            logger.debug( "Membership of {} changed while loading; not caching ordering", key.getGroupKey() );
+            ordering.markStale();
+        }
+
+        return ordering;
+    }
+
+    /**
+     * Drop every cached ordering that depends on the given store, because it was added, updated, disabled / enabled,
+     * or deleted.
+     */
+    public void invalidate( final StoreKey key )
+    {
+        if ( key == null )
+        {
+            return;
+        }
+
+        generation.incrementAndGet();
+
+        final Set<OrderingKey> affected = dependents.remove( key );
+        if ( affected == null )
+        {
+            return;
+        }
+
+        affected.forEach( orderingKey -> {
+            Ordering removed = orderings.remove( orderingKey );
+            if ( removed != null )
+            {
+                removed.markStale();
+                logger.trace( "Invalidated group ordering: {} (changed: {})", orderingKey, key );
+            }
+        } );
+    }
+
+    public void clear()
+    {
+        generation.incrementAndGet();
+        orderings.values().forEach( Ordering::markStale );
+        orderings.clear();
+        dependents.clear();
+    }
+
+    /**
+     * @return a counter that increases whenever any ordering may have become obsolete.
+     */
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
+    public int size()
+    {
+        return orderings.size();
+    }
+
+    public static final class OrderingKey
+    {
+        private final StoreKey groupKey;
+
+        private final Boolean enabled;
+
+        private final boolean includeGroups;
+
+        private final boolean recurseGroups;
+
+        public OrderingKey( final StoreKey groupKey, final Boolean enabled, final boolean includeGroups,
+                            final boolean recurseGroups )
+        {
+            this.groupKey = groupKey;
+            this.enabled = enabled;
+            this.includeGroups = includeGroups;
+            this.recurseGroups = recurseGroups;
+        }
+
+        public StoreKey getGroupKey()
+        {
+            return groupKey;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof OrderingKey ) )
+            {
+                return false;
+            }
+            final OrderingKey that = (OrderingKey) o;
+            return Objects.equals( enabled, that.enabled ) && includeGroups == that.includeGroups
+                    && recurseGroups == that.recurseGroups && Objects.equals( groupKey, that.groupKey );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( groupKey, enabled, includeGroups, recurseGroups );
+        }
+
+        @Override
+        public String toString()
+        {
+            return "OrderingKey{" + groupKey + ", enabled=" + enabled + ", includeGroups=" + includeGroups
+                    + ", recurseGroups=" + recurseGroups + '}';
+        }
+    }
+
+    public static final class Ordering
+    {
+        private final OrderingKey key;
+
+        private final List<ArtifactStore> stores;
+
+        private final Set<StoreKey> dependencies;
+
+        private final long generation;
+
+        private final long expiresAt;
+
+        private volatile boolean stale;
+
+        private Ordering( final OrderingKey key, final List<ArtifactStore> stores, final Set<StoreKey> dependencies,
+                          final long generation, final long expiresAt )
+        {
+            this.key = key;
+            this.stores = Collections.unmodifiableList( stores );
+            this.dependencies = Collections.unmodifiableSet( dependencies );
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+
+        public OrderingKey getKey()
+        {
+            return key;
+        }
+
+        public List<ArtifactStore> getStores()
+        {
+            return stores;
+        }
+
+        public Set<StoreKey> getDependencies()
+        {
+            return dependencies;
+        }
+
+        /**
+         * @return the index generation this ordering was built against
+         */
+        public long getGeneration()
+        {
+            return generation;
+        }
+
+        /**
+         * @return true once any store this ordering was built from has changed
+         */
+        public boolean isStale()
+        {
+            return stale;
+        }
+
+        private boolean isExpired()
+        {
+            return expiresAt <= System.currentTimeMillis();
+        }
+
+        private void markStale()
+        {
+            stale = true;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.commonjava.indy.data.NoOpStoreEventDispatcher;
 import org.commonjava.indy.db.common.inject.Standalone;
 import org.commonjava.indy.data.StoreEventDispatcher;
 import org.commonjava.indy.db.common.AbstractStoreDataManager;
+import org.commonjava.indy.db.common.ArtifactStoreIndex;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
@@ -78,6 +79,11 @@ public class InfinispanStoreDataManager
     @Inject
     private IndyConfiguration indyConfiguration;
 
+    private final ArtifactStoreIndex storeIndex = new ArtifactStoreIndex();
+
+    // the index is only complete once it's rebuilt from the (possibly persisted) store cache, see initByPkgMap()
+    private volatile boolean storeIndexReady;
+
     @Override
     protected StoreEventDispatcher getStoreEventDispatcher()
     {
@@ -97,6 +103,8 @@ public class InfinispanStoreDataManager
         this.storesByPkg = new CacheHandle( STORE_BY_PKG_CACHE, storesByPkg );
         this.affectedByStores = new CacheHandle( AFFECTED_BY_STORE_CACHE, affectedByStoresCache );
         logger.warn( "Constructor init: STARTUP ACTIONS MAY NOT RUN." );
+        storeIndex.rebuild( getAllArtifactStores() );
+        storeIndexReady = true;
     }
 
     @Override
@@ -109,6 +117,7 @@ public class InfinispanStoreDataManager
     protected synchronized ArtifactStore removeArtifactStoreInternal( StoreKey key )
     {
         final ArtifactStore store = stores.remove( key );
+        storeIndex.remove( store );
         final Map<StoreType, Set<StoreKey>> typedKeys = storesByPkg.get( key.getPackageType() );
         if ( typedKeys != null )
         {
@@ -126,9 +135,12 @@ public class InfinispanStoreDataManager
     {
         //TODO: I'm really concern if we need this implementation as we don't know if ISPN will clean all persistent entries!!!
         stores.clear();
+        storeIndex.clear();
         storesByPkg.clear();
         affectedByStores.clear();
         storesByPkg.clear();
+        groupMembershipIndex.clear();
+        groupMembershipGraph.clear();
     }
 
     @Override
@@ -176,6 +188,7 @@ public class InfinispanStoreDataManager
     protected synchronized ArtifactStore putArtifactStoreInternal( StoreKey storeKey, ArtifactStore store )
     {
         final ArtifactStore added = stores.put( storeKey, store );
+        storeIndex.put( store, added );
         final Map<StoreType, Set<StoreKey>> typedKeys =
                 storesByPkg.computeIfAbsent( storeKey.getPackageType(), k -> new HashMap<>() );
         final Set<StoreKey> keys = typedKeys.computeIfAbsent( storeKey.getType(), k -> new HashSet<>() );
@@ -280,11 +293,22 @@ public class InfinispanStoreDataManager
     @Override
     public Set<ArtifactStore> getArtifactStoresByPkgAndType( String packageType, StoreType storeType )
     {
-        return stores.executeCache( c -> c.values()
-                                          .stream()
-                                          .filter( item -> packageType.equals( item.getPackageType() )
-                                                          && storeType.equals( item.getType() ) ) )
-                     .collect( Collectors.toSet() );
+        if ( !storeIndexReady )
+        {
+            return stores.executeCache( c -> c.values()
+                                              .stream()
+                                              .filter( item -> packageType.equals( item.getPackageType() )
+                                                              && storeType.equals( item.getType() ) ) )
+                         .collect( Collectors.toSet() );
+        }
+
+        return new HashSet<>( storeIndex.get( packageType, storeType, null ) );
+    }
+
+    @Override
+    protected ArtifactStoreIndex getArtifactStoreIndex()
+    {
+        return storeIndexReady ? storeIndex : null;
     }
 
     @Override
@@ -331,6 +355,8 @@ public class InfinispanStoreDataManager
         }
 
         final Set<ArtifactStore> allStores = getAllArtifactStores();
+        storeIndex.rebuild( allStores );
+        storeIndexReady = true;
         logger.info( "There are {} stores need to fill in stores-by-pkg cache", allStores.size() );
         for ( ArtifactStore store : allStores )
         {
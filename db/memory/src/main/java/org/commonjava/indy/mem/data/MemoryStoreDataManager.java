@@ -22,6 +22,7 @@ import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.NoOpStoreEventDispatcher;
 import org.commonjava.indy.data.StoreEventDispatcher;
 import org.commonjava.indy.db.common.AbstractStoreDataManager;
+import org.commonjava.indy.db.common.ArtifactStoreIndex;
 import org.commonjava.indy.db.common.inject.Standalone;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.StoreKey;
@@ -37,7 +38,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @ApplicationScoped
@@ -49,6 +49,8 @@ public class MemoryStoreDataManager
 
     private final Map<StoreKey, ArtifactStore> stores = new ConcurrentHashMap<>();
 
+    private final ArtifactStoreIndex storeIndex = new ArtifactStoreIndex();
+
     @Inject
     private StoreEventDispatcher dispatcher;
 
@@ -105,7 +107,9 @@ public class MemoryStoreDataManager
     @Override
     protected ArtifactStore removeArtifactStoreInternal( StoreKey key )
     {
-        return stores.remove( key );
+        final ArtifactStore removed = stores.remove( key );
+        storeIndex.remove( removed );
+        return removed;
     }
 
     @Override
@@ -119,6 +123,9 @@ public class MemoryStoreDataManager
             throws IndyDataException
     {
         stores.clear();
+        storeIndex.clear();
+        groupMembershipIndex.clear();
+        groupMembershipGraph.clear();
     }
 
     @Override
@@ -167,17 +174,21 @@ public class MemoryStoreDataManager
     @Override
     public Set<ArtifactStore> getArtifactStoresByPkgAndType( String packageType, StoreType storeType )
     {
-        return stores.values()
-                     .stream()
-                     .filter( item -> packageType.equals( item.getPackageType() ) && storeType.equals(
-                                     item.getType() ) )
-                     .collect( Collectors.toSet() );
+        return new HashSet<>( storeIndex.get( packageType, storeType, null ) );
     }
 
     @Override
     protected ArtifactStore putArtifactStoreInternal( StoreKey storeKey, ArtifactStore store )
     {
-        return stores.put( storeKey, store );
+        final ArtifactStore previous = stores.put( storeKey, store );
+        storeIndex.put( store, previous );
+        return previous;
+    }
+
+    @Override
+    protected ArtifactStoreIndex getArtifactStoreIndex()
+    {
+        return storeIndex;
     }
 
     @Override
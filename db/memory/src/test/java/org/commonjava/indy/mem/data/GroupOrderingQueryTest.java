@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.mem.data;
+
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GroupOrderingQueryTest
+{
+    private MemoryStoreDataManager manager;
+
+    private HostedRepository hosted;
+
+    private RemoteRepository disabledRemote;
+
+    private Group nested;
+
+    private Group group;
+
+    @Before
+    public void setup()
+    {
+        manager = new MemoryStoreDataManager( true );
+
+        hosted = new HostedRepository( PKG_TYPE_MAVEN, "hosted" );
+        disabledRemote = new RemoteRepository( PKG_TYPE_MAVEN, "remote", "http://foo.bar/" );
+        disabledRemote.setDisabled( true );
+        nested = new Group( PKG_TYPE_MAVEN, "nested", disabledRemote.getKey() );
+        group = new Group( PKG_TYPE_MAVEN, "public", hosted.getKey(), nested.getKey() );
+
+        for ( ArtifactStore store : Arrays.asList( hosted, disabledRemote, nested, group ) )
+        {
+            manager.putArtifactStoreInternal( store.getKey(), store );
+        }
+    }
+
+    @Test
+    public void orderingWithoutEnabledStateListsAllMembers()
+            throws Exception
+    {
+        assertThat( keys( manager.query().getOrderedConcreteStoresInGroup( PKG_TYPE_MAVEN, "public", null ) ),
+                    equalTo( Arrays.asList( hosted.getKey(), disabledRemote.getKey() ) ) );
+        assertThat( keys( manager.query().getOrderedStoresInGroup( PKG_TYPE_MAVEN, "public", null ) ),
+                    equalTo( Arrays.asList( group.getKey(), hosted.getKey(), nested.getKey() ) ) );
+    }
+
+    @Test
+    public void orderingsWithAndWithoutEnabledStateAreKeptApart()
+            throws Exception
+    {
+        assertThat( keys( manager.query().getOrderedConcreteStoresInGroup( PKG_TYPE_MAVEN, "public", true ) ),
+                    equalTo( Arrays.asList( hosted.getKey() ) ) );
+        assertThat( keys( manager.query().getOrderedConcreteStoresInGroup( PKG_TYPE_MAVEN, "public", null ) ),
+                    equalTo( Arrays.asList( hosted.getKey(), disabledRemote.getKey() ) ) );
+        assertThat( keys( manager.query().getOrderedConcreteStoresInGroup( PKG_TYPE_MAVEN, "public", false ) ),
+                    equalTo( Arrays.asList( disabledRemote.getKey() ) ) );
+    }
+
+    private static List<StoreKey> keys( final List<ArtifactStore> stores )
+    {
+        return stores.stream().map( ArtifactStore::getKey ).collect( Collectors.toList() );
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.mem.data;
+
+import org.commonjava.indy.data.ArtifactStoreQuery;
+import org.commonjava.indy.db.common.DefaultArtifactStoreQuery;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Compares query latency of the indexed {@link DefaultArtifactStoreQuery} with the stream-filtering one over a data
+ * manager without indexes, over 50k stores. Timings are only logged; the assertions check both paths agree.
+ */
+public class StoreQueryIndexLatencyTest
+{
+    private static final int STORE_COUNT = 50_000;
+
+    private static final int ROUNDS = 20;
+
+    private static final Logger logger = LoggerFactory.getLogger( StoreQueryIndexLatencyTest.class );
+
+    private static MemoryStoreDataManager manager;
+
+    private static MemoryStoreDataManager scanningManager;
+
+    @BeforeClass
+    public static void populate()
+    {
+        manager = new MemoryStoreDataManager( true );
+        scanningManager = new ScanningStoreDataManager();
+        for ( int i = 0; i < STORE_COUNT; i++ )
+        {
+            final String pkg = i % 10 == 0 ? PKG_TYPE_NPM : PKG_TYPE_MAVEN;
+            final ArtifactStore store;
+            switch ( i % 3 )
+            {
+                case 0:
+                    store = new RemoteRepository( pkg, "remote-" + i, "http://repo-" + i + ".example.com/repo/" );
+                    break;
+                case 1:
+                    store = new HostedRepository( pkg, "hosted-" + i );
+                    break;
+                default:
+                    store = new Group( pkg, "group-" + i );
+            }
+            store.setDisabled( i % 7 == 0 );
+            manager.putArtifactStoreInternal( store.getKey(), store );
+            scanningManager.putArtifactStoreInternal( store.getKey(), store );
+        }
+    }
+
+    @Test
+    public void remotesByPackage()
+            throws Exception
+    {
+        compare( "getAllRemoteRepositories(npm)", q -> sorted( q.getAllRemoteRepositories( PKG_TYPE_NPM ) ) );
+    }
+
+    @Test
+    public void byName()
+            throws Exception
+    {
+        compare( "getByName", q -> q.getByName( "hosted-49999" ) );
+    }
+
+    @Test
+    public void remoteByUrl()
+            throws Exception
+    {
+        compare( "getRemoteRepositoryByUrl",
+                 q -> sorted( q.getRemoteRepositoryByUrl( PKG_TYPE_MAVEN, "http://repo-49998.example.com/repo" ) ) );
+    }
+
+    @Test
+    public void disabledConcreteStores()
+            throws Exception
+    {
+        compare( "getAll(concrete, disabled)", q -> sorted( q.concreteStores().enabledState( false ).getAll() ) );
+    }
+
+    private static List<String> sorted( List<? extends ArtifactStore> stores )
+    {
+        return stores.stream()
+                     .map( s -> s.getKey().toString() )
+                     .sorted( Comparator.naturalOrder() )
+                     .collect( Collectors.toList() );
+    }
+
+    private void compare( String name, QueryCall call )
+            throws Exception
+    {
+        final Object indexed = call.run( manager.query() );
+        final Object scanned = call.run( new DefaultArtifactStoreQuery<>( scanningManager ) );
+        assertThat( name, indexed, equalTo( scanned ) );
+
+        final long indexedNanos = time( () -> call.run( manager.query() ) );
+        final long scannedNanos = time( () -> call.run( new DefaultArtifactStoreQuery<>( scanningManager ) ) );
+
+        logger.info( "{} over {} stores: indexed {} us/query, scanned {} us/query", name, STORE_COUNT,
+                     indexedNanos / ROUNDS / 1000, scannedNanos / ROUNDS / 1000 );
+    }
+
+    private long time( Callable<?> call )
+            throws Exception
+    {
+        final long start = System.nanoTime();
+        for ( int i = 0; i < ROUNDS; i++ )
+        {
+            call.call();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Answers package and type lookups by scanning all stores, as before the store index existed.
+     */
+    private static final class ScanningStoreDataManager
+            extends MemoryStoreDataManager
+    {
+        ScanningStoreDataManager()
+        {
+            super( true );
+        }
+
+        @Override
+        public Set<ArtifactStore> getArtifactStoresByPkgAndType( String packageType, StoreType storeType )
+        {
+            return getArtifactStoresByKey().values()
+                                           .stream()
+                                           .filter( item -> packageType.equals( item.getPackageType() )
+                                                           && storeType.equals( item.getType() ) )
+                                           .collect( Collectors.toSet() );
+        }
+    }
+
+    @FunctionalInterface
+    private interface QueryCall
+    {
+        Object run( ArtifactStoreQuery<ArtifactStore> query )
+                throws Exception;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.mem.data;
+
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreType;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StoreQueryIndexTest
+{
+    @Test
+    public void enabledStateIsReadFromTheStoreItself()
+            throws Exception
+    {
+        final MemoryStoreDataManager manager = new MemoryStoreDataManager( true );
+        final RemoteRepository remote = new RemoteRepository( PKG_TYPE_MAVEN, "central", "http://foo.bar/" );
+        final HostedRepository hosted = new HostedRepository( PKG_TYPE_MAVEN, "local" );
+        manager.putArtifactStoreInternal( remote.getKey(), remote );
+        manager.putArtifactStoreInternal( hosted.getKey(), hosted );
+
+        // e.g. a disable timeout flips the flag on the stored instance
+        remote.setDisabled( true );
+
+        assertThat( manager.query().getAllRemoteRepositories( PKG_TYPE_MAVEN, true ).isEmpty(), equalTo( true ) );
+        assertThat( manager.query().getAllRemoteRepositories( PKG_TYPE_MAVEN, false ),
+                    equalTo( Collections.singletonList( remote ) ) );
+
+        final List<ArtifactStore> enabled = manager.query()
+                                                   .storeTypes( StoreType.remote, StoreType.hosted )
+                                                   .enabledState( true )
+                                                   .getAll();
+        assertThat( enabled, equalTo( Collections.singletonList( hosted ) ) );
+        assertThat( manager.getArtifactStoresByPkgAndType( PKG_TYPE_MAVEN, StoreType.remote ).size(), equalTo( 1 ) );
+    }
+}
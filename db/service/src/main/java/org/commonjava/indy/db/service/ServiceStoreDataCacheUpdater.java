@@ -18,13 +18,13 @@ package org.commonjava.indy.db.service;
 import org.commonjava.cdi.util.weft.NamedThreadFactory;
 import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
 import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.db.common.GroupMembershipGraph;
+import org.commonjava.indy.db.common.inject.Serviced;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
-import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
 import org.commonjava.indy.subsys.infinispan.CacheProducer;
-import org.infinispan.commons.api.BasicCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,7 +33,8 @@ import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -57,6 +58,10 @@ public class ServiceStoreDataCacheUpdater
     @Inject
     private CacheProducer cacheProducer;
 
+    @Inject
+    @Serviced
+    private ServiceStoreDataManager serviceStoreDataManager;
+
     private final ExecutorService cacheUpdateExecutor = Executors.newFixedThreadPool( 2, new NamedThreadFactory(
             "service-data-cache-update-executor", new ThreadGroup( "service-data-cache-update-executor" ), true, 3 ) );
 
@@ -73,7 +78,10 @@ public class ServiceStoreDataCacheUpdater
                     logger.info( "Fresh the store cache on add event, newStore:{}, disabled:{}", newStore,
                                  newStore.isDisabled() );
                     storeCache.put( newStore.getKey(), newStore );
+                    serviceStoreDataManager.getStoreCacheMembership().storeUpdated( newStore );
+                    obsoleteNearCache( newStore.getKey() );
                     obsoleteQueryCache( newStore.getKey() );
+                    obsoleteGroupMembership( newStore.getKey() );
                 }
             }
             else
@@ -90,9 +98,14 @@ public class ServiceStoreDataCacheUpdater
                                 originalStore, originalStore.isDisabled(), newStore, newStore.isDisabled() );
                         storeCache.remove( originalStore.getKey() );
                         storeCache.put( newStore.getKey(), newStore );
+                        serviceStoreDataManager.getStoreCacheMembership().storeUpdated( newStore );
                     }
 
+                    obsoleteNearCache( originalStore.getKey() );
+                    obsoleteNearCache( newStore.getKey() );
+
                     obsoleteQueryCache( newStore.getKey() );
+                    obsoleteGroupMembership( newStore.getKey() );
                 }
             }
         } );
@@ -104,24 +117,28 @@ public class ServiceStoreDataCacheUpdater
         final BasicCacheHandle<StoreKey, ArtifactStore> storeCache =
                 cacheProducer.getBasicCache( ServiceStoreDataManager.ARTIFACT_STORE );
         cacheUpdateExecutor.execute( () -> {
+            final GroupMembershipGraph membership = serviceStoreDataManager.getStoreCacheMembership();
             for ( ArtifactStore deleted : deleteEvent.getStores() )
             {
-                storeCache.execute( ( cache ) -> {
-                    logger.info( "Fresh store cache on delete event, deleted: {}", deleted );
-                    cache.remove( deleted.getKey() );
-                    cache.values()
-                         .stream()
-                         .filter( ( store ) -> store.getType() == StoreType.group )
-                         .forEach( ( store ) -> {
-                             List<StoreKey> storeList = ( (Group) store ).getConstituents();
-                             List<StoreKey> stores = new ArrayList<>( storeList );
-                             stores.remove( deleted.getKey() );
-                             ( (Group) store ).setConstituents( stores );
-                         } );
-                    return null;
-                } );
+                logger.info( "Fresh store cache on delete event, deleted: {}", deleted );
+                storeCache.remove( deleted.getKey() );
+                obsoleteNearCache( deleted.getKey() );
+                for ( StoreKey groupKey : new ArrayList<>( membership.getContainingGroups( deleted.getKey() ) ) )
+                {
+                    obsoleteNearCache( groupKey );
+                    final ArtifactStore store = storeCache.get( groupKey );
+                    if ( store instanceof Group )
+                    {
+                        List<StoreKey> stores = new ArrayList<>( ( (Group) store ).getConstituents() );
+                        stores.remove( deleted.getKey() );
+                        ( (Group) store ).setConstituents( stores );
+                        membership.storeUpdated( store );
+                    }
+                }
+                membership.storeDeleted( deleted.getKey() );
 
                 obsoleteQueryCache( deleted.getKey() );
+                obsoleteGroupMembership( deleted.getKey() );
             }
         } );
 
@@ -129,7 +146,10 @@ public class ServiceStoreDataCacheUpdater
 
     /**
      * For ServiceStoreQuery cache, we need to clear the related entry if any store event happened and
-     * let the query refresh from remote repository service
+     * let the query refresh from remote repository service. The entries to clear are looked up in
+     * {@link StoreQueryCacheIndex}, which knows the stores each cached query result was computed from.
+     * The entries of the groups affected by the store (as far as the store cache knows them) are cleared too, in case
+     * a result was cached without it as a dependency.
      *
      * @param storeKey
      */
@@ -137,47 +157,37 @@ public class ServiceStoreDataCacheUpdater
     {
         final BasicCacheHandle<Object, Collection<ArtifactStore>> queryCache =
                 cacheProducer.getBasicCache( ServiceStoreQuery.ARTIFACT_STORE_QUERY );
-        queryCache.execute( ( cache ) -> {
-            Collection<ArtifactStore> affectedGroups = new HashSet<>();
-            for ( Map.Entry<Object, Collection<ArtifactStore>> entry : cache.entrySet() )
-            {
-                Object key = entry.getKey();
-                // This is for getGroupsAffectedBy query cache
-                if ( key instanceof Set && ( (Set) key ).contains( storeKey ) )
-                {
-                    logger.info( "Fresh the store query cache, removed: {}", storeKey );
-                    affectedGroups.addAll( cache.get( key ) );
-                    cache.remove( key );
-                }
-                // This is for getOrderedConcreteStoresInGroup query cache
-                clearOrderedConcreteStoresCache( key, storeKey, cache );
-            }
+        final StoreQueryCacheIndex index = serviceStoreDataManager.getQueryCacheIndex();
 
-            // This is for affectedGroups' getOrderedConcreteStoresInGroup query cache
-            for ( ArtifactStore group : affectedGroups )
+        final Set<StoreKey> changed = new LinkedHashSet<>();
+        changed.add( storeKey );
+        changed.addAll(
+                serviceStoreDataManager.getStoreCacheMembership().getAffectedBy( Collections.singleton( storeKey ) ) );
+        for ( StoreKey changedKey : changed )
+        {
+            for ( Object key : index.invalidate( changedKey ) )
             {
-                logger.info( "Fresh the store query cache for affectedGroups, removed: {}", storeKey );
-                for ( Map.Entry<Object, Collection<ArtifactStore>> entry : cache.entrySet() )
-                {
-                    Object key = entry.getKey();
-                    clearOrderedConcreteStoresCache( key, group.getKey(), cache );
-
-                }
+                logger.info( "Fresh the store query cache, removed: {} (changed: {})", key, storeKey );
+                queryCache.remove( key );
             }
-            return null;
-        } );
+        }
     }
 
-    private void clearOrderedConcreteStoresCache( Object key, StoreKey storeKey,
-                                                  BasicCache<Object, Collection<ArtifactStore>> cache )
+    /**
+     * The node-local store cache of ServiceStoreDataManager sits in front of the store cache updated here, so drop its
+     * entry and let the next lookup read the updated store cache.
+     */
+    private void obsoleteNearCache( StoreKey storeKey )
     {
-        final boolean isConcreteStoreCache =
-                storeKey.getType() == StoreType.group && key instanceof String && ( (String) key ).contains(
-                        String.format( "%s:%s", storeKey.getPackageType(), storeKey.getName() ) );
-        if ( isConcreteStoreCache )
-        {
-            logger.info( "Fresh the concrete stores query cache, removed: {}", storeKey );
-            cache.remove( key );
-        }
+        serviceStoreDataManager.getStoreNearCache().invalidate( storeKey );
+    }
+
+    /**
+     * Drop the flattened group memberships (see {@link org.commonjava.indy.db.common.GroupMembershipIndex}) that were
+     * built using the changed store.
+     */
+    private void obsoleteGroupMembership( StoreKey storeKey )
+    {
+        serviceStoreDataManager.getGroupMembershipIndex().invalidate( storeKey );
     }
 }
@@ -15,6 +15,7 @@
  */
 package org.commonjava.indy.db.service;
 
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.audit.ChangeSummary;
 import org.commonjava.indy.client.core.Indy;
@@ -26,6 +27,7 @@ import org.commonjava.indy.data.NoOpStoreEventDispatcher;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.data.StoreEventDispatcher;
 import org.commonjava.indy.db.common.AbstractStoreDataManager;
+import org.commonjava.indy.db.common.GroupMembershipGraph;
 import org.commonjava.indy.db.common.StoreUpdateAction;
 import org.commonjava.indy.db.common.inject.Serviced;
 import org.commonjava.indy.model.core.ArtifactStore;
@@ -35,12 +37,16 @@ import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
 import org.commonjava.indy.subsys.infinispan.CacheProducer;
+import org.commonjava.indy.subsys.service.config.RepositoryServiceConfig;
 import org.commonjava.indy.subsys.service.inject.ServiceClient;
 import org.commonjava.indy.util.ApplicationStatus;
 import org.commonjava.maven.galley.event.EventMetadata;
+import org.infinispan.Cache;
+import org.infinispan.client.hotrod.RemoteCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.util.Collection;
@@ -48,9 +54,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -76,19 +82,35 @@ public class ServiceStoreDataManager
     @Inject
     private CacheProducer cacheProducer;
 
+    @Inject
+    private RepositoryServiceConfig serviceConfig;
+
     private ServiceStoreQuery<ArtifactStore> serviceStoreQuery;
 
     final static String ARTIFACT_STORE = "artifact-store";
 
     private final Integer STORE_EXPIRATION_IN_MINS = 15;
 
+    private final ExecutorService storeRefreshExecutor = Executors.newFixedThreadPool( 2, new NamedThreadFactory(
+            "service-store-refresh-executor", new ThreadGroup( "service-store-refresh-executor" ), true, 3 ) );
+
+    private final StoreNearCache nearCache =
+            new StoreNearCache( STORE_EXPIRATION_IN_MINS, TimeUnit.MINUTES, storeRefreshExecutor );
+
+    private final StoreQueryCacheIndex queryCacheIndex = new StoreQueryCacheIndex();
+
+    private final GroupMembershipGraph storeCacheMembership = new GroupMembershipGraph();
+
     @SuppressWarnings( "unused" )
     ServiceStoreDataManager()
     {
+        // only follows the groups put into the ARTIFACT_STORE cache, so it starts out empty
+        storeCacheMembership.rebuild( null );
     }
 
     ServiceStoreDataManager( final CacheProducer cacheProducer )
     {
+        this();
         this.cacheProducer = cacheProducer;
     }
 
@@ -98,6 +120,44 @@ public class ServiceStoreDataManager
         this.client = client;
     }
 
+    @PostConstruct
+    public void init()
+    {
+        if ( serviceConfig != null && serviceConfig.getStoreCacheRefreshAhead() > 0 )
+        {
+            logger.info( "Store cache refresh-ahead enabled, {}s before expiration",
+                         serviceConfig.getStoreCacheRefreshAhead() );
+            nearCache.setRefreshAhead( serviceConfig.getStoreCacheRefreshAhead(), TimeUnit.SECONDS );
+        }
+
+        if ( cacheProducer != null )
+        {
+            final BasicCacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getBasicCache( ARTIFACT_STORE );
+            final StoreCacheMembershipListener listener = new StoreCacheMembershipListener( this::storeCacheDropped );
+            if ( cache.getCache() instanceof RemoteCache )
+            {
+                ( (RemoteCache) cache.getCache() ).addClientListener( listener );
+            }
+            else
+            {
+                ( (Cache) cache.getCache() ).addListener( listener );
+            }
+        }
+    }
+
+    /**
+     * Prune the edges of a store dropped from the {@link #ARTIFACT_STORE} cache, unless it was put back in the
+     * meantime (updates remove and re-put the store, and record its membership after the put).
+     */
+    void storeCacheDropped( final StoreKey key )
+    {
+        if ( cacheProducer.getBasicCache( ARTIFACT_STORE ).get( key ) == null )
+        {
+            logger.debug( "Store {} dropped from store cache, pruning its group membership", key );
+            storeCacheMembership.storeDeleted( key );
+        }
+    }
+
     @Override
     protected StoreEventDispatcher getStoreEventDispatcher()
     {
@@ -118,51 +178,59 @@ public class ServiceStoreDataManager
 
     private ArtifactStore doQueryArtifactStoreInternal( StoreKey key, boolean forceQuery )
     {
-        AtomicReference<IndyDataException> eHolder = new AtomicReference<>();
-        ArtifactStore store = computeIfAbsent( key, () -> {
-            try
-            {
-                return client.module( IndyStoresClientModule.class ).load( key, key.getType().getStoreClass() );
-            }
-            catch ( IndyClientException e )
-            {
-                eHolder.set( new IndyDataException( "Failed to get store %s", e, key ) );
-                return null;
-            }
-        }, STORE_EXPIRATION_IN_MINS, forceQuery );
-        if ( eHolder.get() != null )
+        try
         {
-            logger.error( "Can not get ArtifactStore for {} due to: {}", key, eHolder.get().getMessage() );
-            throw new RuntimeException( eHolder.get() );
+            return computeIfAbsent( key, () -> {
+                try
+                {
+                    return client.module( IndyStoresClientModule.class ).load( key, key.getType().getStoreClass() );
+                }
+                catch ( IndyClientException e )
+                {
+                    throw new IndyDataException( "Failed to get store %s", e, key );
+                }
+            }, STORE_EXPIRATION_IN_MINS, forceQuery );
+        }
+        catch ( IndyDataException e )
+        {
+            logger.error( "Can not get ArtifactStore for {} due to: {}", key, e.getMessage() );
+            throw new RuntimeException( e );
         }
-        return store;
     }
 
     protected ArtifactStore putArtifactStoreInternal( StoreKey key, ArtifactStore store )
     {
-        return computeIfAbsent( key, () -> {
-            try
-            {
-                Class<ArtifactStore> storeCls = (Class<ArtifactStore>) key.getType().getStoreClass();
-                String changelog = store.getMetadata( METADATA_CHANGELOG );
-                if ( isBlank(changelog) )
+        try
+        {
+            return computeIfAbsent( key, () -> {
+                try
                 {
-                    changelog = String.format( "Create store %s", key );
+                    Class<ArtifactStore> storeCls = (Class<ArtifactStore>) key.getType().getStoreClass();
+                    String changelog = store.getMetadata( METADATA_CHANGELOG );
+                    if ( isBlank(changelog) )
+                    {
+                        changelog = String.format( "Create store %s", key );
+                    }
+                    client.module( IndyStoresClientModule.class ).create( store, changelog, storeCls );
+                    return store;
                 }
-                client.module( IndyStoresClientModule.class ).create( store, changelog, storeCls );
-                return store;
-            }
-            catch ( IndyClientException e )
-            {
-                throw new RuntimeException( e );
-            }
-        }, STORE_EXPIRATION_IN_MINS, Boolean.TRUE );
+                catch ( IndyClientException e )
+                {
+                    throw new RuntimeException( e );
+                }
+            }, STORE_EXPIRATION_IN_MINS, Boolean.TRUE );
+        }
+        catch ( IndyDataException e )
+        {
+            throw new RuntimeException( e );
+        }
     }
 
     @Override
     public void clear( ChangeSummary summary )
     {
         cacheProducer.getBasicCache( ARTIFACT_STORE ).clear();
+        nearCache.clear();
         // I don't think we should call this on remote repository service level, so just log here
         logger.warn( "Will not call this clear method on remote repository service for safety consideration." );
     }
@@ -403,6 +471,10 @@ public class ServiceStoreDataManager
         {
             logger.error( "Cannot delete ArtifactStore {} due to: {}", key, e.getMessage() );
         }
+        finally
+        {
+            nearCache.invalidate( key );
+        }
     }
 
     @Override
@@ -422,6 +494,32 @@ public class ServiceStoreDataManager
         return this.client;
     }
 
+    /**
+     * @return the node-local store cache in front of the {@link #ARTIFACT_STORE} cache, including its hit / miss /
+     * coalesced load counters.
+     */
+    public StoreNearCache getStoreNearCache()
+    {
+        return nearCache;
+    }
+
+    /**
+     * @return the index of which {@link ServiceStoreQuery#ARTIFACT_STORE_QUERY} cache entries depend on which stores
+     */
+    public StoreQueryCacheIndex getQueryCacheIndex()
+    {
+        return queryCacheIndex;
+    }
+
+    /**
+     * @return membership of the groups put into the {@link #ARTIFACT_STORE} cache, to find the cached groups listing a
+     * given store without walking the cache
+     */
+    public GroupMembershipGraph getStoreCacheMembership()
+    {
+        return storeCacheMembership;
+    }
+
     @Override
     protected void postStore( final ArtifactStore store, final ArtifactStore original, final ChangeSummary summary,
                               final boolean exists, final boolean fireEvents, final EventMetadata eventMetadata )
@@ -431,30 +529,60 @@ public class ServiceStoreDataManager
         logger.info( "Remove from store cache, {}", store.getKey() );
         BasicCacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getBasicCache( ARTIFACT_STORE );
         cache.remove( store.getKey() );
+        nearCache.invalidate( store.getKey() );
     }
 
-    private ArtifactStore computeIfAbsent( StoreKey key, Supplier<ArtifactStore> storeProvider, int expirationMins,
+    /**
+     * Look the store up in the near-cache, then in the {@link #ARTIFACT_STORE} cache, and finally load it with the
+     * given provider. Concurrent loads of the same key are coalesced into one provider call. When forceQuery is set
+     * (including store creation) the provider is always called, and never shared with other callers.
+     */
+    private ArtifactStore computeIfAbsent( StoreKey key, StoreNearCache.StoreLoader storeProvider, int expirationMins,
                                            boolean forceQuery )
+            throws IndyDataException
     {
         logger.debug( "computeIfAbsent, cache: {}, key: {}", ARTIFACT_STORE, key );
 
         BasicCacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getBasicCache( ARTIFACT_STORE );
-        ArtifactStore store = cache.get( key );
-        if ( store == null || forceQuery )
-        {
-            logger.trace( "Entry not found, run put, expirationMins: {}", expirationMins );
-
-            store = storeProvider.get();
-
-            if ( store != null )
+        StoreNearCache.StoreLoader loader = () -> {
+            ArtifactStore loaded = storeProvider.load();
+            if ( loaded != null )
             {
                 if ( expirationMins > 0 )
                 {
-                    cache.put( key, store, expirationMins, TimeUnit.MINUTES );
+                    cache.put( key, loaded, expirationMins, TimeUnit.MINUTES );
+                }
+                else
+                {
+                    cache.put( key, loaded );
+                }
+                storeCacheMembership.storeUpdated( loaded );
+            }
+            return loaded;
+        };
+
+        ArtifactStore store;
+        if ( forceQuery )
+        {
+            long generation = nearCache.getGeneration();
+            store = loader.load();
+            nearCache.put( key, store, generation );
+        }
+        else
+        {
+            store = nearCache.get( key, loader );
+            if ( store == null )
+            {
+                long generation = nearCache.getGeneration();
+                store = cache.get( key );
+                if ( store != null )
+                {
+                    nearCache.put( key, store, generation );
                 }
                 else
                 {
-                    cache.put( key, store );
+                    logger.trace( "Entry not found, run put, expirationMins: {}", expirationMins );
+                    store = nearCache.load( key, loader );
                 }
             }
         }
@@ -20,6 +20,7 @@ import org.commonjava.indy.client.core.IndyClientException;
 import org.commonjava.indy.client.core.module.IndyStoreQueryClientModule;
 import org.commonjava.indy.data.ArtifactStoreQuery;
 import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.db.common.GroupMembershipIndex;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.HostedRepository;
@@ -43,6 +44,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -265,10 +267,49 @@ public class ServiceStoreQuery<T extends ArtifactStore>
     @Override
     public List<ArtifactStore> getOrderedConcreteStoresInGroup( String packageType, String groupName, Boolean enabled )
             throws IndyDataException
+    {
+        final StoreKey groupKey = new StoreKey( packageType, group, groupName );
+        final GroupMembershipIndex index = dataManager.getGroupMembershipIndex();
+        final AtomicBoolean incomplete = new AtomicBoolean( false );
+        final GroupMembershipIndex.OrderingLoader loader = visited -> {
+            final long sequence = dataManager.getQueryCacheIndex().getSequence();
+            List<ArtifactStore> stores = loadOrderedConcreteStoresInGroup( packageType, groupName, enabled );
+            stores.forEach( s -> visited.add( s.getKey() ) );
+            try
+            {
+                collectConstituentKeys( groupKey, visited );
+                addQueryDependencies( orderedConcreteStoresQueryKey( packageType, groupName, enabled ), visited,
+                                      sequence );
+            }
+            catch ( IndyDataException | RuntimeException e )
+            {
+                logger.warn( "Cannot resolve constituents of {}, will not keep its ordering. Reason: {}", groupKey,
+                             e.getMessage() );
+                incomplete.set( true );
+            }
+            return stores;
+        };
+
+        final List<ArtifactStore> result =
+                index.getOrdering( groupKey, enabled, false, true, STORE_QUERY_EXPIRATION_IN_MINS, TimeUnit.MINUTES,
+                                   loader );
+
+        if ( incomplete.get() )
+        {
+            // we don't know all the stores this ordering depends on, so it can't be invalidated reliably
+            index.invalidate( groupKey );
+        }
+
+        return result;
+    }
+
+    private List<ArtifactStore> loadOrderedConcreteStoresInGroup( String packageType, String groupName,
+                                                                  Boolean enabled )
+            throws IndyDataException
     {
         final AtomicReference<IndyDataException> eHolder = new AtomicReference<>();
-        final String queryKey =
-                String.format( "%s:%s:%s:%s", packageType, groupName, enabled, "orderedConcreteStoresInGroup" );
+        final StoreKey groupKey = new StoreKey( packageType, group, groupName );
+        final String queryKey = orderedConcreteStoresQueryKey( packageType, groupName, enabled );
         final Collection<ArtifactStore> stores = computeIfAbsent( queryKey, () -> {
             try
             {
@@ -289,7 +330,7 @@ public class ServiceStoreQuery<T extends ArtifactStore>
                                                     packageType, groupName ) );
                 return null;
             }
-        }, STORE_QUERY_EXPIRATION_IN_MINS, Boolean.FALSE );
+        }, STORE_QUERY_EXPIRATION_IN_MINS, Boolean.FALSE, Collections.singleton( groupKey ) );
 
         if ( eHolder.get() != null )
         {
@@ -299,6 +340,34 @@ public class ServiceStoreQuery<T extends ArtifactStore>
         return new ArrayList<>( stores );
     }
 
+    private static String orderedConcreteStoresQueryKey( String packageType, String groupName, Boolean enabled )
+    {
+        return String.format( "%s:%s:%s:%s", packageType, groupName, enabled, "orderedConcreteStoresInGroup" );
+    }
+
+    /**
+     * The repository service only hands back the enabled concrete members, so walk the (locally cached) group
+     * definitions to record every constituent too, whether it is a nested group, disabled or missing. Otherwise
+     * enabling or creating one of them, or changing a nested group, would not invalidate the ordering.
+     */
+    private void collectConstituentKeys( final StoreKey groupKey, final Set<StoreKey> visited )
+            throws IndyDataException
+    {
+        final ArtifactStore store = dataManager.getArtifactStore( groupKey );
+        if ( !( store instanceof Group ) )
+        {
+            return;
+        }
+
+        for ( StoreKey member : ( (Group) store ).getConstituents() )
+        {
+            if ( visited.add( member ) && member.getType() == group )
+            {
+                collectConstituentKeys( member, visited );
+            }
+        }
+    }
+
     @Override
     public List<ArtifactStore> getOrderedStoresInGroup( String packageType, String groupName )
             throws IndyDataException
@@ -359,7 +428,7 @@ public class ServiceStoreQuery<T extends ArtifactStore>
                 eHolder.set( new IndyDataException( "Failed to get groups affected by %s", e, keys ) );
                 return null;
             }
-        }, STORE_QUERY_EXPIRATION_IN_MINS, false );
+        }, STORE_QUERY_EXPIRATION_IN_MINS, false, queryKeys );
 
         if ( eHolder.get() != null )
         {
@@ -504,8 +573,13 @@ public class ServiceStoreQuery<T extends ArtifactStore>
         }
     }
 
+    /**
+     * Besides caching the query result, this registers the result as depending on the given stores and on every
+     * store in the result, so {@link ServiceStoreDataCacheUpdater} can drop it when any of them changes.
+     */
     private Collection<ArtifactStore> computeIfAbsent( Object key, Supplier<Collection<ArtifactStore>> storeProvider,
-                                                       int expirationMins, boolean forceQuery )
+                                                       int expirationMins, boolean forceQuery,
+                                                       Collection<StoreKey> dependencies )
     {
         logger.debug( "computeIfAbsent, cache: {}, key: {}", ARTIFACT_STORE_QUERY, key );
 
@@ -515,6 +589,7 @@ public class ServiceStoreQuery<T extends ArtifactStore>
         {
             logger.trace( "Entry not found, run put, expirationMins: {}", expirationMins );
 
+            final long sequence = dataManager.getQueryCacheIndex().getSequence();
             stores = storeProvider.get();
 
             if ( stores != null && !stores.isEmpty() )
@@ -527,6 +602,10 @@ public class ServiceStoreQuery<T extends ArtifactStore>
                 {
                     cache.put( key, stores );
                 }
+
+                final Set<StoreKey> storeKeys = new HashSet<>( dependencies );
+                stores.forEach( s -> storeKeys.add( s.getKey() ) );
+                addQueryDependencies( key, storeKeys, sequence );
             }
         }
 
@@ -534,4 +613,20 @@ public class ServiceStoreQuery<T extends ArtifactStore>
         return stores;
     }
 
+    /**
+     * Register more dependencies of a cached query result. If any of them changed since the query started (given as
+     * a {@link StoreQueryCacheIndex#getSequence() sequence number}), the result may be stale and is dropped.
+     */
+    private void addQueryDependencies( Object key, Collection<StoreKey> dependencies, long sequence )
+    {
+        final StoreQueryCacheIndex index = dataManager.getQueryCacheIndex();
+        index.register( key, dependencies, STORE_QUERY_EXPIRATION_IN_MINS, TimeUnit.MINUTES );
+        if ( index.isChangedSince( dependencies, sequence ) )
+        {
+            logger.debug( "Stores changed while running query {}, dropping its cached result", key );
+            cacheProducer.getBasicCache( ARTIFACT_STORE_QUERY ).remove( key );
+            index.unregister( key );
+        }
+    }
+
 }
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.service;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.infinispan.client.hotrod.annotation.ClientCacheEntryExpired;
+import org.infinispan.client.hotrod.annotation.ClientCacheEntryRemoved;
+import org.infinispan.client.hotrod.annotation.ClientListener;
+import org.infinispan.client.hotrod.event.ClientCacheEntryExpiredEvent;
+import org.infinispan.client.hotrod.event.ClientCacheEntryRemovedEvent;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryExpiredEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+
+import java.util.function.Consumer;
+
+/**
+ * Tells the {@link ServiceStoreDataManager} about stores dropped from its
+ * {@link ServiceStoreDataManager#ARTIFACT_STORE} cache, whether they expired, were evicted, or were removed by another
+ * node, so the membership it keeps of the cached groups doesn't outlive them.
+ */
+@Listener
+@ClientListener
+public class StoreCacheMembershipListener
+{
+    private final Consumer<StoreKey> dropped;
+
+    StoreCacheMembershipListener( final Consumer<StoreKey> dropped )
+    {
+        this.dropped = dropped;
+    }
+
+    @CacheEntryExpired
+    public void storeExpired( CacheEntryExpiredEvent<StoreKey, ?> event )
+    {
+        dropped.accept( event.getKey() );
+    }
+
+    @CacheEntryRemoved
+    public void storeRemoved( CacheEntryRemovedEvent<StoreKey, ?> event )
+    {
+        if ( !event.isPre() )
+        {
+            dropped.accept( event.getKey() );
+        }
+    }
+
+    @CacheEntriesEvicted
+    public void storesEvicted( CacheEntriesEvictedEvent<StoreKey, ?> event )
+    {
+        event.getEntries().keySet().forEach( dropped );
+    }
+
+    @ClientCacheEntryExpired
+    public void storeExpired( ClientCacheEntryExpiredEvent<StoreKey> event )
+    {
+        dropped.accept( event.getKey() );
+    }
+
+    @ClientCacheEntryRemoved
+    public void storeRemoved( ClientCacheEntryRemovedEvent<StoreKey> event )
+    {
+        dropped.accept( event.getKey() );
+    }
+}
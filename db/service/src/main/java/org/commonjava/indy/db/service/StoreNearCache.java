@@ -0,0 +1,312 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.service;
+
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local cache of artifact stores loaded from the remote repository service, sitting in front of the Infinispan
+ * {@link ServiceStoreDataManager#ARTIFACT_STORE} cache.
+ * <p>
+ * Loads are single-flight: while a store is being loaded, other callers asking for the same key wait for that load
+ * instead of calling the repository service themselves. When refresh-ahead is enabled, a hit on an entry that is about
+ * to expire triggers an asynchronous reload, so hot stores are replaced before they expire instead of all callers
+ * missing at once.
+ * <p>
+ * Like {@link org.commonjava.indy.db.common.GroupMembershipIndex}, the cache keeps a generation counter bumped on every
+ * invalidation, and a load that overlaps an invalidation is returned to its callers without being cached.
+ */
+public class StoreNearCache
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<StoreKey, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, CompletableFuture<ArtifactStore>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final long expirationMillis;
+
+    private final Executor refreshExecutor;
+
+    private volatile long refreshAheadMillis;
+
+    /**
+     * Loads a store from the repository service. A null result means the store doesn't exist, and is not cached.
+     */
+    @FunctionalInterface
+    public interface StoreLoader
+    {
+        ArtifactStore load()
+                throws IndyDataException;
+    }
+
+    /**
+     * @param expiration how long an entry stays in this cache
+     * @param refreshExecutor runs refresh-ahead reloads; may be null if refresh-ahead is never enabled
+     */
+    public StoreNearCache( final long expiration, final TimeUnit unit, final Executor refreshExecutor )
+    {
+        this.expirationMillis = unit.toMillis( expiration );
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Reload entries this long before they expire, when they are hit. Zero or less disables refresh-ahead.
+     */
+    public void setRefreshAhead( final long refreshAhead, final TimeUnit unit )
+    {
+        this.refreshAheadMillis =
+                refreshExecutor == null ? 0 : Math.min( unit.toMillis( refreshAhead ), expirationMillis );
+    }
+
+    /**
+     * @return the cached store, or null if it is absent or expired. The loader is only used for refresh-ahead.
+     */
+    public ArtifactStore get( final StoreKey key, final StoreLoader loader )
+    {
+        final Entry entry = entries.get( key );
+        final long now = System.currentTimeMillis();
+        if ( entry == null || entry.expiresAt <= now )
+        {
+            if ( entry != null )
+            {
+                entries.remove( key, entry );
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        final long refreshAhead = refreshAheadMillis;
+        if ( refreshAhead > 0 && now >= entry.expiresAt - refreshAhead
+                && entry.refreshing.compareAndSet( false, true ) )
+        {
+            refreshAsync( key, loader );
+        }
+
+        return entry.store;
+    }
+
+    /**
+     * Load the store, joining the load already in flight for the same key if there is one. The loaded store is cached
+     * unless something was invalidated while it was loading.
+     */
+    public ArtifactStore load( final StoreKey key, final StoreLoader loader )
+            throws IndyDataException
+    {
+        final CompletableFuture<ArtifactStore> mine = new CompletableFuture<>();
+        final CompletableFuture<ArtifactStore> existing = inFlight.putIfAbsent( key, mine );
+        if ( existing != null )
+        {
+            coalesced.incrementAndGet();
+            logger.trace( "Joining in-flight load of {}", key );
+            return await( key, existing );
+        }
+
+        final long startGeneration = generation.get();
+        try
+        {
+            final ArtifactStore store = loader.load();
+            put( key, store, startGeneration );
+            mine.complete( store );
+            return store;
+        }
+        catch ( IndyDataException | RuntimeException e )
+        {
+            mine.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            inFlight.remove( key, mine );
+        }
+    }
+
+    /**
+     * Cache a store obtained elsewhere (e.g. from the Infinispan cache), unless anything was invalidated since the
+     * given {@link #getGeneration() generation} was read.
+     */
+    public void put( final StoreKey key, final ArtifactStore store, final long expectedGeneration )
+    {
+        if ( store == null )
+        {
+            return;
+        }
+
+        if ( generation.get() != expectedGeneration )
+        {
+            logger.debug( "Stores changed while loading {}; not caching it", key );
+            return;
+        }
+
+        final Entry entry = new Entry( store, System.currentTimeMillis() + expirationMillis );
+        entries.put( key, entry );
+        if ( generation.get() != expectedGeneration )
+        {
+            // lost a race with an invalidation that happened between the check and the put
+            entries.remove( key, entry );
+        }
+    }
+
+    public void invalidate( final StoreKey key )
+    {
+        generation.incrementAndGet();
+        entries.remove( key );
+    }
+
+    public void clear()
+    {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * @return a counter that increases whenever any cached store may have become obsolete.
+     */
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return number of loads that were served by joining another caller's in-flight load
+     */
+    public long getCoalescedCount()
+    {
+        return coalesced.get();
+    }
+
+    public long getRefreshCount()
+    {
+        return refreshes.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StoreNearCache{size=" + entries.size() + ", hits=" + hits.get() + ", misses=" + misses.get()
+                + ", coalesced=" + coalesced.get() + ", refreshes=" + refreshes.get() + '}';
+    }
+
+    private void refreshAsync( final StoreKey key, final StoreLoader loader )
+    {
+        try
+        {
+            refreshExecutor.execute( () -> {
+                refreshes.incrementAndGet();
+                try
+                {
+                    final ArtifactStore store = load( key, loader );
+                    if ( store == null )
+                    {
+                        logger.debug( "Store {} is gone from repository service, dropping it", key );
+                        invalidate( key );
+                    }
+                }
+                catch ( IndyDataException | RuntimeException e )
+                {
+                    // the entry is still valid until it expires, after which callers will load it themselves
+                    logger.warn( "Failed to refresh store {} ahead of expiration: {}", key, e.getMessage() );
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            logger.debug( "Refresh of {} rejected: {}", key, e.getMessage() );
+        }
+    }
+
+    private ArtifactStore await( final StoreKey key, final CompletableFuture<ArtifactStore> future )
+            throws IndyDataException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyDataException( "Interrupted while waiting for store %s", e, key );
+        }
+        catch ( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if ( cause instanceof IndyDataException )
+            {
+                throw (IndyDataException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new IndyDataException( "Failed to load store %s", cause, key );
+        }
+    }
+
+    private static final class Entry
+    {
+        private final ArtifactStore store;
+
+        private final long expiresAt;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry( final ArtifactStore store, final long expiresAt )
+        {
+            this.store = store;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.service;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dependency index for the {@link ServiceStoreQuery#ARTIFACT_STORE_QUERY} cache: for every store key, the query cache
+ * keys whose cached result was computed from that store. When a store changes, {@link #invalidate(StoreKey)} returns
+ * exactly those query keys, instead of the cache being scanned for them.
+ * <p>
+ * Every invalidation is stamped with an increasing sequence number, so a query that was running while one of its
+ * dependencies changed can tell (see {@link #isChangedSince(Collection, long)}) that its result must not stay cached.
+ * Those stamps are pruned every {@value #SWEEP_INTERVAL} invalidations. A query started before the pruned stamps is
+ * always reported as changed, since it can't be told apart from one that saw them.
+ * <p>
+ * Query cache entries expire on their own; their registrations here are given the same lifespan and are swept out
+ * periodically.
+ */
+public class StoreQueryCacheIndex
+{
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<StoreKey, Set<Object>> dependents = new ConcurrentHashMap<>();
+
+    private final Map<Object, Registration> registrations = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Long> lastInvalidated = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger registrationsSinceSweep = new AtomicInteger();
+
+    private int invalidationsSincePrune;
+
+    private long pruneFloor;
+
+    private volatile long prunedThrough;
+
+    /**
+     * @return the current invalidation sequence number, to be passed to {@link #isChangedSince(Collection, long)}
+     */
+    public long getSequence()
+    {
+        return sequence.get();
+    }
+
+    /**
+     * Record that the cached result for queryKey depends on the given stores. Registering the same query key again
+     * adds to its dependencies.
+     */
+    public synchronized void register( final Object queryKey, final Collection<StoreKey> dependencies,
+                                       final long lifespan, final TimeUnit unit )
+    {
+        final long expiresAt = lifespan > 0 ? System.currentTimeMillis() + unit.toMillis( lifespan ) : Long.MAX_VALUE;
+        final Registration registration = registrations.computeIfAbsent( queryKey, k -> new Registration() );
+        registration.expiresAt = Math.max( registration.expiresAt, expiresAt );
+        for ( StoreKey dependency : dependencies )
+        {
+            if ( registration.dependencies.add( dependency ) )
+            {
+                dependents.computeIfAbsent( dependency, k -> ConcurrentHashMap.newKeySet() ).add( queryKey );
+            }
+        }
+
+        if ( registrationsSinceSweep.incrementAndGet() >= SWEEP_INTERVAL )
+        {
+            registrationsSinceSweep.set( 0 );
+            sweepExpired();
+        }
+    }
+
+    /**
+     * @return true if any of the given stores was invalidated after the given {@link #getSequence() sequence number}
+     */
+    public boolean isChangedSince( final Collection<StoreKey> keys, final long since )
+    {
+        if ( since < prunedThrough )
+        {
+            return true;
+        }
+
+        for ( StoreKey key : keys )
+        {
+            final Long stamp = lastInvalidated.get( key );
+            if ( stamp != null && stamp > since )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget the query cache entries depending on the given store.
+     *
+     * @return the query cache keys to remove from the cache
+     */
+    public synchronized Set<Object> invalidate( final StoreKey key )
+    {
+        lastInvalidated.put( key, sequence.incrementAndGet() );
+        if ( ++invalidationsSincePrune >= SWEEP_INTERVAL )
+        {
+            invalidationsSincePrune = 0;
+            pruneInvalidations();
+        }
+
+        final Set<Object> queryKeys = dependents.remove( key );
+        if ( queryKeys == null )
+        {
+            return Collections.emptySet();
+        }
+
+        queryKeys.forEach( this::unregister );
+        logger.trace( "{} query cache entries depend on {}", queryKeys.size(), key );
+        return queryKeys;
+    }
+
+    /**
+     * Forget the given query cache entry, e.g. because it was removed from the cache.
+     */
+    public synchronized void unregister( final Object queryKey )
+    {
+        final Registration registration = registrations.remove( queryKey );
+        if ( registration == null )
+        {
+            return;
+        }
+
+        registration.dependencies.forEach( dependency -> dependents.computeIfPresent( dependency, ( k, keys ) -> {
+            keys.remove( queryKey );
+            return keys.isEmpty() ? null : keys;
+        } ) );
+    }
+
+    public synchronized void clear()
+    {
+        prunedThrough = sequence.incrementAndGet();
+        pruneFloor = prunedThrough;
+        registrations.clear();
+        dependents.clear();
+        lastInvalidated.clear();
+    }
+
+    public int size()
+    {
+        return registrations.size();
+    }
+
+    int invalidationStampCount()
+    {
+        return lastInvalidated.size();
+    }
+
+    /**
+     * Drop the invalidation stamps that were already there at the previous prune. Only queries that have been running
+     * since then still need them.
+     */
+    private void pruneInvalidations()
+    {
+        final long floor = pruneFloor;
+        pruneFloor = sequence.get();
+        lastInvalidated.values().removeIf( stamp -> stamp <= floor );
+        prunedThrough = floor;
+    }
+
+    private void sweepExpired()
+    {
+        final long now = System.currentTimeMillis();
+        final Set<Object> expired = new HashSet<>();
+        registrations.forEach( ( queryKey, registration ) -> {
+            if ( registration.expiresAt <= now )
+            {
+                expired.add( queryKey );
+            }
+        } );
+
+        expired.forEach( this::unregister );
+        if ( !expired.isEmpty() )
+        {
+            logger.debug( "Swept {} expired query cache registrations", expired.size() );
+        }
+    }
+
+    private static final class Registration
+    {
+        private final Set<StoreKey> dependencies = new HashSet<>();
+
+        private long expiresAt;
+    }
+}
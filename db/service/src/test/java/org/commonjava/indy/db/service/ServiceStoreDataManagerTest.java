@@ -37,6 +37,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -229,4 +230,24 @@ public class ServiceStoreDataManagerTest
         assertThat( groups.size(), equalTo( 3 ) );
     }
 
+    @Test
+    public void testStoreCacheMembershipPrunedWhenGroupLeavesCache()
+            throws Exception
+    {
+        dataManager.init();
+        final StoreKey key = StoreKey.fromString( "maven:group:static" );
+        final StoreKey member = StoreKey.fromString( "maven:group:builds-untested+shared-imports" );
+        producer.getBasicCache( ServiceStoreDataManager.ARTIFACT_STORE ).remove( key );
+
+        String path = normalizePath( BASE_STORE_PATH, "maven/group/static" );
+        server.expect( path, 200, readResource( "repo-service/group-static.json" ) );
+        assertNotNull( dataManager.getArtifactStore( key ) );
+        assertThat( dataManager.getStoreCacheMembership().getContainingGroups( member ),
+                    equalTo( Collections.singleton( key ) ) );
+
+        // as if it expired, or another node removed it
+        producer.getBasicCache( ServiceStoreDataManager.ARTIFACT_STORE ).remove( key );
+        assertTrue( dataManager.getStoreCacheMembership().getContainingGroups( member ).isEmpty() );
+    }
+
 }
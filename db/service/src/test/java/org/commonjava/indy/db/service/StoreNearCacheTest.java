@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.service;
+
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class StoreNearCacheTest
+{
+    private static final int CALLERS = 8;
+
+    private final Group group = new Group( "maven", "public" );
+
+    private final StoreKey key = group.getKey();
+
+    @Test
+    public void concurrentLoadsAreCoalesced()
+            throws Exception
+    {
+        final StoreNearCache cache = new StoreNearCache( 15, TimeUnit.MINUTES, null );
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( CALLERS );
+        try
+        {
+            final List<Future<ArtifactStore>> results = new ArrayList<>();
+            for ( int i = 0; i < CALLERS; i++ )
+            {
+                results.add( executor.submit( () -> cache.load( key, () -> {
+                    calls.incrementAndGet();
+                    await( release );
+                    return group;
+                } ) ) );
+            }
+
+            while ( cache.getCoalescedCount() < CALLERS - 1 )
+            {
+                Thread.sleep( 10 );
+            }
+            release.countDown();
+
+            for ( Future<ArtifactStore> result : results )
+            {
+                assertThat( result.get( 10, TimeUnit.SECONDS ), sameInstance( group ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertThat( calls.get(), equalTo( 1 ) );
+        assertThat( cache.get( key, null ), sameInstance( group ) );
+        assertThat( cache.getHitCount(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void loadFailureIsSeenByJoinedCallers()
+            throws Exception
+    {
+        final StoreNearCache cache = new StoreNearCache( 15, TimeUnit.MINUTES, null );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            final List<Future<ArtifactStore>> results = new ArrayList<>();
+            for ( int i = 0; i < 2; i++ )
+            {
+                results.add( executor.submit( () -> cache.load( key, () -> {
+                    await( release );
+                    throw new IndyDataException( "service unavailable" );
+                } ) ) );
+            }
+
+            while ( cache.getCoalescedCount() < 1 )
+            {
+                Thread.sleep( 10 );
+            }
+            release.countDown();
+
+            for ( Future<ArtifactStore> result : results )
+            {
+                try
+                {
+                    result.get( 10, TimeUnit.SECONDS );
+                    fail( "Load failure should be propagated" );
+                }
+                catch ( ExecutionException e )
+                {
+                    assertThat( e.getCause().getClass(), equalTo( IndyDataException.class ) );
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertThat( cache.get( key, null ), nullValue() );
+    }
+
+    @Test
+    public void loadOverlappingInvalidationIsNotCached()
+            throws Exception
+    {
+        final StoreNearCache cache = new StoreNearCache( 15, TimeUnit.MINUTES, null );
+        final ArtifactStore loaded = cache.load( key, () -> {
+            cache.invalidate( key );
+            return group;
+        } );
+
+        assertThat( loaded, sameInstance( group ) );
+        assertThat( cache.get( key, null ), nullValue() );
+    }
+
+    @Test
+    public void hitNearExpirationRefreshesAhead()
+            throws Exception
+    {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            final StoreNearCache cache = new StoreNearCache( 15, TimeUnit.MINUTES, executor );
+            cache.setRefreshAhead( 15, TimeUnit.MINUTES );
+            cache.load( key, () -> group );
+
+            final Group updated = new Group( "maven", "public" );
+            final CountDownLatch refreshed = new CountDownLatch( 1 );
+            assertThat( cache.get( key, () -> {
+                refreshed.countDown();
+                return updated;
+            } ), sameInstance( group ) );
+
+            refreshed.await( 10, TimeUnit.SECONDS );
+            executor.shutdown();
+            executor.awaitTermination( 10, TimeUnit.SECONDS );
+
+            assertThat( cache.getRefreshCount(), equalTo( 1L ) );
+            assertThat( cache.get( key, () -> updated ), sameInstance( updated ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await( final CountDownLatch latch )
+            throws IndyDataException
+    {
+        try
+        {
+            latch.await();
+        }
+        catch ( InterruptedException e )
+        {
+            throw new IndyDataException( "Interrupted", e );
+        }
+    }
+}
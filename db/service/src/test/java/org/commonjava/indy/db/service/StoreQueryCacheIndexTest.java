@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.service;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StoreQueryCacheIndexTest
+{
+    private final StoreKey pub = StoreKey.fromString( "maven:group:public" );
+
+    private final StoreKey central = StoreKey.fromString( "maven:remote:central" );
+
+    private final StoreKey builds = StoreKey.fromString( "maven:hosted:builds" );
+
+    @Test
+    public void invalidateReturnsOnlyDependentQueries()
+    {
+        final StoreQueryCacheIndex index = new StoreQueryCacheIndex();
+        final Set<StoreKey> affectedByQuery = new HashSet<>( Collections.singleton( builds ) );
+        index.register( "maven:public:true:orderedConcreteStoresInGroup", Arrays.asList( pub, central, builds ), 15,
+                        TimeUnit.MINUTES );
+        index.register( affectedByQuery, Arrays.asList( builds, pub ), 15, TimeUnit.MINUTES );
+        index.register( "maven:other:true:orderedConcreteStoresInGroup",
+                        Collections.singleton( StoreKey.fromString( "maven:group:other" ) ), 15, TimeUnit.MINUTES );
+
+        assertThat( index.invalidate( central ),
+                    equalTo( Collections.singleton( "maven:public:true:orderedConcreteStoresInGroup" ) ) );
+        assertThat( index.invalidate( builds ), equalTo( Collections.singleton( affectedByQuery ) ) );
+        assertThat( index.invalidate( pub ).size(), equalTo( 0 ) );
+        assertThat( index.size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void changeDuringQueryIsDetected()
+    {
+        final StoreQueryCacheIndex index = new StoreQueryCacheIndex();
+        final long sequence = index.getSequence();
+        index.invalidate( builds );
+
+        assertTrue( index.isChangedSince( Arrays.asList( pub, builds ), sequence ) );
+        assertFalse( index.isChangedSince( Arrays.asList( pub, central ), sequence ) );
+        assertFalse( index.isChangedSince( Collections.singleton( builds ), index.getSequence() ) );
+    }
+
+    @Test
+    public void invalidationStampsArePruned()
+    {
+        final StoreQueryCacheIndex index = new StoreQueryCacheIndex();
+        final long started = index.getSequence();
+        for ( int i = 0; i < 10_000; i++ )
+        {
+            index.invalidate( StoreKey.fromString( "maven:remote:r" + i ) );
+        }
+
+        assertTrue( index.invalidationStampCount() <= 2048 );
+
+        // the early stamps were pruned, so a query running since before them is reported as changed
+        assertTrue( index.isChangedSince( Collections.singleton( pub ), started ) );
+
+        final long sequence = index.getSequence();
+        index.invalidate( builds );
+        assertTrue( index.isChangedSince( Arrays.asList( pub, builds ), sequence ) );
+        assertFalse( index.isChangedSince( Collections.singleton( pub ), sequence ) );
+    }
+}
@@ -97,9 +97,10 @@ public class CacheProducer
     @Inject
     private ISPNClusterConfiguration clusterConfiguration;
 
-    private Map<String, BasicCacheHandle> caches = new ConcurrentHashMap<>(); // hold embedded and remote caches
+    // hold embedded and remote caches. Read without locking; entries are only added while holding the producer's monitor
+    private final Map<String, BasicCacheHandle> caches = new ConcurrentHashMap<>();
 
-    private Map<String, StrongCounter> counters = new ConcurrentHashMap<>();
+    private final Map<String, StrongCounter> counters = new ConcurrentHashMap<>();
 
     protected CacheProducer()
     {
@@ -237,8 +238,20 @@ public class CacheProducer
     /**
      * Get a BasicCache instance. If the remote cache is enabled, it will match the named with remote.patterns.
      * If matched, it will create/return a RemoteCache. If not matched, an embedded cache will be created/returned to the caller.
+     * <p>
+     * Handles that already exist are returned without locking; only the creation of a new one is synchronized.
      */
-    public synchronized <K, V> BasicCacheHandle<K, V> getBasicCache( String named )
+    public <K, V> BasicCacheHandle<K, V> getBasicCache( String named )
+    {
+        BasicCacheHandle handle = caches.get( named );
+        if ( handle != null )
+        {
+            return handle;
+        }
+        return createBasicCache( named );
+    }
+
+    private synchronized <K, V> BasicCacheHandle<K, V> createBasicCache( String named )
     {
         BasicCacheHandle handle = caches.computeIfAbsent( named, ( k ) -> {
             if ( remoteConfiguration != null && remoteConfiguration.isEnabled() )
@@ -285,7 +298,7 @@ public class CacheProducer
 
         if ( handle == null )
         {
-            handle = getCache( named );
+            handle = createCache( named );
         }
 
         return handle;
@@ -353,7 +366,7 @@ public class CacheProducer
      * Get named cache and verify that the cache obeys our expectations for clustering.
      * There is no way to find out the runtime type of generic type parameters and we need to pass the k/v class types.
      */
-    public synchronized <K, V> CacheHandle<K, V> getClusterizableCache( String named, Class<K> kClass, Class<V> vClass )
+    public <K, V> CacheHandle<K, V> getClusterizableCache( String named, Class<K> kClass, Class<V> vClass )
     {
         verifyClusterizable( kClass, vClass );
         return getCache( named );
@@ -371,8 +384,19 @@ public class CacheProducer
 
     /**
      * Retrieve an embedded cache with a pre-defined configuration (from infinispan.xml) or the default cache configuration.
+     * Like {@link #getBasicCache(String)}, this only locks when the cache handle has to be created.
      */
-    public synchronized <K, V> CacheHandle<K, V> getCache( String named )
+    public <K, V> CacheHandle<K, V> getCache( String named )
+    {
+        BasicCacheHandle handle = caches.get( named );
+        if ( handle != null )
+        {
+            return (CacheHandle) handle;
+        }
+        return createCache( named );
+    }
+
+    private synchronized <K, V> CacheHandle<K, V> createCache( String named )
     {
         logger.debug( "Get embedded cache, name: {}", named );
         return (CacheHandle) caches.computeIfAbsent( named, ( k ) -> {
@@ -549,12 +573,23 @@ public class CacheProducer
         return cacheManager;
     }
 
-    public synchronized StrongCounter getStrongCounter( String counter )
+    public StrongCounter getStrongCounter( String counter )
     {
         if ( remoteConfiguration == null || !remoteConfiguration.isEnabled() )
         {
             return null;
         }
+
+        StrongCounter strongCounter = counters.get( counter );
+        if ( strongCounter != null )
+        {
+            return strongCounter;
+        }
+        return createStrongCounter( counter );
+    }
+
+    private synchronized StrongCounter createStrongCounter( String counter )
+    {
         return counters.computeIfAbsent( counter, ( k )->{
             CounterManager cm = RemoteCounterManagerFactory.asCounterManager( remoteCacheManager );
             if ( !cm.isDefined( k ) )
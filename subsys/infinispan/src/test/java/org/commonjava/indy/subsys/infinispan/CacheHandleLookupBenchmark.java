@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.infinispan;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link CacheProducer#getBasicCache(String)} for handles that already exist, with 64 threads asking
+ * for a handful of caches the way ServiceStoreDataManager and ServiceStoreQuery do on every request.
+ * <p>
+ * The "synchronized" mode holds the producer's monitor around the lookup, which is what every lookup did before
+ * handle lookups were made lock-free; "lockFree" calls the producer as it is now.
+ * <p>
+ * This is not run by the build. Run it with {@link #main(String[])} from the test classpath.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@Threads( 64 )
+public class CacheHandleLookupBenchmark
+{
+    private static final String[] CACHE_NAMES =
+            { "artifact-store", "artifact-store-query", "content-index", "nfc", "schedule-expire-cache" };
+
+    @Param( { "synchronized", "lockFree" } )
+    public String mode;
+
+    private DefaultCacheManager cacheManager;
+
+    private CacheProducer producer;
+
+    private boolean synchronizedLookup;
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        cacheManager = new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() );
+        producer = new CacheProducer( new DefaultIndyConfiguration(), cacheManager, null );
+        for ( String name : CACHE_NAMES )
+        {
+            producer.getBasicCache( name );
+        }
+        synchronizedLookup = "synchronized".equals( mode );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+    {
+        cacheManager.stop();
+    }
+
+    @Benchmark
+    public Object lookupHandle()
+    {
+        final String name = CACHE_NAMES[ThreadLocalRandom.current().nextInt( CACHE_NAMES.length )];
+        if ( synchronizedLookup )
+        {
+            synchronized ( producer )
+            {
+                return producer.getBasicCache( name );
+            }
+        }
+        return producer.getBasicCache( name );
+    }
+
+    public static void main( String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( CacheHandleLookupBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
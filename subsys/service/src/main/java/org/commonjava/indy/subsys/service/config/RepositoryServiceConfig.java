@@ -49,6 +49,10 @@ public class RepositoryServiceConfig
     // to the current time when checking if the authorization token should be refreshed.
     private long refreshTokenTimeSkew = DEFAULT_REFRESH_TOKEN_TIME_SKEW;
 
+    // How long before a cached store expires it is reloaded in the background when accessed, in seconds. Zero or less
+    // disables refresh-ahead, so stores are only reloaded after they expire.
+    private long storeCacheRefreshAhead = 0;
+
     public Boolean isEnabled()
     {
         return enabled;
@@ -148,6 +152,17 @@ public class RepositoryServiceConfig
         this.refreshTokenTimeSkew = refreshTokenTimeSkew;
     }
 
+    public long getStoreCacheRefreshAhead()
+    {
+        return storeCacheRefreshAhead;
+    }
+
+    @ConfigName( "store.cache.refresh-ahead" )
+    public void setStoreCacheRefreshAhead( long storeCacheRefreshAhead )
+    {
+        this.storeCacheRefreshAhead = storeCacheRefreshAhead;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
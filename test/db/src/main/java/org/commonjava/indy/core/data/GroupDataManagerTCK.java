@@ -26,6 +26,7 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -194,6 +195,45 @@ public abstract class GroupDataManagerTCK
                 .getName(), equalTo( "central" ) );
     }
 
+    @Test
+    public void orderingFollowsNestedGroupMembershipChanges()
+        throws Exception
+    {
+        final StoreDataManager manager = getFixtureProvider().getDataManager();
+
+        final HostedRepository builds = new HostedRepository( MAVEN_PKG_KEY, "builds" );
+        final Group subGrp = new Group( MAVEN_PKG_KEY, "subGroup", new StoreKey( remote, "repo2" ) );
+        final Group grp = new Group( MAVEN_PKG_KEY, "test", subGrp.getKey(), new StoreKey( remote, "central" ) );
+
+        store( builds, subGrp, grp );
+
+        List<ArtifactStore> repos = manager.query().getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, grp.getName() );
+        assertThat( repos.stream().map( ArtifactStore::getName ).collect( Collectors.toList() ),
+                    equalTo( asList( "repo2", "central" ) ) );
+
+        final Group subGrpCopy = subGrp.copyOf();
+        subGrpCopy.addConstituent( builds.getKey() );
+        store( subGrpCopy );
+
+        repos = manager.query().getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, grp.getName() );
+        assertThat( repos.stream().map( ArtifactStore::getName ).collect( Collectors.toList() ),
+                    equalTo( asList( "repo2", "builds", "central" ) ) );
+
+        final HostedRepository buildsCopy = builds.copyOf();
+        buildsCopy.setDisabled( true );
+        store( buildsCopy );
+
+        repos = manager.query().getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, grp.getName() );
+        assertThat( repos.stream().map( ArtifactStore::getName ).collect( Collectors.toList() ),
+                    equalTo( asList( "repo2", "central" ) ) );
+
+        removeStore( subGrpCopy );
+
+        repos = manager.query().getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, grp.getName() );
+        assertThat( repos.stream().map( ArtifactStore::getName ).collect( Collectors.toList() ),
+                    equalTo( Collections.singletonList( "central" ) ) );
+    }
+
     @Test
     public void createGroupAndRetrieveRepositoryConstituents()
         throws Exception
@@ -384,6 +424,74 @@ public abstract class GroupDataManagerTCK
         assertAffectedBy( hosted2.getKey(), groupF, groupC, groupA );
     }
 
+    @Test
+    public void affectedByAndContainingMatchMembershipScan()
+            throws Exception
+    {
+        final StoreKey central = new StoreKey( PKG_TYPE_MAVEN, remote, "central" );
+        final StoreKey repo2 = new StoreKey( PKG_TYPE_MAVEN, remote, "repo2" );
+        final HostedRepository hosted1 = new HostedRepository( PKG_TYPE_MAVEN, "hosted1" );
+        final Group top = new Group( PKG_TYPE_MAVEN, "top" );
+        final Group left = new Group( PKG_TYPE_MAVEN, "left", central, hosted1.getKey() );
+        final Group right = new Group( PKG_TYPE_MAVEN, "right", repo2, hosted1.getKey() );
+        final Group leaf = new Group( PKG_TYPE_MAVEN, "leaf", central );
+        top.setConstituents( asList( left.getKey(), right.getKey() ) );
+
+        store( hosted1, top, left, right, leaf );
+
+        final List<StoreKey> keys =
+                asList( central, repo2, hosted1.getKey(), top.getKey(), left.getKey(), right.getKey(), leaf.getKey() );
+        assertMembershipMatchesScan( keys );
+
+        final Group rightCopy = right.copyOf();
+        rightCopy.removeConstituent( hosted1 );
+        rightCopy.addConstituent( leaf.getKey() );
+        store( rightCopy );
+        assertMembershipMatchesScan( keys );
+
+        removeStore( left );
+        final Group topCopy = top.copyOf();
+        topCopy.removeConstituent( left );
+        store( topCopy );
+        assertMembershipMatchesScan( keys );
+    }
+
+    private void assertMembershipMatchesScan( List<StoreKey> keys )
+            throws Exception
+    {
+        final List<Group> allGroups = manager.query().getAllGroups( PKG_TYPE_MAVEN );
+        for ( StoreKey key : keys )
+        {
+            final Set<StoreKey> containing = allGroups.stream()
+                                                      .filter( g -> g.getConstituents().contains( key ) )
+                                                      .map( Group::getKey )
+                                                      .collect( Collectors.toSet() );
+
+            assertThat( "groups containing " + key, manager.query()
+                                                           .getGroupsContaining( key )
+                                                           .stream()
+                                                           .map( Group::getKey )
+                                                           .collect( Collectors.toSet() ), equalTo( containing ) );
+
+            final Set<StoreKey> affected = new HashSet<>();
+            final List<StoreKey> toProcess = new ArrayList<>( Collections.singletonList( key ) );
+            while ( !toProcess.isEmpty() )
+            {
+                StoreKey next = toProcess.remove( 0 );
+                allGroups.stream()
+                         .filter( g -> g.getConstituents().contains( next ) && !g.getKey().equals( key ) )
+                         .filter( g -> affected.add( g.getKey() ) )
+                         .forEach( g -> toProcess.add( g.getKey() ) );
+            }
+
+            assertThat( "groups affected by " + key, manager.query()
+                                                            .getGroupsAffectedBy( key )
+                                                            .stream()
+                                                            .map( Group::getKey )
+                                                            .collect( Collectors.toSet() ), equalTo( affected ) );
+        }
+    }
+
     private void assertAffectedBy( StoreKey affectedByKey, ArtifactStore... expectedStores )
             throws Exception
     {